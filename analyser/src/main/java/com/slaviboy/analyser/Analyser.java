@@ -1,8 +1,13 @@
 package com.slaviboy.analyser;
 
-import com.slaviboy.analyser.window.Blackman;
+import com.slaviboy.analyser.window.Window;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 /*
  * Free Frequency Analyser Class(Java)
@@ -40,21 +45,32 @@ public class Analyser {
     public static final int SAMPLE_RATE = 44100;
     public static final double SMOOTHING_TIME_CONSTANT = 0.8;
 
-    private int fftSize;                        // fft size 128, 256, 512,...
-    private int sampleRate;                     // actual microphone sample rate (Hz)
+    // pcm encodings, same values as in android.media.AudioFormat
+    public static final int ENCODING_PCM_16BIT = 2;
+    public static final int ENCODING_PCM_8BIT = 3;
+    public static final int ENCODING_PCM_FLOAT = 4;
+    public static final int ENCODING_PCM_24BIT_PACKED = 21;
+    public static final int ENCODING_PCM_32BIT = 22;
+
     private Range decibels;                     // decibels range
     private double smoothingTimeConstant;       // value between [0-1] for smoothing data, from previous transition
 
-    private Frequency frequency;                // frequencies array corresponding to each bar
-    private Blackman window;                    // analysis window (Hanning, Blackman, ...)
+    private volatile Configuration configuration;                 // fft size, sample rate and arrays of the frames
+    private AtomicReference<Configuration> pendingConfiguration;  // configuration swapped in on the next frame
+    private float[] floatTimeDomainData;        // data from microphone or audio files [-1,1]
+
+    private List<Range> binRanges;              // bin ranges requested by the consumers
+    private int[] spans;                        // merged ranges as [start, end) pairs
+    private int spanCount;                      // number of merged ranges
 
-    private double[] smoothingData;             // last smoothed data
-    private double[] realArray;                 // real component for fft
-    private double[] imaginaryArray;            // imaginary component for fft
+    private long captureTime;                   // System.nanoTime() when the latest analysed sample was captured
+    private long samplePosition;                // stream position of the first analysed sample
+    private long analysisTime;                  // System.nanoTime() when the last frame was analysed
 
-    private int[] byteFrequencyData;            // frequency data in bytes [0,255]
-    private float[] floatTimeDomainData;        // data from microphone or audio files [-1,1]
-    private double[] doubleFrequencyData;       // frequency data(magnitudes)
+    private SilenceGate silenceGate;            // optional gate that skips the fft for quiet input
+    private int hopSize;                        // new samples in the next buffer, 0 if not set
+    private boolean silent;                     // if the gate is closed and the spectrum is fully decayed
+    private boolean idle;                       // if the last frame did not change the output
 
     public Analyser() {
 
@@ -65,11 +81,14 @@ public class Analyser {
 
     public Analyser(int fftSize, int sampleRate, Range decibels, double smoothingTimeConstant) {
 
-        this.sampleRate = sampleRate;
         this.decibels = decibels;
         this.smoothingTimeConstant = smoothingTimeConstant;
 
-        setFftSize(fftSize);
+        pendingConfiguration = new AtomicReference<>();
+        binRanges = new CopyOnWriteArrayList<>();
+        spans = new int[2];
+        setConfiguration(new Configuration(fftSize, sampleRate));
+        applyConfiguration();
     }
 
     /**
@@ -81,51 +100,402 @@ public class Analyser {
      */
     public void setAudioBuffer(float[] audioBuffer) {
 
+        Configuration c = applyConfiguration();
         this.floatTimeDomainData = audioBuffer;
 
         // set the real component while applying analyses window
-        for (int i = 0; i < fftSize; i++) {
-            realArray[i] = audioBuffer[i] * window.get(i);
-            imaginaryArray[i] = 0.0;
+        double[] w = c.windowData;
+        for (int i = 0; i < c.fftSize; i++) {
+            c.realArray[i] = audioBuffer[i] * w[i];
+            c.imaginaryArray[i] = 0.0;
+        }
+
+        transform(c, c.fftSize);
+    }
+
+    /**
+     * Set the latest samples of a stream, the last fftSize samples before offset + length
+     * are analysed and if there are less samples the beginning is zero padded. Unlike
+     * setAudioBuffer(float[]) the buffer does not have to match the fft size, which can
+     * change on the frame boundary.
+     *
+     * @param audioBuffer - samples, ordered from the oldest to the latest
+     * @param offset      - position of the first sample
+     * @param length      - number of samples
+     */
+    public void setAudioBuffer(float[] audioBuffer, int offset, int length) {
+
+        Configuration c = applyConfiguration();
+
+        double[] w = c.windowData;
+        int start = offset + length - c.fftSize;
+        for (int i = 0, j = start; i < c.fftSize; i++, j++) {
+            float sample = j >= offset ? audioBuffer[j] : 0.0f;
+            c.timeDomainData[i] = sample;
+            c.realArray[i] = sample * w[i];
+            c.imaginaryArray[i] = 0.0;
+        }
+
+        this.floatTimeDomainData = c.timeDomainData;
+        transform(c, Math.min(length, c.fftSize));
+    }
+
+    /**
+     * Set 16-bit mono PCM buffer, as read by AudioRecord
+     *
+     * @param audioBuffer
+     */
+    public void setAudioBuffer(short[] audioBuffer) {
+        setAudioBuffer(audioBuffer, 1, 0);
+    }
+
+    /**
+     * Set 16-bit interleaved PCM buffer, the scaling to [-1,1] and the analyses
+     * window are applied in the same pass that reads the samples
+     *
+     * @param audioBuffer  - interleaved samples
+     * @param channelCount - number of interleaved channels
+     * @param channel      - index of the analysed channel
+     */
+    public void setAudioBuffer(short[] audioBuffer, int channelCount, int channel) {
+
+        Configuration c = applyConfiguration();
+
+        double[] w = c.windowData;
+        float scale = 1.0f / 32768.0f;
+        for (int i = 0, j = channel; i < c.fftSize; i++, j += channelCount) {
+            float sample = audioBuffer[j] * scale;
+            c.timeDomainData[i] = sample;
+            c.realArray[i] = sample * w[i];
+            c.imaginaryArray[i] = 0.0;
+        }
+
+        this.floatTimeDomainData = c.timeDomainData;
+        transform(c, c.fftSize);
+    }
+
+    /**
+     * Set interleaved PCM buffer with integer samples, sign extended to int
+     * (for example 24-bit or 32-bit samples)
+     *
+     * @param audioBuffer   - interleaved samples
+     * @param bitsPerSample - bit depth of the samples, used for scaling to [-1,1]
+     * @param channelCount  - number of interleaved channels
+     * @param channel       - index of the analysed channel
+     */
+    public void setAudioBuffer(int[] audioBuffer, int bitsPerSample, int channelCount, int channel) {
+
+        Configuration c = applyConfiguration();
+
+        double[] w = c.windowData;
+        double scale = 1.0 / (1L << (bitsPerSample - 1));
+        for (int i = 0, j = channel; i < c.fftSize; i++, j += channelCount) {
+            double sample = audioBuffer[j] * scale;
+            c.timeDomainData[i] = (float) sample;
+            c.realArray[i] = sample * w[i];
+            c.imaginaryArray[i] = 0.0;
+        }
+
+        this.floatTimeDomainData = c.timeDomainData;
+        transform(c, c.fftSize);
+    }
+
+    /**
+     * Set interleaved PCM data from byte buffer, for example memory mapped file or direct
+     * buffer filled by AudioRecord. The samples are read starting from the buffer position
+     * using the buffer byte order, and the position is not changed. The decoding is chosen
+     * once per buffer, so the loop that reads the samples has no branches.
+     *
+     * @param buffer       - buffer with at least fftSize frames after its position, the fft
+     *                     size that is applied on this frame is used
+     * @param encoding     - one of the ENCODING_PCM_* constants
+     * @param channelCount - number of interleaved channels
+     * @param channel      - index of the analysed channel
+     */
+    public void setAudioBuffer(ByteBuffer buffer, int encoding, int channelCount, int channel) {
+
+        Configuration c = applyConfiguration();
+        int fftSize = c.fftSize;
+        float[] timeDomainData = c.timeDomainData;
+        double[] realArray = c.realArray;
+
+        double[] w = c.windowData;
+        int bytesPerSample = getBytesPerSample(encoding);
+        int stride = bytesPerSample * channelCount;
+        if (buffer.remaining() < fftSize * stride) {
+            throw new IllegalArgumentException("Buffer has " + buffer.remaining() / stride +
+                    " frames after its position, " + fftSize + " are required");
+        }
+        int start = buffer.position() + channel * bytesPerSample;
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+
+        if (encoding == ENCODING_PCM_8BIT) {
+            for (int i = 0, j = start; i < fftSize; i++, j += stride) {
+                float sample = ((buffer.get(j) & 0xff) - 128) * (1.0f / 128.0f);
+                timeDomainData[i] = sample;
+                realArray[i] = sample * w[i];
+            }
+        } else if (encoding == ENCODING_PCM_16BIT) {
+            for (int i = 0, j = start; i < fftSize; i++, j += stride) {
+                float sample = buffer.getShort(j) * (1.0f / 32768.0f);
+                timeDomainData[i] = sample;
+                realArray[i] = sample * w[i];
+            }
+        } else if (encoding == ENCODING_PCM_24BIT_PACKED) {
+
+            // offsets of the most and least significant bytes, depending on the byte order
+            int high = bigEndian ? 0 : 2;
+            int low = bigEndian ? 2 : 0;
+            for (int i = 0, j = start; i < fftSize; i++, j += stride) {
+                int value = (buffer.get(j + high) << 16) |
+                        ((buffer.get(j + 1) & 0xff) << 8) |
+                        (buffer.get(j + low) & 0xff);
+                float sample = value * (1.0f / 8388608.0f);
+                timeDomainData[i] = sample;
+                realArray[i] = sample * w[i];
+            }
+        } else if (encoding == ENCODING_PCM_32BIT) {
+            for (int i = 0, j = start; i < fftSize; i++, j += stride) {
+                double sample = buffer.getInt(j) * (1.0 / 2147483648.0);
+                timeDomainData[i] = (float) sample;
+                realArray[i] = sample * w[i];
+            }
+        } else {
+            for (int i = 0, j = start; i < fftSize; i++, j += stride) {
+                float sample = buffer.getFloat(j);
+                timeDomainData[i] = sample;
+                realArray[i] = sample * w[i];
+            }
+        }
+        Arrays.fill(c.imaginaryArray, 0.0);
+
+        this.floatTimeDomainData = timeDomainData;
+        transform(c, c.fftSize);
+    }
+
+    /**
+     * Get the size of one sample in bytes, for given encoding
+     *
+     * @param encoding - one of the ENCODING_PCM_* constants
+     * @return
+     */
+    public static int getBytesPerSample(int encoding) {
+        switch (encoding) {
+            case ENCODING_PCM_8BIT:
+                return 1;
+            case ENCODING_PCM_16BIT:
+                return 2;
+            case ENCODING_PCM_24BIT_PACKED:
+                return 3;
+            case ENCODING_PCM_32BIT:
+            case ENCODING_PCM_FLOAT:
+                return 4;
+            default:
+                throw new IllegalArgumentException("Unsupported encoding " + encoding);
+        }
+    }
+
+    /**
+     * Apply fft on the windowed real component, and get the smoothed
+     * magnitudes in dB and in bytes. If bin ranges are registered only
+     * the bins inside them are computed, and for few bins the fft is
+     * replaced by Goertzel algorithm for each bin.
+     *
+     * @param c
+     * @param length - number of new samples in the buffer, used if the hop size is not set
+     */
+    private void transform(Configuration c, int length) {
+
+        int fftSize = c.fftSize;
+        int bins = updateSpans(fftSize);
+        int hop = hopSize > 0 ? hopSize : length;
+        hopSize = 0;
+
+        // quiet input skips the fft, the spectrum decays once and then stays unchanged,
+        // the whole buffer is measured, but only the new samples count for the hold time
+        SilenceGate gate = silenceGate;
+        if (gate != null && !gate.process(floatTimeDomainData, fftSize, hop, c.sampleRate)) {
+            if (silent) {
+                idle = true;
+            } else {
+                for (int s = 0; s < spanCount; s++) {
+                    Arrays.fill(c.magnitudeData, spans[2 * s], spans[2 * s + 1], 0.0);
+                }
+                silent = smooth(c) == 0;
+                idle = false;
+            }
+            analysisTime = System.nanoTime();
+            return;
+        }
+        silent = false;
+        idle = false;
+
+        if (bins <= Integer.numberOfTrailingZeros(fftSize)) {
+            goertzel(c);
+        } else {
+
+            // apply fft
+            double[] realArray = c.realArray;
+            double[] imaginaryArray = c.imaginaryArray;
+            c.plan.transform(realArray, imaginaryArray);
+
+            // get frequency spectrum from fft real and imaginary parts
+            for (int s = 0; s < spanCount; s++) {
+                for (int i = spans[2 * s]; i < spans[2 * s + 1]; i++) {
+                    double re = realArray[i];
+                    double im = imaginaryArray[i];
+                    c.magnitudeData[i] = Math.sqrt(re * re + im * im) / fftSize;
+                }
+            }
         }
 
-        // apply fft
-        FastFourierTransform.transform(realArray, imaginaryArray);
+        smooth(c);
+        analysisTime = System.nanoTime();
+    }
 
-        // get frequency spectrum from fft real and imaginary parts
-        for (int i = 0; i < fftSize / 2; i++) {
-            double re = realArray[i];
-            double im = imaginaryArray[i];
-            doubleFrequencyData[i] = Math.sqrt(re * re + im * im) / fftSize;
+    /**
+     * Smooth the magnitudes with the previous frame, convert them to dB and to bytes
+     *
+     * @return the highest byte value
+     */
+    private int smooth(Configuration c) {
+
+        double[] smoothingData = c.smoothingData;
+        double[] magnitudeData = c.magnitudeData;
+        double[] doubleFrequencyData = c.doubleFrequencyData;
+        int[] byteFrequencyData = c.byteFrequencyData;
+        int maxByteValue = 0;
+        double factor = 255.0 / (decibels.max - decibels.min);
+        for (int s = 0; s < spanCount; s++) {
+            for (int i = spans[2 * s]; i < spans[2 * s + 1]; i++) {
+
+                // smooth data
+                smoothingData[i] =
+                        smoothingTimeConstant * smoothingData[i] +
+                                (1.0 - smoothingTimeConstant) * magnitudeData[i];
+
+                // convert to dB to get magnitude
+                doubleFrequencyData[i] = 20.0 * Math.log10(smoothingData[i]);
+
+                // clip frequency data between [0-255]
+                int byteValue = (int) (factor * (doubleFrequencyData[i] - decibels.min));
+                if (byteValue < 0) {
+                    byteValue = 0;
+                }
+                if (byteValue > 255) {
+                    byteValue = 255;
+                }
+                byteFrequencyData[i] = byteValue;
+                maxByteValue = Math.max(maxByteValue, byteValue);
+            }
         }
+        return maxByteValue;
+    }
 
-        // smooth data
-        for (int i = 0; i < fftSize / 2; i++) {
-            smoothingData[i] =
-                    smoothingTimeConstant * smoothingData[i] +
-                            (1.0 - smoothingTimeConstant) * doubleFrequencyData[i];
+    /**
+     * Compute the magnitudes only for the bins in the spans, using Goertzel
+     * algorithm on the windowed real component
+     * https://en.wikipedia.org/wiki/Goertzel_algorithm
+     */
+    private void goertzel(Configuration c) {
+        int fftSize = c.fftSize;
+        double[] realArray = c.realArray;
+        for (int s = 0; s < spanCount; s++) {
+            for (int k = spans[2 * s]; k < spans[2 * s + 1]; k++) {
+                double coefficient = 2.0 * Math.cos(2.0 * Math.PI * k / fftSize);
+                double s1 = 0.0;
+                double s2 = 0.0;
+                for (int i = 0; i < fftSize; i++) {
+                    double s0 = realArray[i] + coefficient * s1 - s2;
+                    s2 = s1;
+                    s1 = s0;
+                }
+                double power = s1 * s1 + s2 * s2 - coefficient * s1 * s2;
+                c.magnitudeData[k] = Math.sqrt(Math.max(0.0, power)) / fftSize;
+            }
         }
+    }
 
-        // convert to dB to get magnitude
-        for (int i = 0; i < fftSize / 2; i++) {
-            doubleFrequencyData[i] = 20.0 * Math.log10(smoothingData[i]);
+    /**
+     * Merge the registered bin ranges into sorted, non overlapping spans,
+     * if no ranges are registered the span covers all bins
+     *
+     * @param fftSize - fft size of the frame
+     * @return the total number of bins in the spans
+     */
+    private int updateSpans(int fftSize) {
+
+        int bins = fftSize / 2;
+        if (spans.length < 2 * (binRanges.size() + 1)) {
+            spans = new int[2 * (binRanges.size() + 1)];
         }
 
-        // clip frequency data between [0-255]
-        byteFrequencyData = new int[doubleFrequencyData.length];
-        for (int i = 0; i < doubleFrequencyData.length; i++) {
+        spanCount = 0;
+        if (binRanges.isEmpty()) {
+            spans[0] = 0;
+            spans[1] = bins;
+            spanCount = 1;
+            return bins;
+        }
 
-            int byteValue =
-                    (int) (255.0 / (decibels.max - decibels.min) *
-                            (doubleFrequencyData[i] - decibels.min));
-            if (byteFrequencyData[i] < 0) {
-                byteValue = 0;
+        // clamp each range and insert it sorted by its start
+        for (Range range : binRanges) {
+            int start = Math.max(0, range.min);
+            int end = (range.max >= bins) ? bins : range.max + 1;
+            if (start >= end || spanCount * 2 + 2 > spans.length) {
+                continue;
             }
-            if (byteFrequencyData[i] > 255) {
-                byteValue = 255;
+            int j = spanCount;
+            while (j > 0 && spans[2 * (j - 1)] > start) {
+                spans[2 * j] = spans[2 * (j - 1)];
+                spans[2 * j + 1] = spans[2 * (j - 1) + 1];
+                j--;
             }
-            byteFrequencyData[i] = byteValue;
+            spans[2 * j] = start;
+            spans[2 * j + 1] = end;
+            spanCount++;
         }
+
+        // merge overlapping and touching spans
+        int merged = 0;
+        int total = 0;
+        for (int i = 0; i < spanCount; i++) {
+            if (merged > 0 && spans[2 * i] <= spans[2 * merged - 1]) {
+                spans[2 * merged - 1] = Math.max(spans[2 * merged - 1], spans[2 * i + 1]);
+            } else {
+                spans[2 * merged] = spans[2 * i];
+                spans[2 * merged + 1] = spans[2 * i + 1];
+                merged++;
+            }
+        }
+        spanCount = merged;
+        for (int i = 0; i < spanCount; i++) {
+            total += spans[2 * i + 1] - spans[2 * i];
+        }
+        return total;
+    }
+
+    /**
+     * Register bin range that is needed by a consumer, for example the range of a
+     * drawer. Once ranges are registered only their bins are computed, and the bins
+     * outside them keep their last values. The range is read on every frame, so
+     * later changes to the same object are taken in account.
+     *
+     * @param range - closed range [min, max] of bin indices
+     */
+    public void addBinRange(Range range) {
+        binRanges.add(range);
+    }
+
+    public void removeBinRange(Range range) {
+        binRanges.remove(range);
+    }
+
+    /**
+     * Remove all registered ranges, so all bins are computed again
+     */
+    public void clearBinRanges() {
+        binRanges.clear();
     }
 
     /**
@@ -134,7 +504,7 @@ public class Analyser {
      * @return
      */
     public int[] getByteFrequencyData() {
-        return byteFrequencyData;
+        return configuration.byteFrequencyData;
     }
 
     /**
@@ -143,7 +513,25 @@ public class Analyser {
      * @return
      */
     public double[] getDoubleFrequencyData() {
-        return doubleFrequencyData;
+        return configuration.doubleFrequencyData;
+    }
+
+    /**
+     * Get linear magnitudes of the last frame, before smoothing and dB conversion
+     *
+     * @return
+     */
+    public double[] getMagnitudeData() {
+        return configuration.magnitudeData;
+    }
+
+    /**
+     * Get linear magnitudes after smoothing, before dB conversion
+     *
+     * @return
+     */
+    public double[] getSmoothedMagnitudeData() {
+        return configuration.smoothingData;
     }
 
     /**
@@ -152,8 +540,9 @@ public class Analyser {
      * @return
      */
     public int[] getByteTimeDomainData() {
-        int[] byteData = new int[doubleFrequencyData.length];
-        for (int i = 0; i < doubleFrequencyData.length; i++) {
+        int binCount = configuration.doubleFrequencyData.length;
+        int[] byteData = new int[binCount];
+        for (int i = 0; i < binCount; i++) {
             byteData[i] = (int) (128 * (1 + floatTimeDomainData[i]));
         }
         return byteData;
@@ -187,34 +576,203 @@ public class Analyser {
         return (double) tmp / factor;
     }
 
-    public int getFftSize() {
-        return fftSize;
+    /**
+     * Set the capture time and the stream position of the next audio buffer, they are
+     * kept with the frame so the latency from the capture can be measured
+     *
+     * @param captureTime    - System.nanoTime() when the latest sample of the buffer was captured
+     * @param samplePosition - stream position of the first sample of the buffer
+     */
+    public void setCaptureTime(long captureTime, long samplePosition) {
+        this.captureTime = captureTime;
+        this.samplePosition = samplePosition;
     }
 
-    public void setFftSize(int fftSize) {
-        this.fftSize = fftSize;
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    /**
+     * Set the number of samples in the next buffer that were not in the previous one, when
+     * the buffers overlap or skip samples. It is used only for the next buffer, and by default
+     * each buffer is new input.
+     *
+     * @param hopSize - number of new samples
+     */
+    public void setHopSize(int hopSize) {
+        if (hopSize <= 0) {
+            throw new IllegalArgumentException("Hop size must be positive");
+        }
+        this.hopSize = hopSize;
+    }
+
+    public long getSamplePosition() {
+        return samplePosition;
+    }
+
+    /**
+     * Get the time (System.nanoTime()) when the last frame was analysed
+     *
+     * @return
+     */
+    public long getAnalysisTime() {
+        return analysisTime;
+    }
 
-        // init arrays
-        frequency = new Frequency(fftSize, sampleRate);
-        window = new Blackman(fftSize);
-        doubleFrequencyData = new double[fftSize / 2];
-        byteFrequencyData = new int[fftSize / 2];
+    public SilenceGate getSilenceGate() {
+        return silenceGate;
+    }
 
-        // default smoothing data is array with 0.0
-        smoothingData = new double[fftSize / 2];
-        Arrays.fill(smoothingData, 0.0);
+    /**
+     * Set gate that skips the fft while the input is quiet. When the gate closes the
+     * spectrum decays with the smoothing time constant until it reaches the bottom of
+     * the decibels range, after that the frames do not change the output.
+     *
+     * @param silenceGate - gate or null to analyse all buffers
+     */
+    public void setSilenceGate(SilenceGate silenceGate) {
+        this.silenceGate = silenceGate;
+        this.silent = false;
+        this.idle = false;
+    }
 
-        realArray = new double[fftSize];
-        imaginaryArray = new double[fftSize];
+    /**
+     * Check if the gate is closed and the spectrum is fully decayed
+     *
+     * @return
+     */
+    public boolean isSilent() {
+        return silent;
+    }
+
+    /**
+     * Check if the last frame left the output unchanged, so there is nothing to redraw
+     *
+     * @return
+     */
+    public boolean isIdle() {
+        return idle;
+    }
+
+    /**
+     * Get the fft size of the last analysed frame, a size set by setFftSize() is returned
+     * only after it was applied on the next frame, see getPendingFftSize()
+     *
+     * @return
+     */
+    public int getFftSize() {
+        return configuration.fftSize;
+    }
+
+    /**
+     * Get the fft size that will be used for the next frame, that is the size of the
+     * configuration that waits to be applied, or the current size if there is none
+     *
+     * @return
+     */
+    public int getPendingFftSize() {
+        Configuration pending = pendingConfiguration.get();
+        return pending != null ? pending.fftSize : configuration.fftSize;
+    }
+
+    /**
+     * Change the fft size, the change is deferred and applied on the next frame, until
+     * then getFftSize() and the data arrays keep the current size. The new arrays are
+     * allocated on the calling thread, so use setConfiguration() with prepared
+     * configuration to keep the allocation off the audio thread.
+     *
+     * @param fftSize
+     */
+    public void setFftSize(int fftSize) {
+
+        // keep the sample rate from configuration that is not applied yet
+        Configuration pending = pendingConfiguration.get();
+        setConfiguration(new Configuration(fftSize, (pending != null ? pending : configuration).sampleRate));
     }
 
     public int getSampleRate() {
-        return sampleRate;
+        return configuration.sampleRate;
     }
 
+    /**
+     * Change the sample rate, the change is deferred and applied on the next frame
+     *
+     * @param sampleRate
+     */
     public void setSampleRate(int sampleRate) {
-        this.sampleRate = sampleRate;
-        frequency = new Frequency(fftSize, sampleRate);
+
+        // keep the fft size from configuration that is not applied yet
+        Configuration pending = pendingConfiguration.get();
+        setConfiguration(new Configuration((pending != null ? pending : configuration).fftSize, sampleRate));
+    }
+
+    /**
+     * Get the configuration of the last analysed frame, with the fft size, the sample rate
+     * and the data arrays that belong together. The configuration is published as one
+     * object, so a reader on another thread never mixes the size of one configuration
+     * with the arrays of another.
+     *
+     * @return
+     */
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Set prepared configuration, that is swapped in atomically on the frame
+     * boundary, before the next audio buffer is analysed. It is safe to call
+     * from any thread while the audio thread is in the middle of a frame, if
+     * it is called multiple times before the next frame the last one wins.
+     *
+     * @param configuration - configuration, that is not used by another analyser
+     */
+    public void setConfiguration(Configuration configuration) {
+        pendingConfiguration.set(configuration);
+    }
+
+    /**
+     * Swap the pending configuration if there is one, the smoothing data is
+     * resampled onto the new bins, so changing the resolution live does not
+     * reset the smoothing
+     *
+     * @return the configuration for the frame
+     */
+    private Configuration applyConfiguration() {
+
+        Configuration current = configuration;
+        Configuration next = pendingConfiguration.getAndSet(null);
+        if (next == null) {
+            return current;
+        }
+
+        if (current != null) {
+            resample(current.smoothingData, (double) current.sampleRate / current.fftSize,
+                    next.smoothingData, (double) next.sampleRate / next.fftSize);
+        }
+        configuration = next;
+        return next;
+    }
+
+    /**
+     * Linear interpolation of bin values from one uniform bin grid to another
+     *
+     * @param source     - values on the old bins
+     * @param sourceStep - old bin width (Hz)
+     * @param target     - values on the new bins
+     * @param targetStep - new bin width (Hz)
+     */
+    private static void resample(double[] source, double sourceStep, double[] target, double targetStep) {
+        int last = source.length - 1;
+        for (int i = 0; i < target.length; i++) {
+            double position = i * targetStep / sourceStep;
+            int index = (int) position;
+            if (index >= last) {
+                target[i] = (position > last + 1) ? 0.0 : source[last];
+            } else {
+                double fraction = position - index;
+                target[i] = source[index] + (source[index + 1] - source[index]) * fraction;
+            }
+        }
     }
 
     public double getSmoothingTimeConstant() {
@@ -226,7 +784,7 @@ public class Analyser {
     }
 
     public int getFrequencyBinCount() {
-        return fftSize / 2;
+        return configuration.fftSize / 2;
     }
 
     public Range getDecibels() {
@@ -238,6 +796,94 @@ public class Analyser {
     }
 
     public Frequency getFrequency() {
-        return frequency;
+        return configuration.frequency;
+    }
+
+    /**
+     * Prepared analyser configuration, with the fft size, sample rate and all arrays that
+     * depend on them. Creating it does all the allocations, so it can be made on any thread
+     * off the hot path and then passed to Analyser.setConfiguration(). The frequency table,
+     * window and fft plan are shared instances from AnalyserCache, only the working
+     * buffers and a copy of the window coefficients belong to the configuration. The
+     * references are final, so once published the size and the arrays always match.
+     */
+    public static class Configuration {
+
+        private final int fftSize;
+        private final int sampleRate;
+        private final Frequency frequency;
+        private final Window window;
+        private final double[] windowData;
+        private final FourierPlan plan;
+        private final double[] smoothingData;
+        private final double[] realArray;
+        private final double[] imaginaryArray;
+        private final int[] byteFrequencyData;
+        private final float[] timeDomainData;
+        private final double[] doubleFrequencyData;
+        private final double[] magnitudeData;
+
+        public Configuration(int fftSize, int sampleRate) {
+            this(fftSize, sampleRate, Window.TYPE_BLACKMAN);
+        }
+
+        public Configuration(int fftSize, int sampleRate, int windowType) {
+            this.fftSize = fftSize;
+            this.sampleRate = sampleRate;
+
+            // shared tables
+            AnalyserCache.Entry entry = AnalyserCache.get(fftSize, sampleRate, windowType);
+            frequency = entry.getFrequency();
+            window = entry.getWindow();
+            plan = entry.getPlan();
+
+            // own copy of the coefficients, read directly by the loops that apply the window
+            windowData = window.getData();
+
+            // init arrays
+            doubleFrequencyData = new double[fftSize / 2];
+            magnitudeData = new double[fftSize / 2];
+            byteFrequencyData = new int[fftSize / 2];
+            smoothingData = new double[fftSize / 2];
+            realArray = new double[fftSize];
+            imaginaryArray = new double[fftSize];
+            timeDomainData = new float[fftSize];
+        }
+
+        public int getFftSize() {
+            return fftSize;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public int getFrequencyBinCount() {
+            return fftSize / 2;
+        }
+
+        public Frequency getFrequency() {
+            return frequency;
+        }
+
+        public Window getWindow() {
+            return window;
+        }
+
+        public int[] getByteFrequencyData() {
+            return byteFrequencyData;
+        }
+
+        public double[] getDoubleFrequencyData() {
+            return doubleFrequencyData;
+        }
+
+        public double[] getMagnitudeData() {
+            return magnitudeData;
+        }
+
+        public double[] getSmoothedMagnitudeData() {
+            return smoothingData;
+        }
     }
 }
@@ -0,0 +1,212 @@
+package com.slaviboy.analyser;
+
+import com.slaviboy.analyser.window.Window;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache with the configuration objects that depend only on the fft size,
+ * sample rate and window type - Frequency table, window coefficients and FourierPlan.
+ * Identical configurations in multiple analysers and views share the same instances,
+ * so Frequency and Window return copies of their tables and cannot be modified through
+ * one analyser. The cache keeps
+ * strong references to a small bounded number of the least recently used configurations,
+ * instead of soft references that Android clears too eagerly, and prewarm() can be called
+ * on startup to build the expected configurations ahead of time.
+ */
+public final class AnalyserCache {
+
+    // public default static values
+    public static final int MAX_ENTRIES = 16;
+    public static final int MAX_PLANS = 8;
+
+    private static final LruMap<Key, Entry> entries = new LruMap<>(MAX_ENTRIES);
+    private static final LruMap<Integer, FourierPlan> plans = new LruMap<>(MAX_PLANS);
+
+    private AnalyserCache() {
+    }
+
+    /**
+     * Get shared entry for given configuration, creating it if it is not cached
+     *
+     * @param fftSize
+     * @param sampleRate
+     * @param windowType - Window.TYPE_BLACKMAN or Window.TYPE_HANNING
+     * @return
+     */
+    public static Entry get(int fftSize, int sampleRate, int windowType) {
+        Key key = new Key(fftSize, sampleRate, windowType);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+
+            // created outside the lock, if two threads create the same entry both are valid and the last one is kept
+            entry = new Entry(fftSize, sampleRate, windowType);
+            synchronized (entries) {
+                entries.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Get shared fft plan for given size, the plan does not depend on the sample rate
+     * and window type, so it is shared between all entries with the same fft size
+     *
+     * @param fftSize
+     * @return
+     */
+    public static FourierPlan getPlan(int fftSize) {
+        FourierPlan plan;
+        synchronized (plans) {
+            plan = plans.get(fftSize);
+        }
+        if (plan == null) {
+            plan = new FourierPlan(fftSize);
+            synchronized (plans) {
+                plans.put(fftSize, plan);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Build the configurations ahead of time, for example on application startup,
+     * so the first analysers do not pay for creating the tables
+     *
+     * @param fftSizes
+     * @param sampleRate
+     * @param windowType
+     */
+    public static void prewarm(int[] fftSizes, int sampleRate, int windowType) {
+        for (int fftSize : fftSizes) {
+            get(fftSize, sampleRate, windowType);
+        }
+    }
+
+    /**
+     * Remove all cached entries, instances that are in use stay valid
+     */
+    public static void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        synchronized (plans) {
+            plans.clear();
+        }
+    }
+
+    /**
+     * Get the number of cached entries
+     *
+     * @return
+     */
+    public static int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Map in access order, that removes the least recently used mapping when it
+     * grows over its capacity, the callers synchronize on the map
+     *
+     * @param <K>
+     * @param <V>
+     */
+    private static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private LruMap(int capacity) {
+            super(capacity * 2, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    /**
+     * Shared configuration objects for one fft size, sample rate and window type
+     */
+    public static final class Entry {
+
+        private final int fftSize;
+        private final int sampleRate;
+        private final int windowType;
+        private final Frequency frequency;
+        private final Window window;
+        private final FourierPlan plan;
+
+        private Entry(int fftSize, int sampleRate, int windowType) {
+            this.fftSize = fftSize;
+            this.sampleRate = sampleRate;
+            this.windowType = windowType;
+            this.frequency = new Frequency(fftSize, sampleRate);
+            this.window = Window.create(windowType, fftSize);
+            this.plan = AnalyserCache.getPlan(fftSize);
+        }
+
+        public int getFftSize() {
+            return fftSize;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public int getWindowType() {
+            return windowType;
+        }
+
+        public Frequency getFrequency() {
+            return frequency;
+        }
+
+        public Window getWindow() {
+            return window;
+        }
+
+        public FourierPlan getPlan() {
+            return plan;
+        }
+    }
+
+    /**
+     * Cache key, made from the values the tables depend on
+     */
+    private static final class Key {
+
+        private final int fftSize;
+        private final int sampleRate;
+        private final int windowType;
+
+        private Key(int fftSize, int sampleRate, int windowType) {
+            this.fftSize = fftSize;
+            this.sampleRate = sampleRate;
+            this.windowType = windowType;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) object;
+            return fftSize == key.fftSize && sampleRate == key.sampleRate && windowType == key.windowType;
+        }
+
+        @Override
+        public int hashCode() {
+            return (fftSize * 31 + sampleRate) * 31 + windowType;
+        }
+    }
+}
@@ -30,13 +30,24 @@ import android.view.View;
  *
  * Class that is part of analyser library, and extends the View class and can visualize the
  * frequency data to its canvas. Listener is used to calls a method when the canvas is about
- * to be redrawn, where a specific frequency drawing is made.
+ * to be redrawn, where a specific frequency drawing is made. The OnDrawFrameListener gets a
+ * copy of the latest frame, so the drawing never reads the arrays the analyser is writing.
  */
 public class AnalyserView extends View {
 
     private Paint paint;                              // global paint object for the class
     private Analyser analyser;                        // analyser that is passed as argument to onDrawGraph() method
     private OnDrawGraphListener onDrawGraphListener;  // listener that is attached and listen for OnDraw() method
+    private OnDrawFrameListener onDrawFrameListener;  // listener that gets copy of the latest frame on OnDraw()
+    private FrameGovernor frameGovernor;              // optional governor that keeps analysis and drawing in frame budget
+    private LatencyHistogram drawLatency;             // latency from the end of the analysis to the drawing
+    private LatencyHistogram displayLatency;          // latency from the capture to the drawing
+
+    private final Object frameLock = new Object();    // guards the pending frame
+    private SpectrumFrame pendingFrame;               // latest frame, waiting to be drawn
+    private SpectrumFrame drawFrame;                  // frame used by the drawing, only on the ui thread
+    private boolean hasPendingFrame;                  // if the pending frame was not taken by the drawing yet
+    private long frameCount;                          // number of frames analysed by the view analyser
 
     public AnalyserView(Context context) {
         super(context);
@@ -61,6 +72,11 @@ public class AnalyserView extends View {
     private void init(Context context) {
 
         analyser = new Analyser();
+        drawLatency = new LatencyHistogram();
+        displayLatency = new LatencyHistogram();
+        pendingFrame = new SpectrumFrame();
+        drawFrame = new SpectrumFrame();
+        drawFrame.set(analyser, 0); // empty spectrum until the first frame
 
         // init paint
         paint = new Paint();
@@ -72,8 +88,68 @@ public class AnalyserView extends View {
     }
 
     public void setAudioBuffer(float[] audioBuffer) {
-        analyser.setAudioBuffer(audioBuffer);
-        postInvalidate(); // for forcing view redrawing from non-ui thread
+        FrameGovernor governor = frameGovernor;
+        if (governor == null) {
+            analyser.setAudioBuffer(audioBuffer);
+        } else {
+            if (!governor.shouldAnalyse()) {
+                return;
+            }
+            governor.apply(analyser, audioBuffer.length);
+            long start = System.nanoTime();
+            analyser.setAudioBuffer(audioBuffer);
+            governor.onAnalysed(System.nanoTime() - start);
+        }
+
+        // nothing changed while the input is silent
+        if (!analyser.isIdle()) {
+            synchronized (frameLock) {
+                pendingFrame.set(analyser, frameCount++);
+                hasPendingFrame = true;
+            }
+            postInvalidate(); // for forcing view redrawing from non-ui thread
+        }
+    }
+
+    /**
+     * Set 16-bit PCM buffer directly, without converting it to float array first
+     *
+     * @param audioBuffer
+     */
+    public void setAudioBuffer(short[] audioBuffer) {
+        FrameGovernor governor = frameGovernor;
+        if (governor == null) {
+            analyser.setAudioBuffer(audioBuffer);
+        } else {
+            if (!governor.shouldAnalyse()) {
+                return;
+            }
+            governor.apply(analyser, audioBuffer.length);
+            long start = System.nanoTime();
+            analyser.setAudioBuffer(audioBuffer);
+            governor.onAnalysed(System.nanoTime() - start);
+        }
+        if (!analyser.isIdle()) {
+            synchronized (frameLock) {
+                pendingFrame.set(analyser, frameCount++);
+                hasPendingFrame = true;
+            }
+            postInvalidate();
+        }
+    }
+
+    /**
+     * Set frame analysed outside of the view, for example by AnalysisPipeline, the frame
+     * is copied so it can be reused by the caller, and the view is redrawn
+     *
+     * @param frame
+     */
+    public void setFrame(SpectrumFrame frame) {
+        synchronized (frameLock) {
+            pendingFrame.set(frame);
+            hasPendingFrame = true;
+        }
+        postInvalidate();
     }
 
     public Analyser getAnalyser() {
@@ -82,16 +158,114 @@ public class AnalyserView extends View {
 
     @Override
     protected void onDraw(Canvas canvas) {
-        if (onDrawGraphListener != null) {
-            onDrawGraphListener.onDrawGraph(canvas, paint, analyser);
+        if (onDrawGraphListener != null || onDrawFrameListener != null) {
+            long start = System.nanoTime();
+
+            // take the latest frame, the copy is short so the analysis thread is not held
+            boolean newFrame;
+            synchronized (frameLock) {
+                newFrame = hasPendingFrame;
+                if (newFrame) {
+                    drawFrame.set(pendingFrame);
+                    hasPendingFrame = false;
+                }
+            }
+
+            // age of the drawn spectrum, the capture time is known only if it was set to the analyser
+            if (newFrame) {
+                long analysisTime = drawFrame.getAnalysisTime();
+                if (analysisTime != 0) {
+                    drawLatency.record(start - analysisTime);
+                }
+                long captureTime = drawFrame.getCaptureTime();
+                if (captureTime != 0) {
+                    displayLatency.record(start - captureTime);
+                }
+            }
+
+            if (onDrawFrameListener != null) {
+                onDrawFrameListener.onDrawFrame(canvas, paint, drawFrame);
+            }
+            if (onDrawGraphListener != null) {
+                onDrawGraphListener.onDrawGraph(canvas, paint, analyser);
+            }
+
+            FrameGovernor governor = frameGovernor;
+            if (governor != null) {
+                governor.onDrawn(System.nanoTime() - start);
+            }
         }
     }
 
+    /**
+     * Get the histogram of the latency from the end of the analysis until the frame is drawn
+     *
+     * @return
+     */
+    public LatencyHistogram getDrawLatency() {
+        return drawLatency;
+    }
+
+    /**
+     * Get the histogram of the latency from the capture of the latest analysed sample until
+     * the frame is drawn, recorded only when the capture time is set to the analyser
+     *
+     * @return
+     */
+    public LatencyHistogram getDisplayLatency() {
+        return displayLatency;
+    }
+
+    public FrameGovernor getFrameGovernor() {
+        return frameGovernor;
+    }
+
+    /**
+     * Set governor that measures the time spent in the analyser and the drawers, and
+     * changes the fft size and the frame rate to keep them in the frame budget
+     *
+     * @param frameGovernor - governor or null to disable it
+     */
+    public void setFrameGovernor(FrameGovernor frameGovernor) {
+        this.frameGovernor = frameGovernor;
+    }
+
+    /**
+     * @deprecated the listener reads the live analyser, that can be changed by another thread
+     * while drawing, use setOnDrawFrameListener()
+     */
+    @Deprecated
     public void setOnDrawGraphListener(OnDrawGraphListener onDrawGraphListener) {
         this.onDrawGraphListener = onDrawGraphListener;
     }
 
+    /**
+     * Set listener that draws the copy of the latest frame, set by setFrame() or analysed
+     * by the view analyser
+     *
+     * @param onDrawFrameListener
+     */
+    public void setOnDrawFrameListener(OnDrawFrameListener onDrawFrameListener) {
+        this.onDrawFrameListener = onDrawFrameListener;
+    }
+
+    /**
+     * @deprecated use OnDrawFrameListener
+     */
+    @Deprecated
     public interface OnDrawGraphListener {
         void onDrawGraph(Canvas canvas, Paint paint, Analyser analyser);
     }
+
+    public interface OnDrawFrameListener {
+
+        /**
+         * Called on the ui thread, the frame is reused for the next drawing
+         *
+         * @param canvas
+         * @param paint
+         * @param frame  - copy of the latest frame
+         */
+        void onDrawFrame(Canvas canvas, Paint paint, SpectrumFrame frame);
+    }
 }
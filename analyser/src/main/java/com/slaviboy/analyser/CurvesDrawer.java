@@ -105,11 +105,19 @@ public class CurvesDrawer extends Drawer {
 
 
     public void drawRadial(Canvas canvas, Paint paint, Analyser analyser) {
-        drawRadial(canvas, paint, analyser, TYPE_RADIAL);
+        drawRadial(canvas, paint, analyser.getByteFrequencyData(), TYPE_RADIAL);
     }
 
     public void drawRadialCentered(Canvas canvas, Paint paint, Analyser analyser) {
-        drawRadial(canvas, paint, analyser, TYPE_RADIAL_CENTERED);
+        drawRadial(canvas, paint, analyser.getByteFrequencyData(), TYPE_RADIAL_CENTERED);
+    }
+
+    public void drawRadial(Canvas canvas, Paint paint, SpectrumFrame frame) {
+        drawRadial(canvas, paint, frame.getByteFrequencyData(), TYPE_RADIAL);
+    }
+
+    public void drawRadialCentered(Canvas canvas, Paint paint, SpectrumFrame frame) {
+        drawRadial(canvas, paint, frame.getByteFrequencyData(), TYPE_RADIAL_CENTERED);
     }
 
     /**
@@ -118,12 +126,11 @@ public class CurvesDrawer extends Drawer {
      *
      * @param canvas   - canvas object for the view
      * @param paint    - paint object for the view
-     * @param analyser - analyser object that hold the frequencies arrays
+     * @param data     - frequency data in bytes, from the analyser or a frame
      * @param type     - TYPE_RADIAL or TYPE_RADIAL_CENTERED
      */
-    private void drawRadial(Canvas canvas, Paint paint, Analyser analyser, int type) {
+    private void drawRadial(Canvas canvas, Paint paint, int[] data, int type) {
 
-        int[] data = analyser.getByteFrequencyData();
         range.check(0, data.length - 1); // fix range if out of array range
 
         // get half sides
@@ -229,11 +236,19 @@ public class CurvesDrawer extends Drawer {
 
 
     public void drawLinear(Canvas canvas, Paint paint, Analyser analyser) {
-        drawLinear(canvas, paint, analyser, TYPE_LINEAR);
+        drawLinear(canvas, paint, analyser.getByteFrequencyData(), TYPE_LINEAR);
     }
 
     public void drawLinearCentered(Canvas canvas, Paint paint, Analyser analyser) {
-        drawLinear(canvas, paint, analyser, TYPE_LINEAR_CENTERED);
+        drawLinear(canvas, paint, analyser.getByteFrequencyData(), TYPE_LINEAR_CENTERED);
+    }
+
+    public void drawLinear(Canvas canvas, Paint paint, SpectrumFrame frame) {
+        drawLinear(canvas, paint, frame.getByteFrequencyData(), TYPE_LINEAR);
+    }
+
+    public void drawLinearCentered(Canvas canvas, Paint paint, SpectrumFrame frame) {
+        drawLinear(canvas, paint, frame.getByteFrequencyData(), TYPE_LINEAR_CENTERED);
     }
 
     /**
@@ -242,12 +257,11 @@ public class CurvesDrawer extends Drawer {
      *
      * @param canvas   - canvas object for the view
      * @param paint    - paint object for the view
-     * @param analyser - analyser object that hold the frequencies arrays
+     * @param data     - frequency data in bytes, from the analyser or a frame
      * @param type     - TYPE_LINEAR or TYPE_LINEAR_CENTERED
      */
-    private void drawLinear(Canvas canvas, Paint paint, Analyser analyser, int type) {
+    private void drawLinear(Canvas canvas, Paint paint, int[] data, int type) {
 
-        int[] data = analyser.getByteFrequencyData();
         range.check(0, data.length - 1); // fix range if out of array range
 
         int totalBars = range.max - range.min + 1;
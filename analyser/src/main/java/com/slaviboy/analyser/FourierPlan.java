@@ -0,0 +1,96 @@
+package com.slaviboy.analyser;
+
+/**
+ * Precomputed plan for the radix-2 FFT from FastFourierTransform. The trigonometric
+ * tables and the bit-reversed permutation depend only on the fft size, so they are
+ * computed once and the plan can be shared between analysers and threads, since it
+ * is never modified after it is created. Sizes that are not power of 2 fall back to
+ * FastFourierTransform.transform().
+ */
+public final class FourierPlan {
+
+    private final int size;            // fft size
+    private final boolean radix2;      // if size is power of 2 and the tables are used
+    private final double[] cosTable;   // cos(2 * PI * i / n) for i in [0, n / 2)
+    private final double[] sinTable;   // sin(2 * PI * i / n) for i in [0, n / 2)
+    private final int[] reversed;      // bit-reversed index for each index
+
+    public FourierPlan(int size) {
+        this.size = size;
+        this.radix2 = size > 0 && (size & (size - 1)) == 0;
+
+        if (!radix2) {
+            cosTable = null;
+            sinTable = null;
+            reversed = null;
+            return;
+        }
+
+        // trigonometric tables
+        cosTable = new double[size / 2];
+        sinTable = new double[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            cosTable[i] = Math.cos(2 * Math.PI * i / size);
+            sinTable[i] = Math.sin(2 * Math.PI * i / size);
+        }
+
+        // bit-reversed addressing permutation
+        int levels = 31 - Integer.numberOfLeadingZeros(size);
+        reversed = new int[size];
+        for (int i = 0; i < size; i++) {
+            reversed[i] = (levels == 0) ? 0 : Integer.reverse(i) >>> (32 - levels);
+        }
+    }
+
+    /**
+     * Computes the discrete Fourier transform (DFT) of the given complex vector, storing
+     * the result back into the vector. The vector length must match the plan size.
+     *
+     * @param real
+     * @param imag
+     */
+    public void transform(double[] real, double[] imag) {
+        int n = size;
+        if (n != real.length || n != imag.length)
+            throw new IllegalArgumentException("Mismatched lengths");
+        if (!radix2) {
+            FastFourierTransform.transform(real, imag);
+            return;
+        }
+
+        for (int i = 0; i < n; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                double temp = real[i];
+                real[i] = real[j];
+                real[j] = temp;
+                temp = imag[i];
+                imag[i] = imag[j];
+                imag[j] = temp;
+            }
+        }
+
+        // Cooley-Tukey decimation-in-time radix-2 FFT
+        for (int length = 2; length <= n; length *= 2) {
+            int halfsize = length / 2;
+            int tablestep = n / length;
+            for (int i = 0; i < n; i += length) {
+                for (int j = i, k = 0; j < i + halfsize; j++, k += tablestep) {
+                    int l = j + halfsize;
+                    double tpre = real[l] * cosTable[k] + imag[l] * sinTable[k];
+                    double tpim = -real[l] * sinTable[k] + imag[l] * cosTable[k];
+                    real[l] = real[j] - tpre;
+                    imag[l] = imag[j] - tpim;
+                    real[j] += tpre;
+                    imag[j] += tpim;
+                }
+            }
+            if (length == n)  // Prevent overflow in 'length *= 2'
+                break;
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,244 @@
+package com.slaviboy.analyser;
+
+/**
+ * Governor that keeps the analysis and the drawing inside a frame budget. The time spent in
+ * Analyser.setAudioBuffer() and in the drawers is measured by the AnalyserView, and averaged
+ * with exponential moving average, that starts from the first measured time. When the frame is over the budget for a few frames in a
+ * row, the fft size is halved (which also halves the rendered bars) and when the minimum fft
+ * size is reached, incoming buffers are skipped. When the frame is well under the budget the
+ * steps are reverted in the opposite order. The two thresholds and the required number of
+ * consecutive frames give hysteresis, so the governor does not oscillate between two levels.
+ */
+public class FrameGovernor {
+
+    // public default static values
+    public static final double FRAME_BUDGET = 16.0;
+    public static final int MIN_FFT_SIZE = 256;
+    public static final int MAX_FRAME_SKIP = 4;
+    public static final double HIGH_THRESHOLD = 1.0;
+    public static final double LOW_THRESHOLD = 0.5;
+    public static final int HYSTERESIS_FRAMES = 10;
+    public static final double AVERAGE_FACTOR = 0.1;
+
+    private double frameBudget;             // target time for analysis + drawing (ms)
+    private int minFftSize;                 // lowest fft size the governor can step down to
+    private int maxFftSize;                 // highest fft size the governor can step up to
+    private int maxFrameSkip;               // highest number of buffers analysed as one
+    private double highThreshold;           // budget fraction above which the quality is lowered
+    private double lowThreshold;            // budget fraction below which the quality is raised
+    private int hysteresisFrames;           // consecutive frames needed before a decision
+
+    private volatile double analysisTime;   // average time in the analyser (ms)
+    private volatile double drawTime;       // average time in the drawers (ms)
+    private long analysedFrames;            // number of measured analysis times
+    private long drawnFrames;               // number of measured draw times
+    private int overBudgetFrames;           // consecutive frames over the high threshold
+    private int underBudgetFrames;          // consecutive frames under the low threshold
+
+    private volatile int fftSize;           // fft size decided by the governor, 0 until the first frame
+    private volatile int limitFftSize;      // highest fft size that fits in the analysed buffers
+    private volatile int frameSkip;         // analyse one buffer from every frameSkip buffers
+    private int skippedBuffers;             // buffers skipped since the last analysed one
+    private volatile long decisionCount;    // number of decisions made, for metrics
+
+    private OnDecisionListener onDecisionListener;
+
+    public FrameGovernor(int maxFftSize) {
+        this(FRAME_BUDGET, MIN_FFT_SIZE, maxFftSize, MAX_FRAME_SKIP,
+                HIGH_THRESHOLD, LOW_THRESHOLD, HYSTERESIS_FRAMES);
+    }
+
+    public FrameGovernor(double frameBudget, int minFftSize, int maxFftSize, int maxFrameSkip,
+                         double highThreshold, double lowThreshold, int hysteresisFrames) {
+        this.frameBudget = frameBudget;
+        this.minFftSize = Math.min(minFftSize, maxFftSize);
+        this.maxFftSize = maxFftSize;
+        this.maxFrameSkip = Math.max(1, maxFrameSkip);
+        this.highThreshold = highThreshold;
+        this.lowThreshold = lowThreshold;
+        this.hysteresisFrames = hysteresisFrames;
+
+        limitFftSize = maxFftSize;
+        frameSkip = 1;
+    }
+
+    /**
+     * Check if the incoming buffer should be analysed, or skipped to lower the frame rate
+     *
+     * @return
+     */
+    public boolean shouldAnalyse() {
+        if (++skippedBuffers < frameSkip) {
+            return false;
+        }
+        skippedBuffers = 0;
+        return true;
+    }
+
+    /**
+     * Set the decided fft size to the analyser, called before the buffer is analysed on the
+     * thread that owns the analyser, so the new size is swapped in on that frame boundary.
+     * The governor starts from the current size of the analyser, and never decides a size
+     * larger than the buffers that are analysed.
+     *
+     * @param analyser     - analyser that will process the buffer
+     * @param bufferLength - number of samples in the buffer
+     */
+    public void apply(Analyser analyser, int bufferLength) {
+        int limit = Math.min(maxFftSize, Integer.highestOneBit(Math.max(1, bufferLength)));
+        limitFftSize = limit;
+
+        int size = fftSize;
+        if (size == 0) {
+            size = analyser.getPendingFftSize();
+        }
+        if (size > limit) {
+            size = limit;
+        }
+        fftSize = size;
+
+        if (analyser.getPendingFftSize() != size) {
+            analyser.setFftSize(size);
+        }
+    }
+
+    /**
+     * Called after the analyser processed a buffer, on the same thread. The decided
+     * fft size is set to the analyser by apply(), before the next buffer
+     *
+     * @param nanos - time spent in the analyser
+     */
+    public void onAnalysed(long nanos) {
+        analysisTime = average(analysisTime, nanos, analysedFrames++);
+
+        double frameTime = analysisTime + drawTime;
+        if (frameTime > frameBudget * highThreshold) {
+            underBudgetFrames = 0;
+            if (++overBudgetFrames >= hysteresisFrames) {
+                overBudgetFrames = 0;
+                stepDown();
+            }
+        } else if (frameTime < frameBudget * lowThreshold) {
+            overBudgetFrames = 0;
+            if (++underBudgetFrames >= hysteresisFrames) {
+                underBudgetFrames = 0;
+                stepUp();
+            }
+        } else {
+            overBudgetFrames = 0;
+            underBudgetFrames = 0;
+        }
+    }
+
+    /**
+     * Called after the drawers finished drawing the frame
+     *
+     * @param nanos - time spent in the drawers
+     */
+    public void onDrawn(long nanos) {
+        drawTime = average(drawTime, nanos, drawnFrames++);
+    }
+
+    /**
+     * Update the moving average with new time, the first time is taken as it is, otherwise
+     * the average would start from 0 and stay under the budget for the first frames
+     *
+     * @param average - the current average (ms)
+     * @param nanos   - the new time
+     * @param count   - number of times already in the average
+     * @return
+     */
+    private static double average(double average, long nanos, long count) {
+        double time = nanos / 1e6;
+        if (count == 0) {
+            return time;
+        }
+        return average + AVERAGE_FACTOR * (time - average);
+    }
+
+    /**
+     * Lower the quality, first the fft size and then the frame rate
+     */
+    private void stepDown() {
+        if (fftSize != 0 && fftSize / 2 >= minFftSize) {
+            fftSize /= 2;
+        } else if (frameSkip < maxFrameSkip) {
+            frameSkip++;
+        } else {
+            return;
+        }
+        publish();
+    }
+
+    /**
+     * Raise the quality, first the frame rate and then the fft size
+     */
+    private void stepUp() {
+        if (frameSkip > 1) {
+            frameSkip--;
+        } else if (fftSize != 0 && fftSize * 2 <= limitFftSize) {
+            fftSize *= 2;
+        } else {
+            return;
+        }
+        publish();
+    }
+
+    private void publish() {
+        decisionCount++;
+        if (onDecisionListener != null) {
+            onDecisionListener.onDecision(fftSize, frameSkip, analysisTime, drawTime);
+        }
+    }
+
+    /**
+     * Get the average time spent in the analyser (ms)
+     *
+     * @return
+     */
+    public double getAnalysisTime() {
+        return analysisTime;
+    }
+
+    /**
+     * Get the average time spent in the drawers (ms)
+     *
+     * @return
+     */
+    public double getDrawTime() {
+        return drawTime;
+    }
+
+    /**
+     * Get the decided fft size, or 0 before the first buffer
+     *
+     * @return
+     */
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public int getFrameSkip() {
+        return frameSkip;
+    }
+
+    public long getDecisionCount() {
+        return decisionCount;
+    }
+
+    public double getFrameBudget() {
+        return frameBudget;
+    }
+
+    public void setFrameBudget(double frameBudget) {
+        this.frameBudget = frameBudget;
+    }
+
+    public void setOnDecisionListener(OnDecisionListener onDecisionListener) {
+        this.onDecisionListener = onDecisionListener;
+    }
+
+    public interface OnDecisionListener {
+        void onDecision(int fftSize, int frameSkip, double analysisTime, double drawTime);
+    }
+}
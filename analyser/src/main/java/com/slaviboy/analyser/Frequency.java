@@ -14,18 +14,38 @@ public class Frequency {
 
         // vector with frequencies for each bin number. Used
         // in the graphing code (not in the analysis itself).
-        double c = sampleRate / fftSize;
-        for (int i = 0; i < fftSize / 2; i++) {
+        double c = (double) sampleRate / fftSize;
+        for (int i = 0; i <= fftSize / 2; i++) {
             frequency[i] = i * c;
         }
     }
 
+    /**
+     * Create frequencies from already calculated values, used by analysers
+     * that do not have uniform bins starting from 0Hz (zoom, multi-resolution)
+     *
+     * @param frequency
+     */
+    public Frequency(double[] frequency) {
+        this.frequency = frequency;
+    }
+
 
     public double get(int index) {
         return frequency[index];
     }
 
+    /**
+     * Get copy of the frequencies, the table can be shared between analysers
+     * by AnalyserCache, so the array itself is never handed out
+     *
+     * @return
+     */
     public double[] getData() {
-        return frequency;
+        return frequency.clone();
+    }
+
+    public int getLength() {
+        return frequency.length;
     }
 }
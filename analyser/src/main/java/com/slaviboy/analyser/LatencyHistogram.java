@@ -0,0 +1,136 @@
+package com.slaviboy.analyser;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies, with constant memory and no allocation on record. Values are
+ * kept in microseconds, exact below 16us and above that in log-linear buckets with 8 buckets
+ * per power of two, so the relative error of the percentiles is below 12.5%. It is safe to
+ * record from one thread while another thread reads the percentiles.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int OCTAVES = 40;
+
+    private AtomicLongArray counts;   // number of values in each bucket
+    private AtomicLong count;         // number of recorded values
+    private AtomicLong sum;           // sum of the recorded values (us)
+    private AtomicLong max;           // highest recorded value (us)
+
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(LINEAR_BUCKETS + OCTAVES * SUB_BUCKETS);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Record latency, negative values are ignored
+     *
+     * @param nanos - latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        long micros = nanos / 1000;
+        counts.incrementAndGet(getBucket(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+
+        long current;
+        while (micros > (current = max.get())) {
+            if (max.compareAndSet(current, micros)) {
+                break;
+            }
+        }
+    }
+
+    private static int getBucket(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >> (exponent - 3)) & (SUB_BUCKETS - 1);
+        int bucket = LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub;
+        return Math.min(bucket, LINEAR_BUCKETS + OCTAVES * SUB_BUCKETS - 1);
+    }
+
+    /**
+     * Get the upper bound of bucket in microseconds
+     *
+     * @param bucket
+     * @return
+     */
+    private static long getUpperBound(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+    }
+
+    /**
+     * Get the latency (ms) below which the given fraction of the values are
+     *
+     * @param percentile - value between [0-100]
+     * @return
+     */
+    public double getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0.0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+
+                // the last bucket also holds all values above its bound
+                long bound = i == counts.length() - 1 ? Long.MAX_VALUE : getUpperBound(i);
+                return Math.min(bound, max.get()) / 1000.0;
+            }
+        }
+        return max.get() / 1000.0;
+    }
+
+    /**
+     * Get the average latency (ms)
+     *
+     * @return
+     */
+    public double getMean() {
+        long total = count.get();
+        return total == 0 ? 0.0 : sum.get() / 1000.0 / total;
+    }
+
+    /**
+     * Get the highest latency (ms)
+     *
+     * @return
+     */
+    public double getMax() {
+        return max.get() / 1000.0;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Clear all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
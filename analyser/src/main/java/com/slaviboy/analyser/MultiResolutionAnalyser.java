@@ -0,0 +1,293 @@
+package com.slaviboy.analyser;
+
+import com.slaviboy.analyser.filter.HalfBandDecimator;
+import com.slaviboy.analyser.window.Window;
+
+/**
+ * Multi-resolution analyser that uses long windows for the bass and short windows for the
+ * treble. The input goes through a cascade of half-band decimators, each stage runs at half
+ * the rate of the previous one and applies the same small fft, so every stage halves the bin
+ * width. The upper part of each stage spectrum is stitched into one spectrum, ordered from
+ * the lowest to the highest frequency, with bin frequencies available through getFrequency().
+ * <p>
+ * Stage k covers [fs / 2^k / 5, fs / 2^k * 2 / 5), the first stage reaches nyquist and the last
+ * stage reaches 0Hz, the parts of each spectrum inside the decimator transition are not used.
+ * Treble stages are updated every hop input samples, while bass stage k is updated every
+ * hop * 2^k input samples.
+ */
+public class MultiResolutionAnalyser {
+
+    // public default static values
+    public static final int FFT_SIZE = 1024;
+    public static final int STAGES = 5;
+
+    private int fftSize;                        // fft size for each stage
+    private int stages;                         // number of stages in the cascade
+    private int hopSize;                        // new samples at stage rate, between two transforms
+    private int sampleRate;                     // actual microphone sample rate (Hz)
+    private Range decibels;                     // decibels range
+    private double smoothingTimeConstant;       // value between [0-1] for smoothing data, from previous transition
+
+    private Frequency frequency;                // frequencies array corresponding to each stitched bin
+    private Window window;                      // analysis window, shared by all stages
+    private FourierPlan plan;                   // precomputed fft tables, shared by all stages
+    private HalfBandDecimator[] decimators;     // decimator feeding stage k + 1 from stage k
+
+    private double[][] rings;                   // ring with the latest fftSize samples for each stage
+    private int[] ringIndex;                    // next write position for each stage ring
+    private int[] samplesFilled;                // samples in each ring, until it is filled for the first time
+    private int[] samplesSinceTransform;        // samples since the last transform for each stage
+
+    private int[] binStart;                     // first stage bin used in the stitched spectrum
+    private int[] binEnd;                       // last stage bin (exclusive) used in the stitched spectrum
+    private int[] outputOffset;                 // position of the stage bins in the stitched spectrum
+
+    private double[] smoothingData;             // last smoothed data
+    private double[] realArray;                 // real component for fft
+    private double[] imaginaryArray;            // imaginary component for fft
+
+    private int[] byteFrequencyData;            // frequency data in bytes [0,255]
+    private double[] doubleFrequencyData;       // frequency data(magnitudes) in dB
+
+    public MultiResolutionAnalyser() {
+
+        // default
+        this(FFT_SIZE, STAGES, Analyser.SAMPLE_RATE, new Range(Analyser.MIN_DECIBELS, Analyser.MAX_DECIBELS),
+                Analyser.SMOOTHING_TIME_CONSTANT);
+    }
+
+    public MultiResolutionAnalyser(int fftSize, int stages, int sampleRate, Range decibels,
+                                   double smoothingTimeConstant) {
+
+        if (stages < 1) {
+            throw new IllegalArgumentException("At least one stage is required");
+        }
+
+        this.fftSize = fftSize;
+        this.stages = stages;
+        this.sampleRate = sampleRate;
+        this.decibels = decibels;
+        this.smoothingTimeConstant = smoothingTimeConstant;
+        this.hopSize = fftSize / 2;
+
+        init();
+    }
+
+    private void init() {
+
+        AnalyserCache.Entry entry = AnalyserCache.get(fftSize, sampleRate, Window.TYPE_BLACKMAN);
+        window = entry.getWindow();
+        plan = entry.getPlan();
+        realArray = new double[fftSize];
+        imaginaryArray = new double[fftSize];
+
+        decimators = new HalfBandDecimator[stages - 1];
+        for (int i = 0; i < decimators.length; i++) {
+            decimators[i] = new HalfBandDecimator();
+        }
+
+        rings = new double[stages][fftSize];
+        ringIndex = new int[stages];
+        samplesFilled = new int[stages];
+        samplesSinceTransform = new int[stages];
+
+        // bins used from each stage, the lower border of stage k matches the upper border of stage k + 1
+        int lower = fftSize / 5;
+        binStart = new int[stages];
+        binEnd = new int[stages];
+        for (int i = 0; i < stages; i++) {
+            binStart[i] = (i == stages - 1) ? 0 : lower;
+            binEnd[i] = (i == 0) ? fftSize / 2 : 2 * lower;
+        }
+
+        // the last stage holds the lowest frequencies, so it goes first
+        int total = 0;
+        outputOffset = new int[stages];
+        for (int i = stages - 1; i >= 0; i--) {
+            outputOffset[i] = total;
+            total += binEnd[i] - binStart[i];
+        }
+
+        double[] frequencies = new double[total];
+        for (int i = 0; i < stages; i++) {
+            double binWidth = (double) sampleRate / (1 << i) / fftSize;
+            for (int j = binStart[i]; j < binEnd[i]; j++) {
+                frequencies[outputOffset[i] + j - binStart[i]] = j * binWidth;
+            }
+        }
+        frequency = new Frequency(frequencies);
+
+        smoothingData = new double[total];
+        doubleFrequencyData = new double[total];
+        byteFrequencyData = new int[total];
+    }
+
+    /**
+     * Set buffer data from microphone or audio file, the samples are passed through
+     * the decimation cascade and each stage that collected hop size new samples
+     * updates its part of the stitched spectrum
+     *
+     * @param audioBuffer
+     */
+    public void setAudioBuffer(float[] audioBuffer) {
+        setAudioBuffer(audioBuffer, 0, audioBuffer.length);
+    }
+
+    public void setAudioBuffer(float[] audioBuffer, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            double sample = audioBuffer[i];
+            for (int stage = 0; stage < stages; stage++) {
+                push(stage, sample);
+                if (stage == stages - 1 || !decimators[stage].process(sample)) {
+                    break;
+                }
+                sample = decimators[stage].getOutput();
+            }
+        }
+    }
+
+    /**
+     * Add sample to stage ring, and transform the stage if enough new samples are collected
+     *
+     * @param stage
+     * @param sample
+     */
+    private void push(int stage, double sample) {
+
+        double[] ring = rings[stage];
+        ring[ringIndex[stage]] = sample;
+        ringIndex[stage] = (ringIndex[stage] + 1) % fftSize;
+
+        if (samplesFilled[stage] < fftSize) {
+            samplesFilled[stage]++;
+            if (samplesFilled[stage] < fftSize) {
+                return;
+            }
+        } else if (++samplesSinceTransform[stage] < hopSize) {
+            return;
+        }
+
+        samplesSinceTransform[stage] = 0;
+        transform(stage);
+    }
+
+    /**
+     * Apply fft on the stage ring, starting from the oldest sample, and update
+     * the stitched spectrum only for the bins that belong to this stage
+     *
+     * @param stage
+     */
+    private void transform(int stage) {
+
+        double[] ring = rings[stage];
+        int start = ringIndex[stage];
+        for (int i = 0; i < fftSize; i++) {
+            realArray[i] = ring[(start + i) % fftSize] * window.get(i);
+            imaginaryArray[i] = 0.0;
+        }
+
+        // apply fft
+        plan.transform(realArray, imaginaryArray);
+
+        double factor = 255.0 / (decibels.max - decibels.min);
+        int output = outputOffset[stage];
+        for (int i = binStart[stage]; i < binEnd[stage]; i++, output++) {
+            double re = realArray[i];
+            double im = imaginaryArray[i];
+            double magnitude = Math.sqrt(re * re + im * im) / fftSize;
+
+            // smooth data, convert to dB and clip between [0-255]
+            smoothingData[output] =
+                    smoothingTimeConstant * smoothingData[output] +
+                            (1.0 - smoothingTimeConstant) * magnitude;
+            doubleFrequencyData[output] = 20.0 * Math.log10(smoothingData[output]);
+
+            int byteValue = (int) (factor * (doubleFrequencyData[output] - decibels.min));
+            byteFrequencyData[output] = Math.max(0, Math.min(255, byteValue));
+        }
+    }
+
+    /**
+     * Clear the cascade and smoothing history
+     */
+    public void reset() {
+        init();
+    }
+
+    /**
+     * Get frequency data in clipped range between [0,255]
+     *
+     * @return
+     */
+    public int[] getByteFrequencyData() {
+        return byteFrequencyData;
+    }
+
+    /**
+     * Get double frequency data representing magnitude
+     *
+     * @return
+     */
+    public double[] getDoubleFrequencyData() {
+        return doubleFrequencyData;
+    }
+
+    /**
+     * Get the bin width (Hz) of given stage, stage 0 has the widest bins
+     *
+     * @param stage
+     * @return
+     */
+    public double getResolution(int stage) {
+        return (double) sampleRate / (1 << stage) / fftSize;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public int getStages() {
+        return stages;
+    }
+
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    public void setHopSize(int hopSize) {
+        this.hopSize = Math.max(1, Math.min(fftSize, hopSize));
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+        init();
+    }
+
+    public double getSmoothingTimeConstant() {
+        return smoothingTimeConstant;
+    }
+
+    public void setSmoothingTimeConstant(double smoothingTimeConstant) {
+        this.smoothingTimeConstant = smoothingTimeConstant;
+    }
+
+    public int getFrequencyBinCount() {
+        return doubleFrequencyData.length;
+    }
+
+    public Range getDecibels() {
+        return decibels;
+    }
+
+    public void setDecibels(Range decibels) {
+        this.decibels = decibels;
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+}
@@ -0,0 +1,228 @@
+package com.slaviboy.analyser;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Streaming onset and beat detector, driven by the half-wave rectified spectral flux of the
+ * analyser magnitudes. The flux is compared with adaptive threshold made from the mean and
+ * the standard deviation of the last flux values, kept incrementally with running sums, and
+ * local peaks above the threshold are reported as onsets. The onsets feed a TempoTracker.
+ * <p>
+ * Every frame costs O(bins), memory is bounded by the threshold window, and the listener
+ * is called on the executor instead of the audio thread that calls update(). The default
+ * constructor creates its own executor, which is stopped with shutdown().
+ */
+public class OnsetDetector {
+
+    // public default static values
+    public static final int THRESHOLD_WINDOW = 32;
+    public static final double THRESHOLD_MULTIPLIER = 2.0;
+    public static final double MIN_INTERVAL = 0.1;
+
+    private int thresholdWindow;          // number of last flux values used for the threshold
+    private double thresholdMultiplier;   // how many standard deviations above the mean is onset
+    private double minInterval;           // minimum time between two onsets (s)
+
+    private double[] previous;            // magnitudes from the previous frame
+    private boolean hasPrevious;          // if previous frame is available
+
+    private double[] fluxHistory;         // ring with the last flux values
+    private int fluxIndex;                // next write position in the flux ring
+    private int fluxCount;                // number of values in the flux ring
+    private double fluxSum;               // running sum of the flux ring
+    private double fluxSquaredSum;        // running sum of the squared flux ring
+
+    private double lastFlux;              // flux from the previous frame, candidate for peak
+    private double lastThreshold;         // threshold from the previous frame
+    private double lastTime;              // time of the previous frame (s)
+    private double beforeLastFlux;        // flux from two frames ago
+    private double lastOnsetTime;         // time of the last reported onset (s)
+
+    private TempoTracker tempoTracker;    // tempo estimation from the onsets
+    private Executor executor;            // executor delivering the listener callbacks
+    private ExecutorService ownedExecutor; // default executor created by the detector
+    private OnOnsetListener onOnsetListener;
+
+    public OnsetDetector() {
+        this(THRESHOLD_WINDOW, THRESHOLD_MULTIPLIER, MIN_INTERVAL, new TempoTracker(), createExecutor());
+        ownedExecutor = (ExecutorService) executor;
+    }
+
+    public OnsetDetector(int thresholdWindow, double thresholdMultiplier, double minInterval,
+                         TempoTracker tempoTracker, Executor executor) {
+        this.thresholdWindow = thresholdWindow;
+        this.thresholdMultiplier = thresholdMultiplier;
+        this.minInterval = minInterval;
+        this.tempoTracker = tempoTracker;
+        this.executor = executor;
+
+        previous = new double[0];
+        fluxHistory = new double[thresholdWindow];
+        lastOnsetTime = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Single daemon thread for delivering the callbacks
+     *
+     * @return
+     */
+    private static ExecutorService createExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "OnsetDetector");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Update the detector with the last frame of the analyser
+     *
+     * @param analyser
+     * @param time     - frame time (s)
+     * @return true if onset was detected on the previous frame
+     */
+    public boolean update(Analyser analyser, double time) {
+        return update(analyser.getMagnitudeData(), time);
+    }
+
+    /**
+     * Update the detector with linear magnitudes. Peaks are confirmed one frame later,
+     * so the reported onset time is the time of the previous frame
+     *
+     * @param magnitudes
+     * @param time       - frame time (s)
+     * @return true if onset was detected on the previous frame
+     */
+    public boolean update(double[] magnitudes, double time) {
+
+        int n = magnitudes.length;
+        if (previous.length != n) {
+            previous = new double[n];
+            hasPrevious = false;
+        }
+
+        // half-wave rectified spectral flux
+        double flux = 0.0;
+        for (int i = 0; i < n; i++) {
+            double difference = magnitudes[i] - previous[i];
+            if (difference > 0) {
+                flux += difference;
+            }
+            previous[i] = magnitudes[i];
+        }
+        if (!hasPrevious) {
+            hasPrevious = true;
+            flux = 0.0;
+        }
+
+        // the previous frame is an onset if it is local peak above its threshold
+        boolean onset = lastFlux > lastThreshold && lastFlux > beforeLastFlux && lastFlux >= flux &&
+                lastTime - lastOnsetTime >= minInterval;
+        if (onset) {
+            lastOnsetTime = lastTime;
+            final double onsetTime = lastTime;
+            final double strength = lastFlux - lastThreshold;
+            final double tempo = tempoTracker.addOnset(onsetTime, strength);
+            final OnOnsetListener listener = onOnsetListener;
+            if (listener != null) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onOnset(onsetTime, strength, tempo);
+                    }
+                });
+            }
+        }
+
+        // threshold for the current frame, from the flux values before it
+        double threshold = Double.POSITIVE_INFINITY;
+        if (fluxCount > 0) {
+            double mean = fluxSum / fluxCount;
+            double variance = Math.max(0.0, fluxSquaredSum / fluxCount - mean * mean);
+            threshold = mean + thresholdMultiplier * Math.sqrt(variance);
+        }
+
+        // slide the threshold window
+        if (fluxCount == thresholdWindow) {
+            double oldest = fluxHistory[fluxIndex];
+            fluxSum -= oldest;
+            fluxSquaredSum -= oldest * oldest;
+        } else {
+            fluxCount++;
+        }
+        fluxHistory[fluxIndex] = flux;
+        fluxIndex = (fluxIndex + 1) % thresholdWindow;
+        fluxSum += flux;
+        fluxSquaredSum += flux * flux;
+
+        beforeLastFlux = lastFlux;
+        lastFlux = flux;
+        lastThreshold = threshold;
+        lastTime = time;
+        return onset;
+    }
+
+    /**
+     * Forget all history, for example when the audio source is changed
+     */
+    public void reset() {
+        hasPrevious = false;
+        fluxIndex = 0;
+        fluxCount = 0;
+        fluxSum = 0.0;
+        fluxSquaredSum = 0.0;
+        lastFlux = 0.0;
+        beforeLastFlux = 0.0;
+        lastThreshold = 0.0;
+        lastOnsetTime = Double.NEGATIVE_INFINITY;
+        tempoTracker.reset();
+    }
+
+    /**
+     * Shut down the executor created by the detector, executors passed to the
+     * constructor are not affected
+     */
+    public void shutdown() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    public double getTempo() {
+        return tempoTracker.getTempo();
+    }
+
+    public TempoTracker getTempoTracker() {
+        return tempoTracker;
+    }
+
+    public double getThresholdMultiplier() {
+        return thresholdMultiplier;
+    }
+
+    public void setThresholdMultiplier(double thresholdMultiplier) {
+        this.thresholdMultiplier = thresholdMultiplier;
+    }
+
+    public double getMinInterval() {
+        return minInterval;
+    }
+
+    public void setMinInterval(double minInterval) {
+        this.minInterval = minInterval;
+    }
+
+    public void setOnOnsetListener(OnOnsetListener onOnsetListener) {
+        this.onOnsetListener = onOnsetListener;
+    }
+
+    public interface OnOnsetListener {
+        void onOnset(double time, double strength, double tempo);
+    }
+}
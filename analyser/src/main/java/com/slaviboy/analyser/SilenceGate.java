@@ -0,0 +1,151 @@
+package com.slaviboy.analyser;
+
+/**
+ * Cheap time-domain gate that detects silence before the fft. The level of each buffer is
+ * measured as RMS in dBFS, and the zero-crossing rate is used to tell quiet broadband noise
+ * (hiss, fans) from quiet signal, since noise crosses zero much more often. The gate opens
+ * when the level is above the threshold, and stays open for the hold time after the last
+ * loud buffer, so short pauses do not close it.
+ */
+public class SilenceGate {
+
+    // public default static values
+    public static final double THRESHOLD = -60.0;
+    public static final double HOLD_TIME = 0.5;
+    public static final double MAX_ZERO_CROSSING_RATE = 0.35;
+    public static final double NOISE_MARGIN = 10.0;
+
+    private double threshold;              // level in dBFS above which the gate opens
+    private double holdTime;               // time (s) the gate stays open after the last loud buffer
+    private double maxZeroCrossingRate;    // zero crossings per sample, above which quiet input is noise
+    private double noiseMargin;            // dB above the threshold, under which noise keeps the gate closed
+
+    private double level;                  // level of the last buffer (dBFS)
+    private double zeroCrossingRate;       // zero crossings per sample of the last buffer
+    private long samplesSinceSignal;       // samples since the last loud buffer
+    private boolean open;                  // if the gate is open
+
+    public SilenceGate() {
+        this(THRESHOLD, HOLD_TIME, MAX_ZERO_CROSSING_RATE, NOISE_MARGIN);
+    }
+
+    /**
+     * @param threshold           - level in dBFS above which the gate opens
+     * @param holdTime            - time (s) the gate stays open after the last loud buffer
+     * @param maxZeroCrossingRate - zero crossings per sample between [0-1], above which quiet input is noise
+     * @param noiseMargin         - dB above the threshold, under which noise keeps the gate closed
+     */
+    public SilenceGate(double threshold, double holdTime, double maxZeroCrossingRate, double noiseMargin) {
+        this.threshold = threshold;
+        this.holdTime = holdTime;
+        this.maxZeroCrossingRate = maxZeroCrossingRate;
+        this.noiseMargin = noiseMargin;
+        this.samplesSinceSignal = Long.MAX_VALUE / 2;
+    }
+
+    /**
+     * Measure the buffer and update the gate, all samples of the buffer are new input
+     *
+     * @param samples    - samples in range [-1,1]
+     * @param length     - number of samples
+     * @param sampleRate - sample rate, used for the hold time
+     * @return true if the gate is open and the buffer should be analysed
+     */
+    public boolean process(float[] samples, int length, int sampleRate) {
+        return process(samples, length, length, sampleRate);
+    }
+
+    /**
+     * Measure the buffer and update the gate, level and zero crossings are computed in one pass.
+     * For overlapping buffers the hold time advances only by the new samples.
+     *
+     * @param samples    - samples in range [-1,1]
+     * @param length     - number of samples
+     * @param newSamples - number of samples that were not in the previous buffer
+     * @param sampleRate - sample rate, used for the hold time
+     * @return true if the gate is open and the buffer should be analysed
+     */
+    public boolean process(float[] samples, int length, int newSamples, int sampleRate) {
+
+        double sum = 0.0;
+        int crossings = 0;
+        float previous = length > 0 ? samples[0] : 0.0f;
+        for (int i = 0; i < length; i++) {
+            float sample = samples[i];
+            sum += sample * sample;
+            if ((sample >= 0.0f) != (previous >= 0.0f)) {
+                crossings++;
+            }
+            previous = sample;
+        }
+
+        level = 10.0 * Math.log10(sum / Math.max(1, length));
+        zeroCrossingRate = (double) crossings / Math.max(1, length);
+
+        // quiet noise like input does not count as signal
+        boolean signal = level >= threshold &&
+                !(zeroCrossingRate > maxZeroCrossingRate && level < threshold + noiseMargin);
+
+        if (signal) {
+            samplesSinceSignal = 0;
+        } else {
+            samplesSinceSignal += newSamples;
+        }
+        open = samplesSinceSignal <= holdTime * sampleRate;
+        return open;
+    }
+
+    /**
+     * Open the gate as if signal was just detected
+     */
+    public void reset() {
+        samplesSinceSignal = 0;
+        open = true;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Get the RMS level of the last buffer (dBFS)
+     *
+     * @return
+     */
+    public double getLevel() {
+        return level;
+    }
+
+    /**
+     * Get zero crossings per sample of the last buffer
+     *
+     * @return
+     */
+    public double getZeroCrossingRate() {
+        return zeroCrossingRate;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    public double getHoldTime() {
+        return holdTime;
+    }
+
+    public void setHoldTime(double holdTime) {
+        this.holdTime = holdTime;
+    }
+
+    public double getMaxZeroCrossingRate() {
+        return maxZeroCrossingRate;
+    }
+
+    public void setMaxZeroCrossingRate(double maxZeroCrossingRate) {
+        this.maxZeroCrossingRate = maxZeroCrossingRate;
+    }
+}
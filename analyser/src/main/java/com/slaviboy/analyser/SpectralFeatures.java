@@ -0,0 +1,173 @@
+package com.slaviboy.analyser;
+
+/**
+ * Class that extracts spectral features from the linear magnitudes of the analyser, all
+ * features are computed in a single pass over the magnitude array and stored in primitive
+ * feature vector, indexed by the static feature constants. The previous frame needed for
+ * the flux and the cumulative energy needed for the rolloff are kept in reused buffers, so
+ * no allocations are made per frame.
+ * https://en.wikipedia.org/wiki/Spectral_centroid
+ * https://en.wikipedia.org/wiki/Spectral_flatness
+ */
+public class SpectralFeatures {
+
+    // feature vector indices
+    public static final int CENTROID = 0;    // magnitude weighted mean frequency (Hz)
+    public static final int SPREAD = 1;      // magnitude weighted standard deviation around the centroid (Hz)
+    public static final int FLUX = 2;        // half-wave rectified difference from the previous frame
+    public static final int ROLLOFF = 3;     // frequency below which the rolloff percent of the energy is (Hz)
+    public static final int FLATNESS = 4;    // geometric mean / arithmetic mean, between [0-1]
+    public static final int RMS = 5;         // root mean square of the magnitudes
+    public static final int FEATURES_COUNT = 6;
+
+    // public default static values
+    public static final double ROLLOFF_PERCENT = 0.85;
+
+    private static final double EPSILON = 1e-12;  // keeps the logarithm finite for silent bins
+
+    private double rolloffPercent;   // energy percent for the rolloff, between [0-1]
+    private double[] features;       // the feature vector
+    private double[] previous;       // magnitudes from the previous frame, for the flux
+    private double[] cumulative;     // cumulative energy per bin, for the rolloff
+    private boolean hasPrevious;     // if previous frame is available
+
+    public SpectralFeatures() {
+        this(ROLLOFF_PERCENT);
+    }
+
+    public SpectralFeatures(double rolloffPercent) {
+        this.rolloffPercent = rolloffPercent;
+        features = new double[FEATURES_COUNT];
+        previous = new double[0];
+        cumulative = new double[0];
+    }
+
+    /**
+     * Update the features from the last frame of the analyser
+     *
+     * @param analyser
+     * @return
+     */
+    public double[] update(Analyser analyser) {
+        return update(analyser.getMagnitudeData(), analyser.getFrequency());
+    }
+
+    /**
+     * Update the features from linear magnitudes and their corresponding frequencies
+     *
+     * @param magnitudes
+     * @param frequency
+     * @return the feature vector
+     */
+    public double[] update(double[] magnitudes, Frequency frequency) {
+
+        int n = magnitudes.length;
+        if (previous.length != n) {
+            previous = new double[n];
+            cumulative = new double[n];
+            hasPrevious = false;
+        }
+
+        double sum = 0.0;
+        double weightedSum = 0.0;
+        double weightedSquaredSum = 0.0;
+        double energy = 0.0;
+        double logSum = 0.0;
+        double flux = 0.0;
+
+        // fused pass over the magnitudes
+        for (int i = 0; i < n; i++) {
+            double m = magnitudes[i];
+            double f = frequency.get(i);
+            double mf = m * f;
+
+            sum += m;
+            weightedSum += mf;
+            weightedSquaredSum += mf * f;
+            energy += m * m;
+            cumulative[i] = energy;
+            logSum += Math.log(m + EPSILON);
+
+            double difference = m - previous[i];
+            if (difference > 0) {
+                flux += difference * difference;
+            }
+            previous[i] = m;
+        }
+
+        if (sum > 0) {
+            double centroid = weightedSum / sum;
+            features[CENTROID] = centroid;
+            features[SPREAD] = Math.sqrt(Math.max(0.0, weightedSquaredSum / sum - centroid * centroid));
+            features[FLATNESS] = Math.exp(logSum / n) / (sum / n);
+        } else {
+            features[CENTROID] = 0.0;
+            features[SPREAD] = 0.0;
+            features[FLATNESS] = 0.0;
+        }
+        features[FLUX] = hasPrevious ? Math.sqrt(flux) : 0.0;
+        features[ROLLOFF] = n > 0 ? frequency.get(rolloffIndex(energy * rolloffPercent, n)) : 0.0;
+        features[RMS] = n > 0 ? Math.sqrt(energy / n) : 0.0;
+
+        hasPrevious = true;
+        return features;
+    }
+
+    /**
+     * Binary search in the cumulative energy for the first bin that reaches the threshold
+     *
+     * @param threshold
+     * @param n
+     * @return
+     */
+    private int rolloffIndex(double threshold, int n) {
+        int low = 0;
+        int high = n - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] < threshold) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get single feature value, using the feature constants
+     *
+     * @param feature
+     * @return
+     */
+    public double get(int feature) {
+        return features[feature];
+    }
+
+    /**
+     * Get the whole feature vector, the array is reused between frames
+     *
+     * @return
+     */
+    public double[] getFeatures() {
+        return features;
+    }
+
+    /**
+     * Forget the previous frame, so the next flux value is 0
+     */
+    public void reset() {
+        hasPrevious = false;
+        for (int i = 0; i < previous.length; i++) {
+            previous[i] = 0.0;
+        }
+    }
+
+    public double getRolloffPercent() {
+        return rolloffPercent;
+    }
+
+    public void setRolloffPercent(double rolloffPercent) {
+        this.rolloffPercent = rolloffPercent;
+    }
+}
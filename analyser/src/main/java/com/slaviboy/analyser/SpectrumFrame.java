@@ -0,0 +1,165 @@
+package com.slaviboy.analyser;
+
+/**
+ * Snapshot of the analyser output for one frame, that can be passed to another thread
+ * while the analyser already works on the next frame. The arrays are reused when the
+ * frame is set again with the same bin count, so frames can be pooled.
+ */
+public class SpectrumFrame {
+
+    private long sequence;                // number of the frame in the stream
+    private int fftSize;                  // fft size used for the frame
+    private int sampleRate;               // sample rate of the analysed audio (Hz)
+    private Range decibels;               // decibels range used for the byte data
+    private double[] doubleFrequencyData; // frequency data(magnitudes) in dB
+    private int[] byteFrequencyData;      // frequency data in bytes [0,255]
+    private long captureTime;             // System.nanoTime() when the latest analysed sample was captured
+    private long samplePosition;          // stream position of the first analysed sample
+    private long analysisTime;            // System.nanoTime() when the frame was analysed
+
+    public SpectrumFrame() {
+        doubleFrequencyData = new double[0];
+        byteFrequencyData = new int[0];
+        decibels = new Range(Analyser.MIN_DECIBELS, Analyser.MAX_DECIBELS);
+    }
+
+    /**
+     * Copy the output of the last frame from the analyser
+     *
+     * @param analyser
+     * @param sequence - number of the frame in the stream
+     */
+    public void set(Analyser analyser, long sequence) {
+        this.sequence = sequence;
+        this.fftSize = analyser.getFftSize();
+        this.sampleRate = analyser.getSampleRate();
+        this.decibels.min = analyser.getDecibels().min;
+        this.decibels.max = analyser.getDecibels().max;
+        this.captureTime = analyser.getCaptureTime();
+        this.samplePosition = analyser.getSamplePosition();
+        this.analysisTime = analyser.getAnalysisTime();
+
+        double[] doubleData = analyser.getDoubleFrequencyData();
+        int[] byteData = analyser.getByteFrequencyData();
+        setBinCount(doubleData.length);
+        System.arraycopy(doubleData, 0, doubleFrequencyData, 0, doubleData.length);
+        System.arraycopy(byteData, 0, byteFrequencyData, 0, byteData.length);
+    }
+
+    /**
+     * Copy all values from another frame
+     *
+     * @param frame
+     */
+    public void set(SpectrumFrame frame) {
+        this.sequence = frame.sequence;
+        this.fftSize = frame.fftSize;
+        this.sampleRate = frame.sampleRate;
+        this.decibels.min = frame.decibels.min;
+        this.decibels.max = frame.decibels.max;
+        this.captureTime = frame.captureTime;
+        this.samplePosition = frame.samplePosition;
+        this.analysisTime = frame.analysisTime;
+
+        setBinCount(frame.doubleFrequencyData.length);
+        System.arraycopy(frame.doubleFrequencyData, 0, doubleFrequencyData, 0, doubleFrequencyData.length);
+        System.arraycopy(frame.byteFrequencyData, 0, byteFrequencyData, 0, byteFrequencyData.length);
+    }
+
+    /**
+     * Resize the arrays if the bin count changed
+     *
+     * @param binCount
+     */
+    public void setBinCount(int binCount) {
+        if (doubleFrequencyData.length != binCount) {
+            doubleFrequencyData = new double[binCount];
+            byteFrequencyData = new int[binCount];
+        }
+    }
+
+    /**
+     * Get the frequency (Hz) of given bin
+     *
+     * @param bin
+     * @return
+     */
+    public double getFrequency(int bin) {
+        return (double) bin * sampleRate / fftSize;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public void setFftSize(int fftSize) {
+        this.fftSize = fftSize;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Get the time (System.nanoTime()) when the latest analysed sample was captured,
+     * or 0 if the capture time was not set
+     *
+     * @return
+     */
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    public void setCaptureTime(long captureTime) {
+        this.captureTime = captureTime;
+    }
+
+    public long getSamplePosition() {
+        return samplePosition;
+    }
+
+    public void setSamplePosition(long samplePosition) {
+        this.samplePosition = samplePosition;
+    }
+
+    /**
+     * Get the time (System.nanoTime()) when the frame was analysed
+     *
+     * @return
+     */
+    public long getAnalysisTime() {
+        return analysisTime;
+    }
+
+    public void setAnalysisTime(long analysisTime) {
+        this.analysisTime = analysisTime;
+    }
+
+    public Range getDecibels() {
+        return decibels;
+    }
+
+    public int getFrequencyBinCount() {
+        return doubleFrequencyData.length;
+    }
+
+    public double[] getDoubleFrequencyData() {
+        return doubleFrequencyData;
+    }
+
+    public int[] getByteFrequencyData() {
+        return byteFrequencyData;
+    }
+}
@@ -0,0 +1,99 @@
+package com.slaviboy.analyser;
+
+/**
+ * Lightweight tempo tracker that is fed with onset times. The intervals between the new
+ * onset and the last few onsets are folded into one tempo octave [minBpm, 2 * minBpm), and
+ * accumulated in a decaying histogram with one bin per beat per minute, closer onsets have
+ * bigger weight. The strongest bin is the tempo. Memory is bounded by the number of
+ * remembered onsets and the histogram size.
+ */
+public class TempoTracker {
+
+    // public default static values
+    public static final int MIN_BPM = 90;
+    public static final int ONSETS = 16;
+    public static final double DECAY = 0.95;
+
+    private int minBpm;              // lowest reported tempo, the highest is 2 * minBpm
+    private double decay;            // histogram decay applied on each onset, between [0-1]
+    private double[] onsets;         // ring with the last onset times (s)
+    private int onsetIndex;          // next write position in the onsets ring
+    private int onsetCount;          // number of onsets in the ring
+    private double[] histogram;      // tempo histogram, one bin per bpm
+    private double tempo;            // last estimated tempo (bpm), 0 if unknown
+
+    public TempoTracker() {
+        this(MIN_BPM, ONSETS, DECAY);
+    }
+
+    public TempoTracker(int minBpm, int onsets, double decay) {
+        if (minBpm <= 0) {
+            throw new IllegalArgumentException("Minimum tempo must be positive");
+        }
+        this.minBpm = minBpm;
+        this.decay = decay;
+        this.onsets = new double[onsets];
+        this.histogram = new double[minBpm];
+    }
+
+    /**
+     * Add new onset and update the tempo estimation
+     *
+     * @param time     - onset time (s)
+     * @param strength - onset strength, used as weight
+     * @return the estimated tempo (bpm), 0 if still unknown
+     */
+    public double addOnset(double time, double strength) {
+
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] *= decay;
+        }
+
+        // intervals to all remembered onsets from the newest, folded to the tempo octave
+        int maxBpm = 2 * minBpm;
+        for (int i = 1; i <= onsetCount; i++) {
+            double interval = time - onsets[(onsetIndex - i + onsets.length) % onsets.length];
+            if (interval <= 0) {
+                continue;
+            }
+
+            double bpm = 60.0 / interval;
+            while (bpm < minBpm) {
+                bpm *= 2;
+            }
+            while (bpm >= maxBpm) {
+                bpm /= 2;
+            }
+            histogram[Math.min(histogram.length - 1, (int) Math.round(bpm) - minBpm)] += strength / i;
+        }
+
+        onsets[onsetIndex] = time;
+        onsetIndex = (onsetIndex + 1) % onsets.length;
+        onsetCount = Math.min(onsetCount + 1, onsets.length);
+
+        int best = -1;
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] > 0 && (best < 0 || histogram[i] > histogram[best])) {
+                best = i;
+            }
+        }
+        tempo = (best < 0) ? 0.0 : best + minBpm;
+        return tempo;
+    }
+
+    /**
+     * Forget all onsets and the histogram
+     */
+    public void reset() {
+        onsetIndex = 0;
+        onsetCount = 0;
+        tempo = 0.0;
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = 0.0;
+        }
+    }
+
+    public double getTempo() {
+        return tempo;
+    }
+}
@@ -0,0 +1,226 @@
+package com.slaviboy.analyser;
+
+import com.slaviboy.analyser.window.Window;
+
+/**
+ * Welch power spectral density estimator, for measurements where the exponential
+ * smoothing of the Analyser is not enough. The audio is consumed as a stream, and
+ * split into overlapping windowed segments, the power of each segment is accumulated
+ * in place, so the running average and variance per bin use constant memory no
+ * matter how long the measurement is.
+ * <p>
+ * The density is one-sided in units of power per Hz, normalized by the window power,
+ * so the result does not depend on the window type or the fft size.
+ * https://en.wikipedia.org/wiki/Welch%27s_method
+ */
+public class WelchEstimator {
+
+    // public default static values
+    public static final int FFT_SIZE = 1024;
+    public static final double OVERLAP = 0.5;
+
+    private int fftSize;                        // segment length
+    private int hopSize;                        // new samples between two segments
+    private int sampleRate;                     // actual microphone sample rate (Hz)
+    private Window window;                      // analysis window applied on each segment
+    private FourierPlan plan;                   // precomputed fft tables
+    private double scale;                       // window power normalization 1 / (sampleRate * sum(w^2))
+
+    private Frequency frequency;                // frequencies array corresponding to each bin
+
+    private double[] segment;                   // ring with the latest fftSize samples
+    private int segmentIndex;                   // next write position in the segment ring
+    private int samplesFilled;                  // samples in the ring, until it is filled for the first time
+    private int samplesSinceSegment;            // samples since the last computed segment
+
+    private double[] realArray;                 // real component for fft
+    private double[] imaginaryArray;            // imaginary component for fft
+
+    private long segmentCount;                  // number of accumulated segments
+    private double[] mean;                      // running average of the power density per bin
+    private double[] sumOfSquares;              // running sum of squared differences from the mean (Welford)
+    private double[] variance;                  // reusable array returned by getVariance()
+
+    public WelchEstimator() {
+
+        // default
+        this(FFT_SIZE, Analyser.SAMPLE_RATE, OVERLAP,
+                AnalyserCache.get(FFT_SIZE, Analyser.SAMPLE_RATE, Window.TYPE_HANNING).getWindow());
+    }
+
+    /**
+     * @param fftSize    - segment length
+     * @param sampleRate - sample rate of the audio stream
+     * @param overlap    - fraction of the segment shared with the previous one, between [0-1)
+     * @param window     - analysis window with the same length as the segment
+     */
+    public WelchEstimator(int fftSize, int sampleRate, double overlap, Window window) {
+
+        if (overlap < 0 || overlap >= 1) {
+            throw new IllegalArgumentException("Overlap must be between [0-1)");
+        }
+        if (window.getLength() != fftSize) {
+            throw new IllegalArgumentException("Window length does not match the fft size");
+        }
+
+        this.fftSize = fftSize;
+        this.sampleRate = sampleRate;
+        this.window = window;
+        this.hopSize = Math.max(1, (int) Math.round(fftSize * (1.0 - overlap)));
+
+        double windowPower = 0.0;
+        for (int i = 0; i < fftSize; i++) {
+            windowPower += window.get(i) * window.get(i);
+        }
+        scale = 1.0 / (sampleRate * windowPower);
+
+        // only the plan is shared, the window is passed by the caller
+        frequency = new Frequency(fftSize, sampleRate);
+        plan = AnalyserCache.getPlan(fftSize);
+        segment = new double[fftSize];
+        realArray = new double[fftSize];
+        imaginaryArray = new double[fftSize];
+
+        int bins = fftSize / 2 + 1;
+        mean = new double[bins];
+        sumOfSquares = new double[bins];
+        variance = new double[bins];
+    }
+
+    /**
+     * Set buffer data from microphone or audio file, every time hop size
+     * new samples are collected a segment is transformed and its power
+     * is accumulated to the running average
+     *
+     * @param audioBuffer
+     */
+    public void setAudioBuffer(float[] audioBuffer) {
+        setAudioBuffer(audioBuffer, 0, audioBuffer.length);
+    }
+
+    public void setAudioBuffer(float[] audioBuffer, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            segment[segmentIndex] = audioBuffer[i];
+            segmentIndex = (segmentIndex + 1) % fftSize;
+
+            if (samplesFilled < fftSize) {
+                samplesFilled++;
+                if (samplesFilled < fftSize) {
+                    continue;
+                }
+            } else if (++samplesSinceSegment < hopSize) {
+                continue;
+            }
+
+            samplesSinceSegment = 0;
+            accumulate();
+        }
+    }
+
+    /**
+     * Transform the current segment, starting from the oldest sample, and
+     * update mean and variance for each bin in place
+     */
+    private void accumulate() {
+
+        for (int i = 0; i < fftSize; i++) {
+            realArray[i] = segment[(segmentIndex + i) % fftSize] * window.get(i);
+            imaginaryArray[i] = 0.0;
+        }
+
+        // apply fft
+        plan.transform(realArray, imaginaryArray);
+
+        segmentCount++;
+        int nyquist = fftSize / 2;
+        for (int i = 0; i <= nyquist; i++) {
+            double re = realArray[i];
+            double im = imaginaryArray[i];
+            double power = (re * re + im * im) * scale;
+
+            // one-sided density, the negative frequencies are folded except for DC and nyquist
+            if (i != 0 && i != nyquist) {
+                power *= 2.0;
+            }
+
+            double delta = power - mean[i];
+            mean[i] += delta / segmentCount;
+            sumOfSquares[i] += delta * (power - mean[i]);
+        }
+    }
+
+    /**
+     * Clear the accumulated average and the buffered samples, to start a new measurement
+     */
+    public void reset() {
+        segmentCount = 0;
+        segmentIndex = 0;
+        samplesFilled = 0;
+        samplesSinceSegment = 0;
+        for (int i = 0; i < mean.length; i++) {
+            mean[i] = 0.0;
+            sumOfSquares[i] = 0.0;
+        }
+    }
+
+    /**
+     * Get the running average of the power spectral density per bin (power/Hz),
+     * array has fftSize / 2 + 1 values from DC to nyquist
+     *
+     * @return
+     */
+    public double[] getMean() {
+        return mean;
+    }
+
+    /**
+     * Get the sample variance of the power spectral density per bin, between
+     * the accumulated segments
+     *
+     * @return
+     */
+    public double[] getVariance() {
+        double n = segmentCount > 1 ? segmentCount - 1 : 1;
+        for (int i = 0; i < variance.length; i++) {
+            variance[i] = sumOfSquares[i] / n;
+        }
+        return variance;
+    }
+
+    /**
+     * Get the running average converted to dB (10 * log10), into given array
+     *
+     * @param out
+     * @return
+     */
+    public double[] getDecibels(double[] out) {
+        for (int i = 0; i < mean.length; i++) {
+            out[i] = 10.0 * Math.log10(mean[i]);
+        }
+        return out;
+    }
+
+    public long getSegmentCount() {
+        return segmentCount;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getFrequencyBinCount() {
+        return mean.length;
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+}
@@ -0,0 +1,309 @@
+package com.slaviboy.analyser;
+
+import com.slaviboy.analyser.filter.LowPassFilter;
+import com.slaviboy.analyser.window.Window;
+
+/**
+ * Zoom analyser that gives high resolution over a narrow frequency band, without running
+ * a giant full-band FFT. The signal is mixed down so the center frequency lands on 0Hz,
+ * low-pass filtered and decimated, and a small complex FFT is applied to the decimated
+ * stream. The resulting bins cover [center - bandwidth, center + bandwidth], the requested
+ * band occupies the middle half, while the outer bins are in the filter transition.
+ * <p>
+ * Unlike the Analyser the audio buffers are consumed as a stream, so buffers of any
+ * length can be passed and the spectrum is always computed from the latest fftSize
+ * decimated samples.
+ */
+public class ZoomAnalyser {
+
+    // public default static values
+    public static final int FFT_SIZE = 256;
+    public static final int FILTER_TAPS_PER_DECIMATION = 12;
+
+    private int fftSize;                        // size of the complex fft applied on the decimated stream
+    private int sampleRate;                     // actual microphone sample rate (Hz)
+    private double centerFrequency;             // center of the zoomed band (Hz)
+    private double bandwidth;                   // width of the zoomed band (Hz)
+    private int decimation;                     // decimation factor applied after mixing
+    private Range decibels;                     // decibels range
+    private double smoothingTimeConstant;       // value between [0-1] for smoothing data, from previous transition
+
+    private Frequency frequency;                // frequencies array corresponding to each bin
+    private Window window;                      // analysis window applied to the decimated samples
+    private FourierPlan plan;                   // precomputed fft tables
+    private double[] filter;                    // low-pass filter coefficients
+
+    private double phaseReal;                   // oscillator phasor real part
+    private double phaseImaginary;              // oscillator phasor imaginary part
+    private double stepReal;                    // oscillator rotation per sample, real part
+    private double stepImaginary;               // oscillator rotation per sample, imaginary part
+
+    private double[] historyReal;               // mixed samples, real part (doubled for contiguous reads)
+    private double[] historyImaginary;          // mixed samples, imaginary part (doubled for contiguous reads)
+    private int historyIndex;                   // next write position in the history
+    private int decimationCounter;              // input samples since the last decimated output
+
+    private double[] zoomReal;                  // ring with the latest decimated samples, real part
+    private double[] zoomImaginary;             // ring with the latest decimated samples, imaginary part
+    private int zoomIndex;                      // next write position in the decimated ring
+
+    private double[] smoothingData;             // last smoothed data
+    private double[] realArray;                 // real component for fft
+    private double[] imaginaryArray;            // imaginary component for fft
+
+    private int[] byteFrequencyData;            // frequency data in bytes [0,255]
+    private double[] doubleFrequencyData;       // frequency data(magnitudes) in dB
+
+    public ZoomAnalyser(double centerFrequency, double bandwidth) {
+
+        // default
+        this(FFT_SIZE, Analyser.SAMPLE_RATE, centerFrequency, bandwidth,
+                new Range(Analyser.MIN_DECIBELS, Analyser.MAX_DECIBELS), Analyser.SMOOTHING_TIME_CONSTANT);
+    }
+
+    public ZoomAnalyser(int fftSize, int sampleRate, double centerFrequency, double bandwidth,
+                        Range decibels, double smoothingTimeConstant) {
+
+        if (bandwidth <= 0 || bandwidth * 2 > sampleRate) {
+            throw new IllegalArgumentException("Bandwidth must be between 0 and half the sample rate");
+        }
+
+        this.fftSize = fftSize;
+        this.sampleRate = sampleRate;
+        this.centerFrequency = centerFrequency;
+        this.bandwidth = bandwidth;
+        this.decibels = decibels;
+        this.smoothingTimeConstant = smoothingTimeConstant;
+
+        init();
+    }
+
+    private void init() {
+
+        // the decimated rate is twice the bandwidth, so the filter transition fits in the outer bins
+        decimation = Math.max(1, (int) (sampleRate / (2.0 * bandwidth)));
+        double zoomRate = (double) sampleRate / decimation;
+
+        // low-pass filter with cutoff at the half of the requested band
+        int taps = FILTER_TAPS_PER_DECIMATION * decimation + 1;
+        filter = new LowPassFilter(taps, (bandwidth / 2.0) / sampleRate).getData();
+        historyReal = new double[taps * 2];
+        historyImaginary = new double[taps * 2];
+        historyIndex = 0;
+        decimationCounter = 0;
+
+        // oscillator that shifts the center frequency down to 0Hz
+        double w = -2.0 * Math.PI * centerFrequency / sampleRate;
+        stepReal = Math.cos(w);
+        stepImaginary = Math.sin(w);
+        phaseReal = 1.0;
+        phaseImaginary = 0.0;
+
+        AnalyserCache.Entry entry = AnalyserCache.get(fftSize, sampleRate, Window.TYPE_BLACKMAN);
+        window = entry.getWindow();
+        plan = entry.getPlan();
+        zoomReal = new double[fftSize];
+        zoomImaginary = new double[fftSize];
+        zoomIndex = 0;
+
+        realArray = new double[fftSize];
+        imaginaryArray = new double[fftSize];
+        smoothingData = new double[fftSize];
+        doubleFrequencyData = new double[fftSize];
+        byteFrequencyData = new int[fftSize];
+
+        // bins are ordered from the lowest to the highest frequency
+        double[] frequencies = new double[fftSize];
+        for (int i = 0; i < fftSize; i++) {
+            frequencies[i] = centerFrequency + (i - fftSize / 2) * zoomRate / fftSize;
+        }
+        frequency = new Frequency(frequencies);
+    }
+
+    /**
+     * Set buffer data from microphone or audio file, the samples are mixed,
+     * filtered and decimated, and then the zoomed spectrum is updated from
+     * the latest decimated samples
+     *
+     * @param audioBuffer
+     */
+    public void setAudioBuffer(float[] audioBuffer) {
+        setAudioBuffer(audioBuffer, 0, audioBuffer.length);
+    }
+
+    public void setAudioBuffer(float[] audioBuffer, int offset, int length) {
+
+        int taps = filter.length;
+        for (int i = offset; i < offset + length; i++) {
+
+            // mix down, the oscillator is kept as rotating phasor instead of calling sin/cos per sample
+            double sample = audioBuffer[i];
+            double re = sample * phaseReal;
+            double im = sample * phaseImaginary;
+            historyReal[historyIndex] = historyReal[historyIndex + taps] = re;
+            historyImaginary[historyIndex] = historyImaginary[historyIndex + taps] = im;
+            historyIndex = (historyIndex + 1) % taps;
+
+            double pr = phaseReal * stepReal - phaseImaginary * stepImaginary;
+            phaseImaginary = phaseReal * stepImaginary + phaseImaginary * stepReal;
+            phaseReal = pr;
+
+            // filter is evaluated only for the samples kept after decimation
+            if (++decimationCounter == decimation) {
+                decimationCounter = 0;
+
+                double sumReal = 0.0;
+                double sumImaginary = 0.0;
+                for (int j = 0; j < taps; j++) {
+                    sumReal += filter[j] * historyReal[historyIndex + j];
+                    sumImaginary += filter[j] * historyImaginary[historyIndex + j];
+                }
+                zoomReal[zoomIndex] = sumReal;
+                zoomImaginary[zoomIndex] = sumImaginary;
+                zoomIndex = (zoomIndex + 1) % fftSize;
+            }
+        }
+
+        // keep the phasor on the unit circle, rounding errors accumulate over long streams
+        double norm = Math.sqrt(phaseReal * phaseReal + phaseImaginary * phaseImaginary);
+        phaseReal /= norm;
+        phaseImaginary /= norm;
+
+        transform();
+    }
+
+    /**
+     * Apply the fft on the decimated ring, starting from the oldest sample
+     */
+    private void transform() {
+
+        for (int i = 0; i < fftSize; i++) {
+            int index = (zoomIndex + i) % fftSize;
+            realArray[i] = zoomReal[index] * window.get(i);
+            imaginaryArray[i] = zoomImaginary[index] * window.get(i);
+        }
+
+        // apply fft
+        plan.transform(realArray, imaginaryArray);
+
+        // swap halves so negative frequencies come first, then smooth data
+        int half = fftSize / 2;
+        for (int i = 0; i < fftSize; i++) {
+            int index = (i + half) % fftSize;
+            double re = realArray[index];
+            double im = imaginaryArray[index];
+            double magnitude = Math.sqrt(re * re + im * im) / fftSize;
+            smoothingData[i] =
+                    smoothingTimeConstant * smoothingData[i] +
+                            (1.0 - smoothingTimeConstant) * magnitude;
+        }
+
+        // convert to dB and clip between [0-255]
+        double factor = 255.0 / (decibels.max - decibels.min);
+        for (int i = 0; i < fftSize; i++) {
+            doubleFrequencyData[i] = 20.0 * Math.log10(smoothingData[i]);
+
+            int byteValue = (int) (factor * (doubleFrequencyData[i] - decibels.min));
+            byteFrequencyData[i] = Math.max(0, Math.min(255, byteValue));
+        }
+    }
+
+    /**
+     * Clear all filter, decimation and smoothing history, so the next
+     * buffer starts a fresh stream
+     */
+    public void reset() {
+        init();
+    }
+
+    /**
+     * Get frequency data in clipped range between [0,255]
+     *
+     * @return
+     */
+    public int[] getByteFrequencyData() {
+        return byteFrequencyData;
+    }
+
+    /**
+     * Get double frequency data representing magnitude
+     *
+     * @return
+     */
+    public double[] getDoubleFrequencyData() {
+        return doubleFrequencyData;
+    }
+
+    /**
+     * Get the frequency resolution between two neighbouring bins (Hz)
+     *
+     * @return
+     */
+    public double getResolution() {
+        return (double) sampleRate / decimation / fftSize;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public void setFftSize(int fftSize) {
+        this.fftSize = fftSize;
+        init();
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+        init();
+    }
+
+    public double getCenterFrequency() {
+        return centerFrequency;
+    }
+
+    public void setCenterFrequency(double centerFrequency) {
+        this.centerFrequency = centerFrequency;
+        init();
+    }
+
+    public double getBandwidth() {
+        return bandwidth;
+    }
+
+    public void setBandwidth(double bandwidth) {
+        this.bandwidth = bandwidth;
+        init();
+    }
+
+    public int getDecimation() {
+        return decimation;
+    }
+
+    public double getSmoothingTimeConstant() {
+        return smoothingTimeConstant;
+    }
+
+    public void setSmoothingTimeConstant(double smoothingTimeConstant) {
+        this.smoothingTimeConstant = smoothingTimeConstant;
+    }
+
+    public int getFrequencyBinCount() {
+        return fftSize;
+    }
+
+    public Range getDecibels() {
+        return decibels;
+    }
+
+    public void setDecibels(Range decibels) {
+        this.decibels = decibels;
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+}
@@ -0,0 +1,386 @@
+package com.slaviboy.analyser.batch;
+
+import com.slaviboy.analyser.Analyser;
+import com.slaviboy.analyser.Range;
+import com.slaviboy.analyser.io.MappedAudioReader;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line tool for offline analysis of long WAV files, that splits each file into chunks
+ * of frames and analyses the chunks in parallel. Frame k always starts at sample k * hop, so
+ * a chunk reads the samples before its first frame that overlap with the previous chunk. When
+ * smoothing is used, each chunk also analyses warm-up frames before its first frame, until the
+ * weight of the missing history drops below 1e-6 of the Analyser.MIN_DECIBELS magnitude, so
+ * even after a full scale history the values above MIN_DECIBELS match a single pass within
+ * 1e-5 dB.
+ * <p>
+ * The output has one row per frame, with either the spectrum in dB or the energy (dB) of the
+ * given bands. Rows are written in order, as CSV or as binary file with little-endian header
+ * and float32 values:
+ * "SPEC", version, sample rate, fft size, hop, columns, then for each frame: time, columns...
+ * <p>
+ * Usage: BatchAnalysis [options] input.wav...
+ * --fft N          fft size (default 1024)
+ * --hop N          samples between frames (default fft / 2)
+ * --smoothing X    smoothing time constant between [0-1) (default 0)
+ * --bands F1,F2,.. increasing band edges in Hz, the output has one column per band, with
+ *                  the energy of the smoothed magnitudes, and each band must span at least one bin
+ * --channel N      analysed channel (default 0)
+ * --format F       csv or bin (default csv)
+ * --output PATH    output directory (default next to the input)
+ * --threads N      worker threads (default number of cores)
+ * --chunk N        frames per chunk (default 2048)
+ */
+public class BatchAnalysis {
+
+    // public default static values
+    public static final int FFT_SIZE = 1024;
+    public static final int CHUNK_FRAMES = 2048;
+    public static final int BINARY_VERSION = 1;
+
+    private int fftSize = FFT_SIZE;
+    private int hopSize;
+    private double smoothingTimeConstant;
+    private double[] bands;
+    private int channel;
+    private boolean binary;
+    private File outputDirectory;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int chunkFrames = CHUNK_FRAMES;
+
+    public static void main(String[] args) {
+        BatchAnalysis batch = new BatchAnalysis();
+        try {
+            int first = batch.parse(args);
+            if (first >= args.length) {
+                throw new IllegalArgumentException("No input files");
+            }
+            for (int i = first; i < args.length; i++) {
+                if (args[i].startsWith("-")) {
+                    throw new IllegalArgumentException("Unknown option " + args[i] +
+                            ", options must be before the input files");
+                }
+            }
+            for (int i = first; i < args.length; i++) {
+                batch.analyse(new File(args[i]), System.err);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("I/O error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parse the options
+     *
+     * @param args
+     * @return index of the first input file
+     */
+    private int parse(String[] args) {
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--fft":
+                    fftSize = Integer.parseInt(value);
+                    break;
+                case "--hop":
+                    hopSize = Integer.parseInt(value);
+                    break;
+                case "--smoothing":
+                    smoothingTimeConstant = Double.parseDouble(value);
+                    break;
+                case "--bands":
+                    String[] values = value.split(",");
+                    bands = new double[values.length];
+                    for (int j = 0; j < values.length; j++) {
+                        bands[j] = Double.parseDouble(values[j]);
+                    }
+                    if (bands.length < 2) {
+                        throw new IllegalArgumentException("At least two band edges are required");
+                    }
+                    for (int j = 1; j < bands.length; j++) {
+                        if (bands[j] <= bands[j - 1]) {
+                            throw new IllegalArgumentException("Band edges must be increasing");
+                        }
+                    }
+                    break;
+                case "--channel":
+                    channel = Integer.parseInt(value);
+                    if (channel < 0) {
+                        throw new IllegalArgumentException("Channel must not be negative");
+                    }
+                    break;
+                case "--format":
+                    if (!value.equals("csv") && !value.equals("bin")) {
+                        throw new IllegalArgumentException("Unknown format " + value + ", expected csv or bin");
+                    }
+                    binary = value.equals("bin");
+                    break;
+                case "--output":
+                    outputDirectory = new File(value);
+                    break;
+                case "--threads":
+                    threads = Math.max(1, Integer.parseInt(value));
+                    break;
+                case "--chunk":
+                    chunkFrames = Math.max(1, Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (hopSize <= 0) {
+            hopSize = fftSize / 2;
+        }
+        if (smoothingTimeConstant < 0 || smoothingTimeConstant >= 1) {
+            throw new IllegalArgumentException("Smoothing must be between [0-1)");
+        }
+        return i;
+    }
+
+    /**
+     * Analyse one file, the chunks are submitted to the pool with limited number in flight,
+     * and the results are written in order as they complete
+     *
+     * @param input
+     * @param log   - stream for the progress and the frames/second report
+     * @throws IOException
+     */
+    public void analyse(File input, PrintStream log) throws IOException {
+
+        MappedAudioReader reader = new MappedAudioReader(input);
+        long frameCount = reader.getFrameCount() < fftSize ? 0 : (reader.getFrameCount() - fftSize) / hopSize + 1;
+        int sampleRate = reader.getSampleRate();
+        int channelCount = reader.getChannelCount();
+        reader.close();
+        if (channel >= channelCount) {
+            throw new IllegalArgumentException("Channel " + channel + " is not in " + input.getName() +
+                    " with " + channelCount + " channels");
+        }
+        int[] bandBins = getBandBins(sampleRate);
+
+        int columns = bands != null ? bands.length - 1 : fftSize / 2;
+        File directory = outputDirectory != null ? outputDirectory : input.getAbsoluteFile().getParentFile();
+        String name = input.getName().replaceFirst("\\.[^.]*$", "") + (binary ? ".spec" : ".csv");
+        File output = new File(directory, name);
+
+        // frames whose smoothing history still matters, before the first frame of each chunk,
+        // the history is weighted against the quietest magnitude in the decibel range
+        double weight = 1e-6 * Math.pow(10.0, Analyser.MIN_DECIBELS / 20.0);
+        int warmUp = smoothingTimeConstant > 0 ?
+                (int) Math.ceil(Math.log(weight) / Math.log(smoothingTimeConstant)) : 0;
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 1 << 16);
+        try {
+            writeHeader(out, sampleRate, columns);
+
+            ArrayDeque<Future<float[]>> pending = new ArrayDeque<>();
+            long nextChunk = 0;
+            while (nextChunk < frameCount || !pending.isEmpty()) {
+
+                // keep a limited number of chunks in flight, so the memory does not grow with the file
+                while (nextChunk < frameCount && pending.size() < threads * 2) {
+                    long first = nextChunk;
+                    long last = Math.min(frameCount, first + chunkFrames);
+                    pending.add(executor.submit(new Chunk(input, first, last, warmUp, columns, bandBins)));
+                    nextChunk = last;
+                }
+
+                float[] rows = pending.poll().get();
+                writeRows(out, rows, columns);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.println(String.format(Locale.US, "%s: %d frames in %.2fs, %.0f frames/s -> %s",
+                input.getName(), frameCount, seconds, frameCount / seconds, output.getPath()));
+    }
+
+    private void writeHeader(OutputStream out, int sampleRate, int columns) throws IOException {
+        if (binary) {
+            ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(new byte[]{'S', 'P', 'E', 'C'});
+            header.putInt(BINARY_VERSION);
+            header.putInt(sampleRate);
+            header.putInt(fftSize);
+            header.putInt(hopSize);
+            header.putInt(columns);
+            out.write(header.array());
+            return;
+        }
+
+        StringBuilder line = new StringBuilder("time");
+        for (int i = 0; i < columns; i++) {
+            line.append(',');
+            if (bands != null) {
+                line.append(format(bands[i])).append('-').append(format(bands[i + 1]));
+            } else {
+                line.append(format((double) i * sampleRate / fftSize));
+            }
+        }
+        line.append('\n');
+        out.write(line.toString().getBytes("US-ASCII"));
+    }
+
+    /**
+     * Write chunk result, each row starts with the frame time in seconds
+     *
+     * @param out
+     * @param rows
+     * @param columns
+     * @throws IOException
+     */
+    private void writeRows(OutputStream out, float[] rows, int columns) throws IOException {
+        int width = columns + 1;
+        if (binary) {
+            ByteBuffer buffer = ByteBuffer.allocate(rows.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.asFloatBuffer().put(rows);
+            out.write(buffer.array());
+            return;
+        }
+
+        StringBuilder line = new StringBuilder(width * 8);
+        for (int row = 0; row < rows.length; row += width) {
+            line.setLength(0);
+            line.append(format(rows[row]));
+            for (int i = 1; i < width; i++) {
+                line.append(',').append(format(rows[row + i]));
+            }
+            line.append('\n');
+            out.write(line.toString().getBytes("US-ASCII"));
+        }
+    }
+
+    /**
+     * Get the first bin of each band, the last value is the end of the last band
+     *
+     * @param sampleRate
+     * @return null if the output is the spectrum
+     */
+    private int[] getBandBins(int sampleRate) {
+        if (bands == null) {
+            return null;
+        }
+        int[] bins = new int[bands.length];
+        for (int i = 0; i < bands.length; i++) {
+            int bin = (int) Math.round(bands[i] * fftSize / sampleRate);
+            bins[i] = Math.max(0, Math.min(fftSize / 2, bin));
+        }
+
+        // empty band would have no energy, and -inf in the output
+        for (int i = 1; i < bins.length; i++) {
+            if (bins[i] <= bins[i - 1]) {
+                throw new IllegalArgumentException("Band " + format(bands[i - 1]) + "-" + format(bands[i]) +
+                        " Hz has no fft bins at " + sampleRate + " Hz with fft size " + fftSize);
+            }
+        }
+        return bins;
+    }
+
+    private static String format(double value) {
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "inf" : "-inf";
+        }
+        return String.format(Locale.US, "%.3f", value);
+    }
+
+    /**
+     * Task that analyses frames [first, last) with own analyser and own reader, the fft plans
+     * and windows are shared through the AnalyserCache
+     */
+    private class Chunk implements Callable<float[]> {
+
+        private File input;
+        private long first;
+        private long last;
+        private int warmUp;
+        private int columns;
+        private int[] bandBins;
+
+        Chunk(File input, long first, long last, int warmUp, int columns, int[] bandBins) {
+            this.input = input;
+            this.first = first;
+            this.last = last;
+            this.warmUp = warmUp;
+            this.columns = columns;
+            this.bandBins = bandBins;
+        }
+
+        @Override
+        public float[] call() throws IOException {
+
+            long start = Math.max(0, first - warmUp);
+            long samples = (last - 1 - start) * hopSize + fftSize;
+            // map only the samples of this chunk, frames are at most 8 channels of 4 bytes
+            MappedAudioReader reader = new MappedAudioReader(input,
+                    (int) Math.min(MappedAudioReader.WINDOW_SIZE, samples * 8 * 4));
+            try {
+                Analyser analyser = new Analyser(fftSize, reader.getSampleRate(),
+                        new Range(Analyser.MIN_DECIBELS, Analyser.MAX_DECIBELS), smoothingTimeConstant);
+
+                int width = columns + 1;
+                float[] rows = new float[(int) (last - first) * width];
+                for (long frame = start; frame < last; frame++) {
+                    reader.analyse(frame * hopSize, analyser, channel);
+                    if (frame < first) {
+                        continue;
+                    }
+
+                    int row = (int) (frame - first) * width;
+                    rows[row] = (float) ((double) frame * hopSize / reader.getSampleRate());
+                    if (bandBins == null) {
+                        double[] decibels = analyser.getDoubleFrequencyData();
+                        for (int i = 0; i < columns; i++) {
+                            rows[row + 1 + i] = (float) decibels[i];
+                        }
+                    } else {
+                        // the bands use the smoothed magnitudes, like the spectrum in dB
+                        double[] magnitudes = analyser.getSmoothedMagnitudeData();
+                        for (int b = 0; b < columns; b++) {
+                            double energy = 0.0;
+                            for (int i = bandBins[b]; i < bandBins[b + 1]; i++) {
+                                energy += magnitudes[i] * magnitudes[i];
+                            }
+                            rows[row + 1 + b] = (float) (10.0 * Math.log10(energy));
+                        }
+                    }
+                }
+                return rows;
+            } finally {
+                reader.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.slaviboy.analyser.filter;
+
+/**
+ * Streaming decimator by two, using half-band low-pass FIR filter. Every second
+ * coefficient of the half-band filter is zero, so only the non-zero taps are kept
+ * and the filter is evaluated only for the samples kept after the decimation.
+ * https://en.wikipedia.org/wiki/Half-band_filter
+ */
+public class HalfBandDecimator {
+
+    // public default static values
+    public static final int TAPS = 59;
+
+    private double center;           // center tap coefficient, always 0.5
+    private double[] coefficients;   // non-zero side coefficients, pairwise symmetric around the center
+    private double[] history;        // input samples (doubled for contiguous reads)
+    private int length;              // number of taps
+    private int index;               // next write position in the history
+    private boolean odd;             // if the next sample is the one that produces output
+    private double output;           // last decimated output
+
+    public HalfBandDecimator() {
+        this(TAPS);
+    }
+
+    /**
+     * @param taps - number of taps, should be 4 * n + 3 so the outer taps are not zero
+     */
+    public HalfBandDecimator(int taps) {
+        if (taps % 4 != 3) {
+            throw new IllegalArgumentException("Half-band filter taps must be 4 * n + 3");
+        }
+
+        double[] data = new LowPassFilter(taps, 0.25).getData();
+        int middle = taps / 2;
+        center = data[middle];
+        coefficients = new double[(middle + 1) / 2];
+        for (int i = 0; i < coefficients.length; i++) {
+            coefficients[i] = data[middle - 1 - 2 * i];
+        }
+
+        length = taps;
+        history = new double[taps * 2];
+    }
+
+    /**
+     * Push one sample to the filter
+     *
+     * @param sample
+     * @return true if decimated output is available, using getOutput()
+     */
+    public boolean process(double sample) {
+
+        history[index] = history[index + length] = sample;
+        index = (index + 1) % length;
+
+        odd = !odd;
+        if (odd) {
+            return false;
+        }
+
+        // oldest sample is at index, center tap is in the middle of the window
+        int middle = index + length / 2;
+        double sum = center * history[middle];
+        for (int i = 0; i < coefficients.length; i++) {
+            int offset = 2 * i + 1;
+            sum += coefficients[i] * (history[middle - offset] + history[middle + offset]);
+        }
+        output = sum;
+        return true;
+    }
+
+    public double getOutput() {
+        return output;
+    }
+
+    public void reset() {
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0.0;
+        }
+        index = 0;
+        odd = false;
+        output = 0.0;
+    }
+}
@@ -0,0 +1,58 @@
+package com.slaviboy.analyser.filter;
+
+/**
+ * Windowed-sinc low-pass FIR filter implementation for Java, the sinc
+ * kernel is shaped by Blackman window and normalized to unity DC gain
+ * https://en.wikipedia.org/wiki/Sinc_filter
+ */
+public class LowPassFilter {
+
+    protected double[] data;
+
+    /**
+     * @param length - number of taps, odd value keeps the filter symmetric around the center tap
+     * @param cutoff - cutoff frequency as fraction of the sample rate, between (0, 0.5]
+     */
+    public LowPassFilter(int length, double cutoff) {
+        data = new double[length];
+
+        int N = length;
+        double center = (N - 1) / 2.0;
+        double sum = 0.0;
+        for (int i = 0; i < N; i++) {
+            double x = i - center;
+            double sinc = (x == 0) ? 2.0 * cutoff : Math.sin(2.0 * Math.PI * cutoff * x) / (Math.PI * x);
+            double f = (N > 1) ? 6.283185307179586 * i / (N - 1) : 0.0;
+            data[i] = sinc * (0.42 - 0.5 * Math.cos(f) + 0.08 * Math.cos(2 * f));
+            sum += data[i];
+        }
+
+        // unity gain for the pass band
+        for (int i = 0; i < N; i++) {
+            data[i] /= sum;
+        }
+    }
+
+    /**
+     * Get filter coefficient, on given index
+     *
+     * @param index
+     * @return
+     */
+    public double get(int index) {
+        return data[index];
+    }
+
+    /**
+     * Get the whole filter coefficients as array
+     *
+     * @return
+     */
+    public double[] getData() {
+        return data;
+    }
+
+    public int getLength() {
+        return data.length;
+    }
+}
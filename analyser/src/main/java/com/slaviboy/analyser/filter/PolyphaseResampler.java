@@ -0,0 +1,158 @@
+package com.slaviboy.analyser.filter;
+
+/**
+ * Streaming sample rate converter for rational ratios L/M, using polyphase FIR filter. The
+ * low-pass prototype runs at L times the input rate, and is split into L phases, so each
+ * output sample needs only the taps of one phase and the zeros of the upsampling are never
+ * multiplied. The phases are precomputed and the history is kept in a ring, so processing
+ * blocks does not allocate.
+ * <p>
+ * It can sit in front of the Analyser, so inputs with different rates are all analysed at one
+ * rate and share the same frequency tables and cached configurations:
+ * int count = resampler.process(input, 0, length, output, 0);
+ * analyser.setAudioBuffer(output, 0, count);
+ * https://en.wikipedia.org/wiki/Sample-rate_conversion
+ */
+public class PolyphaseResampler {
+
+    // public default static values
+    public static final int TAPS_PER_PHASE = 32;
+    public static final double CUTOFF_FACTOR = 0.9;
+
+    private int inputRate;         // sample rate of the input (Hz)
+    private int outputRate;        // sample rate of the output (Hz)
+    private int up;                // interpolation factor L
+    private int down;              // decimation factor M
+    private int tapsPerPhase;      // number of taps in each phase
+
+    private double[][] phases;     // coefficients of each phase, ordered from the oldest to the latest sample
+    private double[] history;      // latest input samples (doubled for contiguous reads)
+    private int index;             // next write position in the history, also the oldest sample
+    private int phase;             // phase of the next output, between [0, L) while an output is due
+
+    public PolyphaseResampler(int inputRate, int outputRate) {
+        this(inputRate, outputRate, TAPS_PER_PHASE);
+    }
+
+    /**
+     * @param inputRate    - sample rate of the input (Hz)
+     * @param outputRate   - sample rate of the output (Hz)
+     * @param tapsPerPhase - number of taps for each output sample, more taps give sharper cutoff
+     */
+    public PolyphaseResampler(int inputRate, int outputRate, int tapsPerPhase) {
+        if (inputRate <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("Sample rates must be positive");
+        }
+        if (tapsPerPhase < 1) {
+            throw new IllegalArgumentException("At least one tap per phase is required");
+        }
+
+        int divisor = gcd(inputRate, outputRate);
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.up = outputRate / divisor;
+        this.down = inputRate / divisor;
+        this.tapsPerPhase = tapsPerPhase;
+
+        // prototype at the upsampled rate, cutoff below the lower of the two nyquist frequencies
+        int taps = up * tapsPerPhase;
+        double cutoff = CUTOFF_FACTOR * 0.5 / Math.max(up, down);
+        double[] prototype = new LowPassFilter(taps, cutoff).getData();
+
+        // split into phases, the gain of L makes up for the zeros inserted by the upsampling
+        phases = new double[up][tapsPerPhase];
+        for (int p = 0; p < up; p++) {
+            for (int j = 0; j < tapsPerPhase; j++) {
+                int tap = p + (tapsPerPhase - 1 - j) * up;
+                phases[p][j] = prototype[tap] * up;
+            }
+        }
+
+        history = new double[tapsPerPhase * 2];
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Resample block of input samples, the output array should have room for at least
+     * getMaxOutputLength(length) samples
+     *
+     * @param input
+     * @param inputOffset
+     * @param length       - number of input samples
+     * @param output
+     * @param outputOffset
+     * @return number of output samples
+     */
+    public int process(float[] input, int inputOffset, int length, float[] output, int outputOffset) {
+        int count = 0;
+        for (int i = inputOffset; i < inputOffset + length; i++) {
+
+            history[index] = history[index + tapsPerPhase] = input[i];
+            index = (index + 1) % tapsPerPhase;
+
+            // all outputs that fall between this input sample and the next one
+            while (phase < up) {
+                double[] coefficients = phases[phase];
+                double sum = 0.0;
+                for (int j = 0; j < tapsPerPhase; j++) {
+                    sum += coefficients[j] * history[index + j];
+                }
+                output[outputOffset + count++] = (float) sum;
+                phase += down;
+            }
+            phase -= up;
+        }
+        return count;
+    }
+
+    /**
+     * Get the maximum number of output samples for given number of input samples
+     *
+     * @param length
+     * @return
+     */
+    public int getMaxOutputLength(int length) {
+        return (int) (((long) length * up + down - 1) / down) + 1;
+    }
+
+    /**
+     * Get the delay of the filter in output samples
+     *
+     * @return
+     */
+    public double getDelay() {
+        return (up * tapsPerPhase - 1) / 2.0 / down;
+    }
+
+    public void reset() {
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0.0;
+        }
+        index = 0;
+        phase = 0;
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    public int getUp() {
+        return up;
+    }
+
+    public int getDown() {
+        return down;
+    }
+}
@@ -0,0 +1,230 @@
+package com.slaviboy.analyser.io;
+
+import com.slaviboy.analyser.Analyser;
+import com.slaviboy.wav.WavFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reader for large WAV or raw PCM files, for offline analysis. Instead of copying the file
+ * into float arrays, a window of the file is memory mapped and frames are exposed as views
+ * over the mapping, which the Analyser decodes straight into its fft input. Only the mapped
+ * window is kept in memory, when a requested frame range is outside of it the window slides
+ * forward, so multi-hour recordings are processed without loading the whole file.
+ * <p>
+ * There is no explicit unmap in the public API, the previous window is released when it is
+ * garbage collected.
+ */
+public class MappedAudioReader {
+
+    // public default static values
+    public static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private File file;                  // the WAV or raw PCM file
+    private int sampleRate;             // sample rate (Hz), from the header for WAV files
+    private int encoding;               // one of the WavFormat.ENCODING_PCM_* constants
+    private int channelCount;           // number of interleaved channels
+    private ByteOrder byteOrder;        // byte order of the samples
+    private int frameSize;              // bytes per frame, for all channels
+    private int windowSize;             // maximum size of the mapped window in bytes
+
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;        // channel used for mapping
+    private long dataOffset;            // position of the first sample in the file
+    private long frameCount;            // number of frames in the file
+
+    private MappedByteBuffer mapped;    // current mapped window
+    private long mappedStart;           // first frame in the mapped window
+    private long mappedEnd;             // last frame (exclusive) in the mapped window
+
+    /**
+     * Reader for WAV file, the format is read from the header
+     *
+     * @param file
+     * @throws IOException
+     */
+    public MappedAudioReader(File file) throws IOException {
+        this(file, WINDOW_SIZE);
+    }
+
+    /**
+     * @param file
+     * @param windowSize - maximum size of the mapped window in bytes
+     * @throws IOException
+     */
+    public MappedAudioReader(File file, int windowSize) throws IOException {
+        this.file = file;
+        this.windowSize = windowSize;
+        this.byteOrder = ByteOrder.LITTLE_ENDIAN;
+        open();
+        try {
+            WavFormat format = WavFormat.read(channel);
+            sampleRate = format.getSampleRate();
+            encoding = format.getEncoding();
+            channelCount = format.getChannelCount();
+            frameSize = format.getFrameSize();
+            dataOffset = format.getDataOffset();
+            frameCount = format.getDataSize() / frameSize;
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reader for raw PCM file without header
+     *
+     * @param file
+     * @param sampleRate
+     * @param encoding     - one of the WavFormat.ENCODING_PCM_* constants
+     * @param channelCount - number of interleaved channels
+     * @param byteOrder
+     * @throws IOException
+     */
+    public MappedAudioReader(File file, int sampleRate, int encoding, int channelCount,
+                             ByteOrder byteOrder) throws IOException {
+        this(file, sampleRate, encoding, channelCount, byteOrder, WINDOW_SIZE);
+    }
+
+    /**
+     * Reader for raw PCM file without header
+     *
+     * @param file
+     * @param sampleRate
+     * @param encoding     - one of the WavFormat.ENCODING_PCM_* constants
+     * @param channelCount - number of interleaved channels
+     * @param byteOrder
+     * @param windowSize   - maximum size of the mapped window in bytes
+     * @throws IOException
+     */
+    public MappedAudioReader(File file, int sampleRate, int encoding, int channelCount,
+                             ByteOrder byteOrder, int windowSize) throws IOException {
+        this.file = file;
+        this.windowSize = windowSize;
+        this.sampleRate = sampleRate;
+        this.encoding = encoding;
+        this.channelCount = channelCount;
+        this.byteOrder = byteOrder;
+        this.frameSize = WavFormat.getBytesPerSample(encoding) * channelCount;
+        open();
+        dataOffset = 0;
+        frameCount = channel.size() / frameSize;
+    }
+
+    private void open() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "r");
+        channel = randomAccessFile.getChannel();
+        mappedStart = 0;
+        mappedEnd = 0;
+    }
+
+    /**
+     * Get view over given frames, without copying. The returned buffer is the mapped
+     * window positioned at the first requested frame, it is valid until the next call
+     * and its position should not be relied on after that.
+     *
+     * @param frame - index of the first frame
+     * @param count - number of frames that should be accessible after the position
+     * @return
+     * @throws IOException
+     */
+    public ByteBuffer getFrames(long frame, int count) throws IOException {
+
+        if (frame < 0 || count < 0 || frame + count > frameCount) {
+            throw new IllegalArgumentException("Frames [" + frame + ", " + (frame + count) +
+                    ") are outside of the file with " + frameCount + " frames");
+        }
+
+        // slide the window, so it starts at the requested frame
+        if (mapped == null || frame < mappedStart || frame + count > mappedEnd) {
+            long frames = Math.max(count, windowSize / frameSize);
+            frames = Math.min(frames, frameCount - frame);
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + frame * frameSize, frames * frameSize);
+            mapped.order(byteOrder);
+            mappedStart = frame;
+            mappedEnd = frame + frames;
+        }
+
+        mapped.position((int) ((frame - mappedStart) * frameSize));
+        return mapped;
+    }
+
+    /**
+     * Pass fftSize frames starting from given frame to the analyser, the samples are decoded
+     * directly from the mapped file into the fft input. The fft size that the analyser applies
+     * on this frame is used, so a pending size change is already taken into account.
+     *
+     * @param frame    - index of the first frame
+     * @param analyser
+     * @param channel  - index of the analysed channel
+     * @throws IOException
+     */
+    public void analyse(long frame, Analyser analyser, int channel) throws IOException {
+        ByteBuffer buffer = getFrames(frame, analyser.getPendingFftSize());
+        analyser.setAudioBuffer(buffer, encoding, channelCount, channel);
+    }
+
+    /**
+     * Decode frames into float array in range [-1,1], for consumers that need the samples
+     * as floats, the channels are mixed down to mono
+     *
+     * @param frame  - index of the first frame
+     * @param out    - output array
+     * @param offset - position in the output array
+     * @param length - number of frames to decode
+     * @throws IOException
+     */
+    public void read(long frame, float[] out, int offset, int length) throws IOException {
+
+        ByteBuffer buffer = getFrames(frame, length);
+        WavFormat.decodeMono(buffer, buffer.position(), length, encoding, channelCount, out, offset);
+    }
+
+    /**
+     * Close the file, the mapped window is released when it is garbage collected
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        mapped = null;
+        if (randomAccessFile != null) {
+            randomAccessFile.close();
+            randomAccessFile = null;
+        }
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getEncoding() {
+        return encoding;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * Get the duration of the recording in seconds
+     *
+     * @return
+     */
+    public double getDuration() {
+        return (double) frameCount / sampleRate;
+    }
+}
@@ -0,0 +1,642 @@
+package com.slaviboy.analyser.io;
+
+import com.slaviboy.analyser.Range;
+import com.slaviboy.analyser.SpectrumFrame;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Append-only store for the analyser output, so spectra from hours ago can be read without
+ * analysing the audio again. The archive is a directory of segment files, each with a header
+ * and fixed number of fixed-size records: time (long, ms) followed by the bins quantized to
+ * 8 or 16 bits over the decibels range. Because the records have fixed size, any frame and any
+ * range of bins is at a known offset, and reads are slices of the mapped segment files.
+ * <p>
+ * Every INDEX_INTERVAL frames the time and the frame number are added to a sparse index, that
+ * is kept in memory and appended to the index file. Finding a time is a binary search in the
+ * index, followed by a binary search over at most INDEX_INTERVAL records. The times must not
+ * decrease. Frames are written in batches, and are visible to the readers after flush().
+ * The segments are mapped in chunks of about MAP_CHUNK_SIZE bytes, so after a flush only the
+ * last chunk of the written segment is mapped again. Only the MAPPED_CHUNKS most recently used
+ * chunks are kept, so reading a long archive does not keep all of it mapped.
+ * <p>
+ * Segment header, little-endian: "SPGA", version, fft size, sample rate, bin count, min dB,
+ * max dB, bytes per bin, frames per segment, padded to HEADER_SIZE bytes.
+ */
+public class SpectrogramArchive {
+
+    // public default static values
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int FRAMES_PER_SEGMENT = 65536;
+    public static final int INDEX_INTERVAL = 64;
+    public static final int BATCH_SIZE = 32;
+    public static final int MAP_CHUNK_SIZE = 4 * 1024 * 1024;
+    public static final int MAPPED_CHUNKS = 8;
+
+    private static final String SEGMENT_FORMAT = "segment_%06d.spa";
+    private static final String INDEX_FILE = "index.spi";
+
+    private File directory;                          // directory with the segment and index files
+    private int fftSize;                             // fft size of the archived frames
+    private int sampleRate;                          // sample rate of the archived frames (Hz)
+    private int binCount;                            // number of bins in each record
+    private Range decibels;                          // decibels range of the quantization
+    private int bytesPerBin;                         // 1 for 8 bit and 2 for 16 bit quantization
+    private int framesPerSegment;                    // number of records in each segment
+    private int recordSize;                          // bytes in one record
+    private int chunkFrames;                         // number of records in each mapped chunk
+    private int chunksPerSegment;                    // number of mapped chunks in each segment
+
+    private long frameCount;                         // number of flushed frames
+    private long lastTime;                           // time of the latest appended frame
+    private long[] indexTimes;                       // times of the indexed frames
+    private long[] indexFrames;                      // numbers of the indexed frames
+    private int indexCount;                          // number of entries in the index
+
+    private ChunkMap chunks;                         // recently used mapped chunks, by chunk number
+    private FileChannel segmentChannel;              // channel of the segment that is written
+    private FileChannel indexChannel;                // channel of the index file
+    private ByteBuffer batch;                        // records that are not written yet
+    private int batchFrames;                         // number of records in the batch
+    private ByteBuffer indexEntry;                   // buffer for writing one index entry
+
+    /**
+     * Open existing archive with the configuration stored in its segments
+     *
+     * @param directory
+     * @throws IOException
+     */
+    public SpectrogramArchive(File directory) throws IOException {
+        this(directory, 0, 0, 0, null, false, FRAMES_PER_SEGMENT);
+    }
+
+    /**
+     * Open the archive or create new one, existing archive must have the same configuration
+     *
+     * @param directory        - directory with the segment and index files
+     * @param fftSize          - fft size of the archived frames
+     * @param sampleRate       - sample rate of the archived frames (Hz)
+     * @param binCount         - number of bins in each frame
+     * @param decibels         - decibels range of the quantization
+     * @param sixteenBit       - quantize the bins to 16 bits, instead of 8 bits
+     * @param framesPerSegment - number of frames in each segment file
+     * @throws IOException
+     */
+    public SpectrogramArchive(File directory, int fftSize, int sampleRate, int binCount, Range decibels,
+                              boolean sixteenBit, int framesPerSegment) throws IOException {
+        if (framesPerSegment <= 0) {
+            throw new IllegalArgumentException("Frames per segment must be positive");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        this.directory = directory;
+        this.fftSize = fftSize;
+        this.sampleRate = sampleRate;
+        this.binCount = binCount;
+        this.decibels = decibels != null ? new Range(decibels) : null;
+        this.bytesPerBin = sixteenBit ? 2 : 1;
+        this.framesPerSegment = framesPerSegment;
+        this.chunks = new ChunkMap(MAPPED_CHUNKS);
+        this.indexTimes = new long[16];
+        this.indexFrames = new long[16];
+        this.indexEntry = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        this.lastTime = Long.MIN_VALUE;
+
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().startsWith("segment_") && file.getName().endsWith(".spa");
+            }
+        });
+        Arrays.sort(files);
+        if (files.length > 0) {
+            readHeader(files[0], decibels == null);
+        } else if (decibels == null) {
+            throw new IOException("No archive in " + directory);
+        }
+        if (this.binCount <= 0) {
+            throw new IllegalArgumentException("Bin count must be positive");
+        }
+
+        // the offsets in a segment are int, so the whole segment must be smaller than 2GB
+        long recordBytes = 8 + (long) this.binCount * bytesPerBin;
+        if (HEADER_SIZE + this.framesPerSegment * recordBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment of " + this.framesPerSegment + " frames with " +
+                    this.binCount + " bins is larger than 2GB");
+        }
+        recordSize = (int) recordBytes;
+        chunkFrames = Math.max(1, Math.min(this.framesPerSegment, MAP_CHUNK_SIZE / recordSize));
+        chunksPerSegment = (this.framesPerSegment + chunkFrames - 1) / chunkFrames;
+
+        // every segment before the last one is full, the last one may end with a partial record
+        int segmentCount = files.length;
+        if (segmentCount > 0) {
+            long size = files[segmentCount - 1].length();
+            frameCount = (long) (segmentCount - 1) * this.framesPerSegment + (size - HEADER_SIZE) / recordSize;
+        }
+        if (frameCount > 0) {
+            lastTime = getTime(frameCount - 1);
+        }
+
+        batch = ByteBuffer.allocateDirect(recordSize * BATCH_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readIndex();
+    }
+
+    private void readHeader(File file, boolean useStored) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            randomAccessFile.getChannel().read(header, 0);
+        } finally {
+            randomAccessFile.close();
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.get() != 'S' || header.get() != 'P' ||
+                header.get() != 'G' || header.get() != 'A') {
+            throw new IOException(file + " is not a spectrogram segment");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+        int storedFftSize = header.getInt();
+        int storedSampleRate = header.getInt();
+        int storedBinCount = header.getInt();
+        Range storedDecibels = new Range(header.getInt(), header.getInt());
+        int storedBytesPerBin = header.getInt();
+        int storedFramesPerSegment = header.getInt();
+
+        if (!useStored && (storedFftSize != fftSize || storedSampleRate != sampleRate ||
+                storedBinCount != binCount || storedDecibels.min != decibels.min ||
+                storedDecibels.max != decibels.max || storedBytesPerBin != bytesPerBin ||
+                storedFramesPerSegment != framesPerSegment)) {
+            throw new IllegalArgumentException("Archive in " + directory + " has different configuration");
+        }
+        fftSize = storedFftSize;
+        sampleRate = storedSampleRate;
+        binCount = storedBinCount;
+        decibels = storedDecibels;
+        bytesPerBin = storedBytesPerBin;
+        framesPerSegment = storedFramesPerSegment;
+    }
+
+    /**
+     * Read the index file, and add the entries that are missing after a crash
+     *
+     * @throws IOException
+     */
+    private void readIndex() throws IOException {
+        indexChannel = new RandomAccessFile(new File(directory, INDEX_FILE), "rw").getChannel();
+        ByteBuffer entries = ByteBuffer.allocate((int) Math.min(indexChannel.size(), Integer.MAX_VALUE))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        indexChannel.read(entries, 0);
+        entries.flip();
+        while (entries.remaining() >= 16) {
+            long time = entries.getLong();
+            long frame = entries.getLong();
+            if (frame >= frameCount || frame != (long) indexCount * INDEX_INTERVAL) {
+                break;
+            }
+            addIndex(time, frame);
+        }
+
+        // drop the partial or invalid entries, and index the frames written after them
+        indexChannel.truncate((long) indexCount * 16);
+        indexChannel.position(indexChannel.size());
+        for (long frame = (long) indexCount * INDEX_INTERVAL; frame < frameCount; frame += INDEX_INTERVAL) {
+            writeIndex(getTime(frame), frame);
+        }
+    }
+
+    private void addIndex(long time, long frame) {
+        if (indexCount == indexTimes.length) {
+            indexTimes = Arrays.copyOf(indexTimes, indexCount * 2);
+            indexFrames = Arrays.copyOf(indexFrames, indexCount * 2);
+        }
+        indexTimes[indexCount] = time;
+        indexFrames[indexCount] = frame;
+        indexCount++;
+    }
+
+    private void writeIndex(long time, long frame) throws IOException {
+        addIndex(time, frame);
+        indexEntry.clear();
+        indexEntry.putLong(time).putLong(frame).flip();
+        while (indexEntry.hasRemaining()) {
+            indexChannel.write(indexEntry);
+        }
+    }
+
+    /**
+     * Append frame with the current time
+     *
+     * @param frame
+     * @throws IOException
+     */
+    public void append(SpectrumFrame frame) throws IOException {
+        append(frame, System.currentTimeMillis());
+    }
+
+    /**
+     * Append frame, the bins are quantized over the decibels range of the archive
+     *
+     * @param frame
+     * @param time  - time of the frame (ms), not before the time of the previous frame
+     * @throws IOException
+     */
+    public synchronized void append(SpectrumFrame frame, long time) throws IOException {
+        if (frame.getFrequencyBinCount() != binCount) {
+            throw new IllegalArgumentException("Frame has " + frame.getFrequencyBinCount() +
+                    " bins, the archive has " + binCount);
+        }
+        if (time < lastTime) {
+            throw new IllegalArgumentException("Time " + time + " is before the previous frame " + lastTime);
+        }
+        lastTime = time;
+
+        int levels = bytesPerBin == 2 ? 0xFFFF : 0xFF;
+        double factor = levels / (double) (decibels.max - decibels.min);
+        double[] data = frame.getDoubleFrequencyData();
+        batch.putLong(time);
+        for (int i = 0; i < binCount; i++) {
+            double value = (data[i] - decibels.min) * factor;
+            int quantized = value > 0.0 ? (int) Math.min(levels, Math.round(value)) : 0;
+            if (bytesPerBin == 2) {
+                batch.putShort((short) quantized);
+            } else {
+                batch.put((byte) quantized);
+            }
+        }
+        batchFrames++;
+
+        // records are written in batches, that never cross the end of a segment
+        if (batchFrames == BATCH_SIZE || (frameCount + batchFrames) % framesPerSegment == 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the appended frames, so they are visible to the readers
+     *
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        if (batchFrames == 0) {
+            return;
+        }
+        int segment = (int) (frameCount / framesPerSegment);
+        if (segmentChannel == null || frameCount % framesPerSegment == 0) {
+            openSegment(segment);
+        }
+
+        batch.flip();
+        while (batch.hasRemaining()) {
+            segmentChannel.write(batch);
+        }
+
+        // the times of the indexed frames are taken from the batch, before it is cleared
+        long first = frameCount;
+        frameCount += batchFrames;
+        for (long frame = (first + INDEX_INTERVAL - 1) / INDEX_INTERVAL * INDEX_INTERVAL;
+             frame < frameCount; frame += INDEX_INTERVAL) {
+            writeIndex(batch.getLong((int) (frame - first) * recordSize), frame);
+        }
+        batch.clear();
+        batchFrames = 0;
+    }
+
+    /**
+     * Open the segment for writing, new segment gets the header
+     *
+     * @param segment
+     * @throws IOException
+     */
+    private void openSegment(int segment) throws IOException {
+        if (segmentChannel != null) {
+            segmentChannel.close();
+        }
+        File file = new File(directory, String.format(Locale.US, SEGMENT_FORMAT, segment + 1));
+        segmentChannel = new RandomAccessFile(file, "rw").getChannel();
+
+        long offset = HEADER_SIZE + frameCount % framesPerSegment * recordSize;
+        if (offset == HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put((byte) 'S').put((byte) 'P').put((byte) 'G').put((byte) 'A');
+            header.putInt(VERSION);
+            header.putInt(fftSize);
+            header.putInt(sampleRate);
+            header.putInt(binCount);
+            header.putInt(decibels.min);
+            header.putInt(decibels.max);
+            header.putInt(bytesPerBin);
+            header.putInt(framesPerSegment);
+            header.position(HEADER_SIZE).flip();
+            segmentChannel.write(header, 0);
+        }
+
+        // partial record after a crash is overwritten
+        segmentChannel.truncate(offset);
+        segmentChannel.position(offset);
+    }
+
+    /**
+     * Get the mapped chunk that contains the frame, the last chunk of the segment that is
+     * still written is mapped again when the frame is after its mapped part
+     *
+     * @param frame
+     * @return
+     * @throws IOException
+     */
+    private MappedByteBuffer map(long frame) throws IOException {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IllegalArgumentException("Frame " + frame + " is outside of the archive with " +
+                    frameCount + " frames");
+        }
+        long segment = frame / framesPerSegment;
+        int first = (int) (frame % framesPerSegment) / chunkFrames * chunkFrames;
+        long chunk = segment * chunksPerSegment + first / chunkFrames;
+
+        MappedChunk mapped = chunks.get(chunk);
+        if (mapped == null || frame % framesPerSegment - first >= mapped.frames) {
+            long available = frameCount - segment * framesPerSegment - first;
+            int frames = (int) Math.min(Math.min(chunkFrames, framesPerSegment - first), available);
+            File file = new File(directory, String.format(Locale.US, SEGMENT_FORMAT, segment + 1));
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            MappedByteBuffer buffer;
+            try {
+                buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + (long) first * recordSize, (long) frames * recordSize);
+            } finally {
+                randomAccessFile.close();
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            mapped = new MappedChunk(buffer, frames);
+            chunks.put(chunk, mapped);
+        }
+        return mapped.buffer;
+    }
+
+    /**
+     * Get the number of chunks that are kept mapped
+     *
+     * @return
+     */
+    synchronized int getMappedChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * Get the position of the frame record in its mapped chunk
+     *
+     * @param frame
+     * @return
+     */
+    private int getOffset(long frame) {
+        return (int) (frame % framesPerSegment % chunkFrames * recordSize);
+    }
+
+    /**
+     * Get the time (ms) of the frame
+     *
+     * @param frame
+     * @return
+     * @throws IOException
+     */
+    public synchronized long getTime(long frame) throws IOException {
+        return map(frame).getLong(getOffset(frame));
+    }
+
+    /**
+     * Find the first frame with time that is not before given time
+     *
+     * @param time - time (ms)
+     * @return frame number, or the frame count if all frames are before the time
+     * @throws IOException
+     */
+    public synchronized long findFrame(long time) throws IOException {
+
+        // last indexed frame before the time, the frame is between it and the next indexed frame
+        int low = 0;
+        int high = indexCount - 1;
+        int entry = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (indexTimes[middle] < time) {
+                entry = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        long first = entry < 0 ? 0 : indexFrames[entry];
+        long last = entry + 1 < indexCount ? indexFrames[entry + 1] : frameCount;
+        while (first < last) {
+            long middle = (first + last) >>> 1;
+            if (getTime(middle) < time) {
+                first = middle + 1;
+            } else {
+                last = middle;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Get the quantized bins [fromBin, toBin) of the frame, as read-only slice of the mapped
+     * segment, without copying or decoding
+     *
+     * @param frame
+     * @param fromBin
+     * @param toBin
+     * @return
+     * @throws IOException
+     */
+    public synchronized ByteBuffer getBins(long frame, int fromBin, int toBin) throws IOException {
+        checkBins(fromBin, toBin);
+        ByteBuffer buffer = map(frame).asReadOnlyBuffer();
+        int offset = getOffset(frame) + 8;
+        buffer.limit(offset + toBin * bytesPerBin);
+        buffer.position(offset + fromBin * bytesPerBin);
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Read the bins [fromBin, toBin) of the frame in dB
+     *
+     * @param frame
+     * @param fromBin
+     * @param toBin
+     * @param out     - output array
+     * @param offset  - position in the output array
+     * @throws IOException
+     */
+    public synchronized void read(long frame, int fromBin, int toBin, double[] out, int offset) throws IOException {
+        checkBins(fromBin, toBin);
+        MappedByteBuffer mapped = map(frame);
+        int position = getOffset(frame) + 8 + fromBin * bytesPerBin;
+        double step = (double) (decibels.max - decibels.min) / (bytesPerBin == 2 ? 0xFFFF : 0xFF);
+        for (int i = fromBin; i < toBin; i++) {
+            int quantized;
+            if (bytesPerBin == 2) {
+                quantized = mapped.getShort(position) & 0xFFFF;
+            } else {
+                quantized = mapped.get(position) & 0xFF;
+            }
+            out[offset++] = decibels.min + quantized * step;
+            position += bytesPerBin;
+        }
+    }
+
+    /**
+     * Read the bins [fromBin, toBin) in dB of the frames between two times, the rows are
+     * written one after another to the output array
+     *
+     * @param fromTime - first time (ms), inclusive
+     * @param toTime   - last time (ms), exclusive
+     * @param fromBin  - first bin, inclusive
+     * @param toBin    - last bin, exclusive
+     * @param times    - output array for the frame times, its length is the maximum number of frames
+     * @param out      - output array with room for times.length * (toBin - fromBin) values
+     * @return number of read frames
+     * @throws IOException
+     */
+    public synchronized int read(long fromTime, long toTime, int fromBin, int toBin,
+                                 long[] times, double[] out) throws IOException {
+        long frame = findFrame(fromTime);
+        int count = 0;
+        while (count < times.length && frame < frameCount) {
+            long time = getTime(frame);
+            if (time >= toTime) {
+                break;
+            }
+            times[count] = time;
+            read(frame, fromBin, toBin, out, count * (toBin - fromBin));
+            count++;
+            frame++;
+        }
+        return count;
+    }
+
+    /**
+     * Read the whole frame, with the archive configuration and the frame number as sequence
+     *
+     * @param frame
+     * @param spectrumFrame - frame that receives the values
+     * @throws IOException
+     */
+    public synchronized void read(long frame, SpectrumFrame spectrumFrame) throws IOException {
+        spectrumFrame.setSequence(frame);
+        spectrumFrame.setFftSize(fftSize);
+        spectrumFrame.setSampleRate(sampleRate);
+        spectrumFrame.getDecibels().min = decibels.min;
+        spectrumFrame.getDecibels().max = decibels.max;
+        spectrumFrame.setBinCount(binCount);
+
+        double[] doubleData = spectrumFrame.getDoubleFrequencyData();
+        int[] byteData = spectrumFrame.getByteFrequencyData();
+        read(frame, 0, binCount, doubleData, 0);
+        double factor = 255.0 / (decibels.max - decibels.min);
+        for (int i = 0; i < binCount; i++) {
+            byteData[i] = Math.min(255, (int) (factor * (doubleData[i] - decibels.min)));
+        }
+    }
+
+    private void checkBins(int fromBin, int toBin) {
+        if (fromBin < 0 || toBin > binCount || fromBin > toBin) {
+            throw new IllegalArgumentException("Bins [" + fromBin + ", " + toBin +
+                    ") are outside of the range [0, " + binCount + ")");
+        }
+    }
+
+    /**
+     * Flush the appended frames and close the files
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        flush();
+        if (segmentChannel != null) {
+            segmentChannel.close();
+            segmentChannel = null;
+        }
+        indexChannel.close();
+        chunks.clear();
+    }
+
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getBinCount() {
+        return binCount;
+    }
+
+    public Range getDecibels() {
+        return decibels;
+    }
+
+    public int getBytesPerBin() {
+        return bytesPerBin;
+    }
+
+    public int getFramesPerSegment() {
+        return framesPerSegment;
+    }
+
+    /**
+     * Mapped part of a segment, the chunk of the written segment can have fewer frames
+     */
+    private static final class MappedChunk {
+
+        private final MappedByteBuffer buffer;
+        private final int frames;            // number of frames in the mapping
+
+        private MappedChunk(MappedByteBuffer buffer, int frames) {
+            this.buffer = buffer;
+            this.frames = frames;
+        }
+    }
+
+    /**
+     * Map in access order, that removes the least recently used chunk when the capacity is
+     * exceeded, the removed mapping is released when it is garbage collected
+     */
+    private static final class ChunkMap extends LinkedHashMap<Long, MappedChunk> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private ChunkMap(int capacity) {
+            super(capacity * 2, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, MappedChunk> eldest) {
+            return size() > capacity;
+        }
+    }
+}
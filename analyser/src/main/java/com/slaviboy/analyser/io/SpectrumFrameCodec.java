@@ -0,0 +1,364 @@
+package com.slaviboy.analyser.io;
+
+import com.slaviboy.analyser.Range;
+import com.slaviboy.analyser.SpectrumFrame;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compact binary format for spectrum frames, used for logging and sending the analyser output.
+ * The bins are quantized to 8 or 16 bits over the decibels range of the frame, and coded as
+ * the difference from the same bin in the previous frame. The differences are zigzag coded
+ * into varints made of 4-bit nibbles, so the small changes of a smoothed spectrum take half
+ * a byte, and runs of unchanged bins are written as one token, so steady and silent spectra
+ * take only a few bytes. Every key frame interval the frame is coded against zeros, so the decoder can
+ * start or recover from a lost frame.
+ * <p>
+ * Layout of a frame, big-endian:
+ * version (byte), flags (byte), sequence (long), capture time (long), fft size (int),
+ * sample rate (int), min dB (short), max dB (short), bin count (short),
+ * reference distance (varint, 0 for key frames), then tokens until all bins are coded:
+ * zigzag(delta) as nibble varint, or 0 followed by nibble varint (run - 1) for a run of
+ * unchanged bins. Nibble varints have 3 value bits and a continuation bit, high nibble first,
+ * and the last byte of a frame is padded with a zero nibble.
+ * <p>
+ * Encoding and decoding work on buffers supplied by the caller and do not allocate, unless
+ * the bin count changes. One codec instance should be used for one stream in each direction.
+ */
+public class SpectrumFrameCodec {
+
+    // public default static values
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int KEY_FRAME_INTERVAL = 40;
+
+    public static final int FLAG_KEY_FRAME = 1;
+    public static final int FLAG_16BIT = 2;
+
+    private boolean sixteenBit;            // if the bins are quantized to 16 instead of 8 bits
+    private int keyFrameInterval;          // number of frames between key frames, 0 for only the first
+    private int tolerance;                 // quantization steps a bin can change, without being sent
+
+    private int[] encoded;                 // quantized bins of the previous encoded frame
+    private long encodedSequence;          // sequence of the previous encoded frame
+    private int encodedFlags;              // flags of the previous encoded frame
+    private Range encodedDecibels;         // decibels range of the previous encoded frame
+    private int framesSinceKeyFrame;       // encoded frames since the last key frame
+
+    private int[] decoded;                 // quantized bins of the previous decoded frame
+    private long decodedSequence;          // sequence of the previous decoded frame
+    private int decodedFlags;              // flags of the previous decoded frame
+    private Range decodedDecibels;         // decibels range of the previous decoded frame
+    private boolean hasDecoded;            // if a frame was decoded, that can be used as reference
+
+    private int nibble;                    // nibble waiting to be written, or the byte with the nibble to be read
+    private boolean hasNibble;             // if there is a nibble waiting
+
+    public SpectrumFrameCodec() {
+        this(false, KEY_FRAME_INTERVAL);
+    }
+
+    /**
+     * @param sixteenBit       - quantize the bins to 16 bits, instead of 8 bits
+     * @param keyFrameInterval - number of frames between key frames, or 0 for only the first frame
+     */
+    public SpectrumFrameCodec(boolean sixteenBit, int keyFrameInterval) {
+        if (keyFrameInterval < 0) {
+            throw new IllegalArgumentException("Key frame interval must not be negative");
+        }
+        this.sixteenBit = sixteenBit;
+        this.keyFrameInterval = keyFrameInterval;
+        this.encoded = new int[0];
+        this.decoded = new int[0];
+        this.encodedDecibels = new Range(0, 0);
+        this.decodedDecibels = new Range(0, 0);
+    }
+
+    /**
+     * Get the maximum size of encoded frame with given number of bins
+     *
+     * @param binCount
+     * @return
+     */
+    public static int getMaxEncodedSize(int binCount) {
+        // reference distance takes at most 10 bytes, each bin at most 3 bytes, and the padding
+        return HEADER_SIZE + 10 + binCount * 3 + 1;
+    }
+
+    /**
+     * Encode the frame at the position of the buffer, the position is moved after the frame
+     *
+     * @param frame
+     * @param buffer - buffer with at least getMaxEncodedSize() bytes remaining
+     * @return number of written bytes
+     */
+    public int encode(SpectrumFrame frame, ByteBuffer buffer) {
+        int binCount = frame.getFrequencyBinCount();
+        if (binCount > 0xFFFF) {
+            throw new IllegalArgumentException("Frames with more than 65535 bins are not supported");
+        }
+        if (buffer.remaining() < getMaxEncodedSize(binCount)) {
+            throw new IllegalArgumentException("Buffer has " + buffer.remaining() +
+                    " bytes remaining, " + getMaxEncodedSize(binCount) + " are required");
+        }
+
+        Range decibels = frame.getDecibels();
+        int flags = sixteenBit ? FLAG_16BIT : 0;
+
+        // the reference is valid only with the same bins and quantization
+        boolean keyFrame = encoded.length != binCount || encodedFlags != flags ||
+                encodedDecibels.min != decibels.min || encodedDecibels.max != decibels.max ||
+                (keyFrameInterval > 0 && framesSinceKeyFrame >= keyFrameInterval);
+        if (keyFrame) {
+            if (encoded.length != binCount) {
+                encoded = new int[binCount];
+            } else {
+                clear(encoded);
+            }
+            flags |= FLAG_KEY_FRAME;
+            framesSinceKeyFrame = 0;
+        }
+        framesSinceKeyFrame++;
+
+        int start = buffer.position();
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) flags);
+        buffer.putLong(frame.getSequence());
+        buffer.putLong(frame.getCaptureTime());
+        buffer.putInt(frame.getFftSize());
+        buffer.putInt(frame.getSampleRate());
+        buffer.putShort((short) decibels.min);
+        buffer.putShort((short) decibels.max);
+        buffer.putShort((short) binCount);
+        buffer.order(order);
+        putVarint(buffer, keyFrame ? 0 : frame.getSequence() - encodedSequence);
+
+        int levels = sixteenBit ? 0xFFFF : 0xFF;
+        double factor = levels / (double) (decibels.max - decibels.min);
+        double[] data = frame.getDoubleFrequencyData();
+        int run = 0;
+        hasNibble = false;
+        for (int i = 0; i < binCount; i++) {
+
+            // -Infinity and NaN for empty bins are quantized to the minimum
+            double value = (data[i] - decibels.min) * factor;
+            int quantized = value > 0.0 ? (int) Math.min(levels, Math.round(value)) : 0;
+            int delta = quantized - encoded[i];
+
+            // changes within the tolerance are not sent, the reference stays what the decoder has
+            if (delta <= tolerance && delta >= -tolerance) {
+                run++;
+                continue;
+            }
+            if (run > 0) {
+                putNibble(buffer, 0);
+                putNibbles(buffer, run - 1);
+                run = 0;
+            }
+            encoded[i] = quantized;
+            putNibbles(buffer, (delta << 1) ^ (delta >> 31));
+        }
+        if (run > 0) {
+            putNibble(buffer, 0);
+            putNibbles(buffer, run - 1);
+        }
+        if (hasNibble) {
+            putNibble(buffer, 0);
+        }
+
+        encodedSequence = frame.getSequence();
+        encodedFlags = flags & ~FLAG_KEY_FRAME;
+        encodedDecibels.min = decibels.min;
+        encodedDecibels.max = decibels.max;
+        return buffer.position() - start;
+    }
+
+    /**
+     * Decode frame from the position of the buffer, the position is moved after the frame.
+     * The double data is restored with the quantization error, and the byte data is computed
+     * from it the same way the analyser does.
+     *
+     * @param buffer
+     * @param frame  - frame that receives the values
+     */
+    public void decode(ByteBuffer buffer, SpectrumFrame frame) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        int version = buffer.get();
+        int flags = buffer.get();
+        long sequence = buffer.getLong();
+        long captureTime = buffer.getLong();
+        int fftSize = buffer.getInt();
+        int sampleRate = buffer.getInt();
+        int min = buffer.getShort();
+        int max = buffer.getShort();
+        int binCount = buffer.getShort() & 0xFFFF;
+        buffer.order(order);
+        long distance = getVarint(buffer);
+
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported version " + version);
+        }
+
+        if ((flags & FLAG_KEY_FRAME) != 0) {
+            if (decoded.length != binCount) {
+                decoded = new int[binCount];
+            } else {
+                clear(decoded);
+            }
+        } else if (!hasDecoded || decoded.length != binCount || decodedFlags != (flags & FLAG_16BIT) ||
+                decodedDecibels.min != min || decodedDecibels.max != max ||
+                sequence - distance != decodedSequence) {
+            throw new IllegalStateException("Frame " + sequence + " references frame " +
+                    (sequence - distance) + ", that was not decoded");
+        }
+
+        // malformed frame leaves the reference invalid, until the next key frame
+        hasDecoded = false;
+        hasNibble = false;
+        for (int i = 0; i < binCount; ) {
+            int token = getNibbles(buffer);
+            if (token == 0) {
+                i += getNibbles(buffer) + 1;
+            } else {
+                decoded[i++] += (token >>> 1) ^ -(token & 1);
+            }
+        }
+
+        frame.setSequence(sequence);
+        frame.setCaptureTime(captureTime);
+        frame.setFftSize(fftSize);
+        frame.setSampleRate(sampleRate);
+        frame.getDecibels().min = min;
+        frame.getDecibels().max = max;
+        frame.setBinCount(binCount);
+
+        int levels = (flags & FLAG_16BIT) != 0 ? 0xFFFF : 0xFF;
+        double step = (double) (max - min) / levels;
+        double factor = 255.0 / (max - min);
+        double[] doubleData = frame.getDoubleFrequencyData();
+        int[] byteData = frame.getByteFrequencyData();
+        for (int i = 0; i < binCount; i++) {
+            doubleData[i] = min + decoded[i] * step;
+            byteData[i] = Math.min(255, (int) (factor * (doubleData[i] - min)));
+        }
+
+        hasDecoded = true;
+        decodedSequence = sequence;
+        decodedFlags = flags & FLAG_16BIT;
+        decodedDecibels.min = min;
+        decodedDecibels.max = max;
+    }
+
+    /**
+     * Forget the previous frames, so the next encoded frame is a key frame
+     * and the next decoded frame must be a key frame
+     */
+    public void reset() {
+        encoded = new int[0];
+        hasDecoded = false;
+    }
+
+    private static void clear(int[] array) {
+        for (int i = 0; i < array.length; i++) {
+            array[i] = 0;
+        }
+    }
+
+    private void putNibble(ByteBuffer buffer, int value) {
+        if (hasNibble) {
+            buffer.put((byte) (nibble << 4 | value));
+            hasNibble = false;
+        } else {
+            nibble = value;
+            hasNibble = true;
+        }
+    }
+
+    private void putNibbles(ByteBuffer buffer, int value) {
+        do {
+            int bits = value & 7;
+            value >>>= 3;
+            putNibble(buffer, value != 0 ? bits | 8 : bits);
+        } while (value != 0);
+    }
+
+    private int getNibble(ByteBuffer buffer) {
+        if (hasNibble) {
+            hasNibble = false;
+            return nibble & 0x0F;
+        }
+        nibble = buffer.get();
+        hasNibble = true;
+        return (nibble >> 4) & 0x0F;
+    }
+
+    private int getNibbles(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 3) {
+            int bits = getNibble(buffer);
+            value |= (bits & 7) << shift;
+            if ((bits & 8) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public boolean isSixteenBit() {
+        return sixteenBit;
+    }
+
+    public void setSixteenBit(boolean sixteenBit) {
+        this.sixteenBit = sixteenBit;
+    }
+
+    public int getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Set the number of quantization steps a bin can change without being sent, that makes
+     * the encoding lossy but removes the small noise in the spectrum from the output. The
+     * error of the decoded bins stays below (tolerance + 0.5) steps.
+     *
+     * @param tolerance
+     */
+    public void setTolerance(int tolerance) {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("Tolerance must not be negative");
+        }
+        this.tolerance = tolerance;
+    }
+
+    public int getKeyFrameInterval() {
+        return keyFrameInterval;
+    }
+
+    public void setKeyFrameInterval(int keyFrameInterval) {
+        this.keyFrameInterval = keyFrameInterval;
+    }
+}
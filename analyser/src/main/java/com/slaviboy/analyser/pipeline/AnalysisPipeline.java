@@ -0,0 +1,508 @@
+package com.slaviboy.analyser.pipeline;
+
+import com.slaviboy.analyser.Analyser;
+import com.slaviboy.analyser.FrameGovernor;
+import com.slaviboy.analyser.LatencyHistogram;
+import com.slaviboy.analyser.SpectrumFrame;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pipeline that separates the capture, the analysis and the publishing of the frames, so
+ * a slow fft or a slow listener never delays the next read from the microphone. The capture
+ * stage is the thread that calls submit(), it only copies the samples to a pooled buffer and
+ * offers it to the input queue. The analysis stage keeps the latest samples, runs the analyser
+ * and offers a snapshot of the result to the output queue, and the publish stage sends the
+ * frames to the listeners. Each of the two later stages runs on its own executor.
+ * <p>
+ * The queues are bounded and never block, their policies decide what is dropped when a stage
+ * falls behind, and their depth and drop counters are available as metrics. By default the
+ * input drops the oldest buffers and the output coalesces frames, so the listeners always get
+ * the newest spectrum. An item that throws in its stage is recycled and counted, and the stage
+ * goes on with the next one.
+ */
+public class AnalysisPipeline {
+
+    // public default static values
+    public static final int INPUT_QUEUE_SIZE = 16;
+    public static final int OUTPUT_QUEUE_SIZE = 1;
+    public static final int STAGE_BATCH_SIZE = 4;
+
+    private Analyser analyser;                                  // analyser used by the analysis stage
+    private ExecutorService ownedExecutor;                      // default executor created by the pipeline
+
+    private Stage<Samples> analysisStage;                       // stage that runs the analyser
+    private Stage<SpectrumFrame> publishStage;                  // stage that calls the listeners
+    private ConcurrentLinkedQueue<Samples> freeBuffers;         // recycled sample buffers
+    private ConcurrentLinkedQueue<SpectrumFrame> freeFrames;    // recycled frames
+    private CopyOnWriteArrayList<OnFrameListener> onFrameListeners;
+    private ConcurrentLinkedQueue<Runnable> flushActions;       // actions waiting for both stages to drain
+
+    private float[] history;                                    // latest samples, used only by the analysis stage
+    private int historyLength;                                  // number of samples in the history
+    private int samplesSinceAnalysis;                           // samples added since the last analysis
+    private volatile long frameCount;                           // number of analysed frames
+    private long captureTime;                                   // capture time of the latest sample in the history
+    private volatile long samplePosition;                       // stream position after the latest sample in the history
+    private LatencyHistogram analysisLatency;                   // latency from the capture to the end of the analysis
+    private volatile FrameGovernor frameGovernor;               // optional governor for the fft size and frame rate
+    private volatile RuntimeException lastError;                // last exception thrown by a stage
+
+    /**
+     * Pipeline with two daemon threads for the analysis and the publish stages, and the
+     * default queue sizes and policies, the output queue keeps only the newest frame
+     *
+     * @param analyser
+     */
+    public AnalysisPipeline(Analyser analyser) {
+        this(analyser, null, null,
+                new StageQueue<Samples>(INPUT_QUEUE_SIZE, StageQueue.POLICY_DROP_OLDEST),
+                new StageQueue<SpectrumFrame>(OUTPUT_QUEUE_SIZE, StageQueue.POLICY_COALESCE));
+    }
+
+    /**
+     * @param analyser         - analyser used by the analysis stage
+     * @param analysisExecutor - executor for the analysis stage, or null for own daemon thread
+     * @param publishExecutor  - executor for the publish stage, or null for own daemon thread
+     * @param inputQueue       - queue between the capture and the analysis stage
+     * @param outputQueue      - queue between the analysis and the publish stage
+     */
+    public AnalysisPipeline(Analyser analyser, Executor analysisExecutor, Executor publishExecutor,
+                            StageQueue<Samples> inputQueue, StageQueue<SpectrumFrame> outputQueue) {
+        this.analyser = analyser;
+        this.freeBuffers = new ConcurrentLinkedQueue<>();
+        this.freeFrames = new ConcurrentLinkedQueue<>();
+        this.onFrameListeners = new CopyOnWriteArrayList<>();
+        this.flushActions = new ConcurrentLinkedQueue<>();
+        this.history = new float[analyser.getFftSize() * 2];
+        this.analysisLatency = new LatencyHistogram();
+
+        // each stage gets its own thread, the serial stage loop keeps the order on shared executor
+        if (analysisExecutor == null || publishExecutor == null) {
+            ownedExecutor = createExecutor();
+        }
+
+        analysisStage = new Stage<Samples>(inputQueue, analysisExecutor != null ? analysisExecutor : ownedExecutor) {
+            @Override
+            void process(Samples samples) {
+                analyse(samples);
+            }
+
+            @Override
+            void failed(RuntimeException e) {
+                lastError = e;
+            }
+
+            @Override
+            void recycle(Samples samples) {
+                freeBuffers.offer(samples);
+            }
+
+            @Override
+            void drained() {
+                runFlushActions();
+            }
+        };
+        publishStage = new Stage<SpectrumFrame>(outputQueue, publishExecutor != null ? publishExecutor : ownedExecutor) {
+            @Override
+            void process(SpectrumFrame frame) {
+                for (OnFrameListener listener : onFrameListeners) {
+                    listener.onFrame(frame);
+                }
+            }
+
+            @Override
+            void failed(RuntimeException e) {
+                lastError = e;
+            }
+
+            @Override
+            void recycle(SpectrumFrame frame) {
+                freeFrames.offer(frame);
+            }
+
+            @Override
+            void drained() {
+                runFlushActions();
+            }
+        };
+    }
+
+    /**
+     * Two daemon threads, so the analysis and publish stages can run at the same time
+     *
+     * @return
+     */
+    private static ExecutorService createExecutor() {
+        return Executors.newFixedThreadPool(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AnalysisPipeline");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Capture stage, copies the samples and passes them to the analysis stage without blocking
+     *
+     * @param audioBuffer
+     */
+    public void submit(float[] audioBuffer) {
+        submit(audioBuffer, 0, audioBuffer.length, 0, -1);
+    }
+
+    public void submit(float[] audioBuffer, int offset, int length) {
+        submit(audioBuffer, offset, length, 0, -1);
+    }
+
+    /**
+     * Capture stage, with the capture time and the stream position of the samples, they
+     * are carried to the published frame and used for the latency metrics
+     *
+     * @param audioBuffer
+     * @param offset
+     * @param length
+     * @param captureTime - System.nanoTime() when the last sample was captured, or 0 if unknown
+     * @param position    - stream position of the first sample, or -1 to continue the previous buffer
+     */
+    public void submit(float[] audioBuffer, int offset, int length, long captureTime, long position) {
+        Samples samples = freeBuffers.poll();
+        if (samples == null || samples.data.length != length) {
+            samples = new Samples(length);
+        }
+        System.arraycopy(audioBuffer, offset, samples.data, 0, length);
+        samples.captureTime = captureTime;
+        samples.position = position;
+        analysisStage.offer(samples);
+    }
+
+    /**
+     * Analysis stage, adds the samples to the history and runs the analyser. When the stage
+     * is behind, the buffers are only added to the history until the queue is drained or a
+     * whole fft size of new samples is collected.
+     *
+     * @param samples
+     */
+    private void analyse(Samples samples) {
+        append(samples.data);
+        captureTime = samples.captureTime;
+        samplePosition = (samples.position >= 0 ? samples.position : samplePosition) + samples.data.length;
+
+        if (analysisStage.queue.getDepth() > 0 && samplesSinceAnalysis < analyser.getFftSize()) {
+            return;
+        }
+
+        // the history is zero padded, so only the governor limits the fft size
+        FrameGovernor governor = frameGovernor;
+        if (governor != null) {
+            if (!governor.shouldAnalyse()) {
+                return;
+            }
+            governor.apply(analyser, Integer.MAX_VALUE);
+        }
+
+        // the frames overlap, so only the samples since the last frame are new for the analyser
+        analyser.setHopSize(Math.max(1, samplesSinceAnalysis));
+        samplesSinceAnalysis = 0;
+        long start = System.nanoTime();
+        analyser.setCaptureTime(captureTime, samplePosition - Math.min(historyLength, analyser.getPendingFftSize()));
+        analyser.setAudioBuffer(history, 0, historyLength);
+        if (governor != null) {
+            governor.onAnalysed(System.nanoTime() - start);
+        }
+        if (captureTime != 0) {
+            analysisLatency.record(analyser.getAnalysisTime() - captureTime);
+        }
+
+        // the spectrum did not change while the input is silent, so there is nothing to publish
+        if (analyser.isIdle()) {
+            return;
+        }
+
+        SpectrumFrame frame = freeFrames.poll();
+        if (frame == null) {
+            frame = new SpectrumFrame();
+        }
+        frame.set(analyser, frameCount++);
+        publishStage.offer(frame);
+    }
+
+    /**
+     * Append samples to the end of the history, the history keeps at least fft size samples
+     *
+     * @param buffer
+     */
+    private void append(float[] buffer) {
+        int length = buffer.length;
+        int required = Math.max(analyser.getFftSize(), length);
+        if (history.length < required * 2) {
+            float[] resized = new float[required * 2];
+            System.arraycopy(history, 0, resized, 0, historyLength);
+            history = resized;
+        }
+
+        // move the latest samples to the beginning, when there is no room at the end
+        if (historyLength + length > history.length) {
+            int keep = Math.min(historyLength, history.length - length);
+            System.arraycopy(history, historyLength - keep, history, 0, keep);
+            historyLength = keep;
+        }
+        System.arraycopy(buffer, 0, history, historyLength, length);
+        historyLength += length;
+        samplesSinceAnalysis += length;
+    }
+
+    /**
+     * Run the action once the samples submitted before the call are analysed and their
+     * frames are published, or dropped by the queue policies. The action runs on the stage
+     * that drained last, or right away on the calling thread if the pipeline is idle.
+     *
+     * @param action
+     */
+    public void flush(Runnable action) {
+        flushActions.offer(action);
+        runFlushActions();
+    }
+
+    /**
+     * Check if both stages have no queued items and are not running
+     *
+     * @return
+     */
+    public boolean isIdle() {
+        return analysisStage.isIdle() && publishStage.isIdle();
+    }
+
+    private void runFlushActions() {
+        if (!isIdle()) {
+            return;
+        }
+        Runnable action;
+        while ((action = flushActions.poll()) != null) {
+            action.run();
+        }
+    }
+
+    /**
+     * Shut down the executor created by the pipeline, executors passed to the
+     * constructor are not affected
+     */
+    public void shutdown() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    public void addOnFrameListener(OnFrameListener onFrameListener) {
+        onFrameListeners.addIfAbsent(onFrameListener);
+    }
+
+    public void removeOnFrameListener(OnFrameListener onFrameListener) {
+        onFrameListeners.remove(onFrameListener);
+    }
+
+    /**
+     * Get the queue between the capture and the analysis stage, for the depth and drop metrics
+     *
+     * @return
+     */
+    public StageQueue<Samples> getInputQueue() {
+        return analysisStage.queue;
+    }
+
+    /**
+     * Get the queue between the analysis and the publish stage, for the depth and drop metrics
+     *
+     * @return
+     */
+    public StageQueue<SpectrumFrame> getOutputQueue() {
+        return publishStage.queue;
+    }
+
+    /**
+     * Get the histogram of the latency from the capture of the latest sample, until
+     * the frame is analysed
+     *
+     * @return
+     */
+    public LatencyHistogram getAnalysisLatency() {
+        return analysisLatency;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Get the stream position after the latest sample taken by the analysis stage, the
+     * difference from the submitted position is the backlog of the pipeline
+     *
+     * @return
+     */
+    public long getSamplePosition() {
+        return samplePosition;
+    }
+
+    public Analyser getAnalyser() {
+        return analyser;
+    }
+
+    public FrameGovernor getFrameGovernor() {
+        return frameGovernor;
+    }
+
+    /**
+     * Set governor that measures the time spent in the analysis stage, and changes the fft
+     * size and the frame rate on that stage. The drawing time is reported to the same governor
+     * by the view that draws the frames.
+     *
+     * @param frameGovernor - governor or null to disable it
+     */
+    public void setFrameGovernor(FrameGovernor frameGovernor) {
+        this.frameGovernor = frameGovernor;
+    }
+
+    /**
+     * Get the number of items that threw in the analysis or the publish stage, they are
+     * skipped and the stage goes on with the next item
+     *
+     * @return
+     */
+    public long getErrorCount() {
+        return analysisStage.errorCount + publishStage.errorCount;
+    }
+
+    /**
+     * Get the last exception thrown by the analyser or a frame listener, or null
+     *
+     * @return
+     */
+    public RuntimeException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Stage that drains its queue on the executor. At most one drain task is scheduled at
+     * a time, so the items of a stage are processed in order, by one thread at a time.
+     * Each item is recycled after it is processed, also when process() throws. A task
+     * processes at most STAGE_BATCH_SIZE items and then executes the stage again, so on
+     * executor shared by many pipelines a stream with long backlog does not hold a worker.
+     *
+     * @param <T>
+     */
+    private abstract static class Stage<T> implements Runnable {
+
+        final StageQueue<T> queue;
+        final Executor executor;
+        final AtomicBoolean scheduled;
+        volatile long errorCount;   // number of items that threw, written only by the stage
+
+        Stage(StageQueue<T> queue, Executor executor) {
+            this.queue = queue;
+            this.executor = executor;
+            this.scheduled = new AtomicBoolean();
+        }
+
+        abstract void process(T item);
+
+        abstract void recycle(T item);
+
+        /**
+         * Called when process() threw, the item is recycled after the call
+         */
+        abstract void failed(RuntimeException e);
+
+        /**
+         * Called after the queue was drained, when no new item was offered meanwhile
+         */
+        abstract void drained();
+
+        void offer(T item) {
+            T dropped = queue.offer(item);
+            if (dropped != null) {
+                recycle(dropped);
+            }
+            schedule();
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                T item;
+                for (int i = 0; i < STAGE_BATCH_SIZE && (item = queue.poll()) != null; i++) {
+                    try {
+                        process(item);
+                    } catch (RuntimeException e) {
+                        errorCount++;
+                        failed(e);
+                    } finally {
+                        recycle(item);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+
+            // items left after the batch, or offered before the flag was cleared
+            if (queue.getDepth() > 0) {
+                schedule();
+            } else {
+                drained();
+            }
+        }
+
+        boolean isIdle() {
+            return !scheduled.get() && queue.getDepth() == 0;
+        }
+    }
+
+    /**
+     * Copy of the submitted samples, with their capture time and stream position
+     */
+    public static class Samples {
+
+        private final float[] data;
+        private long captureTime;
+        private long position;
+
+        Samples(int length) {
+            data = new float[length];
+        }
+
+        public float[] getData() {
+            return data;
+        }
+
+        public long getCaptureTime() {
+            return captureTime;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+    }
+
+    public interface OnFrameListener {
+
+        /**
+         * Called on the publish stage, the frame is reused after the call returns
+         *
+         * @param frame
+         */
+        void onFrame(SpectrumFrame frame);
+    }
+}
@@ -0,0 +1,120 @@
+package com.slaviboy.analyser.pipeline;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded queue between two pipeline stages. Offering never blocks the producing stage,
+ * when the queue is full the policy decides which item is dropped: POLICY_DROP_NEWEST
+ * rejects the offered item, POLICY_DROP_OLDEST removes the item at the head, and
+ * POLICY_COALESCE replaces the latest queued item, so a slow consumer only sees the
+ * newest state. The dropped item is returned, so the producer can recycle it.
+ *
+ * @param <T>
+ */
+public class StageQueue<T> {
+
+    public static final int POLICY_DROP_NEWEST = 0;
+    public static final int POLICY_DROP_OLDEST = 1;
+    public static final int POLICY_COALESCE = 2;
+
+    private ArrayDeque<T> items;   // queued items, from the oldest to the latest
+    private int capacity;          // maximum number of queued items
+    private int policy;            // one of the POLICY_* constants
+
+    private long offeredCount;     // number of offered items
+    private long droppedCount;     // number of dropped or coalesced items
+    private int maxDepth;          // highest number of queued items
+
+    /**
+     * @param capacity - maximum number of queued items
+     * @param policy   - one of the POLICY_* constants
+     */
+    public StageQueue(int capacity, int policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        if (policy < POLICY_DROP_NEWEST || policy > POLICY_COALESCE) {
+            throw new IllegalArgumentException("Unknown policy " + policy);
+        }
+        this.items = new ArrayDeque<>(capacity);
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * Add item to the queue, without blocking
+     *
+     * @param item
+     * @return the item dropped because of the policy, or null
+     */
+    public synchronized T offer(T item) {
+        offeredCount++;
+
+        T dropped = null;
+        if (policy == POLICY_COALESCE && !items.isEmpty()) {
+            dropped = items.pollLast();
+        } else if (items.size() >= capacity) {
+            if (policy == POLICY_DROP_NEWEST) {
+                droppedCount++;
+                return item;
+            }
+            dropped = items.pollFirst();
+        }
+        if (dropped != null) {
+            droppedCount++;
+        }
+
+        items.offerLast(item);
+        maxDepth = Math.max(maxDepth, items.size());
+        return dropped;
+    }
+
+    /**
+     * Remove the oldest item
+     *
+     * @return the item, or null if the queue is empty
+     */
+    public synchronized T poll() {
+        return items.pollFirst();
+    }
+
+    /**
+     * Get the number of queued items
+     *
+     * @return
+     */
+    public synchronized int getDepth() {
+        return items.size();
+    }
+
+    /**
+     * Get the highest number of queued items, since the last reset of the metrics
+     *
+     * @return
+     */
+    public synchronized int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public synchronized long getOfferedCount() {
+        return offeredCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized void resetMetrics() {
+        offeredCount = 0;
+        droppedCount = 0;
+        maxDepth = items.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getPolicy() {
+        return policy;
+    }
+}
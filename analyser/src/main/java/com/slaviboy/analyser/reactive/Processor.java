@@ -0,0 +1,11 @@
+package com.slaviboy.analyser.reactive;
+
+/**
+ * Stage that is both subscriber and publisher, with the same contract as
+ * java.util.concurrent.Flow.Processor
+ *
+ * @param <T> - type of the received items
+ * @param <R> - type of the published items
+ */
+public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+}
@@ -0,0 +1,17 @@
+package com.slaviboy.analyser.reactive;
+
+/**
+ * Producer of items for subscribers that signal their demand, with the same contract as
+ * java.util.concurrent.Flow.Publisher, that is not available on the supported API levels
+ *
+ * @param <T>
+ */
+public interface Publisher<T> {
+
+    /**
+     * Add subscriber, it receives onSubscribe() and then the items it requests
+     *
+     * @param subscriber
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+}
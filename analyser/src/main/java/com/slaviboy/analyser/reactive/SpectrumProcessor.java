@@ -0,0 +1,285 @@
+package com.slaviboy.analyser.reactive;
+
+import com.slaviboy.analyser.Analyser;
+import com.slaviboy.analyser.SpectrumFrame;
+import com.slaviboy.analyser.pipeline.AnalysisPipeline;
+import com.slaviboy.analyser.pipeline.StageQueue;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reactive adapter for the analyser, it subscribes to blocks of audio samples and publishes
+ * the spectrum frames. The blocks go through an AnalysisPipeline, and the upstream is asked
+ * for unlimited blocks, because the pipeline input never blocks and drops the oldest blocks
+ * when the analysis falls behind, so the capture is never stalled.
+ * <p>
+ * Each subscriber requests frames, and chooses what happens to the frames it did not request:
+ * OVERFLOW_LATEST keeps only the latest frame, OVERFLOW_DROP drops them, and OVERFLOW_BUFFER
+ * keeps up to the buffer size frames and then drops the oldest. With OVERFLOW_DROP the frames
+ * that wait for delivery are limited by the outstanding demand and by the buffer size. The frames are delivered on
+ * the publish stage of the pipeline or on the thread that calls request(), one signal at a
+ * time for each subscriber. Like the pipeline listeners, the frame passed to onNext() is
+ * reused after the call returns.
+ * <p>
+ * When the upstream completes, the subscribers are completed after the pipeline analysed the
+ * remaining blocks and they received the queued frames. Closing the processor completes the
+ * subscribers right away, and the frames that were not delivered are dropped.
+ */
+public class SpectrumProcessor implements Processor<float[], SpectrumFrame>, AnalysisPipeline.OnFrameListener {
+
+    public static final int OVERFLOW_LATEST = 0;
+    public static final int OVERFLOW_DROP = 1;
+    public static final int OVERFLOW_BUFFER = 2;
+
+    // public default static values
+    public static final int BUFFER_SIZE = 16;
+
+    private AnalysisPipeline pipeline;                                 // pipeline that analyses the blocks
+    private boolean ownsPipeline;                                      // if the pipeline was created by the processor
+    private CopyOnWriteArrayList<FrameSubscription> subscriptions;
+    private volatile Subscription upstream;                            // subscription to the audio blocks
+    private volatile Throwable error;                                  // error from the upstream
+    private volatile boolean completed;                                // if the upstream completed and the pipeline is flushed
+    private volatile boolean closed;                                   // if the processor was closed
+
+    /**
+     * Processor with own pipeline with the default queues and executor
+     *
+     * @param analyser
+     */
+    public SpectrumProcessor(Analyser analyser) {
+        this(new AnalysisPipeline(analyser));
+        ownsPipeline = true;
+    }
+
+    /**
+     * Processor that publishes the frames of existing pipeline
+     *
+     * @param pipeline
+     */
+    public SpectrumProcessor(AnalysisPipeline pipeline) {
+        this.pipeline = pipeline;
+        this.subscriptions = new CopyOnWriteArrayList<>();
+        pipeline.addOnFrameListener(this);
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    /**
+     * Audio block with samples in range [-1,1], the samples are copied
+     *
+     * @param block
+     */
+    @Override
+    public void onNext(float[] block) {
+        pipeline.submit(block, 0, block.length);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        for (FrameSubscription subscription : subscriptions) {
+            subscription.drain();
+        }
+    }
+
+    /**
+     * The blocks in the pipeline are analysed, and the queued frames are delivered before onComplete()
+     */
+    @Override
+    public void onComplete() {
+        pipeline.flush(new Runnable() {
+            @Override
+            public void run() {
+                completed = true;
+                for (FrameSubscription subscription : subscriptions) {
+                    subscription.drain();
+                }
+            }
+        });
+    }
+
+    /**
+     * Subscribe with the OVERFLOW_LATEST strategy
+     *
+     * @param subscriber
+     */
+    @Override
+    public void subscribe(Subscriber<? super SpectrumFrame> subscriber) {
+        subscribe(subscriber, OVERFLOW_LATEST, 1);
+    }
+
+    /**
+     * @param subscriber
+     * @param overflow   - one of the OVERFLOW_* constants, for the frames that were not requested
+     * @param bufferSize - number of kept frames for OVERFLOW_BUFFER, or the most requested frames kept for OVERFLOW_DROP
+     */
+    public void subscribe(Subscriber<? super SpectrumFrame> subscriber, int overflow, int bufferSize) {
+        if (overflow < OVERFLOW_LATEST || overflow > OVERFLOW_BUFFER) {
+            throw new IllegalArgumentException("Unknown overflow strategy " + overflow);
+        }
+        FrameSubscription subscription = new FrameSubscription(subscriber, overflow, bufferSize);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+
+        // processor that already terminated signals it right away
+        subscription.drain();
+    }
+
+    @Override
+    public void onFrame(SpectrumFrame frame) {
+        for (FrameSubscription subscription : subscriptions) {
+            subscription.offer(frame);
+        }
+    }
+
+    /**
+     * Cancel the upstream subscription, complete the subscribers and shut down
+     * the pipeline created by the processor
+     */
+    public void close() {
+        Subscription subscription = upstream;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        pipeline.removeOnFrameListener(this);
+        closed = true;
+        for (FrameSubscription frameSubscription : subscriptions) {
+            frameSubscription.drain();
+        }
+        if (ownsPipeline) {
+            pipeline.shutdown();
+        }
+    }
+
+    public AnalysisPipeline getPipeline() {
+        return pipeline;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Subscription with its demand and the frames that wait for the demand. The signals are
+     * serialized with a work counter, the thread that increments it from zero delivers the
+     * frames, and the other threads only make it loop again.
+     */
+    private class FrameSubscription implements Subscription {
+
+        private final Subscriber<? super SpectrumFrame> subscriber;
+        private final int overflow;                            // one of the OVERFLOW_* constants
+        private final StageQueue<SpectrumFrame> queue;         // frames that wait for the demand
+        private final ConcurrentLinkedQueue<SpectrumFrame> freeFrames;
+        private final AtomicLong requested;                    // requested frames, that were not delivered
+        private final AtomicInteger work;                      // number of pending drain calls
+        private final AtomicLong droppedFrames;                // frames dropped without demand
+        private volatile Throwable requestError;               // error for invalid request, signalled by drain()
+        private volatile boolean cancelled;                    // if cancelled or terminated
+
+        FrameSubscription(Subscriber<? super SpectrumFrame> subscriber, int overflow, int bufferSize) {
+            this.subscriber = subscriber;
+            this.overflow = overflow;
+            if (overflow == OVERFLOW_BUFFER) {
+                this.queue = new StageQueue<>(bufferSize, StageQueue.POLICY_DROP_OLDEST);
+            } else if (overflow == OVERFLOW_LATEST) {
+                this.queue = new StageQueue<>(1, StageQueue.POLICY_COALESCE);
+            } else {
+                this.queue = new StageQueue<>(bufferSize, StageQueue.POLICY_DROP_NEWEST);
+            }
+            this.freeFrames = new ConcurrentLinkedQueue<>();
+            this.requested = new AtomicLong();
+            this.work = new AtomicInteger();
+            this.droppedFrames = new AtomicLong();
+        }
+
+        void offer(SpectrumFrame frame) {
+            if (cancelled) {
+                return;
+            }
+            // only frames covered by the demand that is not taken by the queued frames are kept
+            if (overflow == OVERFLOW_DROP && requested.get() <= queue.getDepth()) {
+                droppedFrames.incrementAndGet();
+                return;
+            }
+            SpectrumFrame copy = freeFrames.poll();
+            if (copy == null) {
+                copy = new SpectrumFrame();
+            }
+            copy.set(frame);
+            SpectrumFrame dropped = queue.offer(copy);
+            if (dropped != null) {
+                droppedFrames.incrementAndGet();
+                freeFrames.offer(dropped);
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                requestError = new IllegalArgumentException("Requested " + n + " frames, the demand must be positive");
+                drain();
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!requested.compareAndSet(current, next));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        void drain() {
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (!cancelled && requestError == null && !closed && requested.get() > 0) {
+                    SpectrumFrame frame = queue.poll();
+                    if (frame == null) {
+                        break;
+                    }
+                    if (requested.get() != Long.MAX_VALUE) {
+                        requested.decrementAndGet();
+                    }
+                    subscriber.onNext(frame);
+                    freeFrames.offer(frame);
+                }
+
+                // errors are signalled right away, completion after the queued frames or on close
+                Throwable failure = requestError != null ? requestError : error;
+                if (!cancelled && (failure != null || closed || (completed && queue.getDepth() == 0))) {
+                    cancel();
+                    SpectrumFrame frame;
+                    while ((frame = queue.poll()) != null) {
+                        freeFrames.offer(frame);
+                    }
+                    if (failure != null) {
+                        subscriber.onError(failure);
+                    } else {
+                        subscriber.onComplete();
+                    }
+                }
+            } while (work.decrementAndGet() != 0);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.slaviboy.analyser.reactive;
+
+/**
+ * Receiver of items, with the same contract as java.util.concurrent.Flow.Subscriber. The
+ * methods are called one at a time, and onNext() only for items requested by the subscription.
+ *
+ * @param <T>
+ */
+public interface Subscriber<T> {
+
+    void onSubscribe(Subscription subscription);
+
+    void onNext(T item);
+
+    void onError(Throwable throwable);
+
+    void onComplete();
+}
@@ -0,0 +1,20 @@
+package com.slaviboy.analyser.reactive;
+
+/**
+ * Link between publisher and subscriber, with the same contract as
+ * java.util.concurrent.Flow.Subscription
+ */
+public interface Subscription {
+
+    /**
+     * Add demand for n more items, Long.MAX_VALUE means no limit
+     *
+     * @param n - number of items, must be positive
+     */
+    void request(long n);
+
+    /**
+     * Stop receiving items, items may still arrive shortly after the call
+     */
+    void cancel();
+}
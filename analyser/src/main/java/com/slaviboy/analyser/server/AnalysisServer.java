@@ -0,0 +1,412 @@
+package com.slaviboy.analyser.server;
+
+import com.slaviboy.analyser.Analyser;
+import com.slaviboy.analyser.SpectrumFrame;
+import com.slaviboy.analyser.pipeline.AnalysisPipeline;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server that analyses many audio streams on a fixed pool of worker threads, instead of one
+ * thread per stream. Each stream keeps its own analyser and history, and its blocks are
+ * analysed in order by one worker at a time, while the fft plans and windows are shared
+ * between all streams with the same configuration.
+ * <p>
+ * Streams can be opened in-process with openStream(), or received over TCP. All connections
+ * are served by one selector thread, each connection starts with 8 byte big-endian header:
+ * sample rate (int), encoding (short, Analyser.ENCODING_PCM_16BIT or ENCODING_PCM_FLOAT) and
+ * channel count (short), followed by interleaved little-endian PCM, that is mixed down to mono.
+ * <p>
+ * The lag, queue depth, dropped blocks and latency of each stream are available from the
+ * stream, so slow consumers and overloaded servers can be detected.
+ */
+public class AnalysisServer {
+
+    // public default static values
+    public static final int FFT_SIZE = 1024;
+    public static final int QUEUE_SIZE = 8;
+    public static final int HEADER_SIZE = 8;
+    public static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private int fftSize;                                       // fft size of the stream analysers
+    private int blockSize;                                     // number of samples in each analysed block
+    private int queueSize;                                     // number of blocks that can wait in each stream
+    private Executor workers;                                  // shared workers that run the analysis
+    private ExecutorService ownedWorkers;                      // default workers created by the server
+
+    private ConcurrentHashMap<Integer, AnalysisStream> streams;
+    private CopyOnWriteArrayList<OnFrameListener> onFrameListeners;
+    private AtomicInteger nextId;                              // id of the next opened stream
+
+    private Selector selector;                                 // selector for the network connections
+    private ServerSocketChannel serverChannel;                 // channel that accepts the connections
+    private Thread selectorThread;                             // thread that reads the connections
+    private volatile boolean running;                          // if the network server is running
+
+    /**
+     * Server with one worker for each core, and block size of half the fft size
+     *
+     * @param fftSize
+     */
+    public AnalysisServer(int fftSize) {
+        this(fftSize, fftSize / 2, QUEUE_SIZE, null);
+    }
+
+    /**
+     * @param fftSize   - fft size of the stream analysers
+     * @param blockSize - number of samples in each analysed block, the time between frames
+     * @param queueSize - number of blocks that can wait in each stream, before the oldest is dropped
+     * @param workers   - executor that runs the analysis, or null for one daemon thread per core
+     */
+    public AnalysisServer(int fftSize, int blockSize, int queueSize, Executor workers) {
+        if (blockSize <= 0 || queueSize <= 0) {
+            throw new IllegalArgumentException("Block and queue size must be positive");
+        }
+        this.fftSize = fftSize;
+        this.blockSize = blockSize;
+        this.queueSize = queueSize;
+        this.streams = new ConcurrentHashMap<>();
+        this.onFrameListeners = new CopyOnWriteArrayList<>();
+        this.nextId = new AtomicInteger();
+
+        if (workers == null) {
+            ownedWorkers = createWorkers(Runtime.getRuntime().availableProcessors());
+            workers = ownedWorkers;
+        }
+        this.workers = workers;
+    }
+
+    private static ExecutorService createWorkers(int count) {
+        return Executors.newFixedThreadPool(count, new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AnalysisServer-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Open in-process stream, the caller writes the samples with AnalysisStream.write()
+     *
+     * @param name       - name used in logs and metrics
+     * @param sampleRate - sample rate of the stream (Hz)
+     * @return
+     */
+    public AnalysisStream openStream(String name, int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate must be positive");
+        }
+        final AnalysisStream stream = new AnalysisStream(nextId.incrementAndGet(), name, sampleRate,
+                fftSize, blockSize, queueSize, workers);
+        stream.getPipeline().addOnFrameListener(new AnalysisPipeline.OnFrameListener() {
+            @Override
+            public void onFrame(SpectrumFrame frame) {
+                for (OnFrameListener listener : onFrameListeners) {
+                    listener.onFrame(stream, frame);
+                }
+            }
+        });
+        streams.put(stream.getId(), stream);
+        return stream;
+    }
+
+    /**
+     * Close the stream, blocks that are already queued are still analysed
+     *
+     * @param stream
+     */
+    public void closeStream(AnalysisStream stream) {
+        stream.close();
+        streams.remove(stream.getId());
+    }
+
+    /**
+     * Start accepting streams on the loopback interface
+     *
+     * @param port - port number, or 0 for any free port
+     * @throws IOException
+     */
+    public void start(int port) throws IOException {
+        start(new InetSocketAddress(InetAddress.getByName(null), port));
+    }
+
+    /**
+     * Start accepting streams on given address
+     *
+     * @param address
+     * @throws IOException
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Server is already running");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().bind(address);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                select();
+            }
+        }, "AnalysisServer-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * Stop the network server and close all streams, the default workers are shut down
+     * after the queued blocks are analysed
+     */
+    public synchronized void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+            try {
+                selectorThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            selector = null;
+        }
+        for (AnalysisStream stream : streams.values()) {
+            closeStream(stream);
+        }
+        if (ownedWorkers != null) {
+            ownedWorkers.shutdown();
+        }
+    }
+
+    /**
+     * Selector loop, accepts the connections and reads their samples
+     */
+    private void select() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            connection.read();
+                        } catch (IOException | RuntimeException e) {
+                            connection.close();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            running = false;
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                // nothing more to release
+            }
+        }
+    }
+
+    /**
+     * Accept new connection, failed connection does not stop the server
+     */
+    private void accept() {
+        SocketChannel channel = null;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // the connection is dropped anyway
+                }
+            }
+        }
+    }
+
+    public void addOnFrameListener(OnFrameListener onFrameListener) {
+        onFrameListeners.addIfAbsent(onFrameListener);
+    }
+
+    public void removeOnFrameListener(OnFrameListener onFrameListener) {
+        onFrameListeners.remove(onFrameListener);
+    }
+
+    /**
+     * Get the open streams, for the per stream metrics
+     *
+     * @return
+     */
+    public Collection<AnalysisStream> getStreams() {
+        return streams.values();
+    }
+
+    public AnalysisStream getStream(int id) {
+        return streams.get(id);
+    }
+
+    /**
+     * Get the port the server is bound to, or -1 if it is not running
+     *
+     * @return
+     */
+    public int getLocalPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Network stream, decodes the received PCM into the samples of an in-process stream
+     */
+    private class Connection {
+
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer buffer;          // received bytes, that are not decoded yet
+        private float[] samples;            // decoded mono samples
+        private AnalysisStream stream;      // stream created after the header is received
+        private int encoding;
+        private int channelCount;
+        private int frameSize;              // bytes in one frame of interleaved samples
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+            this.buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        }
+
+        void read() throws IOException {
+            if (channel.read(buffer) < 0) {
+                close();
+                return;
+            }
+            buffer.flip();
+
+            if (stream == null) {
+                if (buffer.remaining() < HEADER_SIZE) {
+                    buffer.compact();
+                    return;
+                }
+                readHeader();
+            }
+
+            int frames = buffer.remaining() / frameSize;
+            for (int i = 0; i < frames; i++) {
+                double sum = 0.0;
+                for (int c = 0; c < channelCount; c++) {
+                    sum += (encoding == Analyser.ENCODING_PCM_FLOAT) ?
+                            buffer.getFloat() : buffer.getShort() / 32768.0;
+                }
+                samples[i] = (float) (sum / channelCount);
+            }
+            stream.write(samples, 0, frames);
+            buffer.compact();
+        }
+
+        private void readHeader() {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            int sampleRate = buffer.getInt();
+            encoding = buffer.getShort();
+            channelCount = buffer.getShort();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (sampleRate <= 0) {
+                throw new IllegalArgumentException("Sample rate must be positive");
+            }
+            if (encoding != Analyser.ENCODING_PCM_16BIT && encoding != Analyser.ENCODING_PCM_FLOAT) {
+                throw new IllegalArgumentException("Unsupported encoding " + encoding);
+            }
+            if (channelCount <= 0) {
+                throw new IllegalArgumentException("Channel count must be positive");
+            }
+
+            // the read buffer must hold at least one frame, or the connection would never progress
+            frameSize = Analyser.getBytesPerSample(encoding) * channelCount;
+            if (frameSize > READ_BUFFER_SIZE) {
+                throw new IllegalArgumentException("Frame of " + channelCount + " channels does not fit in " +
+                        READ_BUFFER_SIZE + " bytes");
+            }
+            samples = new float[READ_BUFFER_SIZE / frameSize];
+            stream = openStream(String.valueOf(channel.socket().getRemoteSocketAddress()), sampleRate);
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the connection is closed anyway
+            }
+            if (stream != null) {
+                closeStream(stream);
+            }
+        }
+    }
+
+    public interface OnFrameListener {
+
+        /**
+         * Called on the worker thread of the stream, the frame is reused after the call returns
+         *
+         * @param stream
+         * @param frame
+         */
+        void onFrame(AnalysisStream stream, SpectrumFrame frame);
+    }
+}
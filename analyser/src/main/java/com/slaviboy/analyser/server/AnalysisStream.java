@@ -0,0 +1,154 @@
+package com.slaviboy.analyser.server;
+
+import com.slaviboy.analyser.Analyser;
+import com.slaviboy.analyser.LatencyHistogram;
+import com.slaviboy.analyser.Range;
+import com.slaviboy.analyser.SpectrumFrame;
+import com.slaviboy.analyser.pipeline.AnalysisPipeline;
+import com.slaviboy.analyser.pipeline.StageQueue;
+
+import java.util.concurrent.Executor;
+
+/**
+ * One audio feed of the AnalysisServer, with its own analyser and sample history, so the
+ * state of the streams is isolated while their frames are analysed on the shared workers.
+ * The samples are collected into blocks of fixed size, and each full block is submitted to
+ * the stream pipeline, so every stream produces frames at the same rate regardless of how
+ * the data arrives. The methods that write samples should be called from one thread.
+ */
+public class AnalysisStream {
+
+    private final int id;                        // unique id of the stream in the server
+    private final String name;                   // name used in logs and metrics
+    private final int sampleRate;                // sample rate of the stream (Hz)
+    private final Analyser analyser;             // analyser used only by this stream
+    private final AnalysisPipeline pipeline;     // pipeline that runs the analysis on the shared workers
+
+    private final float[] block;                 // block that collects the written samples
+    private int blockLength;                     // number of samples in the block
+    private volatile long position;              // stream position after the latest submitted block
+    private volatile boolean closed;             // if the stream was closed
+
+    /**
+     * @param id         - unique id of the stream in the server
+     * @param name       - name used in logs and metrics
+     * @param sampleRate - sample rate of the stream (Hz)
+     * @param fftSize    - fft size of the analyser
+     * @param blockSize  - number of samples in each analysed block
+     * @param queueSize  - number of blocks that can wait for the analysis, before the oldest is dropped
+     * @param workers    - shared executor that runs the analysis and the listeners
+     */
+    AnalysisStream(int id, String name, int sampleRate, int fftSize, int blockSize, int queueSize, Executor workers) {
+        this.id = id;
+        this.name = name;
+        this.sampleRate = sampleRate;
+        this.block = new float[blockSize];
+
+        // the window, frequency tables and fft plan are shared through the AnalyserCache
+        this.analyser = new Analyser(fftSize, sampleRate,
+                new Range(Analyser.MIN_DECIBELS, Analyser.MAX_DECIBELS), Analyser.SMOOTHING_TIME_CONSTANT);
+        this.pipeline = new AnalysisPipeline(analyser, workers, workers,
+                new StageQueue<AnalysisPipeline.Samples>(queueSize, StageQueue.POLICY_DROP_OLDEST),
+                new StageQueue<SpectrumFrame>(1, StageQueue.POLICY_COALESCE));
+    }
+
+    /**
+     * Write samples in range [-1,1] to the stream, each full block is submitted for analysis
+     *
+     * @param samples
+     * @param offset
+     * @param length
+     */
+    public void write(float[] samples, int offset, int length) {
+        if (closed) {
+            throw new IllegalStateException("Stream " + name + " is closed");
+        }
+        while (length > 0) {
+            int count = Math.min(length, block.length - blockLength);
+            System.arraycopy(samples, offset, block, blockLength, count);
+            blockLength += count;
+            offset += count;
+            length -= count;
+
+            if (blockLength == block.length) {
+                pipeline.submit(block, 0, block.length, System.nanoTime(), position);
+                position += block.length;
+                blockLength = 0;
+            }
+        }
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Get the time (s) the analysis is behind the written samples, that includes the blocks
+     * waiting in the queue, and the samples not yet collected into a full block
+     *
+     * @return
+     */
+    public double getLag() {
+        long lag = position + blockLength - pipeline.getSamplePosition();
+        return (double) Math.max(0, lag) / sampleRate;
+    }
+
+    /**
+     * Get the number of blocks waiting for the analysis
+     *
+     * @return
+     */
+    public int getQueueDepth() {
+        return pipeline.getInputQueue().getDepth();
+    }
+
+    /**
+     * Get the number of blocks dropped, because the analysis fell behind
+     *
+     * @return
+     */
+    public long getDroppedBlocks() {
+        return pipeline.getInputQueue().getDroppedCount();
+    }
+
+    /**
+     * Get the histogram of the latency from writing a block until it is analysed
+     *
+     * @return
+     */
+    public LatencyHistogram getAnalysisLatency() {
+        return pipeline.getAnalysisLatency();
+    }
+
+    public long getFrameCount() {
+        return pipeline.getFrameCount();
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public Analyser getAnalyser() {
+        return analyser;
+    }
+
+    public AnalysisPipeline getPipeline() {
+        return pipeline;
+    }
+}
@@ -0,0 +1,160 @@
+package com.slaviboy.analyser.server;
+
+import com.slaviboy.analyser.SpectrumFrame;
+import com.slaviboy.analyser.io.SpectrumFrameCodec;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Reference client for the FramePublisher, used for testing against localhost. It receives
+ * the packets over TCP or UDP and decodes the frames one at a time. Over UDP the subscription
+ * is renewed every RENEW_INTERVAL, and frames that refer to a lost frame are skipped until
+ * the next key frame.
+ * <p>
+ * Usage: FrameClient [tcp|udp] port [host]
+ * prints the sequence, the peak frequency and the latency of each received frame
+ */
+public class FrameClient {
+
+    // public default static values
+    public static final long RENEW_INTERVAL = 1000;
+
+    private Socket socket;                 // TCP connection, or null
+    private DataInputStream input;         // stream of the TCP connection
+    private DatagramSocket datagramSocket; // UDP socket, or null
+    private InetSocketAddress address;     // address of the publisher
+    private long renewTime;                // time (ms) of the last UDP subscription
+
+    private SpectrumFrameCodec codec;
+    private byte[] bytes;                  // received packet
+    private ByteBuffer packet;             // received packet, positioned at the next frame
+    private int framesInPacket;            // frames in the packet, that were not decoded yet
+    private long lostFrames;               // frames that could not be decoded
+
+    /**
+     * @param address - address of the publisher
+     * @param udp     - subscribe over UDP instead of TCP
+     * @throws IOException
+     */
+    public FrameClient(InetSocketAddress address, boolean udp) throws IOException {
+        this.address = address;
+        this.codec = new SpectrumFrameCodec();
+        this.bytes = new byte[FramePublisher.MAX_DATAGRAM_SIZE];
+        this.packet = ByteBuffer.wrap(bytes, 0, 0);
+        if (udp) {
+            datagramSocket = new DatagramSocket();
+            datagramSocket.setSoTimeout((int) RENEW_INTERVAL);
+            renew();
+        } else {
+            socket = new Socket(address.getAddress(), address.getPort());
+            socket.setTcpNoDelay(true);
+            input = new DataInputStream(socket.getInputStream());
+        }
+    }
+
+    private void renew() throws IOException {
+        datagramSocket.send(new DatagramPacket(new byte[]{1}, 1, address));
+        renewTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Receive the next frame, blocks until it arrives
+     *
+     * @param frame - frame that receives the values
+     * @throws IOException
+     */
+    public void receive(SpectrumFrame frame) throws IOException {
+        while (true) {
+            if (framesInPacket == 0) {
+                readPacket();
+                continue;
+            }
+            framesInPacket--;
+            try {
+                codec.decode(packet, frame);
+                return;
+            } catch (IllegalStateException e) {
+                // the reference frame was lost, the rest of the packet refers to it too
+                lostFrames += framesInPacket + 1;
+                framesInPacket = 0;
+            }
+        }
+    }
+
+    private void readPacket() throws IOException {
+        if (datagramSocket != null) {
+            if (System.currentTimeMillis() - renewTime >= RENEW_INTERVAL) {
+                renew();
+            }
+            DatagramPacket datagram = new DatagramPacket(bytes, bytes.length);
+            try {
+                datagramSocket.receive(datagram);
+            } catch (SocketTimeoutException e) {
+                return;
+            }
+            packet = ByteBuffer.wrap(bytes, 0, datagram.getLength());
+        } else {
+            int length = input.readInt();
+            if (length > bytes.length) {
+                bytes = new byte[length];
+            }
+            input.readFully(bytes, 0, length);
+            packet = ByteBuffer.wrap(bytes, 0, length);
+        }
+        framesInPacket = packet.get() & 0xFF;
+    }
+
+    public void close() throws IOException {
+        if (socket != null) {
+            socket.close();
+        }
+        if (datagramSocket != null) {
+            datagramSocket.close();
+        }
+    }
+
+    /**
+     * Get the number of frames skipped because their reference frame was lost
+     *
+     * @return
+     */
+    public long getLostFrames() {
+        return lostFrames;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: FrameClient [tcp|udp] port [host]");
+            System.exit(2);
+        }
+        String host = args.length > 2 ? args[2] : "127.0.0.1";
+        FrameClient client = new FrameClient(new InetSocketAddress(host, Integer.parseInt(args[1])),
+                args[0].equals("udp"));
+
+        SpectrumFrame frame = new SpectrumFrame();
+        while (true) {
+            client.receive(frame);
+            double[] data = frame.getDoubleFrequencyData();
+            int peak = 0;
+            for (int i = 1; i < data.length; i++) {
+                if (data[i] > data[peak]) {
+                    peak = i;
+                }
+            }
+
+            // capture time is System.nanoTime() of the publisher, meaningful on the same machine
+            double latency = frame.getCaptureTime() != 0 ? (System.nanoTime() - frame.getCaptureTime()) / 1e6 : 0;
+            System.out.println(String.format(Locale.US, "#%d peak %.1f Hz %.1f dB latency %.1f ms lost %d",
+                    frame.getSequence(), frame.getFrequency(peak), data.length > 0 ? data[peak] : 0.0,
+                    latency, client.getLostFrames()));
+        }
+    }
+}
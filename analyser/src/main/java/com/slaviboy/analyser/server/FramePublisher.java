@@ -0,0 +1,425 @@
+package com.slaviboy.analyser.server;
+
+import com.slaviboy.analyser.SpectrumFrame;
+import com.slaviboy.analyser.io.SpectrumFrameCodec;
+import com.slaviboy.analyser.pipeline.AnalysisPipeline;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Publisher that streams the spectrum frames to subscribers on the local network, over TCP
+ * or UDP. TCP subscribers connect to the port, UDP subscribers send any datagram to the same
+ * port number and must repeat it within SUBSCRIPTION_TIMEOUT to stay subscribed.
+ * <p>
+ * Each subscriber has its own bounded batch of frames. A packet is sent when the batch is full
+ * or its oldest frame waited for the maximum delay, and while a slow subscriber has not taken
+ * the previous packet, new frames replace the latest frame in its full batch, so it always
+ * gets the newest spectrum and nothing is queued without bound. Frames are coded with own
+ * SpectrumFrameCodec for each subscriber, so the deltas refer to the frames it received.
+ * <p>
+ * Packet: frame count (byte) followed by the coded frames, over TCP the packet is prefixed
+ * with its length (int, big-endian). A UDP packet holds only the latest frames of the batch
+ * that fit in one datagram, and a subscriber whose single frame does not fit is removed.
+ * FrameClient is a reference client.
+ */
+public class FramePublisher implements AnalysisPipeline.OnFrameListener {
+
+    // public default static values
+    public static final int BATCH_SIZE = 4;
+    public static final long MAX_DELAY = 50;
+    public static final long SUBSCRIPTION_TIMEOUT = 5000;
+    public static final int MAX_DATAGRAM_SIZE = 65507;
+
+    private int batchSize;                                   // maximum number of frames in one packet
+    private long maxDelay;                                   // maximum time (ms) a frame waits in the batch
+    private CopyOnWriteArrayList<Subscriber> subscribers;
+
+    private Selector selector;                               // selector for the channels
+    private ServerSocketChannel serverChannel;               // channel that accepts the TCP subscribers
+    private DatagramChannel datagramChannel;                 // channel of the UDP subscribers
+    private ByteBuffer datagram;                             // buffer for the received subscriptions
+    private Thread thread;                                   // thread that sends the packets
+    private volatile boolean running;                        // if the publisher is running
+
+    public FramePublisher() {
+        this(BATCH_SIZE, MAX_DELAY);
+    }
+
+    /**
+     * @param batchSize - maximum number of frames in one packet
+     * @param maxDelay  - maximum time (ms) a frame waits for the batch to fill
+     */
+    public FramePublisher(int batchSize, long maxDelay) {
+        if (batchSize < 1 || batchSize > 255) {
+            throw new IllegalArgumentException("Batch size must be between [1-255]");
+        }
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        this.subscribers = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Start on the loopback interface
+     *
+     * @param port - port number, or 0 for any free port
+     * @throws IOException
+     */
+    public void start(int port) throws IOException {
+        start(new InetSocketAddress(InetAddress.getByName(null), port));
+    }
+
+    /**
+     * Start accepting TCP subscribers on the address, and UDP subscribers on the same
+     * address and port number
+     *
+     * @param address
+     * @throws IOException
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Publisher is already running");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().bind(address);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        datagramChannel = DatagramChannel.open();
+        datagramChannel.configureBlocking(false);
+        datagramChannel.socket().bind(new InetSocketAddress(address.getAddress(), getLocalPort()));
+        datagramChannel.register(selector, SelectionKey.OP_READ);
+        datagram = ByteBuffer.allocate(64);
+
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "FramePublisher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the publisher and disconnect all subscribers
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onFrame(SpectrumFrame frame) {
+        publish(frame);
+    }
+
+    /**
+     * Add copy of the frame to the batch of each subscriber, this never blocks
+     *
+     * @param frame
+     */
+    public void publish(SpectrumFrame frame) {
+        boolean ready = false;
+        for (Subscriber subscriber : subscribers) {
+            ready |= subscriber.add(frame);
+        }
+        if (ready && running) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Selector loop, accepts the subscribers and sends the packets
+     */
+    private void loop() {
+        try {
+            while (running) {
+                selector.select(Math.max(1, maxDelay / 2));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.channel() == datagramChannel) {
+                        subscribe();
+                    } else if (key.isReadable()) {
+                        // subscribers do not send data, reading detects the closed connection
+                        Subscriber subscriber = (Subscriber) key.attachment();
+                        datagram.clear();
+                        try {
+                            if (subscriber.channel.read(datagram) < 0) {
+                                remove(subscriber);
+                            }
+                        } catch (IOException e) {
+                            remove(subscriber);
+                        }
+                    }
+                }
+
+                // failing subscriber is removed, it never stops the loop for the others
+                long now = System.currentTimeMillis();
+                for (Subscriber subscriber : subscribers) {
+                    try {
+                        subscriber.send(now);
+                    } catch (IOException | RuntimeException e) {
+                        remove(subscriber);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // the selector or the server channel failed, the publisher stops
+        } finally {
+            running = false;
+            for (Subscriber subscriber : subscribers) {
+                remove(subscriber);
+            }
+            try {
+                serverChannel.close();
+                datagramChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                // nothing more to release
+            }
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel = null;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Subscriber subscriber = new Subscriber(channel, null);
+            subscriber.key = channel.register(selector, SelectionKey.OP_READ, subscriber);
+            subscribers.add(subscriber);
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // the connection is dropped anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Add UDP subscriber, or renew its subscription
+     *
+     * @throws IOException
+     */
+    private void subscribe() throws IOException {
+        SocketAddress address;
+        datagram.clear();
+        while ((address = datagramChannel.receive(datagram)) != null) {
+            datagram.clear();
+            Subscriber subscriber = null;
+            for (Subscriber s : subscribers) {
+                if (address.equals(s.address)) {
+                    subscriber = s;
+                }
+            }
+            if (subscriber == null) {
+                subscriber = new Subscriber(null, address);
+                subscribers.add(subscriber);
+            }
+            subscriber.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        if (subscriber.channel != null) {
+            subscriber.key.cancel();
+            try {
+                subscriber.channel.close();
+            } catch (IOException e) {
+                // the connection is closed anyway
+            }
+        }
+    }
+
+    /**
+     * Get the port number of the publisher, or -1 if it is not running
+     *
+     * @return
+     */
+    public int getLocalPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Get the number of frames replaced in the batches of slow subscribers, or left out of
+     * datagrams that could not hold the whole batch
+     *
+     * @return
+     */
+    public long getCoalescedFrames() {
+        long count = 0;
+        for (Subscriber subscriber : subscribers) {
+            count += subscriber.coalesced;
+        }
+        return count;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * TCP or UDP subscriber, with its batch and the packet that is being sent
+     */
+    private class Subscriber {
+
+        final SocketChannel channel;          // channel of TCP subscriber, or null
+        final SocketAddress address;          // address of UDP subscriber, or null
+        SelectionKey key;
+        volatile long lastSeen;               // time (ms) of the last UDP subscription
+
+        private final SpectrumFrame[] batch;  // frames waiting for the next packet
+        private int batchCount;               // number of frames in the batch
+        private long batchTime;               // time (ms) when the first frame was added to the batch
+        private volatile long coalesced;      // number of replaced frames
+
+        private final SpectrumFrameCodec codec;
+        private ByteBuffer packet;            // coded packet that is sent
+
+        Subscriber(SocketChannel channel, SocketAddress address) {
+            this.channel = channel;
+            this.address = address;
+            this.batch = new SpectrumFrame[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                batch[i] = new SpectrumFrame();
+            }
+            this.codec = new SpectrumFrameCodec();
+            this.packet = ByteBuffer.allocateDirect(0);
+        }
+
+        /**
+         * Add frame to the batch, when the batch is full the latest frame is replaced
+         *
+         * @param frame
+         * @return true if the batch is full
+         */
+        synchronized boolean add(SpectrumFrame frame) {
+            if (batchCount == 0) {
+                batchTime = System.currentTimeMillis();
+            }
+            if (batchCount < batchSize) {
+                batch[batchCount++].set(frame);
+            } else {
+                batch[batchSize - 1].set(frame);
+                coalesced++;
+            }
+            return batchCount == batchSize;
+        }
+
+        /**
+         * Send the rest of the previous packet, or code the batch into new packet when it
+         * is full or waited long enough
+         *
+         * @param now
+         * @throws IOException
+         */
+        void send(long now) throws IOException {
+            if (address != null && now - lastSeen > SUBSCRIPTION_TIMEOUT) {
+                subscribers.remove(this);
+                return;
+            }
+            if (!packet.hasRemaining() && !encode(now)) {
+                return;
+            }
+
+            // over TCP the rest of the packet is sent on the next loop, new frames are coalesced meanwhile
+            if (channel != null) {
+                channel.write(packet);
+            } else if (datagramChannel.send(packet, address) == 0) {
+                // full send buffer, the packet is dropped and the next one starts with a key frame
+                packet.position(packet.limit());
+                codec.reset();
+            }
+        }
+
+        private synchronized boolean encode(long now) {
+            if (batchCount == 0 || (batchCount < batchSize && now - batchTime < maxDelay)) {
+                return false;
+            }
+
+            // datagram takes only the latest frames that fit, the older ones are left out
+            int size = channel != null ? 5 : 1;
+            int first = 0;
+            for (int i = batchCount - 1; i >= 0; i--) {
+                int frameSize = SpectrumFrameCodec.getMaxEncodedSize(batch[i].getFrequencyBinCount());
+                if (address != null && size + frameSize > MAX_DATAGRAM_SIZE) {
+                    first = i + 1;
+                    break;
+                }
+                size += frameSize;
+            }
+            if (first == batchCount) {
+                batchCount = 0;
+                subscribers.remove(this);
+                return false;
+            }
+            coalesced += first;
+            if (packet.capacity() < size) {
+                packet = ByteBuffer.allocateDirect(size);
+            }
+
+            packet.clear();
+            if (channel != null) {
+                packet.putInt(0);
+            }
+            packet.put((byte) (batchCount - first));
+            for (int i = first; i < batchCount; i++) {
+                codec.encode(batch[i], packet);
+            }
+            if (channel != null) {
+                packet.putInt(0, packet.position() - 4);
+            }
+            packet.flip();
+            batchCount = 0;
+            return true;
+        }
+    }
+}
@@ -6,11 +6,32 @@ package com.slaviboy.analyser.window;
  */
 public class Window {
 
+    public static final int TYPE_BLACKMAN = 0;
+    public static final int TYPE_HANNING = 1;
+
     protected double[] data;
 
     public Window() {
     }
 
+    /**
+     * Create window by given type
+     *
+     * @param type   - TYPE_BLACKMAN or TYPE_HANNING
+     * @param length - window length
+     * @return
+     */
+    public static Window create(int type, int length) {
+        switch (type) {
+            case TYPE_BLACKMAN:
+                return new Blackman(length);
+            case TYPE_HANNING:
+                return new Hanning(length);
+            default:
+                throw new IllegalArgumentException("Unknown window type " + type);
+        }
+    }
+
     /**
      * Get value from the array, on given index
      * @param index
@@ -21,10 +42,19 @@ public class Window {
     }
 
     /**
-     * Get the whole data as array
+     * Get copy of the whole data as array, windows are shared between analysers
+     * by AnalyserCache, so the coefficients themselves are never handed out
      * @return
      */
     public double[] getData() {
-        return data;
+        return data.clone();
+    }
+
+    /**
+     * Get the window length
+     * @return
+     */
+    public int getLength() {
+        return data.length;
     }
 }
@@ -0,0 +1,72 @@
+package com.slaviboy.analyser;
+
+import com.slaviboy.analyser.window.Window;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sharing and eviction of the cached configurations, and the shared tables staying intact.
+ */
+public class AnalyserCacheTest {
+
+    @Test
+    public void sameConfiguration_isShared() {
+        AnalyserCache.clear();
+        AnalyserCache.Entry entry = AnalyserCache.get(1024, 48000, Window.TYPE_BLACKMAN);
+        assertSame(entry, AnalyserCache.get(1024, 48000, Window.TYPE_BLACKMAN));
+
+        // the plan depends only on the fft size
+        AnalyserCache.Entry other = AnalyserCache.get(1024, 44100, Window.TYPE_HANNING);
+        assertNotSame(entry, other);
+        assertSame(entry.getPlan(), other.getPlan());
+        assertNotSame(entry.getWindow(), other.getWindow());
+
+        Analyser first = new Analyser(1024, 48000, new Range(-100, -30), 0.8);
+        Analyser second = new Analyser(1024, 48000, new Range(-100, -30), 0.8);
+        assertSame(first.getFrequency(), second.getFrequency());
+    }
+
+    @Test
+    public void leastRecentlyUsed_isEvicted() {
+        AnalyserCache.clear();
+        AnalyserCache.Entry first = AnalyserCache.get(64, 8000, Window.TYPE_BLACKMAN);
+        AnalyserCache.Entry second = AnalyserCache.get(64, 8001, Window.TYPE_BLACKMAN);
+        for (int i = 2; i < AnalyserCache.MAX_ENTRIES + 5; i++) {
+
+            // keep the first entry in use
+            assertSame(first, AnalyserCache.get(64, 8000, Window.TYPE_BLACKMAN));
+            AnalyserCache.get(64, 8000 + i, Window.TYPE_BLACKMAN);
+        }
+        assertEquals(AnalyserCache.MAX_ENTRIES, AnalyserCache.size());
+        assertSame(first, AnalyserCache.get(64, 8000, Window.TYPE_BLACKMAN));
+        assertNotSame(second, AnalyserCache.get(64, 8001, Window.TYPE_BLACKMAN));
+
+        AnalyserCache.clear();
+        assertEquals(0, AnalyserCache.size());
+    }
+
+    @Test
+    public void sharedTables_cannotBeModified() {
+        AnalyserCache.Entry entry = AnalyserCache.get(256, 48000, Window.TYPE_HANNING);
+        double coefficient = entry.getWindow().get(100);
+        double frequency = entry.getFrequency().get(10);
+
+        entry.getWindow().getData()[100] = 0.0;
+        entry.getFrequency().getData()[10] = 0.0;
+        assertEquals(coefficient, entry.getWindow().get(100), 0.0);
+        assertEquals(frequency, entry.getFrequency().get(10), 0.0);
+        assertEquals(256, entry.getWindow().getLength());
+        assertEquals(256, entry.getFrequency().getLength());
+    }
+
+    @Test
+    public void prewarm_createsEntries() {
+        AnalyserCache.clear();
+        AnalyserCache.prewarm(new int[]{256, 512, 1024}, 48000, Window.TYPE_BLACKMAN);
+        assertEquals(3, AnalyserCache.size());
+        assertEquals(512, AnalyserCache.get(512, 48000, Window.TYPE_BLACKMAN).getFftSize());
+        assertEquals(3, AnalyserCache.size());
+    }
+}
@@ -0,0 +1,314 @@
+package com.slaviboy.analyser;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * The PCM overloads of the analyser give the same spectrum as the float samples, the
+ * configuration is swapped on the frame boundary, and registered bin ranges are computed
+ * the same as the full spectrum.
+ */
+public class AnalyserTest {
+
+    private static final int FFT_SIZE = 1024;
+    private static final int SAMPLE_RATE = 48000;
+
+    private static Analyser create() {
+        return new Analyser(FFT_SIZE, SAMPLE_RATE, new Range(-100, -30), 0.0);
+    }
+
+    /**
+     * Two tones, rounded to given number of bits so every encoding can hold them exactly
+     */
+    private static float[] signal(int length, int bits) {
+        float[] samples = new float[length];
+        double scale = 1 << (bits - 1);
+        for (int i = 0; i < length; i++) {
+            double value = 0.4 * Math.sin(2.0 * Math.PI * 1000.0 * i / SAMPLE_RATE) +
+                    0.2 * Math.sin(2.0 * Math.PI * 5000.0 * i / SAMPLE_RATE);
+            samples[i] = (float) (Math.round(value * scale) / scale);
+        }
+        return samples;
+    }
+
+    private static double[] analyse(float[] samples) {
+        Analyser analyser = create();
+        analyser.setAudioBuffer(samples);
+        return analyser.getDoubleFrequencyData().clone();
+    }
+
+    /**
+     * Interleave the samples as the second of two channels, the first channel is noise
+     */
+    private static ByteBuffer encode(float[] samples, int encoding, ByteOrder order) {
+        int bytesPerSample = Analyser.getBytesPerSample(encoding);
+        ByteBuffer buffer = ByteBuffer.allocate(3 + samples.length * 2 * bytesPerSample).order(order);
+        buffer.position(3);
+        for (int i = 0; i < samples.length; i++) {
+            for (int channel = 0; channel < 2; channel++) {
+                float sample = channel == 1 ? samples[i] : (i % 7) * 0.1f - 0.3f;
+                switch (encoding) {
+                    case Analyser.ENCODING_PCM_8BIT:
+                        buffer.put((byte) (Math.round(sample * 128.0f) + 128));
+                        break;
+                    case Analyser.ENCODING_PCM_16BIT:
+                        buffer.putShort((short) Math.round(sample * 32768.0f));
+                        break;
+                    case Analyser.ENCODING_PCM_24BIT_PACKED:
+                        int value = Math.round(sample * 8388608.0f);
+                        if (order == ByteOrder.BIG_ENDIAN) {
+                            buffer.put((byte) (value >> 16)).put((byte) (value >> 8)).put((byte) value);
+                        } else {
+                            buffer.put((byte) value).put((byte) (value >> 8)).put((byte) (value >> 16));
+                        }
+                        break;
+                    case Analyser.ENCODING_PCM_32BIT:
+                        buffer.putInt((int) Math.round(sample * 2147483648.0));
+                        break;
+                    default:
+                        buffer.putFloat(sample);
+                }
+            }
+        }
+        buffer.position(3);
+        return buffer;
+    }
+
+    @Test
+    public void shortSamples_matchFloatSamples() {
+        float[] samples = signal(FFT_SIZE, 16);
+        short[] mono = new short[FFT_SIZE];
+        short[] stereo = new short[FFT_SIZE * 2];
+        for (int i = 0; i < FFT_SIZE; i++) {
+            mono[i] = (short) Math.round(samples[i] * 32768.0f);
+            stereo[2 * i] = 1000;
+            stereo[2 * i + 1] = mono[i];
+        }
+        double[] expected = analyse(samples);
+
+        Analyser analyser = create();
+        analyser.setAudioBuffer(mono);
+        assertArrayEquals(expected, analyser.getDoubleFrequencyData(), 1e-9);
+        analyser.setAudioBuffer(stereo, 2, 1);
+        assertArrayEquals(expected, analyser.getDoubleFrequencyData(), 1e-9);
+    }
+
+    @Test
+    public void intSamples_matchFloatSamples() {
+        float[] samples = signal(FFT_SIZE, 16);
+        int[] pcm24 = new int[FFT_SIZE];
+        int[] pcm32 = new int[FFT_SIZE];
+        for (int i = 0; i < FFT_SIZE; i++) {
+            pcm24[i] = Math.round(samples[i] * 8388608.0f);
+            pcm32[i] = (int) Math.round(samples[i] * 2147483648.0);
+        }
+        double[] expected = analyse(samples);
+
+        Analyser analyser = create();
+        analyser.setAudioBuffer(pcm24, 24, 1, 0);
+        assertArrayEquals(expected, analyser.getDoubleFrequencyData(), 1e-9);
+        analyser.setAudioBuffer(pcm32, 32, 1, 0);
+        assertArrayEquals(expected, analyser.getDoubleFrequencyData(), 1e-9);
+    }
+
+    @Test
+    public void byteBuffer_everyEncodingAndByteOrder() {
+        int[] encodings = {
+                Analyser.ENCODING_PCM_16BIT, Analyser.ENCODING_PCM_24BIT_PACKED,
+                Analyser.ENCODING_PCM_32BIT, Analyser.ENCODING_PCM_FLOAT
+        };
+        ByteOrder[] orders = {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN};
+        float[] samples = signal(FFT_SIZE, 16);
+        double[] expected = analyse(samples);
+
+        for (int encoding : encodings) {
+            for (ByteOrder order : orders) {
+                ByteBuffer buffer = encode(samples, encoding, order);
+                Analyser analyser = create();
+                analyser.setAudioBuffer(buffer, encoding, 2, 1);
+                assertArrayEquals(expected, analyser.getDoubleFrequencyData(), 1e-9);
+
+                // the position is not changed
+                assertEquals(3, buffer.position());
+            }
+        }
+
+        // 8-bit samples hold only the signal rounded to 8 bits
+        samples = signal(FFT_SIZE, 8);
+        Analyser analyser = create();
+        analyser.setAudioBuffer(encode(samples, Analyser.ENCODING_PCM_8BIT, ByteOrder.LITTLE_ENDIAN),
+                Analyser.ENCODING_PCM_8BIT, 2, 1);
+        assertArrayEquals(analyse(samples), analyser.getDoubleFrequencyData(), 1e-9);
+    }
+
+    @Test
+    public void timeDomainData_isScaledToUnitRange() {
+        float[] samples = signal(FFT_SIZE, 16);
+        Analyser analyser = create();
+        analyser.setAudioBuffer(encode(samples, Analyser.ENCODING_PCM_24BIT_PACKED, ByteOrder.LITTLE_ENDIAN),
+                Analyser.ENCODING_PCM_24BIT_PACKED, 2, 1);
+        float[] timeDomainData = analyser.getFloatTimeDomainData();
+        for (int i = 0; i < FFT_SIZE; i++) {
+            assertEquals(samples[i], timeDomainData[i], 0.0f);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shortByteBuffer_throws() {
+        Analyser analyser = create();
+        analyser.setFftSize(2 * FFT_SIZE);
+
+        // the buffer is long enough for the current size, but not for the applied one
+        ByteBuffer buffer = encode(signal(FFT_SIZE, 16), Analyser.ENCODING_PCM_16BIT, ByteOrder.LITTLE_ENDIAN);
+        analyser.setAudioBuffer(buffer, Analyser.ENCODING_PCM_16BIT, 2, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownEncoding_throws() {
+        Analyser.getBytesPerSample(1);
+    }
+
+    @Test
+    public void fftSize_isAppliedOnNextFrame() {
+        Analyser analyser = create();
+        analyser.setFftSize(2048);
+        assertEquals(FFT_SIZE, analyser.getFftSize());
+        assertEquals(2048, analyser.getPendingFftSize());
+        assertEquals(FFT_SIZE / 2, analyser.getDoubleFrequencyData().length);
+
+        float[] samples = signal(4096, 16);
+        analyser.setAudioBuffer(samples, 0, samples.length);
+        assertEquals(2048, analyser.getFftSize());
+        assertEquals(2048, analyser.getPendingFftSize());
+        assertEquals(1024, analyser.getFrequencyBinCount());
+        assertEquals(1024, analyser.getDoubleFrequencyData().length);
+        assertEquals(2048, analyser.getFloatTimeDomainData().length);
+        assertEquals(SAMPLE_RATE / 2048.0, analyser.getFrequency().get(1), 1e-9);
+    }
+
+    @Test
+    public void pendingChanges_areMerged() {
+        Analyser analyser = create();
+        analyser.setSampleRate(44100);
+        analyser.setFftSize(512);
+        analyser.setFftSize(256);
+        analyser.setAudioBuffer(new float[256]);
+
+        // the last fft size wins, and the sample rate that was not applied yet is kept
+        assertEquals(256, analyser.getFftSize());
+        assertEquals(44100, analyser.getSampleRate());
+
+        Analyser.Configuration configuration = new Analyser.Configuration(128, 8000);
+        analyser.setConfiguration(configuration);
+        analyser.setAudioBuffer(new float[128]);
+        assertSame(configuration, analyser.getConfiguration());
+        assertSame(configuration.getDoubleFrequencyData(), analyser.getDoubleFrequencyData());
+    }
+
+    @Test
+    public void smoothing_isResampledOntoNewBins() {
+        Analyser analyser = new Analyser(FFT_SIZE, SAMPLE_RATE, new Range(-100, -30), 0.8);
+        float[] samples = signal(FFT_SIZE, 16);
+        for (int i = 0; i < 20; i++) {
+            analyser.setAudioBuffer(samples);
+        }
+
+        // silence after the change only decays the smoothed data, which stays on the tone
+        analyser.setFftSize(4096);
+        analyser.setAudioBuffer(new float[4096]);
+        double[] smoothed = analyser.getSmoothedMagnitudeData();
+        int peak = 0;
+        for (int i = 1; i < smoothed.length; i++) {
+            if (smoothed[i] > smoothed[peak]) {
+                peak = i;
+            }
+        }
+        assertEquals(1000.0, analyser.getFrequency().get(peak), 2 * SAMPLE_RATE / (double) FFT_SIZE);
+        assertTrue(smoothed[peak] > 0);
+    }
+
+    @Test
+    public void configuration_isConsistentWhileSwapped() throws InterruptedException {
+        final Analyser analyser = create();
+        final float[] samples = signal(8192, 16);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        // the audio thread analyses, while this thread keeps changing the fft size
+        Thread audio = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        analyser.setAudioBuffer(samples, 0, samples.length);
+                    }
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        audio.start();
+        int[] sizes = {256, 512, 1024, 2048, 4096};
+        for (int i = 0; audio.isAlive(); i++) {
+            analyser.setFftSize(sizes[i % sizes.length]);
+            Analyser.Configuration c = analyser.getConfiguration();
+            assertEquals(c.getFrequencyBinCount(), c.getDoubleFrequencyData().length);
+            assertEquals(c.getFrequencyBinCount(), c.getByteFrequencyData().length);
+            assertEquals(c.getFftSize(), c.getFrequency().getLength());
+        }
+        audio.join();
+        assertNull(error.get());
+    }
+
+    @Test
+    public void binRanges_matchFullSpectrum() {
+        float[] samples = signal(FFT_SIZE, 16);
+        double[] expected = analyse(samples);
+
+        // overlapping ranges are merged, and the range past the last bin is clamped
+        Analyser analyser = create();
+        analyser.addBinRange(new Range(15, 40));
+        analyser.addBinRange(new Range(10, 20));
+        analyser.addBinRange(new Range(500, 600));
+        analyser.setAudioBuffer(samples);
+        double[] actual = analyser.getDoubleFrequencyData();
+        for (int i = 0; i < actual.length; i++) {
+            boolean inRange = (i >= 10 && i <= 40) || i >= 500;
+            assertEquals(inRange ? expected[i] : 0.0, actual[i], 1e-9);
+        }
+
+        // after the ranges are removed all bins are computed again
+        analyser.clearBinRanges();
+        analyser.setAudioBuffer(samples);
+        assertArrayEquals(expected, analyser.getDoubleFrequencyData(), 1e-9);
+    }
+
+    @Test
+    public void fewBins_matchFullSpectrum() {
+        float[] samples = signal(FFT_SIZE, 16);
+        double[] expected = analyse(samples);
+
+        // two bins are computed with Goertzel instead of the fft
+        Analyser analyser = create();
+        Range range = new Range(21, 22);
+        analyser.addBinRange(range);
+        analyser.setAudioBuffer(samples);
+        assertEquals(expected[21], analyser.getDoubleFrequencyData()[21], 1e-6);
+        assertEquals(expected[22], analyser.getDoubleFrequencyData()[22], 1e-6);
+        assertEquals(0.0, analyser.getDoubleFrequencyData()[23], 0.0);
+
+        // the range is read on every frame, so moving it changes the computed bins
+        range.min = 106;
+        range.max = 107;
+        analyser.setAudioBuffer(samples);
+        assertEquals(expected[107], analyser.getDoubleFrequencyData()[107], 1e-6);
+
+        analyser.removeBinRange(range);
+        analyser.setAudioBuffer(samples);
+        assertArrayEquals(expected, analyser.getDoubleFrequencyData(), 1e-9);
+    }
+}
@@ -0,0 +1,108 @@
+package com.slaviboy.analyser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decisions of the frame governor over and under the budget, the warm-up of the average,
+ * and the fft size limit from the buffer length.
+ */
+public class FrameGovernorTest {
+
+    private static final long MILLISECOND = 1000000L;
+
+    private static Analyser createAnalyser(int fftSize) {
+        return new Analyser(fftSize, 48000, new Range(-100, -30), 0.8);
+    }
+
+    /**
+     * Run given number of frames, each one taking the same time in the analyser
+     */
+    private static void run(FrameGovernor governor, Analyser analyser, int frames, long nanos) {
+        for (int i = 0; i < frames; i++) {
+            governor.apply(analyser, 4096);
+            governor.onAnalysed(nanos);
+        }
+    }
+
+    @Test
+    public void average_startsFromFirstTime() {
+        FrameGovernor governor = new FrameGovernor(4096);
+        Analyser analyser = createAnalyser(1024);
+
+        // 10ms is between the thresholds of 8ms and 16ms, so no decision during the warm-up
+        run(governor, analyser, 50, 10 * MILLISECOND);
+        assertEquals(10.0, governor.getAnalysisTime(), 1e-9);
+        assertEquals(0, governor.getDecisionCount());
+        assertEquals(1024, governor.getFftSize());
+        assertEquals(1, governor.getFrameSkip());
+    }
+
+    @Test
+    public void overBudget_lowersFftSizeThenFrameRate() {
+        FrameGovernor governor = new FrameGovernor(4096);
+        Analyser analyser = createAnalyser(512);
+
+        run(governor, analyser, FrameGovernor.HYSTERESIS_FRAMES, 20 * MILLISECOND);
+        assertEquals(1, governor.getDecisionCount());
+        assertEquals(256, governor.getFftSize());
+
+        // the decided size is set to the analyser before the next buffer
+        governor.apply(analyser, 4096);
+        assertEquals(256, analyser.getPendingFftSize());
+
+        // at the minimum fft size the buffers are skipped
+        run(governor, analyser, FrameGovernor.HYSTERESIS_FRAMES * 10, 20 * MILLISECOND);
+        assertEquals(256, governor.getFftSize());
+        assertEquals(FrameGovernor.MAX_FRAME_SKIP, governor.getFrameSkip());
+
+        int analysed = 0;
+        for (int i = 0; i < 20; i++) {
+            if (governor.shouldAnalyse()) {
+                analysed++;
+            }
+        }
+        assertEquals(20 / FrameGovernor.MAX_FRAME_SKIP, analysed);
+    }
+
+    @Test
+    public void underBudget_raisesFrameRateThenFftSize() {
+        FrameGovernor governor = new FrameGovernor(4096);
+        Analyser analyser = createAnalyser(512);
+        run(governor, analyser, FrameGovernor.HYSTERESIS_FRAMES * 2, 20 * MILLISECOND);
+        assertEquals(2, governor.getFrameSkip());
+
+        // the first step up restores the frame rate, the next ones the fft size up to the buffer
+        run(governor, analyser, FrameGovernor.HYSTERESIS_FRAMES * 100, MILLISECOND);
+        assertEquals(1, governor.getFrameSkip());
+        assertEquals(4096, governor.getFftSize());
+    }
+
+    @Test
+    public void fftSize_isLimitedByBufferLength() {
+        FrameGovernor governor = new FrameGovernor(8192);
+        Analyser analyser = createAnalyser(2048);
+        governor.apply(analyser, 1000);
+        assertEquals(512, governor.getFftSize());
+        assertEquals(512, analyser.getPendingFftSize());
+
+        for (int i = 0; i < FrameGovernor.HYSTERESIS_FRAMES * 10; i++) {
+            governor.apply(analyser, 1000);
+            governor.onAnalysed(MILLISECOND);
+        }
+        assertEquals(512, governor.getFftSize());
+    }
+
+    @Test
+    public void drawTime_countsInTheBudget() {
+        FrameGovernor governor = new FrameGovernor(4096);
+        Analyser analyser = createAnalyser(1024);
+        governor.onDrawn(12 * MILLISECOND);
+        assertEquals(12.0, governor.getDrawTime(), 1e-9);
+
+        // 6ms in the analyser alone is under the budget, but with the drawing it is over it
+        run(governor, analyser, FrameGovernor.HYSTERESIS_FRAMES, 6 * MILLISECOND);
+        assertEquals(512, governor.getFftSize());
+    }
+}
@@ -0,0 +1,94 @@
+package com.slaviboy.analyser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Percentiles of the histogram, their relative error and recording from several threads.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValues_areExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 10; micros++) {
+            histogram.record(micros * 1000L);
+        }
+        assertEquals(10, histogram.getCount());
+        assertEquals(0.005, histogram.getPercentile(50), 0.0);
+        assertEquals(0.009, histogram.getPercentile(90), 0.0);
+        assertEquals(0.010, histogram.getPercentile(100), 0.0);
+        assertEquals(0.0055, histogram.getMean(), 1e-12);
+        assertEquals(0.010, histogram.getMax(), 0.0);
+    }
+
+    @Test
+    public void percentiles_areWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 37000L);
+        }
+
+        // the value of rank p is i * 37us, the bucket bound is above it by less than 12.5%
+        double[] percentiles = {1, 25, 50, 90, 99, 99.9};
+        for (double p : percentiles) {
+            double exact = Math.ceil(p * 10) * 0.037;
+            double value = histogram.getPercentile(p);
+            assertTrue(value >= exact);
+            assertTrue(value <= exact * 1.125);
+        }
+        assertEquals(37.0, histogram.getPercentile(100), 0.0);
+        assertEquals(37.0, histogram.getMax(), 0.0);
+    }
+
+    @Test
+    public void negativeValues_areIgnored() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5000);
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getPercentile(50), 0.0);
+        assertEquals(0.0, histogram.getMean(), 0.0);
+    }
+
+    @Test
+    public void hugeValues_goToLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE / 1000 / 1000.0, histogram.getPercentile(50), 1.0);
+    }
+
+    @Test
+    public void reset_clearsValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(2000000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getMax(), 0.0);
+        histogram.record(3000);
+        assertEquals(0.003, histogram.getPercentile(100), 0.0);
+    }
+
+    @Test
+    public void concurrentRecords_areCounted() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record((i % 100 + offset) * 1000L);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, histogram.getCount());
+        assertEquals(0.102, histogram.getMax(), 0.0);
+    }
+}
@@ -0,0 +1,95 @@
+package com.slaviboy.analyser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stitching of the stage spectra and the peak position of bass and treble tones.
+ */
+public class MultiResolutionAnalyserTest {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final int FFT_SIZE = 1024;
+    private static final int STAGES = 5;
+
+    private static float[] sine(int length, double frequency) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) (0.5 * Math.sin(2.0 * Math.PI * frequency * i / SAMPLE_RATE));
+        }
+        return samples;
+    }
+
+    private static MultiResolutionAnalyser create() {
+        return new MultiResolutionAnalyser(FFT_SIZE, STAGES, SAMPLE_RATE, new Range(-100, -30), 0.0);
+    }
+
+    private static int peak(double[] data) {
+        int peak = 0;
+        for (int i = 1; i < data.length; i++) {
+            if (data[i] > data[peak]) {
+                peak = i;
+            }
+        }
+        return peak;
+    }
+
+    @Test
+    public void stages_areStitchedWithoutGapsOrOverlaps() {
+        MultiResolutionAnalyser analyser = create();
+
+        // last stage from 0Hz, middle stages one octave each, first stage up to nyquist
+        int lower = FFT_SIZE / 5;
+        int expected = 2 * lower + (STAGES - 2) * lower + (FFT_SIZE / 2 - lower);
+        assertEquals(expected, analyser.getFrequencyBinCount());
+
+        Frequency frequency = analyser.getFrequency();
+        assertEquals(0.0, frequency.get(0), 0.0);
+        assertEquals(SAMPLE_RATE / 2.0 - analyser.getResolution(0), frequency.get(expected - 1), 1e-9);
+
+        // each step is the bin width of one of the stages, and the steps only get wider
+        double previousStep = 0.0;
+        for (int i = 1; i < expected; i++) {
+            double step = frequency.get(i) - frequency.get(i - 1);
+            assertTrue(step >= previousStep - 1e-9);
+            boolean stageWidth = false;
+            for (int stage = 0; stage < STAGES; stage++) {
+                stageWidth |= Math.abs(step - analyser.getResolution(stage)) < 1e-9;
+            }
+            assertTrue(stageWidth);
+            previousStep = step;
+        }
+        assertEquals(analyser.getResolution(0) / 16, analyser.getResolution(4), 1e-12);
+    }
+
+    @Test
+    public void bassAndTrebleTones_peakAtTheirFrequency() {
+        double[] tones = {60.0, 440.0, 3000.0, 12000.0};
+        for (double tone : tones) {
+            MultiResolutionAnalyser analyser = create();
+            analyser.setAudioBuffer(sine(SAMPLE_RATE * 2, tone));
+
+            // the peak is the bin nearest to the tone, in the stage that covers it
+            int peak = peak(analyser.getDoubleFrequencyData());
+            double frequency = analyser.getFrequency().get(peak);
+            double step = analyser.getFrequency().get(peak + 1) - frequency;
+            assertEquals(tone, frequency, step);
+        }
+    }
+
+    @Test
+    public void bassStage_hasFinerBinsThanTreble() {
+        MultiResolutionAnalyser analyser = create();
+        Frequency frequency = analyser.getFrequency();
+        double bass = frequency.get(1) - frequency.get(0);
+        int last = analyser.getFrequencyBinCount() - 1;
+        double treble = frequency.get(last) - frequency.get(last - 1);
+        assertEquals(treble / (1 << (STAGES - 1)), bass, 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroStages_throws() {
+        new MultiResolutionAnalyser(FFT_SIZE, 0, SAMPLE_RATE, new Range(-100, -30), 0.0);
+    }
+}
@@ -0,0 +1,141 @@
+package com.slaviboy.analyser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Onsets of periodic impulses, the minimum interval, the tempo estimation and the delivery
+ * of the listener callbacks.
+ */
+public class OnsetDetectorTest {
+
+    private static final double FRAME_TIME = 0.01;
+    private static final int BINS = 8;
+
+    // runs the callbacks on the thread that calls update()
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    /**
+     * Feed silence with one impulse every given number of frames, and collect the onset times
+     */
+    private static List<Double> feed(OnsetDetector detector, int frames, int period) {
+        final List<Double> onsets = new ArrayList<>();
+        detector.setOnOnsetListener(new OnsetDetector.OnOnsetListener() {
+            @Override
+            public void onOnset(double time, double strength, double tempo) {
+                onsets.add(time);
+            }
+        });
+        double[] magnitudes = new double[BINS];
+        for (int frame = 0; frame < frames; frame++) {
+            java.util.Arrays.fill(magnitudes, frame > 0 && frame % period == 0 ? 1.0 : 0.0);
+            detector.update(magnitudes, frame * FRAME_TIME);
+        }
+        return onsets;
+    }
+
+    private static OnsetDetector create(double thresholdMultiplier, double minInterval) {
+        return new OnsetDetector(OnsetDetector.THRESHOLD_WINDOW, thresholdMultiplier, minInterval,
+                new TempoTracker(), DIRECT);
+    }
+
+    @Test
+    public void impulses_areOnsetsAtTheirTime() {
+        OnsetDetector detector = create(OnsetDetector.THRESHOLD_MULTIPLIER, OnsetDetector.MIN_INTERVAL);
+        List<Double> onsets = feed(detector, 1002, 50);
+
+        assertEquals(20, onsets.size());
+        for (int i = 0; i < onsets.size(); i++) {
+            assertEquals((i + 1) * 50 * FRAME_TIME, onsets.get(i), 1e-9);
+        }
+
+        // one impulse every 0.5s is 120 beats per minute
+        assertEquals(120.0, detector.getTempo(), 0.0);
+    }
+
+    @Test
+    public void onsetsCloserThanMinInterval_areSkipped() {
+
+        // impulses every 0.05s, with lower threshold since they are a fifth of the flux values
+        List<Double> onsets = feed(create(1.0, 0.08), 101, 5);
+        assertEquals(10, onsets.size());
+        for (int i = 1; i < onsets.size(); i++) {
+            assertEquals(0.1, onsets.get(i) - onsets.get(i - 1), 1e-9);
+        }
+    }
+
+    @Test
+    public void reset_forgetsHistory() {
+        OnsetDetector detector = create(OnsetDetector.THRESHOLD_MULTIPLIER, OnsetDetector.MIN_INTERVAL);
+        feed(detector, 501, 50);
+        assertTrue(detector.getTempo() > 0);
+
+        detector.reset();
+        assertEquals(0.0, detector.getTempo(), 0.0);
+
+        // the first frame after reset has no previous frame, so it is never an onset
+        double[] loud = new double[BINS];
+        java.util.Arrays.fill(loud, 1.0);
+        assertFalse(detector.update(loud, 0.0));
+        assertFalse(detector.update(new double[BINS], 0.01));
+    }
+
+    @Test
+    public void defaultExecutor_deliversOffTheCallingThread() throws InterruptedException {
+        OnsetDetector detector = new OnsetDetector();
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final Thread caller = Thread.currentThread();
+        final boolean[] otherThread = new boolean[1];
+        detector.setOnOnsetListener(new OnsetDetector.OnOnsetListener() {
+            @Override
+            public void onOnset(double time, double strength, double tempo) {
+                otherThread[0] = Thread.currentThread() != caller;
+                delivered.countDown();
+            }
+        });
+
+        double[] magnitudes = new double[BINS];
+        detector.update(magnitudes, 0.0);
+        detector.update(magnitudes, 0.01);
+        java.util.Arrays.fill(magnitudes, 1.0);
+        detector.update(magnitudes, 0.02);
+        assertTrue(detector.update(new double[BINS], 0.03));
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertTrue(otherThread[0]);
+        detector.shutdown();
+    }
+
+    @Test
+    public void tempo_isFoldedToOneOctave() {
+        TempoTracker tracker = new TempoTracker();
+        for (int i = 0; i < 16; i++) {
+            tracker.addOnset(i * 0.4, 1.0);
+        }
+        assertEquals(150.0, tracker.getTempo(), 0.0);
+
+        // 240 beats per minute is above the octave, so it is reported as 120
+        tracker.reset();
+        for (int i = 0; i < 16; i++) {
+            tracker.addOnset(i * 0.25, 1.0);
+        }
+        assertEquals(120.0, tracker.getTempo(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMinTempo_throws() {
+        new TempoTracker(0, TempoTracker.ONSETS, TempoTracker.DECAY);
+    }
+}
@@ -0,0 +1,113 @@
+package com.slaviboy.analyser;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Opening the gate on signal, telling quiet noise from quiet tones, and the hold time.
+ */
+public class SilenceGateTest {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    private static float[] sine(int length, double amplitude) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) (amplitude * Math.sin(2.0 * Math.PI * 1000.0 * i / SAMPLE_RATE));
+        }
+        return samples;
+    }
+
+    private static float[] noise(int length, double amplitude) {
+        Random random = new Random(3);
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) (amplitude * (2.0 * random.nextDouble() - 1.0));
+        }
+        return samples;
+    }
+
+    @Test
+    public void gate_isClosedUntilSignal() {
+        SilenceGate gate = new SilenceGate();
+        assertFalse(gate.process(new float[1000], 1000, SAMPLE_RATE));
+        assertFalse(gate.isOpen());
+
+        // -43 dBFS tone is above the -60 dBFS threshold
+        assertTrue(gate.process(sine(1000, 0.01), 1000, SAMPLE_RATE));
+        assertEquals(-43.0, gate.getLevel(), 0.1);
+        assertEquals(0.25, gate.getZeroCrossingRate(), 0.01);
+    }
+
+    @Test
+    public void quietNoise_keepsGateClosed() {
+
+        // both are about -55 dBFS, inside the noise margin, but only the noise crosses zero often
+        SilenceGate gate = new SilenceGate();
+        assertFalse(gate.process(noise(1000, 0.0031), 1000, SAMPLE_RATE));
+        assertTrue(gate.getZeroCrossingRate() > SilenceGate.MAX_ZERO_CROSSING_RATE);
+        assertTrue(gate.process(sine(1000, 0.0025), 1000, SAMPLE_RATE));
+
+        // loud noise is signal
+        gate = new SilenceGate();
+        assertTrue(gate.process(noise(1000, 0.1), 1000, SAMPLE_RATE));
+    }
+
+    @Test
+    public void hold_countsNewSamples() {
+        SilenceGate gate = new SilenceGate();
+        float[] silence = new float[1000];
+
+        // the hold time of 0.5s is 4000 samples
+        gate.process(sine(1000, 0.5), 1000, SAMPLE_RATE);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(gate.process(silence, 1000, SAMPLE_RATE));
+        }
+        assertFalse(gate.process(silence, 1000, SAMPLE_RATE));
+
+        // with overlapping buffers only the hop of 250 new samples advances the hold
+        gate.process(sine(1000, 0.5), 1000, SAMPLE_RATE);
+        for (int i = 0; i < 16; i++) {
+            assertTrue(gate.process(silence, 1000, 250, SAMPLE_RATE));
+        }
+        assertFalse(gate.process(silence, 1000, 250, SAMPLE_RATE));
+
+        gate.reset();
+        assertTrue(gate.isOpen());
+    }
+
+    @Test
+    public void analyser_skipsSilentFrames() {
+        Analyser analyser = new Analyser(1024, SAMPLE_RATE, new Range(-100, -30), 0.0);
+        analyser.setSilenceGate(new SilenceGate());
+
+        analyser.setAudioBuffer(sine(1024, 0.5));
+        assertFalse(analyser.isSilent());
+        assertTrue(analyser.getByteFrequencyData()[128] > 0);
+
+        // the hop advances the hold time, 16 hops of 256 samples are 4096 samples
+        float[] silence = new float[1024];
+        for (int i = 0; i < 15; i++) {
+            analyser.setHopSize(256);
+            analyser.setAudioBuffer(silence);
+            assertFalse(analyser.isSilent());
+        }
+
+        // the closed gate clears the spectrum once, and the next frames leave it unchanged
+        analyser.setHopSize(256);
+        analyser.setAudioBuffer(silence);
+        assertTrue(analyser.isSilent());
+        assertFalse(analyser.isIdle());
+        assertEquals(0, analyser.getByteFrequencyData()[128]);
+        analyser.setAudioBuffer(silence);
+        assertTrue(analyser.isIdle());
+
+        // signal opens the gate again
+        analyser.setAudioBuffer(sine(1024, 0.5));
+        assertFalse(analyser.isSilent());
+        assertFalse(analyser.isIdle());
+    }
+}
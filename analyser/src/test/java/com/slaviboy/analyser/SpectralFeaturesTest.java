@@ -0,0 +1,82 @@
+package com.slaviboy.analyser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Values of each spectral feature for simple spectra, and the flux between frames.
+ */
+public class SpectralFeaturesTest {
+
+    private static final Frequency FREQUENCY = new Frequency(new double[]{0.0, 100.0, 200.0, 300.0});
+
+    @Test
+    public void singleBin_isCentroidAndRolloff() {
+        SpectralFeatures features = new SpectralFeatures();
+        features.update(new double[]{0.0, 0.0, 2.0, 0.0}, FREQUENCY);
+
+        assertEquals(200.0, features.get(SpectralFeatures.CENTROID), 1e-9);
+        assertEquals(0.0, features.get(SpectralFeatures.SPREAD), 1e-6);
+        assertEquals(200.0, features.get(SpectralFeatures.ROLLOFF), 0.0);
+        assertEquals(1.0, features.get(SpectralFeatures.RMS), 1e-12);
+        assertTrue(features.get(SpectralFeatures.FLATNESS) < 1e-3);
+    }
+
+    @Test
+    public void flatSpectrum_hasFlatnessOne() {
+        SpectralFeatures features = new SpectralFeatures();
+        features.update(new double[]{1.0, 1.0, 1.0, 1.0}, FREQUENCY);
+
+        assertEquals(150.0, features.get(SpectralFeatures.CENTROID), 1e-9);
+        assertEquals(Math.sqrt(12500.0), features.get(SpectralFeatures.SPREAD), 1e-9);
+        assertEquals(1.0, features.get(SpectralFeatures.FLATNESS), 1e-9);
+        assertEquals(1.0, features.get(SpectralFeatures.RMS), 1e-12);
+
+        // cumulative energy is 1, 2, 3, 4, so 85% is reached at the last bin
+        assertEquals(300.0, features.get(SpectralFeatures.ROLLOFF), 0.0);
+        features.setRolloffPercent(0.5);
+        features.update(new double[]{1.0, 1.0, 1.0, 1.0}, FREQUENCY);
+        assertEquals(100.0, features.get(SpectralFeatures.ROLLOFF), 0.0);
+    }
+
+    @Test
+    public void flux_countsOnlyRisingBins() {
+        SpectralFeatures features = new SpectralFeatures();
+        features.update(new double[]{1.0, 1.0, 1.0, 1.0}, FREQUENCY);
+        assertEquals(0.0, features.get(SpectralFeatures.FLUX), 0.0);
+
+        features.update(new double[]{3.0, 1.0, 0.0, 2.0}, FREQUENCY);
+        assertEquals(Math.sqrt(4.0 + 1.0), features.get(SpectralFeatures.FLUX), 1e-12);
+
+        features.reset();
+        features.update(new double[]{5.0, 5.0, 5.0, 5.0}, FREQUENCY);
+        assertEquals(0.0, features.get(SpectralFeatures.FLUX), 0.0);
+    }
+
+    @Test
+    public void silence_givesZeroFeatures() {
+        SpectralFeatures features = new SpectralFeatures();
+        double[] vector = features.update(new double[4], FREQUENCY);
+        assertEquals(SpectralFeatures.FEATURES_COUNT, vector.length);
+        for (double value : vector) {
+            assertEquals(0.0, value, 0.0);
+        }
+    }
+
+    @Test
+    public void analyserFrame_centroidNearTone() {
+        int fftSize = 2048;
+        int sampleRate = 48000;
+        Analyser analyser = new Analyser(fftSize, sampleRate, new Range(-100, -30), 0.0);
+        float[] samples = new float[fftSize];
+        for (int i = 0; i < fftSize; i++) {
+            samples[i] = (float) Math.sin(2.0 * Math.PI * 3000.0 * i / sampleRate);
+        }
+        analyser.setAudioBuffer(samples);
+
+        SpectralFeatures features = new SpectralFeatures();
+        features.update(analyser);
+        assertEquals(3000.0, features.get(SpectralFeatures.CENTROID), 100.0);
+    }
+}
@@ -0,0 +1,116 @@
+package com.slaviboy.analyser;
+
+import com.slaviboy.analyser.window.Window;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Density scaling of the Welch estimator for noise and tones, and the segment count.
+ */
+public class WelchEstimatorTest {
+
+    private static final int SAMPLE_RATE = 48000;
+
+    private static float[] sine(int length, double frequency, double amplitude) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) (amplitude * Math.sin(2.0 * Math.PI * frequency * i / SAMPLE_RATE));
+        }
+        return samples;
+    }
+
+    private static WelchEstimator create(int fftSize, int windowType) {
+        return new WelchEstimator(fftSize, SAMPLE_RATE, 0.5, Window.create(windowType, fftSize));
+    }
+
+    /**
+     * Integrate the density over all bins, which gives the mean power of the signal
+     */
+    private static double getPower(WelchEstimator estimator) {
+        double binWidth = (double) SAMPLE_RATE / estimator.getFftSize();
+        double power = 0.0;
+        for (double density : estimator.getMean()) {
+            power += density * binWidth;
+        }
+        return power;
+    }
+
+    @Test
+    public void whiteNoise_hasFlatDensity() {
+        double sigma = 0.1;
+        float[] noise = new float[SAMPLE_RATE * 4];
+        Random random = new Random(1);
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = (float) (sigma * random.nextGaussian());
+        }
+
+        WelchEstimator estimator = create(512, Window.TYPE_HANNING);
+        estimator.setAudioBuffer(noise);
+
+        // one-sided density of white noise is 2 * sigma^2 / sampleRate
+        double[] mean = estimator.getMean();
+        double sum = 0.0;
+        for (int i = 1; i < mean.length - 1; i++) {
+            sum += mean[i];
+        }
+        double expected = 2.0 * sigma * sigma / SAMPLE_RATE;
+        assertEquals(expected, sum / (mean.length - 2), expected * 0.02);
+        assertEquals(sigma * sigma, getPower(estimator), sigma * sigma * 0.02);
+    }
+
+    @Test
+    public void tonePower_doesNotDependOnWindowOrFftSize() {
+        float[] tone = sine(SAMPLE_RATE, 1000.0, 0.5);
+        int[] fftSizes = {256, 1024, 4096};
+        int[] windowTypes = {Window.TYPE_HANNING, Window.TYPE_BLACKMAN};
+        for (int fftSize : fftSizes) {
+            for (int windowType : windowTypes) {
+                WelchEstimator estimator = create(fftSize, windowType);
+                estimator.setAudioBuffer(tone);
+                assertEquals(0.125, getPower(estimator), 0.125 * 0.01);
+            }
+        }
+    }
+
+    @Test
+    public void segments_followHopSize() {
+        WelchEstimator estimator = create(1024, Window.TYPE_HANNING);
+        assertEquals(512, estimator.getHopSize());
+
+        // the first segment needs fftSize samples, then one segment every hop
+        float[] samples = new float[1024 + 512 * 10 + 100];
+        estimator.setAudioBuffer(samples, 0, 1000);
+        assertEquals(0, estimator.getSegmentCount());
+        estimator.setAudioBuffer(samples, 1000, samples.length - 1000);
+        assertEquals(11, estimator.getSegmentCount());
+
+        estimator.reset();
+        assertEquals(0, estimator.getSegmentCount());
+        assertEquals(0.0, estimator.getMean()[10], 0.0);
+    }
+
+    @Test
+    public void constantSegments_haveNoVariance() {
+        WelchEstimator estimator = create(256, Window.TYPE_HANNING);
+
+        // the period divides the hop, so every segment sees the same samples
+        estimator.setAudioBuffer(sine(256 * 20, SAMPLE_RATE / 64.0, 0.5));
+        double[] mean = estimator.getMean();
+        double[] variance = estimator.getVariance();
+        assertEquals(0.0, variance[4], mean[4] * 1e-6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowLengthMismatch_throws() {
+        new WelchEstimator(1024, SAMPLE_RATE, 0.5, Window.create(Window.TYPE_HANNING, 512));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidOverlap_throws() {
+        new WelchEstimator(1024, SAMPLE_RATE, 1.0, Window.create(Window.TYPE_HANNING, 1024));
+    }
+}
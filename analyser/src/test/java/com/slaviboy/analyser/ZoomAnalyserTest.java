@@ -0,0 +1,94 @@
+package com.slaviboy.analyser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bin frequencies, peak position, rejection outside the band and streaming of the zoom analyser.
+ */
+public class ZoomAnalyserTest {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final double CENTER = 1000.0;
+    private static final double BANDWIDTH = 200.0;
+
+    private static float[] sine(int length, double frequency) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) (0.5 * Math.sin(2.0 * Math.PI * frequency * i / SAMPLE_RATE));
+        }
+        return samples;
+    }
+
+    private static ZoomAnalyser create() {
+        return new ZoomAnalyser(256, SAMPLE_RATE, CENTER, BANDWIDTH, new Range(-100, -30), 0.0);
+    }
+
+    private static int peak(double[] data) {
+        int peak = 0;
+        for (int i = 1; i < data.length; i++) {
+            if (data[i] > data[peak]) {
+                peak = i;
+            }
+        }
+        return peak;
+    }
+
+    @Test
+    public void frequencies_areCenteredOnBand() {
+        ZoomAnalyser zoom = create();
+        assertEquals(120, zoom.getDecimation());
+        assertEquals(SAMPLE_RATE / 120.0 / 256, zoom.getResolution(), 1e-12);
+        assertEquals(CENTER, zoom.getFrequency().get(128), 1e-9);
+        for (int i = 1; i < zoom.getFrequencyBinCount(); i++) {
+            assertEquals(zoom.getResolution(), zoom.getFrequency().get(i) - zoom.getFrequency().get(i - 1), 1e-9);
+        }
+    }
+
+    @Test
+    public void tone_peaksAtItsBin() {
+        ZoomAnalyser zoom = create();
+
+        // 50Hz above the center is 32 bins of 1.5625Hz above the middle bin
+        zoom.setAudioBuffer(sine(SAMPLE_RATE, CENTER + 50.0));
+        assertEquals(160, peak(zoom.getDoubleFrequencyData()));
+
+        zoom.reset();
+        zoom.setAudioBuffer(sine(SAMPLE_RATE, CENTER - 25.0));
+        assertEquals(112, peak(zoom.getDoubleFrequencyData()));
+    }
+
+    @Test
+    public void toneOutsideBand_isRejected() {
+        ZoomAnalyser zoom = create();
+        zoom.setAudioBuffer(sine(SAMPLE_RATE, CENTER + 10.0));
+        double inBand = zoom.getDoubleFrequencyData()[peak(zoom.getDoubleFrequencyData())];
+
+        zoom.reset();
+        zoom.setAudioBuffer(sine(SAMPLE_RATE, CENTER + 2000.0));
+        double outOfBand = zoom.getDoubleFrequencyData()[peak(zoom.getDoubleFrequencyData())];
+        assertTrue(inBand - outOfBand > 40.0);
+    }
+
+    @Test
+    public void blocks_matchSingleBuffer() {
+        float[] samples = sine(SAMPLE_RATE, CENTER + 30.0);
+        ZoomAnalyser whole = create();
+        whole.setAudioBuffer(samples);
+
+        // odd block sizes, so the decimation phase carries over the block boundaries
+        ZoomAnalyser blocks = create();
+        for (int offset = 0; offset < samples.length; offset += 1001) {
+            blocks.setAudioBuffer(samples, offset, Math.min(1001, samples.length - offset));
+        }
+        for (int i = 0; i < whole.getFrequencyBinCount(); i++) {
+            assertEquals(whole.getDoubleFrequencyData()[i], blocks.getDoubleFrequencyData()[i], 1e-3);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bandwidthOverNyquist_throws() {
+        new ZoomAnalyser(256, SAMPLE_RATE, CENTER, SAMPLE_RATE, new Range(-100, -30), 0.0);
+    }
+}
@@ -0,0 +1,177 @@
+package com.slaviboy.analyser.batch;
+
+import com.slaviboy.analyser.Analyser;
+import com.slaviboy.analyser.Range;
+import com.slaviboy.wav.WavFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * The output does not depend on how the frames are split into chunks, and matches one pass
+ * of a single analyser, also with smoothing and with hops that do not divide the chunks.
+ */
+public class BatchAnalysisTest {
+
+    private static final int SAMPLE_RATE = 8000;
+    private static final int SAMPLES = 8000;
+    private static final int FFT_SIZE = 256;
+    private static final int HOP_SIZE = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Sweep from 200Hz to 3000Hz, with a second quieter tone
+     */
+    private static float[] signal() {
+        float[] samples = new float[SAMPLES];
+        double phase = 0.0;
+        for (int i = 0; i < SAMPLES; i++) {
+            phase += 2.0 * Math.PI * (200.0 + 2800.0 * i / SAMPLES) / SAMPLE_RATE;
+            double value = 0.5 * Math.sin(phase) + 0.1 * Math.sin(2.0 * Math.PI * 1500.0 * i / SAMPLE_RATE);
+            samples[i] = Math.round(value * 32767.0) / 32768.0f;
+        }
+        return samples;
+    }
+
+    private File write(float[] samples) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (float sample : samples) {
+            data.putShort((short) Math.round(sample * 32768.0f));
+        }
+        File file = new File(folder.newFolder(), "input.wav");
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(new WavFormat(SAMPLE_RATE, WavFormat.ENCODING_PCM_16BIT, 1).createHeader(data.capacity()).array());
+            stream.write(data.array());
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+
+    /**
+     * Run the tool with binary output and read back the values after the header
+     */
+    private float[] run(File input, String... options) throws IOException {
+        File output = folder.newFolder();
+        String[] args = new String[options.length + 5];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = "--format";
+        args[options.length + 1] = "bin";
+        args[options.length + 2] = "--output";
+        args[options.length + 3] = output.getPath();
+        args[options.length + 4] = input.getPath();
+        BatchAnalysis.main(args);
+
+        RandomAccessFile file = new RandomAccessFile(new File(output, "input.spec"), "r");
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            file.readFully(bytes);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals('S', buffer.get(0));
+            assertEquals(BatchAnalysis.BINARY_VERSION, buffer.getInt(4));
+            assertEquals(SAMPLE_RATE, buffer.getInt(8));
+            assertEquals(FFT_SIZE, buffer.getInt(12));
+            assertEquals(HOP_SIZE, buffer.getInt(16));
+
+            float[] values = new float[(bytes.length - 24) / 4];
+            buffer.position(24);
+            buffer.asFloatBuffer().get(values);
+            return values;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Compare the rows, values below MIN_DECIBELS can differ more, since the warm-up
+     * is chosen for the values above it
+     */
+    private static void assertRowsEqual(float[] expected, float[] actual, double tolerance) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            if (Float.isInfinite(expected[i])) {
+                assertEquals(expected[i], actual[i], 0.0f);
+            } else if (expected[i] >= Analyser.MIN_DECIBELS) {
+                assertEquals(expected[i], actual[i], tolerance);
+            } else {
+                assertEquals(expected[i], actual[i], Math.max(tolerance, 0.01));
+            }
+        }
+    }
+
+    @Test
+    public void spectrum_matchesSinglePass() throws IOException {
+        float[] samples = signal();
+        float[] rows = run(write(samples), "--fft", "" + FFT_SIZE, "--hop", "" + HOP_SIZE,
+                "--smoothing", "0.5", "--chunk", "1000000", "--threads", "1");
+
+        // frame k starts at sample k * hop, and every frame goes through the same analyser
+        Analyser analyser = new Analyser(FFT_SIZE, SAMPLE_RATE,
+                new Range(Analyser.MIN_DECIBELS, Analyser.MAX_DECIBELS), 0.5);
+        int frames = (SAMPLES - FFT_SIZE) / HOP_SIZE + 1;
+        int width = FFT_SIZE / 2 + 1;
+        assertEquals(frames * width, rows.length);
+        float[] expected = new float[rows.length];
+        for (int frame = 0; frame < frames; frame++) {
+            analyser.setAudioBuffer(samples, frame * HOP_SIZE, FFT_SIZE);
+            expected[frame * width] = (float) ((double) frame * HOP_SIZE / SAMPLE_RATE);
+            for (int i = 0; i < width - 1; i++) {
+                expected[frame * width + 1 + i] = (float) analyser.getDoubleFrequencyData()[i];
+            }
+        }
+        assertRowsEqual(expected, rows, 0.0);
+    }
+
+    @Test
+    public void chunks_matchSinglePass() throws IOException {
+        File input = write(signal());
+        String[] options = {"--fft", "" + FFT_SIZE, "--hop", "" + HOP_SIZE, "--smoothing", "0.5"};
+        float[] single = run(input, concat(options, "--chunk", "1000000", "--threads", "1"));
+
+        // chunk sizes that split the frames unevenly, the last chunk is shorter
+        for (String chunk : new String[]{"1", "7", "30"}) {
+            float[] chunked = run(input, concat(options, "--chunk", chunk, "--threads", "3"));
+            assertRowsEqual(single, chunked, 1e-4);
+        }
+    }
+
+    @Test
+    public void bands_matchSinglePass() throws IOException {
+        File input = write(signal());
+        String[] options = {"--fft", "" + FFT_SIZE, "--hop", "" + HOP_SIZE, "--smoothing", "0.8",
+                "--bands", "100,500,1000,2000,4000"};
+        float[] single = run(input, concat(options, "--chunk", "1000000", "--threads", "1"));
+        float[] chunked = run(input, concat(options, "--chunk", "11", "--threads", "4"));
+        assertEquals(((SAMPLES - FFT_SIZE) / HOP_SIZE + 1) * 5, single.length);
+        assertRowsEqual(single, chunked, 1e-4);
+    }
+
+    @Test
+    public void withoutSmoothing_chunksAreExact() throws IOException {
+        File input = write(signal());
+        String[] options = {"--fft", "" + FFT_SIZE, "--hop", "" + HOP_SIZE};
+        float[] single = run(input, concat(options, "--chunk", "1000000", "--threads", "1"));
+        float[] chunked = run(input, concat(options, "--chunk", "3", "--threads", "2"));
+        assertRowsEqual(single, chunked, 0.0);
+    }
+
+    private static String[] concat(String[] first, String... second) {
+        String[] result = new String[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,113 @@
+package com.slaviboy.analyser.filter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ratio, output length, gain and streaming behaviour of the resampler.
+ */
+public class PolyphaseResamplerTest {
+
+    private static float[] sine(int length, double frequency, int sampleRate) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) Math.sin(2.0 * Math.PI * frequency * i / sampleRate);
+        }
+        return samples;
+    }
+
+    private static double peak(float[] samples, int from, int to) {
+        double peak = 0.0;
+        for (int i = from; i < to; i++) {
+            peak = Math.max(peak, Math.abs(samples[i]));
+        }
+        return peak;
+    }
+
+    @Test
+    public void ratio_isReduced() {
+        PolyphaseResampler resampler = new PolyphaseResampler(44100, 48000);
+        assertEquals(160, resampler.getUp());
+        assertEquals(147, resampler.getDown());
+        assertEquals(44100, resampler.getInputRate());
+        assertEquals(48000, resampler.getOutputRate());
+    }
+
+    @Test
+    public void outputLength_followsRatio() {
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, 16000);
+        float[] input = new float[4800];
+        float[] output = new float[resampler.getMaxOutputLength(input.length)];
+        assertEquals(1600, resampler.process(input, 0, input.length, output, 0));
+
+        resampler = new PolyphaseResampler(44100, 48000);
+        input = new float[44100];
+        output = new float[resampler.getMaxOutputLength(input.length)];
+        int count = resampler.process(input, 0, input.length, output, 0);
+        assertEquals(48000, count);
+        assertTrue(count <= output.length);
+    }
+
+    @Test
+    public void constantInput_hasUnityGain() {
+        PolyphaseResampler resampler = new PolyphaseResampler(44100, 48000);
+        float[] input = new float[4410];
+        java.util.Arrays.fill(input, 1.0f);
+        float[] output = new float[resampler.getMaxOutputLength(input.length)];
+        int count = resampler.process(input, 0, input.length, output, 0);
+
+        // after the filter is filled with input, the output settles at the input level
+        int settled = (int) Math.ceil(2 * resampler.getDelay());
+        for (int i = settled; i < count; i++) {
+            assertEquals(1.0, output[i], 0.01);
+        }
+    }
+
+    @Test
+    public void downsampling_attenuatesAboveNyquist() {
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, 16000, 64);
+        int settled = (int) Math.ceil(2 * resampler.getDelay());
+
+        float[] pass = sine(48000, 1000, 48000);
+        float[] output = new float[resampler.getMaxOutputLength(pass.length)];
+        int count = resampler.process(pass, 0, pass.length, output, 0);
+        assertEquals(1.0, peak(output, settled, count), 0.05);
+
+        resampler.reset();
+        float[] stop = sine(48000, 12000, 48000);
+        count = resampler.process(stop, 0, stop.length, output, 0);
+        assertTrue(peak(output, settled, count) < 0.05);
+    }
+
+    @Test
+    public void blocks_matchSingleBuffer() {
+        float[] input = sine(10000, 440, 44100);
+        PolyphaseResampler whole = new PolyphaseResampler(44100, 48000);
+        float[] expected = new float[whole.getMaxOutputLength(input.length)];
+        int expectedCount = whole.process(input, 0, input.length, expected, 0);
+
+        // odd block sizes, so the phase carries over the block boundaries
+        PolyphaseResampler blocks = new PolyphaseResampler(44100, 48000);
+        float[] actual = new float[expected.length];
+        int count = 0;
+        for (int offset = 0; offset < input.length; offset += 333) {
+            int length = Math.min(333, input.length - offset);
+            count += blocks.process(input, offset, length, actual, count);
+        }
+        assertEquals(expectedCount, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(expected[i], actual[i], 0.0f);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRate_throws() {
+        new PolyphaseResampler(0, 48000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTaps_throws() {
+        new PolyphaseResampler(44100, 48000, 0);
+    }
+}
@@ -0,0 +1,128 @@
+package com.slaviboy.analyser.io;
+
+import com.slaviboy.analyser.Analyser;
+import com.slaviboy.analyser.Range;
+import com.slaviboy.wav.WavFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reading frames through the sliding mapped window, and passing them to the analyser.
+ */
+public class MappedAudioReaderTest {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 16-bit stereo WAV, the left channel is a ramp and the right channel is a tone
+     */
+    private File write(int frames) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(frames * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            data.putShort((short) (i % 4096 * 8));
+            data.putShort((short) Math.round(16000 * Math.sin(2.0 * Math.PI * 1000.0 * i / SAMPLE_RATE)));
+        }
+
+        File file = folder.newFile("test.wav");
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            ByteBuffer header = new WavFormat(SAMPLE_RATE, WavFormat.ENCODING_PCM_16BIT, 2).createHeader(data.capacity());
+            stream.write(header.array());
+            stream.write(data.array());
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+
+    private static Analyser createAnalyser(int fftSize) {
+        return new Analyser(fftSize, SAMPLE_RATE, new Range(-100, -30), 0.0);
+    }
+
+    @Test
+    public void format_isReadFromHeader() throws IOException {
+        MappedAudioReader reader = new MappedAudioReader(write(4000));
+        assertEquals(SAMPLE_RATE, reader.getSampleRate());
+        assertEquals(WavFormat.ENCODING_PCM_16BIT, reader.getEncoding());
+        assertEquals(2, reader.getChannelCount());
+        assertEquals(4, reader.getFrameSize());
+        assertEquals(4000, reader.getFrameCount());
+        assertEquals(0.5, reader.getDuration(), 0.0);
+        reader.close();
+    }
+
+    @Test
+    public void read_slidesWindow() throws IOException {
+
+        // the window holds 100 frames, so the reads move it through the whole file
+        MappedAudioReader reader = new MappedAudioReader(write(4000), 400);
+        float[] out = new float[60];
+        for (long frame = 0; frame + out.length <= 4000; frame += 70) {
+            reader.read(frame, out, 0, out.length);
+            for (int i = 0; i < out.length; i++) {
+                float left = (frame + i) % 4096 * 8 / 32768.0f;
+                float right = Math.round(16000 * Math.sin(2.0 * Math.PI * 1000.0 * (frame + i) / SAMPLE_RATE)) / 32768.0f;
+                assertEquals((left + right) * 0.5f, out[i], 1e-6f);
+            }
+        }
+        reader.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void framesOutsideFile_throw() throws IOException {
+        MappedAudioReader reader = new MappedAudioReader(write(100));
+        try {
+            reader.getFrames(90, 11);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void analyse_matchesFloatSamples() throws IOException {
+        MappedAudioReader reader = new MappedAudioReader(write(4000), 4096);
+        float[] samples = new float[1024];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = Math.round(16000 * Math.sin(2.0 * Math.PI * 1000.0 * (300 + i) / SAMPLE_RATE)) / 32768.0f;
+        }
+        Analyser expected = createAnalyser(1024);
+        expected.setAudioBuffer(samples);
+
+        Analyser analyser = createAnalyser(1024);
+        reader.analyse(300, analyser, 1);
+        assertArrayEquals(expected.getDoubleFrequencyData(), analyser.getDoubleFrequencyData(), 1e-9);
+        reader.close();
+    }
+
+    @Test
+    public void analyse_usesPendingFftSize() throws IOException {
+        MappedAudioReader reader = new MappedAudioReader(write(2048), 4096);
+        Analyser analyser = createAnalyser(1024);
+        analyser.setFftSize(2048);
+
+        // the window holds 1024 frames, but it is mapped for the new size
+        reader.analyse(0, analyser, 1);
+        assertEquals(2048, analyser.getFftSize());
+
+        try {
+            reader.analyse(1024, analyser, 1);
+            fail("Frames past the end of the file were analysed");
+        } catch (IllegalArgumentException e) {
+            assertEquals(2048, analyser.getFftSize());
+        }
+        reader.close();
+    }
+}
@@ -0,0 +1,207 @@
+package com.slaviboy.analyser.io;
+
+import com.slaviboy.analyser.Range;
+import com.slaviboy.analyser.SpectrumFrame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writing and reading back the archive, across segments, after reopening and by time, and
+ * the bounded number of mapped chunks.
+ */
+public class SpectrogramArchiveTest {
+
+    private static final int BIN_COUNT = 64;
+    private static final int FRAMES_PER_SEGMENT = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static SpectrumFrame createFrame(long sequence) {
+        SpectrumFrame frame = new SpectrumFrame();
+        frame.setSequence(sequence);
+        frame.setBinCount(BIN_COUNT);
+        double[] data = frame.getDoubleFrequencyData();
+        for (int i = 0; i < BIN_COUNT; i++) {
+            data[i] = -100.0 + (sequence * 7 + i) % 70;
+        }
+        return frame;
+    }
+
+    private SpectrogramArchive create(File directory, boolean sixteenBit) throws IOException {
+        return new SpectrogramArchive(directory, BIN_COUNT * 2, 48000, BIN_COUNT,
+                new Range(-100, -30), sixteenBit, FRAMES_PER_SEGMENT);
+    }
+
+    @Test
+    public void appendAndRead_acrossSegments() throws IOException {
+        SpectrogramArchive archive = create(folder.newFolder(), false);
+        int count = FRAMES_PER_SEGMENT * 2 + 50;
+        for (int frame = 0; frame < count; frame++) {
+            archive.append(createFrame(frame), 1000L + frame * 10L);
+        }
+        archive.flush();
+        assertEquals(count, archive.getFrameCount());
+
+        double step = 70.0 / 255.0;
+        double[] out = new double[BIN_COUNT];
+        for (int frame = 0; frame < count; frame += 37) {
+            assertEquals(1000L + frame * 10L, archive.getTime(frame));
+            archive.read(frame, 0, BIN_COUNT, out, 0);
+            double[] expected = createFrame(frame).getDoubleFrequencyData();
+            for (int i = 0; i < BIN_COUNT; i++) {
+                assertEquals(expected[i], out[i], 0.5 * step + 1e-9);
+            }
+        }
+        archive.close();
+    }
+
+    @Test
+    public void sixteenBit_readFrame() throws IOException {
+        SpectrogramArchive archive = create(folder.newFolder(), true);
+        archive.append(createFrame(3), 5L);
+        archive.flush();
+
+        SpectrumFrame frame = new SpectrumFrame();
+        archive.read(0, frame);
+        assertEquals(0, frame.getSequence());
+        assertEquals(BIN_COUNT, frame.getFrequencyBinCount());
+        double[] expected = createFrame(3).getDoubleFrequencyData();
+        for (int i = 0; i < BIN_COUNT; i++) {
+            assertEquals(expected[i], frame.getDoubleFrequencyData()[i], 0.5 * 70.0 / 65535.0 + 1e-9);
+        }
+
+        ByteBuffer bins = archive.getBins(0, 4, 8);
+        assertEquals(8, bins.remaining());
+        archive.close();
+    }
+
+    @Test
+    public void frames_areVisibleAfterFlush() throws IOException {
+        SpectrogramArchive archive = create(folder.newFolder(), false);
+        archive.append(createFrame(0), 0L);
+        assertEquals(0, archive.getFrameCount());
+        archive.flush();
+        assertEquals(1, archive.getFrameCount());
+        archive.close();
+    }
+
+    @Test
+    public void reopen_keepsFramesAndIndex() throws IOException {
+        File directory = folder.newFolder();
+        SpectrogramArchive archive = create(directory, false);
+        int count = FRAMES_PER_SEGMENT + SpectrogramArchive.INDEX_INTERVAL * 3 + 5;
+        for (int frame = 0; frame < count; frame++) {
+            archive.append(createFrame(frame), frame * 10L);
+        }
+        archive.close();
+
+        SpectrogramArchive reopened = new SpectrogramArchive(directory);
+        assertEquals(count, reopened.getFrameCount());
+        assertEquals(BIN_COUNT, reopened.getBinCount());
+        assertEquals(FRAMES_PER_SEGMENT, reopened.getFramesPerSegment());
+        assertEquals(1, reopened.getBytesPerBin());
+
+        // times must not go back, appending continues after the last frame
+        try {
+            reopened.append(createFrame(count), 0L);
+            fail("Frame before the last frame was appended");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        reopened.append(createFrame(count), count * 10L);
+        reopened.close();
+        assertEquals(count + 1, new SpectrogramArchive(directory).getFrameCount());
+    }
+
+    @Test
+    public void findFrame_andReadTimeRange() throws IOException {
+        SpectrogramArchive archive = create(folder.newFolder(), false);
+        int count = SpectrogramArchive.INDEX_INTERVAL * 5 + 3;
+        for (int frame = 0; frame < count; frame++) {
+            archive.append(createFrame(frame), frame * 10L);
+        }
+        archive.flush();
+
+        assertEquals(0, archive.findFrame(-5));
+        assertEquals(0, archive.findFrame(0));
+        assertEquals(13, archive.findFrame(125));
+        assertEquals(130, archive.findFrame(1300));
+        assertEquals(count, archive.findFrame(count * 10L));
+
+        long[] times = new long[8];
+        double[] out = new double[times.length * 2];
+        int read = archive.read(200, 250, 0, 2, times, out);
+        assertEquals(5, read);
+        assertEquals(200, times[0]);
+        assertEquals(240, times[4]);
+        archive.close();
+    }
+
+    @Test
+    public void readAcrossManySegments_keepsFewChunksMapped() throws IOException {
+        SpectrogramArchive archive = create(folder.newFolder(), false);
+        int segments = SpectrogramArchive.MAPPED_CHUNKS * 3;
+        int count = FRAMES_PER_SEGMENT * segments;
+        for (int frame = 0; frame < count; frame++) {
+            archive.append(createFrame(frame), frame * 10L);
+        }
+        archive.flush();
+
+        // visit every segment twice in different orders, evicted chunks are mapped again
+        double[] out = new double[BIN_COUNT];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < segments; i++) {
+                int segment = (pass == 0) ? i : (i * 7) % segments;
+                int frame = segment * FRAMES_PER_SEGMENT + segment % FRAMES_PER_SEGMENT;
+                assertEquals(frame * 10L, archive.getTime(frame));
+                archive.read(frame, 0, BIN_COUNT, out, 0);
+                double[] expected = createFrame(frame).getDoubleFrequencyData();
+                for (int j = 0; j < BIN_COUNT; j++) {
+                    assertEquals(expected[j], out[j], 0.5 * 70.0 / 255.0 + 1e-9);
+                }
+                assertTrue(archive.getMappedChunkCount() <= SpectrogramArchive.MAPPED_CHUNKS);
+            }
+        }
+        assertEquals(SpectrogramArchive.MAPPED_CHUNKS, archive.getMappedChunkCount());
+        archive.close();
+        assertEquals(0, archive.getMappedChunkCount());
+    }
+
+    @Test
+    public void appendAfterRead_remapsLastChunk() throws IOException {
+        SpectrogramArchive archive = create(folder.newFolder(), false);
+        archive.append(createFrame(0), 0L);
+        archive.flush();
+        assertEquals(0L, archive.getTime(0));
+
+        archive.append(createFrame(1), 10L);
+        archive.flush();
+        assertEquals(10L, archive.getTime(1));
+        assertEquals(1, archive.getMappedChunkCount());
+        archive.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void differentConfiguration_throws() throws IOException {
+        File directory = folder.newFolder();
+        SpectrogramArchive archive = create(directory, false);
+        archive.append(createFrame(0), 0L);
+        archive.close();
+        create(directory, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void frameOutsideOfArchive_throws() throws IOException {
+        SpectrogramArchive archive = create(folder.newFolder(), false);
+        archive.getTime(0);
+    }
+}
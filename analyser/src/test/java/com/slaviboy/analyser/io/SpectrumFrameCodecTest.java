@@ -0,0 +1,205 @@
+package com.slaviboy.analyser.io;
+
+import com.slaviboy.analyser.SpectrumFrame;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trip of spectrum frames through the codec, for key and delta frames, both
+ * quantizations, the tolerance, runs of unchanged bins and lost reference frames.
+ */
+public class SpectrumFrameCodecTest {
+
+    private static final int BIN_COUNT = 512;
+    private static final int MIN_DECIBELS = -100;
+    private static final int MAX_DECIBELS = -30;
+
+    private static SpectrumFrame createFrame(long sequence, double shift) {
+        SpectrumFrame frame = new SpectrumFrame();
+        frame.setSequence(sequence);
+        frame.setCaptureTime(1000L + sequence);
+        frame.setFftSize(BIN_COUNT * 2);
+        frame.setSampleRate(48000);
+        frame.getDecibels().min = MIN_DECIBELS;
+        frame.getDecibels().max = MAX_DECIBELS;
+        frame.setBinCount(BIN_COUNT);
+        double[] data = frame.getDoubleFrequencyData();
+        for (int i = 0; i < BIN_COUNT; i++) {
+            data[i] = -65.0 + 30.0 * Math.sin(i * 0.05 + shift);
+        }
+        return frame;
+    }
+
+    private static ByteBuffer encode(SpectrumFrameCodec codec, SpectrumFrame frame) {
+        ByteBuffer buffer = ByteBuffer.allocate(SpectrumFrameCodec.getMaxEncodedSize(frame.getFrequencyBinCount()));
+        codec.encode(frame, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void assertFrame(SpectrumFrame expected, SpectrumFrame actual, double delta) {
+        assertEquals(expected.getSequence(), actual.getSequence());
+        assertEquals(expected.getCaptureTime(), actual.getCaptureTime());
+        assertEquals(expected.getFftSize(), actual.getFftSize());
+        assertEquals(expected.getSampleRate(), actual.getSampleRate());
+        assertEquals(expected.getDecibels().min, actual.getDecibels().min);
+        assertEquals(expected.getDecibels().max, actual.getDecibels().max);
+        assertEquals(expected.getFrequencyBinCount(), actual.getFrequencyBinCount());
+        for (int i = 0; i < expected.getFrequencyBinCount(); i++) {
+            assertEquals(expected.getDoubleFrequencyData()[i], actual.getDoubleFrequencyData()[i], delta);
+        }
+    }
+
+    @Test
+    public void keyFrame_roundTrip() {
+        SpectrumFrameCodec encoder = new SpectrumFrameCodec();
+        SpectrumFrameCodec decoder = new SpectrumFrameCodec();
+        SpectrumFrame frame = createFrame(7, 0.0);
+
+        ByteBuffer buffer = encode(encoder, frame);
+        assertEquals(SpectrumFrameCodec.FLAG_KEY_FRAME, buffer.get(1) & SpectrumFrameCodec.FLAG_KEY_FRAME);
+
+        SpectrumFrame decoded = new SpectrumFrame();
+        decoder.decode(buffer, decoded);
+        assertFalse(buffer.hasRemaining());
+        assertFrame(frame, decoded, 0.5 * (MAX_DECIBELS - MIN_DECIBELS) / 255.0 + 1e-9);
+    }
+
+    @Test
+    public void sixteenBit_roundTrip() {
+        SpectrumFrameCodec encoder = new SpectrumFrameCodec(true, SpectrumFrameCodec.KEY_FRAME_INTERVAL);
+        SpectrumFrameCodec decoder = new SpectrumFrameCodec(true, SpectrumFrameCodec.KEY_FRAME_INTERVAL);
+        SpectrumFrame decoded = new SpectrumFrame();
+        for (int sequence = 0; sequence < 5; sequence++) {
+            SpectrumFrame frame = createFrame(sequence, sequence * 0.01);
+            ByteBuffer buffer = encode(encoder, frame);
+            assertEquals(SpectrumFrameCodec.FLAG_16BIT, buffer.get(1) & SpectrumFrameCodec.FLAG_16BIT);
+            decoder.decode(buffer, decoded);
+            assertFrame(frame, decoded, 0.5 * (MAX_DECIBELS - MIN_DECIBELS) / 65535.0 + 1e-9);
+        }
+    }
+
+    @Test
+    public void deltaFrames_keyFrameInterval() {
+        SpectrumFrameCodec encoder = new SpectrumFrameCodec(false, 4);
+        SpectrumFrameCodec decoder = new SpectrumFrameCodec(false, 4);
+        SpectrumFrame decoded = new SpectrumFrame();
+        for (int sequence = 0; sequence < 10; sequence++) {
+            SpectrumFrame frame = createFrame(sequence, sequence * 0.1);
+            ByteBuffer buffer = encode(encoder, frame);
+            boolean keyFrame = (buffer.get(1) & SpectrumFrameCodec.FLAG_KEY_FRAME) != 0;
+            assertEquals(sequence % 4 == 0, keyFrame);
+            decoder.decode(buffer, decoded);
+            assertFrame(frame, decoded, 0.5 * (MAX_DECIBELS - MIN_DECIBELS) / 255.0 + 1e-9);
+        }
+    }
+
+    @Test
+    public void unchangedBins_areCodedAsRuns() {
+        SpectrumFrameCodec encoder = new SpectrumFrameCodec();
+        SpectrumFrameCodec decoder = new SpectrumFrameCodec();
+        SpectrumFrame frame = createFrame(0, 0.0);
+        SpectrumFrame decoded = new SpectrumFrame();
+        decoder.decode(encode(encoder, frame), decoded);
+
+        // the same spectrum again is the header, the reference distance and one run token
+        frame.setSequence(1);
+        ByteBuffer buffer = encode(encoder, frame);
+        assertTrue(buffer.remaining() <= SpectrumFrameCodec.HEADER_SIZE + 4);
+        decoder.decode(buffer, decoded);
+        assertEquals(1, decoded.getSequence());
+        assertFrame(frame, decoded, 0.5 * (MAX_DECIBELS - MIN_DECIBELS) / 255.0 + 1e-9);
+    }
+
+    @Test
+    public void emptyBins_areDecodedAsMinimum() {
+        SpectrumFrameCodec encoder = new SpectrumFrameCodec();
+        SpectrumFrameCodec decoder = new SpectrumFrameCodec();
+        SpectrumFrame frame = createFrame(0, 0.0);
+        frame.getDoubleFrequencyData()[0] = Double.NEGATIVE_INFINITY;
+        frame.getDoubleFrequencyData()[1] = Double.NaN;
+
+        SpectrumFrame decoded = new SpectrumFrame();
+        decoder.decode(encode(encoder, frame), decoded);
+        assertEquals(MIN_DECIBELS, decoded.getDoubleFrequencyData()[0], 0.0);
+        assertEquals(MIN_DECIBELS, decoded.getDoubleFrequencyData()[1], 0.0);
+        assertEquals(0, decoded.getByteFrequencyData()[0]);
+    }
+
+    @Test
+    public void tolerance_skipsSmallChanges() {
+        double step = (MAX_DECIBELS - MIN_DECIBELS) / 255.0;
+        SpectrumFrameCodec encoder = new SpectrumFrameCodec();
+        encoder.setTolerance(2);
+        SpectrumFrameCodec decoder = new SpectrumFrameCodec();
+        SpectrumFrame first = createFrame(0, 0.0);
+        SpectrumFrame decoded = new SpectrumFrame();
+        decoder.decode(encode(encoder, first), decoded);
+        double[] reference = decoded.getDoubleFrequencyData().clone();
+
+        // one step up is within the tolerance, so the decoder keeps the previous values
+        SpectrumFrame second = createFrame(1, 0.0);
+        for (int i = 0; i < BIN_COUNT; i++) {
+            second.getDoubleFrequencyData()[i] += step;
+        }
+        ByteBuffer buffer = encode(encoder, second);
+        assertTrue(buffer.remaining() <= SpectrumFrameCodec.HEADER_SIZE + 4);
+        decoder.decode(buffer, decoded);
+        for (int i = 0; i < BIN_COUNT; i++) {
+            assertEquals(reference[i], decoded.getDoubleFrequencyData()[i], 0.0);
+        }
+
+        // changes larger than the tolerance are sent, and the error never exceeds it
+        SpectrumFrame third = createFrame(2, 0.0);
+        third.getDoubleFrequencyData()[10] += 10 * step;
+        decoder.decode(encode(encoder, third), decoded);
+        assertEquals(third.getDoubleFrequencyData()[10], decoded.getDoubleFrequencyData()[10], 0.5 * step + 1e-9);
+        for (int i = 0; i < BIN_COUNT; i++) {
+            assertEquals(third.getDoubleFrequencyData()[i], decoded.getDoubleFrequencyData()[i], 2.5 * step + 1e-9);
+        }
+    }
+
+    @Test
+    public void lostReference_throwsUntilKeyFrame() {
+        SpectrumFrameCodec encoder = new SpectrumFrameCodec(false, 0);
+        SpectrumFrameCodec decoder = new SpectrumFrameCodec(false, 0);
+        SpectrumFrame decoded = new SpectrumFrame();
+        decoder.decode(encode(encoder, createFrame(0, 0.0)), decoded);
+        encode(encoder, createFrame(1, 0.1));
+
+        try {
+            decoder.decode(encode(encoder, createFrame(2, 0.2)), decoded);
+            fail("Frame that references a lost frame was decoded");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // the encoder starts over with a key frame, which the decoder accepts
+        encoder.reset();
+        SpectrumFrame frame = createFrame(3, 0.3);
+        decoder.decode(encode(encoder, frame), decoded);
+        assertFrame(frame, decoded, 0.5 * (MAX_DECIBELS - MIN_DECIBELS) / 255.0 + 1e-9);
+    }
+
+    @Test
+    public void decoder_withoutKeyFrame_throws() {
+        SpectrumFrameCodec encoder = new SpectrumFrameCodec();
+        encode(encoder, createFrame(0, 0.0));
+        ByteBuffer delta = encode(encoder, createFrame(1, 0.1));
+        try {
+            new SpectrumFrameCodec().decode(delta, new SpectrumFrame());
+            fail("Delta frame was decoded without reference");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encode_smallBuffer_throws() {
+        new SpectrumFrameCodec().encode(createFrame(0, 0.0), ByteBuffer.allocate(16));
+    }
+}
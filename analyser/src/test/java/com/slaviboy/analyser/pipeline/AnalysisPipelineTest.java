@@ -0,0 +1,161 @@
+package com.slaviboy.analyser.pipeline;
+
+import com.slaviboy.analyser.Analyser;
+import com.slaviboy.analyser.FrameGovernor;
+import com.slaviboy.analyser.Range;
+import com.slaviboy.analyser.SpectrumFrame;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Frames published in order, and stages that keep going after an item threw.
+ */
+public class AnalysisPipelineTest {
+
+    private static final int FFT_SIZE = 256;
+
+    /**
+     * Executor that runs the tasks only when asked
+     */
+    private static class ManualExecutor implements Executor {
+
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            tasks.offer(runnable);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static AnalysisPipeline create(Executor executor, int outputSize) {
+        Analyser analyser = new Analyser(FFT_SIZE, 8000, new Range(-100, -30), 0.0);
+        return new AnalysisPipeline(analyser, executor, executor,
+                new StageQueue<AnalysisPipeline.Samples>(16, StageQueue.POLICY_DROP_OLDEST),
+                new StageQueue<SpectrumFrame>(outputSize, StageQueue.POLICY_DROP_NEWEST));
+    }
+
+    private static float[] tone(int length) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) (0.5 * Math.sin(2.0 * Math.PI * 1000.0 * i / 8000));
+        }
+        return samples;
+    }
+
+    @Test
+    public void frames_arePublishedInOrder() {
+        ManualExecutor executor = new ManualExecutor();
+        AnalysisPipeline pipeline = create(executor, 16);
+        final List<Long> sequences = new ArrayList<>();
+        pipeline.addOnFrameListener(new AnalysisPipeline.OnFrameListener() {
+            @Override
+            public void onFrame(SpectrumFrame frame) {
+                sequences.add(frame.getSequence());
+            }
+        });
+
+        for (int i = 0; i < 3; i++) {
+            pipeline.submit(tone(FFT_SIZE), 0, FFT_SIZE, 0, i * FFT_SIZE);
+            executor.runAll();
+        }
+        assertEquals(3, sequences.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Long.valueOf(i), sequences.get(i));
+        }
+        assertEquals(3 * FFT_SIZE, pipeline.getSamplePosition());
+        assertTrue(pipeline.isIdle());
+    }
+
+    @Test
+    public void throwingListener_doesNotStopStage() {
+        ManualExecutor executor = new ManualExecutor();
+        AnalysisPipeline pipeline = create(executor, 16);
+        final RuntimeException error = new IllegalStateException("listener");
+        final List<Long> sequences = new ArrayList<>();
+        pipeline.addOnFrameListener(new AnalysisPipeline.OnFrameListener() {
+            @Override
+            public void onFrame(SpectrumFrame frame) {
+                if (frame.getSequence() % 2 == 0) {
+                    throw error;
+                }
+                sequences.add(frame.getSequence());
+            }
+        });
+        final boolean[] flushed = new boolean[1];
+
+        // the analysis stage runs three times before the publish stage gets all frames
+        for (int i = 0; i < 3; i++) {
+            pipeline.submit(tone(FFT_SIZE));
+            executor.tasks.pollFirst().run();
+        }
+        pipeline.flush(new Runnable() {
+            @Override
+            public void run() {
+                flushed[0] = true;
+            }
+        });
+        assertFalse(flushed[0]);
+        executor.runAll();
+
+        assertEquals(1, sequences.size());
+        assertEquals(Long.valueOf(1), sequences.get(0));
+        assertEquals(2, pipeline.getErrorCount());
+        assertSame(error, pipeline.getLastError());
+        assertTrue(flushed[0]);
+        assertTrue(pipeline.isIdle());
+    }
+
+    @Test
+    public void throwingAnalysis_recyclesSamples() {
+        ManualExecutor executor = new ManualExecutor();
+        AnalysisPipeline pipeline = create(executor, 16);
+
+        // the governor throws on the first frame only
+        pipeline.setFrameGovernor(new FrameGovernor(FFT_SIZE) {
+            boolean thrown;
+
+            @Override
+            public boolean shouldAnalyse() {
+                if (!thrown) {
+                    thrown = true;
+                    throw new IllegalStateException("governor");
+                }
+                return super.shouldAnalyse();
+            }
+        });
+
+        pipeline.submit(tone(FFT_SIZE));
+        executor.runAll();
+        assertEquals(1, pipeline.getErrorCount());
+        assertEquals(0, pipeline.getFrameCount());
+
+        // the stage goes on with the next buffer
+        pipeline.submit(tone(FFT_SIZE));
+        executor.runAll();
+        assertEquals(1, pipeline.getErrorCount());
+        assertEquals(1, pipeline.getFrameCount());
+        assertTrue(pipeline.isIdle());
+    }
+
+    @Test
+    public void defaultOutputQueue_keepsNewestFrame() {
+        AnalysisPipeline pipeline = new AnalysisPipeline(new Analyser(FFT_SIZE, 8000, new Range(-100, -30), 0.0));
+        assertEquals(1, pipeline.getOutputQueue().getCapacity());
+        assertEquals(StageQueue.POLICY_COALESCE, pipeline.getOutputQueue().getPolicy());
+        pipeline.shutdown();
+    }
+}
@@ -0,0 +1,85 @@
+package com.slaviboy.analyser.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Behaviour of the queue policies when the queue is full, and the metrics.
+ */
+public class StageQueueTest {
+
+    @Test
+    public void items_arePolledInOrder() {
+        StageQueue<Integer> queue = new StageQueue<>(4, StageQueue.POLICY_DROP_NEWEST);
+        for (int i = 0; i < 3; i++) {
+            assertNull(queue.offer(i));
+        }
+        assertEquals(3, queue.getDepth());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void dropNewest_rejectsOfferedItem() {
+        StageQueue<Integer> queue = new StageQueue<>(2, StageQueue.POLICY_DROP_NEWEST);
+        queue.offer(1);
+        queue.offer(2);
+        assertEquals(Integer.valueOf(3), queue.offer(3));
+        assertEquals(2, queue.getDepth());
+        assertEquals(Integer.valueOf(1), queue.poll());
+        assertEquals(Integer.valueOf(2), queue.poll());
+        assertEquals(3, queue.getOfferedCount());
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void dropOldest_removesHead() {
+        StageQueue<Integer> queue = new StageQueue<>(2, StageQueue.POLICY_DROP_OLDEST);
+        queue.offer(1);
+        queue.offer(2);
+        assertEquals(Integer.valueOf(1), queue.offer(3));
+        assertEquals(Integer.valueOf(2), queue.poll());
+        assertEquals(Integer.valueOf(3), queue.poll());
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void coalesce_replacesLatest() {
+        StageQueue<Integer> queue = new StageQueue<>(4, StageQueue.POLICY_COALESCE);
+        assertNull(queue.offer(1));
+        assertEquals(Integer.valueOf(1), queue.offer(2));
+        assertEquals(Integer.valueOf(2), queue.offer(3));
+        assertEquals(1, queue.getDepth());
+        assertEquals(Integer.valueOf(3), queue.poll());
+        assertEquals(3, queue.getOfferedCount());
+        assertEquals(2, queue.getDroppedCount());
+    }
+
+    @Test
+    public void maxDepth_isResetToCurrentDepth() {
+        StageQueue<Integer> queue = new StageQueue<>(3, StageQueue.POLICY_DROP_OLDEST);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        assertEquals(3, queue.getMaxDepth());
+        queue.poll();
+        queue.poll();
+        queue.resetMetrics();
+        assertEquals(1, queue.getMaxDepth());
+        assertEquals(0, queue.getOfferedCount());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCapacity_throws() {
+        new StageQueue<Integer>(0, StageQueue.POLICY_DROP_NEWEST);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownPolicy_throws() {
+        new StageQueue<Integer>(1, 3);
+    }
+}
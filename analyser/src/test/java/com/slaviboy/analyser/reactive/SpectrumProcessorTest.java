@@ -0,0 +1,200 @@
+package com.slaviboy.analyser.reactive;
+
+import com.slaviboy.analyser.Analyser;
+import com.slaviboy.analyser.Range;
+import com.slaviboy.analyser.SpectrumFrame;
+import com.slaviboy.analyser.pipeline.AnalysisPipeline;
+import com.slaviboy.analyser.pipeline.StageQueue;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Demand of the subscribers and the frames kept or dropped by each overflow strategy, the
+ * frames are offered on the test thread, also while the subscriber is in onNext().
+ */
+public class SpectrumProcessorTest {
+
+    /**
+     * Executor that runs the tasks only when asked
+     */
+    private static class ManualExecutor implements Executor {
+
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            tasks.offer(runnable);
+        }
+    }
+
+    /**
+     * Subscriber that records the sequences, and offers the burst of frames to the processor
+     * from its first onNext() call, as if they arrived while it was busy
+     */
+    private static class RecordingSubscriber implements Subscriber<SpectrumFrame> {
+
+        final List<Long> sequences = new ArrayList<>();
+        SpectrumProcessor processor;
+        Subscription subscription;
+        int burst;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(SpectrumFrame item) {
+            sequences.add(item.getSequence());
+            for (int i = 1; i <= burst; i++) {
+                processor.onFrame(createFrame(item.getSequence() + i));
+            }
+            burst = 0;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            fail("Unexpected error " + throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private static SpectrumProcessor create() {
+        Analyser analyser = new Analyser(256, 8000, new Range(-100, -30), 0.0);
+        ManualExecutor executor = new ManualExecutor();
+        return new SpectrumProcessor(new AnalysisPipeline(analyser, executor, executor,
+                new StageQueue<AnalysisPipeline.Samples>(16, StageQueue.POLICY_DROP_OLDEST),
+                new StageQueue<SpectrumFrame>(1, StageQueue.POLICY_DROP_NEWEST)));
+    }
+
+    private static SpectrumFrame createFrame(long sequence) {
+        SpectrumFrame frame = new SpectrumFrame();
+        frame.setSequence(sequence);
+        frame.setBinCount(8);
+        return frame;
+    }
+
+    private static RecordingSubscriber subscribe(SpectrumProcessor processor, int overflow, int bufferSize) {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        subscriber.processor = processor;
+        processor.subscribe(subscriber, overflow, bufferSize);
+        return subscriber;
+    }
+
+    @Test
+    public void drop_withoutDemand_dropsFrames() {
+        SpectrumProcessor processor = create();
+        RecordingSubscriber subscriber = subscribe(processor, SpectrumProcessor.OVERFLOW_DROP, 4);
+
+        processor.onFrame(createFrame(0));
+        processor.onFrame(createFrame(1));
+        subscriber.subscription.request(1);
+        assertTrue(subscriber.sequences.isEmpty());
+
+        processor.onFrame(createFrame(2));
+        processor.onFrame(createFrame(3));
+        assertEquals(1, subscriber.sequences.size());
+        assertEquals(2L, (long) subscriber.sequences.get(0));
+    }
+
+    @Test
+    public void drop_keepsFramesCoveredByDemand() {
+        SpectrumProcessor processor = create();
+        RecordingSubscriber subscriber = subscribe(processor, SpectrumProcessor.OVERFLOW_DROP, 4);
+        subscriber.subscription.request(3);
+
+        // two frames arrive while the first is delivered, both are requested
+        subscriber.burst = 2;
+        processor.onFrame(createFrame(0));
+        assertEquals(3, subscriber.sequences.size());
+        assertEquals(2L, (long) subscriber.sequences.get(2));
+
+        // demand is used up, the next frames are not queued for a later request
+        processor.onFrame(createFrame(3));
+        subscriber.subscription.request(1);
+        assertEquals(3, subscriber.sequences.size());
+    }
+
+    @Test
+    public void drop_queuesOnlyOutstandingDemand() {
+        SpectrumProcessor processor = create();
+        RecordingSubscriber subscriber = subscribe(processor, SpectrumProcessor.OVERFLOW_DROP, 4);
+        subscriber.subscription.request(2);
+
+        subscriber.burst = 3;
+        processor.onFrame(createFrame(0));
+        assertEquals(2, subscriber.sequences.size());
+        assertEquals(1L, (long) subscriber.sequences.get(1));
+
+        subscriber.subscription.request(1);
+        assertEquals(2, subscriber.sequences.size());
+    }
+
+    @Test
+    public void drop_queueIsLimitedByBufferSize() {
+        SpectrumProcessor processor = create();
+        RecordingSubscriber subscriber = subscribe(processor, SpectrumProcessor.OVERFLOW_DROP, 4);
+        subscriber.subscription.request(100);
+
+        subscriber.burst = 10;
+        processor.onFrame(createFrame(0));
+        assertEquals(5, subscriber.sequences.size());
+        assertEquals(4L, (long) subscriber.sequences.get(4));
+    }
+
+    @Test
+    public void latest_keepsLatestFrame() {
+        SpectrumProcessor processor = create();
+        RecordingSubscriber subscriber = subscribe(processor, SpectrumProcessor.OVERFLOW_LATEST, 1);
+
+        for (int sequence = 0; sequence < 5; sequence++) {
+            processor.onFrame(createFrame(sequence));
+        }
+        subscriber.subscription.request(2);
+        assertEquals(1, subscriber.sequences.size());
+        assertEquals(4L, (long) subscriber.sequences.get(0));
+    }
+
+    @Test
+    public void buffer_keepsNewestFrames() {
+        SpectrumProcessor processor = create();
+        RecordingSubscriber subscriber = subscribe(processor, SpectrumProcessor.OVERFLOW_BUFFER, 3);
+
+        for (int sequence = 0; sequence < 5; sequence++) {
+            processor.onFrame(createFrame(sequence));
+        }
+        subscriber.subscription.request(10);
+        assertEquals(3, subscriber.sequences.size());
+        assertEquals(2L, (long) subscriber.sequences.get(0));
+        assertEquals(4L, (long) subscriber.sequences.get(2));
+    }
+
+    @Test
+    public void close_completesSubscribers() {
+        SpectrumProcessor processor = create();
+        RecordingSubscriber subscriber = subscribe(processor, SpectrumProcessor.OVERFLOW_BUFFER, 3);
+        processor.onFrame(createFrame(0));
+
+        processor.close();
+        assertTrue(subscriber.completed);
+        assertTrue(subscriber.sequences.isEmpty());
+        assertEquals(0, processor.getSubscriberCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOverflow_throws() {
+        create().subscribe(new RecordingSubscriber(), 3, 1);
+    }
+}
@@ -0,0 +1,204 @@
+package com.slaviboy.analyser.server;
+
+import com.slaviboy.analyser.Analyser;
+import com.slaviboy.analyser.SpectrumFrame;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Streams analysed on shared workers, fairness between the streams, and streams received over TCP.
+ */
+public class AnalysisServerTest {
+
+    private static final int FFT_SIZE = 256;
+
+    /**
+     * Executor that runs the tasks only when asked, in the order they were executed
+     */
+    private static class ManualExecutor implements Executor {
+
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            tasks.offer(runnable);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static float[] tone(int length, double frequency, int sampleRate) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) (0.5 * Math.sin(2.0 * Math.PI * frequency * i / sampleRate));
+        }
+        return samples;
+    }
+
+    @Test
+    public void streams_areIsolated() {
+        ManualExecutor executor = new ManualExecutor();
+        AnalysisServer server = new AnalysisServer(FFT_SIZE, FFT_SIZE, 8, executor);
+        final List<String> frames = new ArrayList<>();
+        server.addOnFrameListener(new AnalysisServer.OnFrameListener() {
+            @Override
+            public void onFrame(AnalysisStream stream, SpectrumFrame frame) {
+                frames.add(stream.getName() + ":" + frame.getSampleRate());
+            }
+        });
+
+        AnalysisStream low = server.openStream("low", 8000);
+        AnalysisStream high = server.openStream("high", 16000);
+        assertEquals(2, server.getStreams().size());
+        assertSame(low, server.getStream(low.getId()));
+
+        // half a block is kept in the stream, until the block is full
+        low.write(tone(FFT_SIZE / 2, 500, 8000), 0, FFT_SIZE / 2);
+        executor.runAll();
+        assertTrue(frames.isEmpty());
+        assertEquals(0.5 * FFT_SIZE / 8000, low.getLag(), 1e-12);
+
+        low.write(tone(FFT_SIZE / 2, 500, 8000), 0, FFT_SIZE / 2);
+        high.write(tone(FFT_SIZE, 4000, 16000), 0, FFT_SIZE);
+        executor.runAll();
+        assertEquals(2, frames.size());
+        assertTrue(frames.contains("low:8000"));
+        assertTrue(frames.contains("high:16000"));
+        assertEquals(0.0, low.getLag(), 0.0);
+        assertEquals(1, high.getFrameCount());
+
+        server.closeStream(low);
+        assertTrue(low.isClosed());
+        assertEquals(1, server.getStreams().size());
+        try {
+            low.write(new float[1], 0, 1);
+            fail("Closed stream accepted samples");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void backlog_doesNotHoldWorker() {
+        ManualExecutor executor = new ManualExecutor();
+        AnalysisServer server = new AnalysisServer(FFT_SIZE, FFT_SIZE, 16, executor);
+        final AnalysisStream busy = server.openStream("busy", 8000);
+        AnalysisStream quiet = server.openStream("quiet", 8000);
+        final int[] busyDepth = {-1};
+        server.addOnFrameListener(new AnalysisServer.OnFrameListener() {
+            @Override
+            public void onFrame(AnalysisStream stream, SpectrumFrame frame) {
+                if (stream.getName().equals("quiet")) {
+                    busyDepth[0] = busy.getQueueDepth();
+                }
+            }
+        });
+
+        // the busy stream has a long backlog when the quiet stream gets its block
+        for (int i = 0; i < 12; i++) {
+            busy.write(tone(FFT_SIZE, 500, 8000), 0, FFT_SIZE);
+        }
+        quiet.write(tone(FFT_SIZE, 500, 8000), 0, FFT_SIZE);
+        executor.runAll();
+
+        assertEquals(1, quiet.getFrameCount());
+        assertTrue(busyDepth[0] > 0);
+        assertEquals(0, busy.getQueueDepth());
+        assertEquals(0, busy.getDroppedBlocks());
+    }
+
+    @Test
+    public void tcpStream_isDecoded() throws IOException, InterruptedException {
+        AnalysisServer server = new AnalysisServer(FFT_SIZE, FFT_SIZE, 8, null);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final int[] sampleRate = new int[1];
+        server.addOnFrameListener(new AnalysisServer.OnFrameListener() {
+            @Override
+            public void onFrame(AnalysisStream stream, SpectrumFrame frame) {
+                sampleRate[0] = frame.getSampleRate();
+                latch.countDown();
+            }
+        });
+        server.start(0);
+        assertTrue(server.isRunning());
+
+        // stereo 16-bit stream, with the same tone in both channels
+        float[] samples = tone(FFT_SIZE * 4, 1000, 11025);
+        ByteBuffer buffer = ByteBuffer.allocate(AnalysisServer.HEADER_SIZE + samples.length * 4);
+        buffer.order(ByteOrder.BIG_ENDIAN).putInt(11025).putShort((short) Analyser.ENCODING_PCM_16BIT).putShort((short) 2);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        for (float sample : samples) {
+            short value = (short) Math.round(sample * 32767);
+            buffer.putShort(value).putShort(value);
+        }
+
+        Socket socket = new Socket(InetAddress.getByName(null), server.getLocalPort());
+        try {
+            OutputStream out = socket.getOutputStream();
+
+            // the header is split between two writes
+            out.write(buffer.array(), 0, 5);
+            out.flush();
+            Thread.sleep(20);
+            out.write(buffer.array(), 5, buffer.capacity() - 5);
+            out.flush();
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            // all four blocks reach the stream, the frames of a slow listener can be coalesced
+            AnalysisStream stream = server.getStreams().iterator().next();
+            for (int i = 0; i < 500 && stream.getPosition() < samples.length; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(samples.length, stream.getPosition());
+            assertEquals(11025, stream.getSampleRate());
+        } finally {
+            socket.close();
+        }
+        assertEquals(11025, sampleRate[0]);
+
+        server.stop();
+        assertFalse(server.isRunning());
+        assertTrue(server.getStreams().isEmpty());
+    }
+
+    @Test
+    public void badHeader_closesConnection() throws IOException, InterruptedException {
+        AnalysisServer server = new AnalysisServer(FFT_SIZE);
+        server.start(0);
+
+        Socket socket = new Socket(InetAddress.getByName(null), server.getLocalPort());
+        try {
+            ByteBuffer header = ByteBuffer.allocate(AnalysisServer.HEADER_SIZE);
+            header.putInt(8000).putShort((short) Analyser.ENCODING_PCM_24BIT_PACKED).putShort((short) 1);
+            socket.getOutputStream().write(header.array());
+
+            // the server closes the connection, without opening a stream
+            assertEquals(-1, socket.getInputStream().read());
+        } finally {
+            socket.close();
+        }
+        assertTrue(server.getStreams().isEmpty());
+        assertTrue(server.isRunning());
+        server.stop();
+    }
+}
@@ -0,0 +1,168 @@
+package com.slaviboy.analyser.server;
+
+import com.slaviboy.analyser.SpectrumFrame;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.*;
+
+/**
+ * Frames received by the reference client over TCP and UDP, coalescing for slow subscribers,
+ * and removing the subscribers that can not be served.
+ */
+public class FramePublisherTest {
+
+    private static final int BIN_COUNT = 256;
+    private static final long TIMEOUT = 5000;
+
+    private FramePublisher publisher;
+    private FrameClient client;
+
+    @After
+    public void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        if (publisher != null) {
+            publisher.stop();
+        }
+    }
+
+    private static SpectrumFrame createFrame(long sequence, int binCount) {
+        SpectrumFrame frame = new SpectrumFrame();
+        frame.setSequence(sequence);
+        frame.setFftSize(binCount * 2);
+        frame.setSampleRate(48000);
+        frame.getDecibels().min = -100;
+        frame.getDecibels().max = -30;
+        frame.setBinCount(binCount);
+        double[] data = frame.getDoubleFrequencyData();
+        for (int i = 0; i < binCount; i++) {
+            data[i] = -65.0 + 30.0 * Math.sin(i * 0.05 + sequence);
+        }
+        return frame;
+    }
+
+    private InetSocketAddress start(int batchSize, long maxDelay) throws IOException {
+        publisher = new FramePublisher(batchSize, maxDelay);
+        publisher.start(0);
+        return new InetSocketAddress(InetAddress.getByName(null), publisher.getLocalPort());
+    }
+
+    private void awaitSubscribers(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (publisher.getSubscriberCount() != count) {
+            assertTrue("Subscriber count stayed " + publisher.getSubscriberCount(),
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBatchSize_throws() {
+        new FramePublisher(256, FramePublisher.MAX_DELAY);
+    }
+
+    @Test
+    public void tcp_receivesFrames() throws Exception {
+        client = new FrameClient(start(4, 5), false);
+        awaitSubscribers(1);
+
+        // partial batch is sent after the maximum delay
+        SpectrumFrame received = new SpectrumFrame();
+        for (int sequence = 0; sequence < 3; sequence++) {
+            SpectrumFrame frame = createFrame(sequence, BIN_COUNT);
+            publisher.publish(frame);
+            client.receive(received);
+            assertEquals(sequence, received.getSequence());
+            assertEquals(BIN_COUNT, received.getFrequencyBinCount());
+            for (int i = 0; i < BIN_COUNT; i++) {
+                assertEquals(frame.getDoubleFrequencyData()[i], received.getDoubleFrequencyData()[i], 70.0 / 255.0);
+            }
+        }
+        assertEquals(0, publisher.getCoalescedFrames());
+    }
+
+    @Test
+    public void slowSubscriber_getsLatestFrame() throws Exception {
+        client = new FrameClient(start(2, 5), false);
+        awaitSubscribers(1);
+
+        // every frame is either sent or replaced, and the last one is always sent
+        int count = 2000;
+        for (int sequence = 0; sequence < count; sequence++) {
+            publisher.publish(createFrame(sequence, BIN_COUNT));
+        }
+        SpectrumFrame received = new SpectrumFrame();
+        long previous = -1;
+        int receivedCount = 0;
+        while (previous != count - 1) {
+            client.receive(received);
+            assertTrue(received.getSequence() > previous);
+            previous = received.getSequence();
+            receivedCount++;
+        }
+        assertEquals(count, receivedCount + publisher.getCoalescedFrames());
+    }
+
+    @Test
+    public void udp_receivesFrames() throws Exception {
+        client = new FrameClient(start(1, 5), true);
+        awaitSubscribers(1);
+
+        // datagrams can be lost even on loopback, so keep publishing until one arrives
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int sequence = 0; !Thread.currentThread().isInterrupted(); sequence++) {
+                    publisher.publish(createFrame(sequence, BIN_COUNT));
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        thread.start();
+        try {
+            SpectrumFrame received = new SpectrumFrame();
+            client.receive(received);
+            assertEquals(BIN_COUNT, received.getFrequencyBinCount());
+        } finally {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    @Test
+    public void udp_frameTooLarge_removesSubscriber() throws Exception {
+        client = new FrameClient(start(1, 5), true);
+        awaitSubscribers(1);
+
+        publisher.publish(createFrame(0, FramePublisher.MAX_DATAGRAM_SIZE / 3));
+        awaitSubscribers(0);
+        assertTrue(publisher.isRunning());
+    }
+
+    @Test
+    public void stop_disconnectsSubscribers() throws Exception {
+        client = new FrameClient(start(4, 5), false);
+        awaitSubscribers(1);
+
+        publisher.stop();
+        assertFalse(publisher.isRunning());
+        assertEquals(0, publisher.getSubscriberCount());
+        try {
+            client.receive(new SpectrumFrame());
+            fail("Frame was received after the publisher stopped");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
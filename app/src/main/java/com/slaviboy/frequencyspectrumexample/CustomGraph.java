@@ -10,9 +10,9 @@ import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.util.Log;
 
-import com.slaviboy.analyser.Analyser;
 import com.slaviboy.analyser.BarsDrawer;
 import com.slaviboy.analyser.Drawer;
+import com.slaviboy.analyser.SpectrumFrame;
 import com.slaviboy.stars.Cluster;
 import com.slaviboy.stars.Star;
 
@@ -92,9 +92,9 @@ public class CustomGraph {
      *
      * @param canvas
      * @param paint
-     * @param analyser
+     * @param frame
      */
-    public static void draw(Canvas canvas, Paint paint, Analyser analyser) {
+    public static void draw(Canvas canvas, Paint paint, SpectrumFrame frame) {
 
         // if view width or height is changed init again
         if (lastViewWidth != canvas.getWidth() ||
@@ -122,14 +122,14 @@ public class CustomGraph {
 
         } else {
 
-            updateClusterSpeed(analyser);
+            updateClusterSpeed(frame);
 
             // update and redraw stars
             cluster.update();
             cluster.draw(canvas, paint);
 
             // draw bars
-            barsDrawer.drawRadial(canvas, paint, analyser);
+            barsDrawer.drawRadial(canvas, paint, frame);
 
             // stroke circle
             paint.setColor(Color.WHITE);
@@ -155,14 +155,14 @@ public class CustomGraph {
      * Update stars speed, by bass sound level, using the
      * frequency data by he analyser
      *
-     * @param analyser
+     * @param frame
      */
-    private static void updateClusterSpeed(Analyser analyser) {
+    private static void updateClusterSpeed(SpectrumFrame frame) {
 
         // change stars speed depending on bass
         int bassSum = 0;
         float maxSpeed = 50f;
-        int[] byteData = analyser.getByteFrequencyData();
+        int[] byteData = frame.getByteFrequencyData();
         int bassLength = Math.min(150, byteData.length);
         for (int i = 0; i < bassLength; i++) {
             bassSum += byteData[i];
@@ -16,10 +16,13 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.TextView;
 
-import com.slaviboy.analyser.Analyser;
 import com.slaviboy.analyser.AnalyserView;
 import com.slaviboy.analyser.BarsDrawer;
 import com.slaviboy.analyser.CurvesDrawer;
+import com.slaviboy.analyser.FrameGovernor;
+import com.slaviboy.analyser.SpectrumFrame;
+import com.slaviboy.analyser.pipeline.AnalysisPipeline;
+import com.slaviboy.microphone.AudioBlock;
 import com.slaviboy.microphone.RecordingThread;
 
 
@@ -29,6 +32,9 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
     private RecordingThread recordingThread;  // thread that records audio from microphone
     private AnalyserView analyserView;        // the view that will display the frequency graph
+    private AnalysisPipeline pipeline;        // runs the analyser off the recording thread
+    private AnalysisPipeline.OnFrameListener onFrameListener;              // passes the published frames to the view
+    private RecordingThread.OnReceiveBlockListener onReceiveBlockListener;  // passes the captured blocks to the pipeline
 
     private BarsDrawer barsDrawer;            // draws the frequencies in a form of bars(rectangles)
     private CurvesDrawer curvesDrawer;        // draws the frequencies in a form of curves(paths)
@@ -81,38 +87,52 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
 
         analyserView = findViewById(R.id.analyser_view);
         analyserView.setOnClickListener(this);
-        analyserView.setOnDrawGraphListener(new AnalyserView.OnDrawGraphListener() {
+        analyserView.setOnDrawFrameListener(new AnalyserView.OnDrawFrameListener() {
             @Override
-            public void onDrawGraph(Canvas canvas, Paint paint, Analyser analyser) {
+            public void onDrawFrame(Canvas canvas, Paint paint, SpectrumFrame frame) {
 
-                recordingThread.setReading(true);
-
-                CustomGraph.draw(canvas, paint, analyser);
+                CustomGraph.draw(canvas, paint, frame);
 
                 // bars drawer use of all four types
-                //barsDrawer.drawLinear(canvas, paint, analyser);
-                //barsDrawer.drawLinearCentered(canvas, paint, analyser);
-                //barsDrawer.drawRadial(canvas, paint, analyser);
-                //barsDrawer.drawRadialCentered(canvas, paint, analyser);
+                //barsDrawer.drawLinear(canvas, paint, frame);
+                //barsDrawer.drawLinearCentered(canvas, paint, frame);
+                //barsDrawer.drawRadial(canvas, paint, frame);
+                //barsDrawer.drawRadialCentered(canvas, paint, frame);
 
                 // bars drawer use of all four types
-                //curvesDrawer.drawLinear(canvas, paint, analyser);
-                //curvesDrawer.drawLinearCentered(canvas, paint, analyser);
-                //curvesDrawer.drawRadial(canvas, paint, analyser);
-                //curvesDrawer.drawRadialCentered(canvas, paint, analyser);
+                //curvesDrawer.drawLinear(canvas, paint, frame);
+                //curvesDrawer.drawLinearCentered(canvas, paint, frame);
+                //curvesDrawer.drawRadial(canvas, paint, frame);
+                //curvesDrawer.drawRadialCentered(canvas, paint, frame);
 
             }
         });
 
+        // the governor measures the analysis on the pipeline and the drawing in the view
+        FrameGovernor frameGovernor = new FrameGovernor(analyserView.getAnalyser().getFftSize());
+        analyserView.setFrameGovernor(frameGovernor);
+
+        // analyse the view analyser on the pipeline, and pass a copy of each published frame to the view
+        pipeline = new AnalysisPipeline(analyserView.getAnalyser());
+        pipeline.setFrameGovernor(frameGovernor);
+        onFrameListener = new AnalysisPipeline.OnFrameListener() {
+            @Override
+            public void onFrame(SpectrumFrame frame) {
+                analyserView.setFrame(frame);
+            }
+        };
+        pipeline.addOnFrameListener(onFrameListener);
+
         recordingThread = new RecordingThread();
-        recordingThread.setOnReceiveDataListener(new RecordingThread.OnReceiveDataListener() {
+        onReceiveBlockListener = new RecordingThread.OnReceiveBlockListener() {
             @Override
-            public void onReceiveData(float[] buffer) {
+            public void onReceiveBlock(AudioBlock block) {
 
-                // set raw data to the analyser view
-                analyserView.setAudioBuffer(buffer);
+                // pass raw data with its capture time to the pipeline, without waiting for the analysis
+                pipeline.submit(block.getData(), 0, block.getLength(), block.getCaptureTime(), block.getPosition());
             }
-        });
+        };
+        recordingThread.addOnReceiveBlockListener(onReceiveBlockListener);
         startAudioRecordingSafe();
     }
 
@@ -168,4 +188,14 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         recordingThread.stop();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // the pipeline threads and the listeners would keep the view alive
+        recordingThread.removeOnReceiveBlockListener(onReceiveBlockListener);
+        pipeline.removeOnFrameListener(onFrameListener);
+        pipeline.shutdown();
+    }
+
 }
@@ -0,0 +1,155 @@
+package com.slaviboy.microphone;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Block of captured samples, that is shared between several listeners without copying.
+ * The block is reference counted, a listener that keeps the block after its callback
+ * returns should call retain(), and release() once it is done with the samples. When
+ * the last reference is released the block goes back to its pool and is reused for
+ * the next capture.
+ */
+public class AudioBlock {
+
+    private AudioBlockPool pool;       // pool the block is returned to
+    private float[] data;              // samples in range [-1,1]
+    private int length;                // number of valid samples in data
+    private long captureTime;          // System.nanoTime() when the last sample was captured
+    private long position;             // position of the first sample in the captured stream
+    private long droppedSamples;       // samples of the stream that were dropped inside the block
+    private int gapOffset;             // index of the first sample after the first gap, 0 if there is no gap
+    private AtomicInteger references;  // number of holders of the block
+
+    AudioBlock(AudioBlockPool pool, int capacity) {
+        this.pool = pool;
+        this.data = new float[capacity];
+        this.references = new AtomicInteger();
+    }
+
+    /**
+     * Called by the pool when the block is taken, with one reference for the owner
+     */
+    void acquire() {
+        references.set(1);
+        length = 0;
+        droppedSamples = 0;
+        gapOffset = 0;
+    }
+
+    /**
+     * Add reference, so the block is not reused until the matching release()
+     *
+     * @return this block
+     */
+    public AudioBlock retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Block is already released");
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    /**
+     * Remove reference, the last release returns the block to the pool
+     */
+    public void release() {
+        int count = references.decrementAndGet();
+        if (count == 0) {
+            pool.recycle(this);
+        } else if (count < 0) {
+            throw new IllegalStateException("Block is released more times than retained");
+        }
+    }
+
+    /**
+     * Get the samples, only the first getLength() values are valid
+     *
+     * @return
+     */
+    public float[] getData() {
+        return data;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    /**
+     * Get the monotonic time (System.nanoTime()) when the last sample of the block
+     * was read from the source
+     *
+     * @return
+     */
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    public void setCaptureTime(long captureTime) {
+        this.captureTime = captureTime;
+    }
+
+    /**
+     * Get the position of the first sample, counted from the first sample read from the source
+     *
+     * @return
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public void setPosition(long position) {
+        this.position = position;
+    }
+
+    /**
+     * Get the number of samples that were dropped between the first and the last sample of
+     * the block, so the block covers getLength() + getDroppedSamples() samples of the stream
+     *
+     * @return
+     */
+    public long getDroppedSamples() {
+        return droppedSamples;
+    }
+
+    public void setDroppedSamples(long droppedSamples) {
+        this.droppedSamples = droppedSamples;
+    }
+
+    /**
+     * Get the index of the first sample after the first gap in the block, or 0 if the
+     * samples of the block are contiguous in the stream
+     *
+     * @return
+     */
+    public int getGapOffset() {
+        return gapOffset;
+    }
+
+    public void setGapOffset(int gapOffset) {
+        this.gapOffset = gapOffset;
+    }
+
+    /**
+     * Check if samples of the stream were dropped inside the block
+     *
+     * @return
+     */
+    public boolean hasGap() {
+        return droppedSamples > 0;
+    }
+
+    public int getCapacity() {
+        return data.length;
+    }
+
+    public int getReferenceCount() {
+        return references.get();
+    }
+}
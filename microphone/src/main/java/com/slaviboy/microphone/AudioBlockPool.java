@@ -0,0 +1,66 @@
+package com.slaviboy.microphone;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of audio blocks with fixed capacity. The blocks are preallocated, and new blocks
+ * are created only when all of them are still held by listeners, so in steady state the
+ * capture does not allocate. Blocks return to the pool by themselves, when their last
+ * reference is released.
+ */
+public class AudioBlockPool {
+
+    private int blockSize;                           // capacity of each block
+    private ConcurrentLinkedQueue<AudioBlock> free;  // blocks that are not used at the moment
+    private volatile int allocatedCount;             // number of blocks created by the pool
+
+    /**
+     * @param blockSize    - capacity of each block in samples
+     * @param initialCount - number of preallocated blocks
+     */
+    public AudioBlockPool(int blockSize, int initialCount) {
+        this.blockSize = blockSize;
+        this.free = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < initialCount; i++) {
+            free.offer(new AudioBlock(this, blockSize));
+        }
+        allocatedCount = initialCount;
+    }
+
+    /**
+     * Take block from the pool, with one reference held by the caller
+     *
+     * @return
+     */
+    public AudioBlock acquire() {
+        AudioBlock block = free.poll();
+        if (block == null) {
+            block = new AudioBlock(this, blockSize);
+            allocatedCount++;
+        }
+        block.acquire();
+        return block;
+    }
+
+    void recycle(AudioBlock block) {
+        free.offer(block);
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Get the number of blocks created by the pool, if it grows over time
+     * some listener does not release its blocks
+     *
+     * @return
+     */
+    public int getAllocatedCount() {
+        return allocatedCount;
+    }
+
+    public int getFreeCount() {
+        return free.size();
+    }
+}
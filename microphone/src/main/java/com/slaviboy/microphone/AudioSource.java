@@ -0,0 +1,45 @@
+package com.slaviboy.microphone;
+
+/**
+ * Source of mono audio samples in range [-1,1], used by the RecordingThread. Besides
+ * the microphone, file and synthetic sources can be used, so the capture and analysis
+ * pipeline can run and be benchmarked on a plain JVM, faster than real time.
+ */
+public interface AudioSource {
+
+    /**
+     * Prepare the source for reading, called on the thread that reads the samples
+     *
+     * @return true if the source is ready
+     */
+    boolean start();
+
+    /**
+     * Read samples into given buffer, converted to float in range [-1,1]
+     *
+     * @param buffer
+     * @param offset
+     * @param length - maximum number of samples to read
+     * @return number of samples read, or -1 if the end of the source is reached
+     */
+    int read(float[] buffer, int offset, int length);
+
+    /**
+     * Stop reading and release all resources
+     */
+    void stop();
+
+    /**
+     * Get the sample rate, available after start()
+     *
+     * @return
+     */
+    int getSampleRate();
+
+    /**
+     * Get the preferred number of samples for one read, available after start()
+     *
+     * @return
+     */
+    int getBufferSize();
+}
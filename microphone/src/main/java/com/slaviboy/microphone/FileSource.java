@@ -0,0 +1,171 @@
+package com.slaviboy.microphone;
+
+import com.slaviboy.wav.WavFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Audio source that reads WAV or raw PCM file. Integer samples with 8, 16, 24 and 32 bits
+ * and 32-bit float samples are supported, also in WAVE_FORMAT_EXTENSIBLE files, interleaved
+ * channels are mixed down to mono. The format is parsed and decoded by WavFormat.
+ * The file is read as fast as possible, so long recordings can be processed faster than
+ * real time, and it can be looped for endless load tests.
+ */
+public class FileSource implements AudioSource {
+
+    // public default static values
+    public static final int BUFFER_SIZE = 1024;
+
+    private File file;               // the WAV or raw PCM file
+    private boolean wav;             // if the file has WAV header, or it is raw PCM
+    private boolean loop;            // if reading starts over when the end is reached
+    private int sampleRate;          // sample rate (Hz), from the header for WAV files
+    private int encoding;            // one of the WavFormat.ENCODING_PCM_* constants
+    private int channelCount;        // number of interleaved channels
+    private ByteOrder byteOrder;     // byte order of the samples
+    private int bufferSize;          // preferred number of samples for one read
+
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;     // channel for reading the samples
+    private long dataOffset;         // position of the first sample in the file
+    private long dataEnd;            // position after the last sample in the file
+    private ByteBuffer bytes;        // reused buffer with the raw bytes of one read
+
+    /**
+     * Source for WAV file, the format is read from the header on start()
+     *
+     * @param file
+     */
+    public FileSource(File file) {
+        this.file = file;
+        this.wav = true;
+        this.byteOrder = ByteOrder.LITTLE_ENDIAN;
+        this.bufferSize = BUFFER_SIZE;
+    }
+
+    /**
+     * Source for raw PCM file without header
+     *
+     * @param file
+     * @param sampleRate
+     * @param encoding     - one of the WavFormat.ENCODING_PCM_* constants
+     * @param channelCount - number of interleaved channels
+     * @param byteOrder
+     */
+    public FileSource(File file, int sampleRate, int encoding, int channelCount, ByteOrder byteOrder) {
+        this.file = file;
+        this.wav = false;
+        this.sampleRate = sampleRate;
+        this.encoding = encoding;
+        this.channelCount = channelCount;
+        this.byteOrder = byteOrder;
+        this.bufferSize = BUFFER_SIZE;
+    }
+
+    @Override
+    public boolean start() {
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            channel = randomAccessFile.getChannel();
+            dataOffset = 0;
+            dataEnd = channel.size();
+            if (wav) {
+                WavFormat format = WavFormat.read(channel);
+                sampleRate = format.getSampleRate();
+                encoding = format.getEncoding();
+                channelCount = format.getChannelCount();
+                dataOffset = format.getDataOffset();
+                dataEnd = dataOffset + format.getDataSize();
+            }
+            channel.position(dataOffset);
+        } catch (IOException e) {
+            e.printStackTrace();
+            stop();
+            return false;
+        }
+
+        bytes = ByteBuffer.allocate(bufferSize * channelCount * WavFormat.getBytesPerSample(encoding)).order(byteOrder);
+        return true;
+    }
+
+    @Override
+    public int read(float[] buffer, int offset, int length) {
+
+        int frameSize = WavFormat.getBytesPerSample(encoding) * channelCount;
+        length = Math.min(length, bytes.capacity() / frameSize);
+
+        try {
+            long position = channel.position();
+            if (position + frameSize > dataEnd) {
+                if (!loop) {
+                    return -1;
+                }
+                channel.position(dataOffset);
+                position = dataOffset;
+            }
+
+            bytes.clear();
+            bytes.limit((int) Math.min((long) length * frameSize, (dataEnd - position) / frameSize * frameSize));
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+
+        int frames = bytes.position() / frameSize;
+        WavFormat.decodeMono(bytes, 0, frames, encoding, channelCount, buffer, offset);
+        return frames;
+    }
+
+    @Override
+    public void stop() {
+        try {
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        randomAccessFile = null;
+        channel = null;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getEncoding() {
+        return encoding;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    public boolean isLoop() {
+        return loop;
+    }
+
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+}
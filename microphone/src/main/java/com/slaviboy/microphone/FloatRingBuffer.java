@@ -0,0 +1,214 @@
+package com.slaviboy.microphone;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer ring buffer for float samples. The producer
+ * never blocks, when there is not enough free space the overrun policy decides which samples
+ * are lost: with OVERRUN_DROP_OLDEST the unread samples at the head are discarded so the
+ * latest audio is always kept, and with OVERRUN_DROP_NEWEST the samples that do not fit are
+ * not written. Every overrun is counted, so drops are never silent.
+ * <p>
+ * The read and write positions are ever increasing counters, and the array index is taken
+ * with a mask, so the capacity is always power of two. With OVERRUN_DROP_OLDEST the producer
+ * also moves the read position, which is why it is updated with compare-and-set, and a read
+ * that raced with such a drop is repeated.
+ */
+public class FloatRingBuffer {
+
+    public static final int OVERRUN_DROP_OLDEST = 0;
+    public static final int OVERRUN_DROP_NEWEST = 1;
+
+    private float[] data;                  // preallocated samples
+    private int mask;                      // capacity - 1, for getting the array index
+    private int overrunPolicy;             // OVERRUN_DROP_OLDEST or OVERRUN_DROP_NEWEST
+
+    private AtomicLong head;               // read position, moved by the consumer and on drop oldest
+    private AtomicLong tail;               // write position, moved only by the producer
+    private long readPosition;             // end of the last read, used only by the consumer
+
+    private volatile long droppedSamples;  // number of lost samples, written only by the producer
+    private volatile long overrunCount;    // number of writes that lost samples, written only by the producer
+
+    /**
+     * @param capacity      - minimum capacity, rounded up to power of two
+     * @param overrunPolicy - OVERRUN_DROP_OLDEST or OVERRUN_DROP_NEWEST
+     */
+    public FloatRingBuffer(int capacity, int overrunPolicy) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between [1, 2^30]");
+        }
+        if (overrunPolicy != OVERRUN_DROP_OLDEST && overrunPolicy != OVERRUN_DROP_NEWEST) {
+            throw new IllegalArgumentException("Unknown overrun policy " + overrunPolicy);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.data = new float[size];
+        this.mask = size - 1;
+        this.overrunPolicy = overrunPolicy;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+    }
+
+    /**
+     * Write samples, called only from the producer thread. Never blocks.
+     *
+     * @param buffer
+     * @param offset
+     * @param length
+     * @return number of the given samples that were written
+     */
+    public int write(float[] buffer, int offset, int length) {
+
+        int capacity = data.length;
+        long t = tail.get();
+        int written = length;
+
+        if (overrunPolicy == OVERRUN_DROP_NEWEST) {
+            int free = (int) (capacity - (t - head.get()));
+            if (length > free) {
+                written = free;
+                droppedSamples += length - free;
+                overrunCount++;
+            }
+        } else {
+
+            // only the last capacity samples can be kept
+            long dropped = 0;
+            if (length > capacity) {
+                offset += length - capacity;
+                dropped = length - capacity;
+                written = capacity;
+            }
+
+            // move the read position forward, so the new samples fit
+            long required = t + written - capacity;
+            while (true) {
+                long h = head.get();
+                if (h >= required) {
+                    break;
+                }
+                if (head.compareAndSet(h, required)) {
+                    dropped += required - h;
+                    break;
+                }
+            }
+            if (dropped > 0) {
+                droppedSamples += dropped;
+                overrunCount++;
+            }
+        }
+
+        copy(buffer, offset, t, written);
+
+        // publish the samples to the consumer
+        tail.lazySet(t + written);
+        return written;
+    }
+
+    private void copy(float[] buffer, int offset, long position, int length) {
+        int index = (int) (position & mask);
+        int first = Math.min(length, data.length - index);
+        System.arraycopy(buffer, offset, data, index, first);
+        System.arraycopy(buffer, offset + first, data, 0, length - first);
+    }
+
+    /**
+     * Read samples, called only from the consumer thread. Never blocks.
+     *
+     * @param buffer
+     * @param offset
+     * @param length - maximum number of samples to read
+     * @return number of samples read
+     */
+    public int read(float[] buffer, int offset, int length) {
+        while (true) {
+            long h = head.get();
+            int count = (int) Math.min(length, tail.get() - h);
+            if (count <= 0) {
+                return 0;
+            }
+
+            int index = (int) (h & mask);
+            int first = Math.min(count, data.length - index);
+            System.arraycopy(data, index, buffer, offset, first);
+            System.arraycopy(data, 0, buffer, offset + first, count - first);
+
+            // if the producer dropped the oldest samples meanwhile, the copy may be overwritten
+            if (head.compareAndSet(h, h + count)) {
+                readPosition = h + count;
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Discard all unread samples, called only from the consumer thread
+     */
+    public void clear() {
+        while (true) {
+            long h = head.get();
+            if (head.compareAndSet(h, Math.max(h, tail.get()))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the number of samples available for reading
+     *
+     * @return
+     */
+    public int available() {
+        long h = head.get();
+        return (int) Math.max(0, tail.get() - h);
+    }
+
+    /**
+     * Get the position after the last sample returned by read(), counted from the first
+     * sample ever written, called only from the consumer thread
+     *
+     * @return
+     */
+    public long getReadPosition() {
+        return readPosition;
+    }
+
+    /**
+     * Get the position after the last written sample, counted from the first sample ever written
+     *
+     * @return
+     */
+    public long getWritePosition() {
+        return tail.get();
+    }
+
+    public int getCapacity() {
+        return data.length;
+    }
+
+    public int getOverrunPolicy() {
+        return overrunPolicy;
+    }
+
+    /**
+     * Get the total number of samples lost because of overruns
+     *
+     * @return
+     */
+    public long getDroppedSamples() {
+        return droppedSamples;
+    }
+
+    /**
+     * Get the number of writes that lost samples because of overruns
+     *
+     * @return
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+}
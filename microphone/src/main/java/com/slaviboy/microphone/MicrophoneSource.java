@@ -0,0 +1,123 @@
+package com.slaviboy.microphone;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Build;
+
+import static android.media.AudioRecord.READ_BLOCKING;
+
+/**
+ * Audio source that records from the microphone using AudioRecord object. For android
+ * version bigger than (M)Marshmallow data is read as float array [-1,1], and for lower
+ * version data is read in short and then converted to float. The reads are blocking,
+ * so the thread that reads the source waits for the microphone instead of polling.
+ */
+public class MicrophoneSource implements AudioSource {
+
+    private AudioRecord record;    // object to record audio data from microphone
+    private boolean pcm16Bit;      // if data is read as shorts, for versions lower than marshmallow
+    private int sampleRate;        // maximum allowed sample rate for current microphone
+    private int bufferSize;        // number of samples for one read
+    private short[] shortBuffer;   // reused buffer for reading shorts
+
+    @Override
+    public boolean start() {
+
+        android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_AUDIO);
+
+        // get encoding for reading shorts and floats
+        int encoding;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            encoding = AudioFormat.ENCODING_PCM_16BIT;
+            pcm16Bit = true;
+        } else {
+            encoding = AudioFormat.ENCODING_PCM_FLOAT;
+            pcm16Bit = false;
+        }
+
+        // get maximum available sample rate
+        sampleRate = 0;
+        for (int rate : new int[]{8000, 11025, 16000, 22050, 44100}) {
+            int bufferSize = AudioRecord.getMinBufferSize(rate, AudioFormat.CHANNEL_IN_MONO, encoding);
+            if (bufferSize > 0) {
+                sampleRate = rate;
+            }
+        }
+
+        // buffer size in bytes
+        int bytes = AudioRecord.getMinBufferSize(sampleRate,
+                AudioFormat.CHANNEL_IN_MONO,
+                encoding);
+
+        if (bytes == AudioRecord.ERROR || bytes == AudioRecord.ERROR_BAD_VALUE) {
+            return false;
+        }
+
+        record = new AudioRecord(MediaRecorder.AudioSource.MIC,
+                sampleRate,
+                AudioFormat.CHANNEL_IN_MONO,
+                encoding,
+                bytes);
+        if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+            record.release();
+            record = null;
+            return false;
+        }
+        record.startRecording();
+
+        bufferSize = bytes / 2;
+        shortBuffer = pcm16Bit ? new short[bufferSize] : null;
+        return true;
+    }
+
+    @Override
+    public int read(float[] buffer, int offset, int length) {
+
+        if (!pcm16Bit) {
+            return record.read(buffer, offset, length, READ_BLOCKING);
+        }
+
+        // convert short[-32768,32767] -> float between [-1,1]
+        int read = record.read(shortBuffer, 0, Math.min(length, shortBuffer.length));
+        for (int i = 0; i < read; i++) {
+            buffer[offset + i] = shortBuffer[i] * (1.0f / 32768.0f);
+        }
+        return read;
+    }
+
+    /**
+     * Read the raw 16-bit samples, available only when isPcm16Bit() is true
+     *
+     * @param buffer
+     * @param offset
+     * @param length
+     * @return number of samples read
+     */
+    public int read(short[] buffer, int offset, int length) {
+        return record.read(buffer, offset, length);
+    }
+
+    @Override
+    public void stop() {
+        if (record != null) {
+            record.stop();
+            record.release();
+            record = null;
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isPcm16Bit() {
+        return pcm16Bit;
+    }
+}
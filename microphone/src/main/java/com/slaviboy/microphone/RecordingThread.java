@@ -1,11 +1,8 @@
 package com.slaviboy.microphone;
 
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
-import android.os.Build;
-
-import static android.media.AudioRecord.READ_NON_BLOCKING;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
 
 /*
  * Free RecordingThread Class(Java)
@@ -29,181 +26,590 @@ import static android.media.AudioRecord.READ_NON_BLOCKING;
  * out of or in connection with the Software or the use or other dealings in the
  * Software.
  *
- * Thread that records audio from microphone using AudioRecord object, and send the
- * audio data through a listener. For android version bigger than (M)Marshmallow
- * data is read as float array [-1,1], and for lower version data is read in short
- * and then converted to a float array.
+ * Thread that reads audio from AudioSource, and send the audio data through a listener.
+ * By default the microphone is used through the MicrophoneSource, but file and synthetic
+ * sources can be set, in which case the thread also runs on a plain JVM. When the end of
+ * the source is reached the thread stops.
+ *
+ * The capture thread reads the source continuously and writes the samples into lock-free
+ * ring buffer, it is never throttled by the listener. A separate delivery thread consumes
+ * the ring buffer on its own schedule and calls the listeners with pooled, reference counted
+ * blocks of samples, which several listeners can share without copying. When the listeners
+ * are slower than the capture, the overrun policy of the ring buffer decides which samples
+ * are dropped, and the drops are counted. Each block is tagged with the monotonic capture
+ * time and the stream position of its samples, so the latency can be measured downstream.
+ * The positions include the dropped samples, and a block that has a gap inside it is
+ * marked with the number of samples dropped and the index where the gap is.
+ *
+ * Each start creates new session with its own capture and delivery state, and stop ends
+ * only the current session, so a capture thread that is still finishing after stop never
+ * changes the session that was started after it. The new session starts the source only
+ * after the previous capture thread released it.
  */
 public class RecordingThread implements Runnable {
 
-    private Thread thread;                                // thread for getting audio data
-    private boolean isRunning;                            // if thread is active and is running
-    private boolean reading;                              // if reading audio data is allowed
+    // public default static values
+    public static final int BUFFER_COUNT = 8;
+    public static final long PARK_NANOS = 5000000;
+    public static final int GAP_LOG_SIZE = 64;
+
+    private volatile Session session;                     // the last started session
+    private boolean reading;                              // if reading audio data is allowed (not used)
     private OnReceiveDataListener onReceiveDataListener;  // listener for receiving data from microphone
-    private int sampleRate;                               // maximum allowed sample rate for current microphone
+    private OnReceivePcmDataListener onReceivePcmDataListener;  // listener for receiving raw 16-bit data, before marshmallow
+    private OnReceivePcmListener onReceivePcmListener;    // listener for receiving raw 16-bit data with its length
+    private int sampleRate;                               // sample rate of the audio source
+    private AudioSource audioSource;                      // source of the audio data, microphone by default
+    private int bufferCount;                              // ring buffer capacity, in number of source buffers
+    private int overrunPolicy;                            // overrun policy of the ring buffer
+    private volatile FloatRingBuffer ringBuffer;          // samples between the capture and the delivery thread
+    private volatile AudioBlockPool blockPool;            // pool of the blocks sent to the listeners
+    private CopyOnWriteArrayList<OnReceiveBlockListener> onReceiveBlockListeners;  // listeners sharing each block
 
     public RecordingThread() {
+        this(new MicrophoneSource(), null);
     }
 
     public RecordingThread(OnReceiveDataListener onReceiveDataListener) {
+        this(new MicrophoneSource(), onReceiveDataListener);
+    }
+
+    public RecordingThread(AudioSource audioSource, OnReceiveDataListener onReceiveDataListener) {
+        this.audioSource = audioSource;
         this.onReceiveDataListener = onReceiveDataListener;
+        this.bufferCount = BUFFER_COUNT;
+        this.overrunPolicy = FloatRingBuffer.OVERRUN_DROP_OLDEST;
+        this.onReceiveBlockListeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * State of one start of the thread, shared only by its capture and delivery thread
+     */
+    private static class Session {
+
+        Thread thread;                       // thread for capturing audio data
+        Session previous;                    // session started before, its capture thread is joined first
+        volatile Thread deliveryThread;      // thread for sending audio data to the listener
+        volatile boolean running;            // if the session is active, cleared only for this session
+        volatile boolean captureEnded;       // if the source reached its end
+        int sampleRate;                      // sample rate of the audio source
+
+        volatile long markVersion;           // version of the capture mark, odd while it is changed
+        volatile long markStreamPosition;    // stream position after the last captured sample
+        volatile long markTime;              // System.nanoTime() of the last captured sample
+
+        long[] gapRingPositions = new long[GAP_LOG_SIZE];  // ring positions from which the stream offset changes
+        long[] gapOffsets = new long[GAP_LOG_SIZE];        // stream position - ring position, from the ring position on
+        volatile long gapHead;               // read index of the gap log, moved only by the delivery
+        volatile long gapTail;               // write index of the gap log, moved only by the capture
+
+        Session(Session previous) {
+            this.previous = previous;
+            this.running = true;
+        }
     }
 
     /**
-     * Thread runnable that is implemented by the class, and uses while loop
-     * to keep the thread alive. If reading audio data is allowed then, the
-     * AudioRecord read audio from microphone non-blocking and send the data
-     * to the listener. If thread is on hold, then sleep the thread for 1ms
-     * and check again if reading is allowed.
+     * Capture loop, that reads the audio source and writes the samples to the ring
+     * buffer until the thread is stopped or the source reaches its end. The delivery
+     * thread is started once the source is ready, since the buffer size is known
+     * only after that. Runs only on the capture thread of the current session.
      */
     @Override
     public void run() {
+        Session current = session;
+        if (current != null && current.thread == Thread.currentThread()) {
+            capture(current);
+        }
+    }
 
-        android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_AUDIO);
+    private void capture(Session session) {
+
+        // the source may still be used by the previous session, that is finishing after stop
+        Session previous = session.previous;
+        session.previous = null;
+        if (previous != null) {
+            try {
+                previous.thread.join();
+            } catch (InterruptedException e) {
+                session.running = false;
+                return;
+            }
+        }
 
-        // get encoding for reading shorts and floats
-        int encoding;
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
-            encoding = AudioFormat.ENCODING_PCM_16BIT;
-        } else {
-            encoding = AudioFormat.ENCODING_PCM_FLOAT;
+        AudioSource source = audioSource;
+        if (!session.running || !source.start()) {
+            session.running = false;
+            return;
         }
+        session.sampleRate = source.getSampleRate();
+        sampleRate = session.sampleRate;
+
+        int bufferSize = source.getBufferSize();
+        final FloatRingBuffer ring = new FloatRingBuffer(bufferSize * bufferCount, overrunPolicy);
+        ringBuffer = ring;
+
+        AudioBlockPool pool = new AudioBlockPool(bufferSize, bufferCount);
+        blockPool = pool;
+        Thread delivery = new Thread(new Delivery(session, ring, pool));
+        session.deliveryThread = delivery;
+        delivery.start();
+
+        // raw samples are read only from microphone that records 16-bit samples
+        MicrophoneSource microphoneSource = null;
+        short[] pcmBuffer = null;
+        if (source instanceof MicrophoneSource && ((MicrophoneSource) source).isPcm16Bit()) {
+            microphoneSource = (MicrophoneSource) source;
+            pcmBuffer = new short[bufferSize];
+        }
+
+        float[] audioBuffer = new float[bufferSize];
+        long capturedSamples = 0;
+        long offset = 0;
+        while (session.running) {
+
+            int length;
+            OnReceivePcmListener pcmListener = onReceivePcmListener;
+            OnReceivePcmDataListener pcmDataListener = onReceivePcmDataListener;
+            if (microphoneSource != null && (pcmListener != null || pcmDataListener != null)) {
+
+                // raw samples can go straight to the analyser, without float conversion
+                length = microphoneSource.read(pcmBuffer, 0, pcmBuffer.length);
+                if (length > 0) {
+                    if (pcmListener != null) {
+                        pcmListener.onReceivePcmData(pcmBuffer, length);
+                    }
+                    if (pcmDataListener != null) {
+                        pcmDataListener.onReceivePcmData(pcmBuffer);
+                    }
 
-        // get maximum available sample rate
-        sampleRate = 0;
-        for (int rate : new int[]{8000, 11025, 16000, 22050, 44100}) {
-            int bufferSize = AudioRecord.getMinBufferSize(rate, AudioFormat.CHANNEL_IN_MONO, encoding);
-            if (bufferSize > 0) {
-                sampleRate = rate;
+                    // convert short[-32768,32767] -> float between [-1,1]
+                    for (int i = 0; i < length; i++) {
+                        audioBuffer[i] = pcmBuffer[i] * (1.0f / 32768.0f);
+                    }
+                }
+            } else {
+                length = source.read(audioBuffer, 0, audioBuffer.length);
             }
-        }
 
-        // buffer size in bytes
-        int bufferSize = AudioRecord.getMinBufferSize(sampleRate,
-                AudioFormat.CHANNEL_IN_MONO,
-                encoding);
+            if (length < 0) {
+                break;
+            }
+            if (length > 0) {
+                long now = System.nanoTime();
+
+                // with drop newest the first samples go to the ring, otherwise the last capacity samples,
+                // the gap is logged before the samples are published, so the delivery sees it in time
+                long ringStart = ring.getWritePosition();
+                long streamStart = overrunPolicy == FloatRingBuffer.OVERRUN_DROP_NEWEST ? capturedSamples
+                        : capturedSamples + Math.max(0, length - ring.getCapacity());
+                if (streamStart - ringStart != offset) {
+                    offset = streamStart - ringStart;
+                    logGap(session, ringStart, offset);
+                }
+                int written = ring.write(audioBuffer, 0, length);
 
-        if (bufferSize == AudioRecord.ERROR || bufferSize == AudioRecord.ERROR_BAD_VALUE) {
-            return;
+                long streamEnd = streamStart + written;
+                capturedSamples += length;
+                setCaptureMark(session, streamEnd, now - (capturedSamples - streamEnd) * 1000000000L / session.sampleRate);
+                LockSupport.unpark(delivery);
+            }
         }
 
-        // object to record audio data from microphone
-        AudioRecord record = new AudioRecord(MediaRecorder.AudioSource.MIC,
-                sampleRate,
-                AudioFormat.CHANNEL_IN_MONO,
-                encoding,
-                bufferSize);
-        if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+        // let the delivery thread send the remaining samples
+        session.captureEnded = true;
+        LockSupport.unpark(delivery);
+        source.stop();
+        try {
+            delivery.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        session.running = false;
+    }
+
+    /**
+     * Store the stream position and capture time of the last written sample, the
+     * version is odd while the values are being changed
+     *
+     * @param session
+     * @param streamPosition
+     * @param time
+     */
+    private static void setCaptureMark(Session session, long streamPosition, long time) {
+        session.markVersion++;
+        session.markStreamPosition = streamPosition;
+        session.markTime = time;
+        session.markVersion++;
+    }
+
+    /**
+     * Log that samples of the stream were skipped before they reached the ring, so from
+     * given ring position on the stream position is the ring position plus the offset.
+     * While nothing is written to the full ring, the latest entry is updated, it is not
+     * used by the delivery until a sample is written at its position. If the delivery is
+     * so far behind that the log is full, the latest entry is changed too, and the
+     * positions of the samples before it are approximate.
+     *
+     * @param session
+     * @param ringPosition - ring position of the first sample after the skipped ones
+     * @param offset       - stream position - ring position
+     */
+    private static void logGap(Session session, long ringPosition, long offset) {
+        long tail = session.gapTail;
+        int last = (int) ((tail - 1) % GAP_LOG_SIZE);
+        if ((tail > session.gapHead && session.gapRingPositions[last] == ringPosition) ||
+                tail - session.gapHead >= GAP_LOG_SIZE) {
+            session.gapOffsets[last] = offset;
             return;
         }
-        record.startRecording();
+        int index = (int) (tail % GAP_LOG_SIZE);
+        session.gapRingPositions[index] = ringPosition;
+        session.gapOffsets[index] = offset;
 
-        // create a while loop that holds the thread running
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+        // publish the entry to the delivery
+        session.gapTail = tail + 1;
+    }
 
-            // read data as shorts for versions lower than marshmallow
+    /**
+     * Set the capture time of a block from the last capture mark and the sample rate
+     *
+     * @param session
+     * @param block
+     * @param streamEnd - stream position after the last sample of the block
+     */
+    private static void setBlockTime(Session session, AudioBlock block, long streamEnd) {
+        long version, stream, time;
+        do {
+            version = session.markVersion;
+            stream = session.markStreamPosition;
+            time = session.markTime;
+        } while ((version & 1) != 0 || version != session.markVersion);
+
+        block.setCaptureTime(time - (stream - streamEnd) * 1000000000L / session.sampleRate);
+    }
 
-            short[] audioBuffer = new short[bufferSize / 2];
-            while (isRunning) {
+    /**
+     * Delivery loop, that reads blocks from the ring buffer and sends them to the listeners.
+     * When there are not enough samples for a block, the thread is parked until the capture
+     * thread writes new samples.
+     */
+    private class Delivery implements Runnable {
+
+        private Session session;
+        private FloatRingBuffer ring;
+        private AudioBlockPool pool;
+        private AudioBlock previousBlock;   // last block sent to OnReceiveDataListener, kept until the next one
+        private long offset;                // stream position - ring position, of the last read sample
+        private long gapPosition;           // ring position of the first gap log entry applied in a read, or -1
+        private long blockEnd;              // stream position after the last sample in the block
+
+        Delivery(Session session, FloatRingBuffer ring, AudioBlockPool pool) {
+            this.session = session;
+            this.ring = ring;
+            this.pool = pool;
+        }
 
-                // if reading is postponed set reading on hold
-                if (!reading) {
-                    // sleep thread 1ms and continue
-                    try {
-                        Thread.sleep(1);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+        @Override
+        public void run() {
+            AudioBlock block = pool.acquire();
+            float[] data = block.getData();
+            int filled = 0;
+            while (true) {
+                int count = ring.read(data, filled, data.length - filled);
+                if (count > 0) {
+                    append(block, filled, count);
+                    filled += count;
+                }
+                if (filled == data.length) {
+                    deliver(block, filled);
+                    block = pool.acquire();
+                    data = block.getData();
+                    filled = 0;
                     continue;
                 }
-                reading = false;
-
-                record.read(audioBuffer, 0, audioBuffer.length);
-
-                // convert short[-32768,32767] -> float between [-1,1]
-                float[] data = new float[audioBuffer.length];
-                for (int i = 0; i < data.length; i++) {
-                    float value = 0.0f;
-                    if (audioBuffer[i] > 0) {
-                        value = (float) audioBuffer[i] / 32767.0f;
-                    } else if (audioBuffer[i] < 0) {
-                        value = (float) audioBuffer[i] / 32768.0f;
+
+                if (session.captureEnded && ring.available() == 0) {
+
+                    // the listener always gets full block, the tail of the last block is cleared
+                    if (filled > 0 && session.running) {
+                        Arrays.fill(data, filled, data.length, 0.0f);
+                        deliver(block, filled);
+                    } else {
+                        block.release();
                     }
-                    data[i] = value;
+                    break;
                 }
-
-                if (onReceiveDataListener != null) {
-                    onReceiveDataListener.onReceiveData(data);
+                if (!session.running) {
+                    block.release();
+                    break;
                 }
+                LockSupport.parkNanos(this, PARK_NANOS);
             }
-        } else {
-
-            // read data as floats for android version > Marshmallow
-            float[] audioBuffer = new float[bufferSize / 2];
-
-            // if reading is postponed set reading on hold
-            while (isRunning) {
-                if (!reading) {
-                    try {
-                        Thread.sleep(1);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                    continue;
-                }
-                reading = false;
 
-                record.read(audioBuffer, 0, audioBuffer.length, READ_NON_BLOCKING);
+            if (previousBlock != null) {
+                previousBlock.release();
+                previousBlock = null;
+            }
+        }
 
-                if (onReceiveDataListener != null) {
-                    onReceiveDataListener.onReceiveData(audioBuffer);
+        /**
+         * Get the stream position of a sample, the gap log entries up to the ring position are
+         * applied, so it must be called with ring positions that never decrease
+         *
+         * @param ringPosition
+         * @return
+         */
+        private long getStreamPosition(long ringPosition) {
+            long head = session.gapHead;
+            while (head < session.gapTail) {
+                int index = (int) (head % GAP_LOG_SIZE);
+                if (session.gapRingPositions[index] > ringPosition) {
+                    break;
+                }
+                offset = session.gapOffsets[index];
+                if (gapPosition < 0) {
+                    gapPosition = session.gapRingPositions[index];
                 }
+                session.gapHead = ++head;
+            }
+            return ringPosition + offset;
+        }
+
+        /**
+         * Set the stream position of the samples that were just read into the block, and
+         * mark the gap if samples were dropped since the previous read of the same block
+         *
+         * @param block
+         * @param filled - number of samples in the block before the read
+         * @param count  - number of samples read
+         */
+        private void append(AudioBlock block, int filled, int count) {
+            long end = ring.getReadPosition();
+            long first = getStreamPosition(end - count);
+            if (filled == 0) {
+                block.setPosition(first);
+            } else if (first != blockEnd) {
+                markGap(block, filled, first - blockEnd);
+            }
+
+            // the offset changed inside the read, from the first applied gap position on
+            gapPosition = -1;
+            long last = getStreamPosition(end - 1);
+            if (last - first + 1 != count) {
+                markGap(block, filled + (int) (gapPosition - (end - count)), last - first + 1 - count);
+            }
+            blockEnd = last + 1;
+        }
+
+        private void markGap(AudioBlock block, int index, long dropped) {
+            if (!block.hasGap()) {
+                block.setGapOffset(index);
             }
+            block.setDroppedSamples(block.getDroppedSamples() + dropped);
         }
 
-        record.stop();
-        record.release();
+        /**
+         * Send the block to all listeners, and release the reference held by the delivery
+         *
+         * @param block
+         * @param length - number of captured samples in the block
+         */
+        private void deliver(AudioBlock block, int length) {
+            block.setLength(length);
+            setBlockTime(session, block, blockEnd);
+
+            for (OnReceiveBlockListener listener : onReceiveBlockListeners) {
+                listener.onReceiveBlock(block);
+            }
+
+            // the array passed to the listener stays valid until the next call
+            OnReceiveDataListener listener = onReceiveDataListener;
+            if (listener != null) {
+                listener.onReceiveData(block.retain().getData());
+                if (previousBlock != null) {
+                    previousBlock.release();
+                }
+                previousBlock = block;
+            }
+
+            block.release();
+        }
     }
 
     public int getSampleRate() {
         return sampleRate;
     }
 
+    public AudioSource getAudioSource() {
+        return audioSource;
+    }
+
+    /**
+     * Set the source of the audio data, takes effect the next time the thread is started
+     *
+     * @param audioSource
+     */
+    public void setAudioSource(AudioSource audioSource) {
+        this.audioSource = audioSource;
+    }
+
+    /**
+     * Set the ring buffer capacity as number of source buffers, and the policy used
+     * when the capacity is exceeded, takes effect the next time the thread is started
+     *
+     * @param bufferCount   - number of source buffers that fit in the ring buffer
+     * @param overrunPolicy - FloatRingBuffer.OVERRUN_DROP_OLDEST or FloatRingBuffer.OVERRUN_DROP_NEWEST
+     */
+    public void setRingBuffer(int bufferCount, int overrunPolicy) {
+        this.bufferCount = Math.max(1, bufferCount);
+        this.overrunPolicy = overrunPolicy;
+    }
+
+    /**
+     * Get the ring buffer between the capture and delivery thread, available after start
+     *
+     * @return
+     */
+    public FloatRingBuffer getRingBuffer() {
+        return ringBuffer;
+    }
+
+    /**
+     * Get the number of samples dropped because the listener was slower than the capture
+     *
+     * @return
+     */
+    public long getDroppedSamples() {
+        FloatRingBuffer ring = ringBuffer;
+        return ring == null ? 0 : ring.getDroppedSamples();
+    }
+
+    /**
+     * @deprecated the capture is no longer throttled by the listener, reading is always allowed
+     */
+    @Deprecated
     public boolean isReading() {
         return reading;
     }
 
+    /**
+     * @deprecated the capture is no longer throttled by the listener, calls have no effect
+     */
+    @Deprecated
     public void setReading(boolean reading) {
         this.reading = reading;
     }
 
+    /**
+     * Get the pool of the blocks sent to the listeners, available after start
+     *
+     * @return
+     */
+    public AudioBlockPool getBlockPool() {
+        return blockPool;
+    }
+
+    /**
+     * Set listener for receiving the samples as float array. The array stays valid until
+     * the next call, listeners that need the samples longer should use OnReceiveBlockListener.
+     *
+     * @param onReceiveDataListener
+     */
     public void setOnReceiveDataListener(OnReceiveDataListener onReceiveDataListener) {
         this.onReceiveDataListener = onReceiveDataListener;
     }
 
+    /**
+     * Add listener that receives each captured block, all listeners share the same block
+     * without copying. The block is valid during the call, listeners that keep it longer
+     * should call retain() and later release().
+     *
+     * @param onReceiveBlockListener
+     */
+    public void addOnReceiveBlockListener(OnReceiveBlockListener onReceiveBlockListener) {
+        onReceiveBlockListeners.addIfAbsent(onReceiveBlockListener);
+    }
+
+    public void removeOnReceiveBlockListener(OnReceiveBlockListener onReceiveBlockListener) {
+        onReceiveBlockListeners.remove(onReceiveBlockListener);
+    }
+
     public boolean isRecording() {
-        return isRunning;
+        Session current = session;
+        return current != null && current.running;
     }
 
     public void start() {
-        if (thread == null) {
-            isRunning = true;
-            thread = new Thread(this); // set this runnable, to new thread
-            thread.start();
+
+        // the thread can be started again after stop, or after the source reached its end
+        Session current = session;
+        if (current == null || !current.running) {
+            Session next = new Session(current);
+            next.thread = new Thread(this); // set this runnable, to new thread
+            session = next;
+            next.thread.start();
             reading = true;
         }
     }
 
+    /**
+     * Stop the current session, without waiting for its threads to finish
+     */
     public void stop() {
-        if (thread != null) {
-            isRunning = false;
-            thread.interrupt();
-            thread = null;
+        Session current = session;
+        if (current != null && current.running) {
+            current.running = false;
+            current.thread.interrupt();
+            Thread delivery = current.deliveryThread;
+            if (delivery != null) {
+                LockSupport.unpark(delivery);
+            }
         }
     }
 
+    /**
+     * Set listener for the raw 16-bit samples, used for android versions lower than
+     * marshmallow where the samples are read as shorts. This listener is called on the
+     * capture thread, so it should return quickly, and the samples are still written to
+     * the ring buffer for the float listener.
+     *
+     * @param onReceivePcmListener
+     */
+    public void setOnReceivePcmListener(OnReceivePcmListener onReceivePcmListener) {
+        this.onReceivePcmListener = onReceivePcmListener;
+    }
+
+    /**
+     * @deprecated the buffer can be filled only partly, use setOnReceivePcmListener() that gets the number of samples
+     */
+    @Deprecated
+    public void setOnReceivePcmDataListener(OnReceivePcmDataListener onReceivePcmDataListener) {
+        this.onReceivePcmDataListener = onReceivePcmDataListener;
+    }
 
     public interface OnReceiveDataListener {
         void onReceiveData(float[] audioBuffer);
     }
+
+    public interface OnReceiveBlockListener {
+        void onReceiveBlock(AudioBlock block);
+    }
+
+    /**
+     * @deprecated use OnReceivePcmListener
+     */
+    @Deprecated
+    public interface OnReceivePcmDataListener {
+        void onReceivePcmData(short[] audioBuffer);
+    }
+
+    public interface OnReceivePcmListener {
+
+        /**
+         * @param audioBuffer - the raw samples, valid only during the call
+         * @param length      - number of samples read into the buffer
+         */
+        void onReceivePcmData(short[] audioBuffer, int length);
+    }
 }
@@ -0,0 +1,179 @@
+package com.slaviboy.microphone;
+
+import java.util.Random;
+
+/**
+ * Deterministic audio source that generates sine waves, frequency sweeps or white noise.
+ * The same parameters and seed always give the same samples, and the samples are not
+ * paced to real time, so it can be used for load tests and benchmarks of the pipeline.
+ */
+public class SignalSource implements AudioSource {
+
+    public static final int TYPE_SINE = 0;
+    public static final int TYPE_SWEEP = 1;
+    public static final int TYPE_NOISE = 2;
+
+    // public default static values
+    public static final int SAMPLE_RATE = 44100;
+    public static final int BUFFER_SIZE = 1024;
+
+    private int type;                // TYPE_SINE, TYPE_SWEEP or TYPE_NOISE
+    private int sampleRate;          // generated sample rate (Hz)
+    private int bufferSize;          // preferred number of samples for one read
+    private double[] frequencies;    // sine frequencies, or start and end frequency for the sweep (Hz)
+    private double amplitude;        // peak amplitude, between [0-1]
+    private double sweepDuration;    // duration of one sweep (s), the sweep is repeated
+    private long seed;               // seed for the noise
+    private long totalSamples;       // number of samples before the end of the source, -1 for endless
+
+    private Random random;           // noise generator
+    private long position;           // number of generated samples
+    private double[] phases;         // current phase of each sine, or of the sweep
+
+    private SignalSource(int type, int sampleRate, double[] frequencies, double amplitude,
+                         double sweepDuration, long seed, long totalSamples) {
+        this.type = type;
+        this.sampleRate = sampleRate;
+        this.bufferSize = BUFFER_SIZE;
+        this.frequencies = frequencies;
+        this.amplitude = amplitude;
+        this.sweepDuration = sweepDuration;
+        this.seed = seed;
+        this.totalSamples = totalSamples;
+    }
+
+    /**
+     * Sum of sine waves, the amplitude is divided between them
+     *
+     * @param sampleRate
+     * @param amplitude
+     * @param frequencies
+     * @return
+     */
+    public static SignalSource sine(int sampleRate, double amplitude, double... frequencies) {
+        return new SignalSource(TYPE_SINE, sampleRate, frequencies, amplitude, 0, 0, -1);
+    }
+
+    /**
+     * Logarithmic sweep from start to end frequency, repeated every duration seconds
+     *
+     * @param sampleRate
+     * @param amplitude
+     * @param startFrequency
+     * @param endFrequency
+     * @param duration
+     * @return
+     */
+    public static SignalSource sweep(int sampleRate, double amplitude, double startFrequency,
+                                     double endFrequency, double duration) {
+        return new SignalSource(TYPE_SWEEP, sampleRate, new double[]{startFrequency, endFrequency},
+                amplitude, duration, 0, -1);
+    }
+
+    /**
+     * Uniform white noise with given seed
+     *
+     * @param sampleRate
+     * @param amplitude
+     * @param seed
+     * @return
+     */
+    public static SignalSource noise(int sampleRate, double amplitude, long seed) {
+        return new SignalSource(TYPE_NOISE, sampleRate, new double[0], amplitude, 0, seed, -1);
+    }
+
+    @Override
+    public boolean start() {
+        random = new Random(seed);
+        position = 0;
+        phases = new double[Math.max(1, frequencies.length)];
+        return true;
+    }
+
+    @Override
+    public int read(float[] buffer, int offset, int length) {
+
+        if (totalSamples >= 0) {
+            if (position >= totalSamples) {
+                return -1;
+            }
+            length = (int) Math.min(length, totalSamples - position);
+        }
+
+        switch (type) {
+            case TYPE_SINE:
+                readSine(buffer, offset, length);
+                break;
+            case TYPE_SWEEP:
+                readSweep(buffer, offset, length);
+                break;
+            default:
+                for (int i = offset; i < offset + length; i++) {
+                    buffer[i] = (float) (amplitude * (2.0 * random.nextDouble() - 1.0));
+                }
+        }
+
+        position += length;
+        return length;
+    }
+
+    private void readSine(float[] buffer, int offset, int length) {
+        double gain = amplitude / Math.max(1, frequencies.length);
+        for (int i = offset; i < offset + length; i++) {
+            double value = 0.0;
+            for (int j = 0; j < frequencies.length; j++) {
+                value += Math.sin(phases[j]);
+                phases[j] += 2.0 * Math.PI * frequencies[j] / sampleRate;
+                if (phases[j] > 2.0 * Math.PI) {
+                    phases[j] -= 2.0 * Math.PI;
+                }
+            }
+            buffer[i] = (float) (gain * value);
+        }
+    }
+
+    private void readSweep(float[] buffer, int offset, int length) {
+        long sweepLength = Math.max(1, (long) (sweepDuration * sampleRate));
+        double ratio = Math.log(frequencies[1] / frequencies[0]);
+        for (int i = offset; i < offset + length; i++) {
+            double t = (double) ((position + i - offset) % sweepLength) / sweepLength;
+            double frequency = frequencies[0] * Math.exp(ratio * t);
+            buffer[i] = (float) (amplitude * Math.sin(phases[0]));
+            phases[0] += 2.0 * Math.PI * frequency / sampleRate;
+            if (phases[0] > 2.0 * Math.PI) {
+                phases[0] -= 2.0 * Math.PI;
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Limit the source to given number of samples, after them read() returns -1
+     *
+     * @param totalSamples - number of samples, or -1 for endless source
+     */
+    public void setTotalSamples(long totalSamples) {
+        this.totalSamples = totalSamples;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+}
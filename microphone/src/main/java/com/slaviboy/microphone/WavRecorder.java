@@ -0,0 +1,327 @@
+package com.slaviboy.microphone;
+
+import com.slaviboy.wav.WavFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recorder that archives the captured stream to WAV files, without stalling the capture.
+ * It is added to the RecordingThread as block listener, each block is retained and put
+ * in bounded queue, and a dedicated I/O thread converts the samples into large direct
+ * byte buffer that is written with FileChannel once it is full. If the disk falls behind
+ * and the queue is full the block is dropped and counted, the capture never waits.
+ * <p>
+ * The WAV header is written with zero sizes and patched when the segment is closed. A new
+ * segment file is started when the size or the duration limit of the current one is reached,
+ * the files are named prefix_0001.wav, prefix_0002.wav and so on.
+ */
+public class WavRecorder implements RecordingThread.OnReceiveBlockListener {
+
+    // public default static values
+    public static final int QUEUE_SIZE = 64;
+    public static final int BATCH_SIZE = 256 * 1024;
+    public static final long SEGMENT_SIZE = 1L << 30;
+
+    private File directory;                         // directory for the segment files
+    private String prefix;                          // name of the segment files, before the index
+    private int sampleRate;                         // sample rate of the recorded stream
+    private int encoding;                           // WavFormat.ENCODING_PCM_16BIT or ENCODING_PCM_FLOAT
+    private WavFormat format;                       // format of the segment files
+    private long segmentSize;                       // maximum size of the samples in one segment (bytes)
+    private long segmentFrames;                     // maximum number of samples in one segment, 0 for no limit
+
+    private ArrayBlockingQueue<AudioBlock> queue;   // blocks waiting for the I/O thread
+    private ByteBuffer batch;                       // direct buffer with converted samples, written when full
+    private Thread thread;                          // I/O thread
+    private volatile boolean isRunning;             // if the I/O thread accepts new blocks
+
+    private RandomAccessFile file;                  // current segment file
+    private FileChannel channel;                    // channel of the current segment
+    private long segmentBytes;                      // bytes of samples written to the current segment
+    private int segmentIndex;                       // index of the current segment, starting from 1
+
+    private volatile long writtenBlocks;            // number of blocks written, written only by the I/O thread
+    private volatile long droppedBlocks;            // number of blocks dropped, written only by the capture
+    private volatile IOException error;             // first I/O error, recording stops after it
+
+    public WavRecorder(File directory, String prefix, int sampleRate) {
+        this(directory, prefix, sampleRate, WavFormat.ENCODING_PCM_16BIT, QUEUE_SIZE, BATCH_SIZE);
+    }
+
+    /**
+     * @param directory  - directory for the segment files
+     * @param prefix     - name of the segment files, before the index
+     * @param sampleRate - sample rate of the recorded stream
+     * @param encoding   - WavFormat.ENCODING_PCM_16BIT or ENCODING_PCM_FLOAT
+     * @param queueSize  - number of blocks that can wait for the I/O thread
+     * @param batchSize  - size of the direct buffer in bytes
+     */
+    public WavRecorder(File directory, String prefix, int sampleRate, int encoding, int queueSize, int batchSize) {
+        if (encoding != WavFormat.ENCODING_PCM_16BIT && encoding != WavFormat.ENCODING_PCM_FLOAT) {
+            throw new IllegalArgumentException("Unsupported encoding " + encoding);
+        }
+
+        this.directory = directory;
+        this.prefix = prefix;
+        this.sampleRate = sampleRate;
+        this.encoding = encoding;
+        this.format = new WavFormat(sampleRate, encoding, 1);
+        this.segmentSize = SEGMENT_SIZE;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batch = ByteBuffer.allocateDirect(batchSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Start the I/O thread, blocks received before that are ignored
+     */
+    public void start() {
+        if (thread == null) {
+            isRunning = true;
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    write();
+                }
+            });
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop accepting blocks, write the queued ones and close the current segment,
+     * waits for the I/O thread to finish
+     */
+    public void stop() {
+        if (thread != null) {
+
+            // close the gate before the I/O thread makes its final drain
+            isRunning = false;
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+
+            // block offered by the capture after the final drain
+            releaseQueued();
+        }
+    }
+
+    /**
+     * Called on the delivery thread of the RecordingThread, never blocks
+     *
+     * @param block
+     */
+    @Override
+    public void onReceiveBlock(AudioBlock block) {
+        if (!isRunning) {
+            return;
+        }
+        if (!queue.offer(block.retain())) {
+            block.release();
+            droppedBlocks++;
+            return;
+        }
+
+        // the recorder stopped while the block was offered, release it unless the I/O thread took it
+        if (!isRunning && queue.remove(block)) {
+            block.release();
+        }
+    }
+
+    /**
+     * I/O thread loop, that converts the queued blocks and writes full batches
+     */
+    private void write() {
+        try {
+            while (isRunning || !queue.isEmpty()) {
+                AudioBlock block = queue.poll(10, TimeUnit.MILLISECONDS);
+                if (block == null) {
+                    continue;
+                }
+                try {
+                    append(block);
+                } finally {
+                    block.release();
+                }
+                writtenBlocks++;
+            }
+            flush();
+        } catch (IOException e) {
+            error = e;
+            isRunning = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            releaseQueued();
+            closeSegment();
+        }
+    }
+
+    /**
+     * Release the blocks that will not be written
+     */
+    private void releaseQueued() {
+        AudioBlock block;
+        while ((block = queue.poll()) != null) {
+            block.release();
+        }
+    }
+
+    /**
+     * Convert block samples into the batch, the batch is written when it is full
+     * or when the current segment reaches its limit
+     *
+     * @param block
+     * @throws IOException
+     */
+    private void append(AudioBlock block) throws IOException {
+        float[] data = block.getData();
+        int bytesPerSample = WavFormat.getBytesPerSample(encoding);
+        long maxBytes = segmentSize;
+        if (segmentFrames > 0) {
+            maxBytes = Math.min(maxBytes, segmentFrames * bytesPerSample);
+        }
+
+        for (int i = 0; i < block.getLength(); i++) {
+            if (channel == null) {
+                openSegment();
+            }
+
+            if (encoding == WavFormat.ENCODING_PCM_16BIT) {
+                float sample = Math.max(-1.0f, Math.min(1.0f, data[i]));
+                batch.putShort((short) (sample * 32767.0f));
+            } else {
+                batch.putFloat(data[i]);
+            }
+            segmentBytes += bytesPerSample;
+
+            if (segmentBytes >= maxBytes) {
+                flush();
+                closeSegment();
+            } else if (batch.remaining() < bytesPerSample) {
+                flush();
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        batch.flip();
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        batch.clear();
+    }
+
+    private void openSegment() throws IOException {
+        segmentIndex++;
+        File path = new File(directory, String.format(Locale.US, "%s_%04d.wav", prefix, segmentIndex));
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        segmentBytes = 0;
+
+        // sizes are patched when the segment is closed
+        channel.write(format.createHeader(0));
+    }
+
+    /**
+     * Patch the WAV header with the final sizes, and close the segment file
+     */
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            ByteBuffer header = format.createHeader(segmentBytes);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            file.close();
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+        file = null;
+        channel = null;
+    }
+
+    /**
+     * Set the maximum size of the samples in one segment, when it is reached a new
+     * segment file is started
+     *
+     * @param segmentSize - size in bytes, at most 4GB - 1 for valid WAV header
+     */
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = Math.min(segmentSize, 0xffffffffL - WavFormat.HEADER_SIZE);
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Set the maximum duration of one segment, 0 for no limit
+     *
+     * @param seconds
+     */
+    public void setSegmentDuration(double seconds) {
+        this.segmentFrames = (long) (seconds * sampleRate);
+    }
+
+    public double getSegmentDuration() {
+        return (double) segmentFrames / sampleRate;
+    }
+
+    /**
+     * Get the number of blocks dropped because the disk could not keep up with the capture
+     *
+     * @return
+     */
+    public long getDroppedBlocks() {
+        return droppedBlocks;
+    }
+
+    public long getWrittenBlocks() {
+        return writtenBlocks;
+    }
+
+    /**
+     * Get the number of blocks waiting for the I/O thread
+     *
+     * @return
+     */
+    public int getQueuedBlocks() {
+        return queue.size();
+    }
+
+    public int getSegmentCount() {
+        return segmentIndex;
+    }
+
+    /**
+     * Get the I/O error that stopped the recording, or null
+     *
+     * @return
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    public boolean isRecording() {
+        return isRunning;
+    }
+}
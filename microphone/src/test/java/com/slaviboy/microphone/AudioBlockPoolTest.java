@@ -0,0 +1,71 @@
+package com.slaviboy.microphone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reference counting of the blocks, and reusing them through the pool.
+ */
+public class AudioBlockPoolTest {
+
+    @Test
+    public void releasedBlock_isReused() {
+        AudioBlockPool pool = new AudioBlockPool(64, 2);
+        assertEquals(2, pool.getFreeCount());
+
+        AudioBlock block = pool.acquire();
+        assertEquals(1, block.getReferenceCount());
+        assertEquals(64, block.getCapacity());
+        assertEquals(1, pool.getFreeCount());
+
+        block.setLength(10);
+        block.setDroppedSamples(5);
+        block.setGapOffset(3);
+        block.release();
+        assertEquals(2, pool.getFreeCount());
+
+        // the state of the previous capture is cleared
+        AudioBlock next = pool.acquire();
+        AudioBlock other = pool.acquire();
+        assertTrue(next == block || other == block);
+        assertEquals(0, block.getLength());
+        assertFalse(block.hasGap());
+        assertEquals(0, block.getGapOffset());
+        assertEquals(2, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void retainedBlock_isNotReused() {
+        AudioBlockPool pool = new AudioBlockPool(16, 1);
+        AudioBlock block = pool.acquire();
+
+        // two listeners keep the block after the owner released it
+        block.retain();
+        block.retain();
+        block.release();
+        block.release();
+        assertEquals(0, pool.getFreeCount());
+        assertNotSame(block, pool.acquire());
+        assertEquals(2, pool.getAllocatedCount());
+
+        block.release();
+        assertEquals(1, pool.getFreeCount());
+        assertSame(block, pool.acquire());
+        assertEquals(2, pool.getAllocatedCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void retainAfterRelease_throws() {
+        AudioBlock block = new AudioBlockPool(16, 1).acquire();
+        block.release();
+        block.retain();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void doubleRelease_throws() {
+        AudioBlock block = new AudioBlockPool(16, 1).acquire();
+        block.release();
+        block.release();
+    }
+}
@@ -0,0 +1,109 @@
+package com.slaviboy.microphone;
+
+import com.slaviboy.wav.WavFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reading WAV and raw PCM files, mixing the channels down and looping.
+ */
+public class FileSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String name, ByteBuffer... buffers) throws IOException {
+        File file = folder.newFile(name);
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            for (ByteBuffer buffer : buffers) {
+                stream.write(buffer.array(), 0, buffer.limit());
+            }
+        } finally {
+            stream.close();
+        }
+        return file;
+    }
+
+    private static ByteBuffer shorts(ByteOrder order, int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 2).order(order);
+        for (int value : values) {
+            buffer.putShort((short) value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void stereoWav_isMixedToMono() throws IOException {
+        WavFormat format = new WavFormat(8000, WavFormat.ENCODING_PCM_16BIT, 2);
+        ByteBuffer data = shorts(ByteOrder.LITTLE_ENDIAN, 16384, 16384, 0, -16384, -32768, -32768);
+        File file = write("stereo.wav", format.createHeader(data.limit()), data);
+
+        FileSource source = new FileSource(file);
+        assertTrue(source.start());
+        assertEquals(8000, source.getSampleRate());
+        assertEquals(2, source.getChannelCount());
+
+        float[] buffer = new float[8];
+        assertEquals(3, source.read(buffer, 0, buffer.length));
+        assertEquals(0.5f, buffer[0], 0.0f);
+        assertEquals(-0.25f, buffer[1], 0.0f);
+        assertEquals(-1.0f, buffer[2], 0.0f);
+        assertEquals(-1, source.read(buffer, 0, buffer.length));
+        source.stop();
+    }
+
+    @Test
+    public void rawPcm_usesByteOrder() throws IOException {
+        File file = write("raw.pcm", shorts(ByteOrder.BIG_ENDIAN, 8192, -8192));
+
+        FileSource source = new FileSource(file, 16000, WavFormat.ENCODING_PCM_16BIT, 1, ByteOrder.BIG_ENDIAN);
+        assertTrue(source.start());
+
+        float[] buffer = new float[4];
+        assertEquals(2, source.read(buffer, 1, 3));
+        assertEquals(0.25f, buffer[1], 0.0f);
+        assertEquals(-0.25f, buffer[2], 0.0f);
+        source.stop();
+    }
+
+    @Test
+    public void loop_startsOver() throws IOException {
+        WavFormat format = new WavFormat(8000, WavFormat.ENCODING_PCM_16BIT, 1);
+        ByteBuffer data = shorts(ByteOrder.LITTLE_ENDIAN, 1024, 2048, 4096);
+        File file = write("loop.wav", format.createHeader(data.limit()), data);
+
+        FileSource source = new FileSource(file);
+        source.setLoop(true);
+        source.setBufferSize(2);
+        assertTrue(source.start());
+
+        float[] buffer = new float[8];
+        int total = 0;
+        for (int i = 0; i < 4; i++) {
+            int count = source.read(buffer, total, buffer.length - total);
+            assertTrue(count > 0 && count <= 2);
+            total += count;
+        }
+        for (int i = 0; i < total; i++) {
+            assertEquals(new int[]{1024, 2048, 4096}[i % 3] / 32768.0f, buffer[i], 0.0f);
+        }
+        source.stop();
+    }
+
+    @Test
+    public void missingFile_doesNotStart() {
+        assertFalse(new FileSource(new File(folder.getRoot(), "missing.wav")).start());
+    }
+}
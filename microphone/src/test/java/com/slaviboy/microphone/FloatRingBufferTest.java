@@ -0,0 +1,112 @@
+package com.slaviboy.microphone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reading and writing the ring buffer, wrapping around and both overrun policies.
+ */
+public class FloatRingBufferTest {
+
+    private static float[] ramp(int from, int length) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = from + i;
+        }
+        return samples;
+    }
+
+    @Test
+    public void capacity_isRoundedToPowerOfTwo() {
+        assertEquals(8, new FloatRingBuffer(5, FloatRingBuffer.OVERRUN_DROP_OLDEST).getCapacity());
+        assertEquals(8, new FloatRingBuffer(8, FloatRingBuffer.OVERRUN_DROP_NEWEST).getCapacity());
+    }
+
+    @Test
+    public void readWrite_wrapsAround() {
+        FloatRingBuffer ring = new FloatRingBuffer(8, FloatRingBuffer.OVERRUN_DROP_NEWEST);
+        float[] out = new float[8];
+        int next = 0;
+        for (int round = 0; round < 10; round++) {
+            assertEquals(5, ring.write(ramp(next, 5), 0, 5));
+            assertEquals(5, ring.available());
+            assertEquals(5, ring.read(out, 0, 8));
+            for (int i = 0; i < 5; i++) {
+                assertEquals(next + i, out[i], 0.0f);
+            }
+            next += 5;
+            assertEquals(next, ring.getReadPosition());
+            assertEquals(next, ring.getWritePosition());
+        }
+        assertEquals(0, ring.read(out, 0, 8));
+        assertEquals(0, ring.getDroppedSamples());
+    }
+
+    @Test
+    public void dropNewest_keepsOldestSamples() {
+        FloatRingBuffer ring = new FloatRingBuffer(8, FloatRingBuffer.OVERRUN_DROP_NEWEST);
+        assertEquals(6, ring.write(ramp(0, 6), 0, 6));
+        assertEquals(2, ring.write(ramp(6, 6), 0, 6));
+        assertEquals(4, ring.getDroppedSamples());
+        assertEquals(1, ring.getOverrunCount());
+
+        float[] out = new float[8];
+        assertEquals(8, ring.read(out, 0, 8));
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, out[i], 0.0f);
+        }
+    }
+
+    @Test
+    public void dropOldest_keepsLatestSamples() {
+        FloatRingBuffer ring = new FloatRingBuffer(8, FloatRingBuffer.OVERRUN_DROP_OLDEST);
+        assertEquals(6, ring.write(ramp(0, 6), 0, 6));
+        assertEquals(6, ring.write(ramp(6, 6), 0, 6));
+        assertEquals(4, ring.getDroppedSamples());
+        assertEquals(1, ring.getOverrunCount());
+
+        float[] out = new float[8];
+        assertEquals(8, ring.read(out, 0, 8));
+        for (int i = 0; i < 8; i++) {
+            assertEquals(4 + i, out[i], 0.0f);
+        }
+        assertEquals(12, ring.getReadPosition());
+    }
+
+    @Test
+    public void dropOldest_writeLargerThanCapacity() {
+        FloatRingBuffer ring = new FloatRingBuffer(8, FloatRingBuffer.OVERRUN_DROP_OLDEST);
+        assertEquals(8, ring.write(ramp(0, 20), 0, 20));
+        assertEquals(12, ring.getDroppedSamples());
+
+        float[] out = new float[8];
+        assertEquals(8, ring.read(out, 0, 8));
+        for (int i = 0; i < 8; i++) {
+            assertEquals(12 + i, out[i], 0.0f);
+        }
+    }
+
+    @Test
+    public void clear_discardsUnreadSamples() {
+        FloatRingBuffer ring = new FloatRingBuffer(8, FloatRingBuffer.OVERRUN_DROP_OLDEST);
+        ring.write(ramp(0, 5), 0, 5);
+        ring.clear();
+        assertEquals(0, ring.available());
+        ring.write(ramp(5, 2), 0, 2);
+
+        float[] out = new float[8];
+        assertEquals(2, ring.read(out, 0, 8));
+        assertEquals(5, out[0], 0.0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacity_throws() {
+        new FloatRingBuffer(0, FloatRingBuffer.OVERRUN_DROP_OLDEST);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownPolicy_throws() {
+        new FloatRingBuffer(8, 2);
+    }
+}
@@ -0,0 +1,121 @@
+package com.slaviboy.microphone;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Delivering a synthetic source, and restarting the thread while the previous run is finishing.
+ */
+public class RecordingThreadTest {
+
+    /**
+     * Source that counts how many runs use it at the same time, and blocks on each read
+     */
+    private static class CountingSource implements AudioSource {
+
+        private SignalSource source = SignalSource.sine(8000, 0.5, 440);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        AtomicInteger starts = new AtomicInteger();
+
+        @Override
+        public boolean start() {
+            maxActive.set(Math.max(maxActive.get(), active.incrementAndGet()));
+            starts.incrementAndGet();
+            return source.start();
+        }
+
+        @Override
+        public int read(float[] buffer, int offset, int length) {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+
+                // the interrupt from stop does not end the read, like a blocking microphone read
+                Thread.currentThread().interrupt();
+            }
+            return source.read(buffer, offset, length);
+        }
+
+        @Override
+        public void stop() {
+            active.decrementAndGet();
+        }
+
+        @Override
+        public int getSampleRate() {
+            return 8000;
+        }
+
+        @Override
+        public int getBufferSize() {
+            return 256;
+        }
+    }
+
+    private static void waitFor(AtomicLong value, long expected) throws InterruptedException {
+        for (int i = 0; i < 500 && value.get() < expected; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void endOfSource_deliversAllSamples() throws InterruptedException {
+        SignalSource source = SignalSource.sine(8000, 0.5, 440);
+        source.setTotalSamples(1000);
+        source.setBufferSize(256);
+
+        final AtomicLong samples = new AtomicLong();
+        RecordingThread thread = new RecordingThread(source, null);
+        thread.addOnReceiveBlockListener(new RecordingThread.OnReceiveBlockListener() {
+            @Override
+            public void onReceiveBlock(AudioBlock block) {
+                samples.addAndGet(block.getLength());
+            }
+        });
+        thread.start();
+        waitFor(samples, 1000);
+        for (int i = 0; i < 500 && thread.isRecording(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertFalse(thread.isRecording());
+        assertEquals(1000, samples.get());
+        assertEquals(8000, thread.getSampleRate());
+    }
+
+    @Test
+    public void restart_waitsForPreviousRun() throws InterruptedException {
+        CountingSource source = new CountingSource();
+        final AtomicLong samples = new AtomicLong();
+        RecordingThread thread = new RecordingThread(source, new RecordingThread.OnReceiveDataListener() {
+            @Override
+            public void onReceiveData(float[] audioBuffer) {
+                samples.addAndGet(audioBuffer.length);
+            }
+        });
+
+        for (int i = 0; i < 5; i++) {
+            thread.start();
+            Thread.sleep(5);
+            thread.stop();
+        }
+        thread.start();
+        assertTrue(thread.isRecording());
+
+        // the finishing runs neither stop the source of the last run nor clear its flag
+        long delivered = samples.get();
+        waitFor(samples, delivered + 2048);
+        assertTrue(thread.isRecording());
+        assertTrue(samples.get() >= delivered + 2048);
+        assertEquals(1, source.maxActive.get());
+        assertEquals(1, source.active.get());
+
+        thread.stop();
+        assertFalse(thread.isRecording());
+    }
+}
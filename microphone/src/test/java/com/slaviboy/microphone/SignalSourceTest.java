@@ -0,0 +1,57 @@
+package com.slaviboy.microphone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The generated signals, their amplitude and the end of the source.
+ */
+public class SignalSourceTest {
+
+    @Test
+    public void sine_hasFrequencyAndAmplitude() {
+        SignalSource source = SignalSource.sine(8000, 0.5, 1000);
+        assertTrue(source.start());
+
+        // eight samples per period, the peak is reached at the quarter period
+        float[] buffer = new float[16];
+        assertEquals(16, source.read(buffer, 0, buffer.length));
+        for (int i = 0; i < 8; i++) {
+            assertEquals(buffer[i], buffer[i + 8], 1e-6f);
+        }
+        assertEquals(0.0f, buffer[0], 0.0f);
+        assertEquals(0.5f, buffer[2], 1e-6f);
+        assertEquals(-0.5f, buffer[6], 1e-6f);
+    }
+
+    @Test
+    public void noise_isRepeatedForSameSeed() {
+        SignalSource first = SignalSource.noise(8000, 0.25, 7);
+        SignalSource second = SignalSource.noise(8000, 0.25, 7);
+        first.start();
+        second.start();
+
+        float[] a = new float[256];
+        float[] b = new float[256];
+        first.read(a, 0, a.length);
+        second.read(b, 0, b.length);
+        assertArrayEquals(a, b, 0.0f);
+        for (float sample : a) {
+            assertTrue(Math.abs(sample) <= 0.25f);
+        }
+    }
+
+    @Test
+    public void totalSamples_endsSource() {
+        SignalSource source = SignalSource.sweep(8000, 1.0, 100, 1000, 0.1);
+        source.setTotalSamples(100);
+        source.start();
+
+        float[] buffer = new float[64];
+        assertEquals(64, source.read(buffer, 0, buffer.length));
+        assertEquals(36, source.read(buffer, 0, buffer.length));
+        assertEquals(-1, source.read(buffer, 0, buffer.length));
+        assertEquals(100, source.getPosition());
+    }
+}
@@ -0,0 +1,113 @@
+package com.slaviboy.microphone;
+
+import com.slaviboy.wav.WavFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writing blocks to WAV segments, patching the headers and returning the blocks to the pool.
+ */
+public class WavRecorderTest {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void send(WavRecorder recorder, AudioBlockPool pool, int blocks) {
+        for (int b = 0; b < blocks; b++) {
+            AudioBlock block = pool.acquire();
+            float[] data = block.getData();
+            for (int i = 0; i < data.length; i++) {
+                data[i] = ((b * data.length + i) % 256 - 128) / 256.0f;
+            }
+            block.setLength(data.length);
+            recorder.onReceiveBlock(block);
+            block.release();
+        }
+    }
+
+    private static float[] readAll(File file, int frames) {
+        FileSource source = new FileSource(file);
+        assertTrue(source.start());
+        float[] samples = new float[frames + 1];
+        int total = 0;
+        int count;
+        while ((count = source.read(samples, total, samples.length - total)) > 0) {
+            total += count;
+        }
+        source.stop();
+        assertEquals(frames, total);
+        return samples;
+    }
+
+    @Test
+    public void blocks_areWrittenInOrder() throws IOException {
+        File directory = folder.newFolder();
+        WavRecorder recorder = new WavRecorder(directory, "take", SAMPLE_RATE,
+                WavFormat.ENCODING_PCM_FLOAT, 64, 1000);
+        AudioBlockPool pool = new AudioBlockPool(100, 4);
+        recorder.start();
+        send(recorder, pool, 30);
+        recorder.stop();
+
+        assertNull(recorder.getError());
+        assertEquals(0, recorder.getDroppedBlocks());
+        assertEquals(30, recorder.getWrittenBlocks());
+        assertEquals(1, recorder.getSegmentCount());
+        assertEquals(pool.getAllocatedCount(), pool.getFreeCount());
+
+        // the float samples are written exactly, and the header has the final size
+        int frames = 3000;
+        File file = new File(directory, "take_0001.wav");
+        assertEquals(WavFormat.HEADER_SIZE + frames * 4, file.length());
+        float[] samples = readAll(file, frames);
+        for (int i = 0; i < frames; i++) {
+            assertEquals((i % 256 - 128) / 256.0f, samples[i], 0.0f);
+        }
+    }
+
+    @Test
+    public void duration_startsNewSegment() throws IOException {
+        File directory = folder.newFolder();
+        WavRecorder recorder = new WavRecorder(directory, "seg", SAMPLE_RATE);
+        recorder.setSegmentDuration(0.1);
+        AudioBlockPool pool = new AudioBlockPool(300, 8);
+        recorder.start();
+        send(recorder, pool, 5);
+        recorder.stop();
+
+        // 1500 samples are split into segments of 800 and 700 samples
+        assertEquals(0, recorder.getDroppedBlocks());
+        assertEquals(2, recorder.getSegmentCount());
+        readAll(new File(directory, "seg_0001.wav"), 800);
+        readAll(new File(directory, "seg_0002.wav"), 700);
+        assertFalse(recorder.isRecording());
+    }
+
+    @Test
+    public void blocksBeforeStart_areIgnored() throws IOException {
+        File directory = folder.newFolder();
+        WavRecorder recorder = new WavRecorder(directory, "idle", SAMPLE_RATE);
+        AudioBlockPool pool = new AudioBlockPool(100, 1);
+        send(recorder, pool, 3);
+
+        assertEquals(0, recorder.getQueuedBlocks());
+        assertEquals(1, pool.getFreeCount());
+        recorder.start();
+        recorder.stop();
+        assertEquals(0, recorder.getSegmentCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedEncoding_throws() {
+        new WavRecorder(folder.getRoot(), "bad", SAMPLE_RATE, WavFormat.ENCODING_PCM_24BIT_PACKED, 4, 1024);
+    }
+}
@@ -0,0 +1,313 @@
+package com.slaviboy.wav;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * PCM sample format and WAV header, shared by all readers and writers of audio files. It has
+ * the encoding constants, parses the RIFF chunks of WAV files including WAVE_FORMAT_EXTENSIBLE
+ * (where the sample type is in the sub-format GUID), writes the canonical 44 byte header and
+ * decodes the samples of each encoding to floats in range [-1,1].
+ */
+public final class WavFormat {
+
+    // pcm encodings, same values as in android.media.AudioFormat
+    public static final int ENCODING_PCM_16BIT = 2;
+    public static final int ENCODING_PCM_8BIT = 3;
+    public static final int ENCODING_PCM_FLOAT = 4;
+    public static final int ENCODING_PCM_24BIT_PACKED = 21;
+    public static final int ENCODING_PCM_32BIT = 22;
+
+    // wav format tags
+    public static final int FORMAT_PCM = 1;
+    public static final int FORMAT_IEEE_FLOAT = 3;
+    public static final int FORMAT_EXTENSIBLE = 0xfffe;
+
+    public static final int HEADER_SIZE = 44;
+
+    private static final int RIFF = 0x46464952;            // "RIFF"
+    private static final int WAVE = 0x45564157;            // "WAVE"
+    private static final int FMT = 0x20746d66;             // "fmt "
+    private static final int DATA = 0x61746164;            // "data"
+
+    private final int sampleRate;       // sample rate (Hz)
+    private final int encoding;         // one of the ENCODING_PCM_* constants
+    private final int channelCount;     // number of interleaved channels
+    private final long dataOffset;      // position of the first sample in the file
+    private final long dataSize;        // size of the samples in bytes
+
+    /**
+     * Format of raw PCM data, or of WAV file that is written
+     *
+     * @param sampleRate
+     * @param encoding     - one of the ENCODING_PCM_* constants
+     * @param channelCount - number of interleaved channels
+     */
+    public WavFormat(int sampleRate, int encoding, int channelCount) {
+        this(sampleRate, encoding, channelCount, 0, 0);
+    }
+
+    private WavFormat(int sampleRate, int encoding, int channelCount, long dataOffset, long dataSize) {
+        getBytesPerSample(encoding);
+        if (sampleRate <= 0 || channelCount <= 0) {
+            throw new IllegalArgumentException("Sample rate and channel count must be positive");
+        }
+        this.sampleRate = sampleRate;
+        this.encoding = encoding;
+        this.channelCount = channelCount;
+        this.dataOffset = dataOffset;
+        this.dataSize = dataSize;
+    }
+
+    /**
+     * Read the RIFF chunks until the data chunk, and get the format from the fmt chunk,
+     * the position of the channel is not changed
+     *
+     * @param channel - channel of the WAV file
+     * @return format with the position and the size of the data chunk
+     * @throws IOException
+     */
+    public static WavFormat read(FileChannel channel) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, 0);
+        if (header.getInt(0) != RIFF || header.getInt(8) != WAVE) {
+            throw new IOException("Not a WAV file");
+        }
+
+        ByteBuffer chunk = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        long size = channel.size();
+        long position = 12;
+        int sampleRate = 0;
+        int encoding = 0;
+        int channelCount = 0;
+        while (position + 8 <= size) {
+            readFully(channel, chunk, position);
+            int id = chunk.getInt(0);
+            long chunkSize = chunk.getInt(4) & 0xffffffffL;
+            position += 8;
+
+            if (id == FMT) {
+                if (chunkSize < 16) {
+                    throw new IOException("WAV fmt chunk is too short");
+                }
+
+                // the extensible format has the sub-format GUID at offset 24
+                ByteBuffer format = ByteBuffer.allocate((int) Math.min(chunkSize, 40)).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, format, position);
+                int formatTag = format.getShort(0) & 0xffff;
+                if (formatTag == FORMAT_EXTENSIBLE) {
+                    if (format.capacity() < 40) {
+                        throw new IOException("WAV extensible fmt chunk is too short");
+                    }
+                    formatTag = format.getShort(24) & 0xffff;
+                }
+                channelCount = format.getShort(2) & 0xffff;
+                sampleRate = format.getInt(4);
+                encoding = getEncoding(formatTag, format.getShort(14));
+            } else if (id == DATA) {
+                if (encoding == 0) {
+                    throw new IOException("WAV file has no fmt chunk");
+                }
+                if (sampleRate <= 0 || channelCount <= 0) {
+                    throw new IOException("Invalid WAV format, " + sampleRate + " Hz, " + channelCount + " channels");
+                }
+                return new WavFormat(sampleRate, encoding, channelCount, position,
+                        Math.min(size, position + chunkSize) - position);
+            }
+
+            // chunks are aligned to two bytes
+            position += chunkSize + (chunkSize & 1);
+        }
+        throw new IOException("WAV file has no data chunk");
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    /**
+     * Get encoding from WAV format tag, for the extensible format the tag is
+     * the first two bytes of the sub-format GUID
+     *
+     * @param formatTag     - FORMAT_PCM or FORMAT_IEEE_FLOAT
+     * @param bitsPerSample
+     * @return
+     * @throws IOException
+     */
+    public static int getEncoding(int formatTag, int bitsPerSample) throws IOException {
+        if (formatTag == FORMAT_IEEE_FLOAT && bitsPerSample == 32) {
+            return ENCODING_PCM_FLOAT;
+        }
+        if (formatTag == FORMAT_PCM) {
+            switch (bitsPerSample) {
+                case 8:
+                    return ENCODING_PCM_8BIT;
+                case 16:
+                    return ENCODING_PCM_16BIT;
+                case 24:
+                    return ENCODING_PCM_24BIT_PACKED;
+                case 32:
+                    return ENCODING_PCM_32BIT;
+            }
+        }
+        throw new IOException("Unsupported WAV format " + formatTag + ", " + bitsPerSample + " bits");
+    }
+
+    /**
+     * Get the size of one sample in bytes, for given encoding
+     *
+     * @param encoding - one of the ENCODING_PCM_* constants
+     * @return
+     */
+    public static int getBytesPerSample(int encoding) {
+        switch (encoding) {
+            case ENCODING_PCM_8BIT:
+                return 1;
+            case ENCODING_PCM_16BIT:
+                return 2;
+            case ENCODING_PCM_24BIT_PACKED:
+                return 3;
+            case ENCODING_PCM_32BIT:
+            case ENCODING_PCM_FLOAT:
+                return 4;
+            default:
+                throw new IllegalArgumentException("Unsupported encoding " + encoding);
+        }
+    }
+
+    /**
+     * Create the 44 byte WAV header, with the fmt and data chunks
+     *
+     * @param dataSize - size of the samples in bytes
+     * @return header, ready to be written
+     */
+    public ByteBuffer createHeader(long dataSize) {
+        int bytesPerSample = getBytesPerSample(encoding);
+        int blockAlign = bytesPerSample * channelCount;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(RIFF);
+        header.putInt((int) (36 + dataSize));
+        header.putInt(WAVE);
+        header.putInt(FMT);
+        header.putInt(16);
+        header.putShort((short) (encoding == ENCODING_PCM_FLOAT ? FORMAT_IEEE_FLOAT : FORMAT_PCM));
+        header.putShort((short) channelCount);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * blockAlign);                    // byte rate
+        header.putShort((short) blockAlign);
+        header.putShort((short) (bytesPerSample * 8));
+        header.putInt(DATA);
+        header.putInt((int) dataSize);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Read packed 24-bit sample as sign extended int, using the buffer byte order
+     *
+     * @param buffer
+     * @param index  - position of the first byte of the sample
+     * @return
+     */
+    public static int getInt24(ByteBuffer buffer, int index) {
+        if (buffer.order() == ByteOrder.BIG_ENDIAN) {
+            return (buffer.get(index) << 16) | ((buffer.get(index + 1) & 0xff) << 8) | (buffer.get(index + 2) & 0xff);
+        }
+        return (buffer.get(index + 2) << 16) | ((buffer.get(index + 1) & 0xff) << 8) | (buffer.get(index) & 0xff);
+    }
+
+    /**
+     * Read one sample as float in range [-1,1], using the buffer byte order
+     *
+     * @param buffer
+     * @param index    - position of the first byte of the sample
+     * @param encoding - one of the ENCODING_PCM_* constants
+     * @return
+     */
+    public static float getSample(ByteBuffer buffer, int index, int encoding) {
+        switch (encoding) {
+            case ENCODING_PCM_8BIT:
+                return ((buffer.get(index) & 0xff) - 128) * (1.0f / 128.0f);
+            case ENCODING_PCM_16BIT:
+                return buffer.getShort(index) * (1.0f / 32768.0f);
+            case ENCODING_PCM_24BIT_PACKED:
+                return getInt24(buffer, index) * (1.0f / 8388608.0f);
+            case ENCODING_PCM_32BIT:
+                return (float) (buffer.getInt(index) * (1.0 / 2147483648.0));
+            default:
+                return buffer.getFloat(index);
+        }
+    }
+
+    /**
+     * Decode interleaved frames and mix the channels down to mono float samples
+     *
+     * @param buffer       - buffer with the frames, in the byte order of the samples
+     * @param start        - position of the first frame
+     * @param frames       - number of frames
+     * @param encoding     - one of the ENCODING_PCM_* constants
+     * @param channelCount - number of interleaved channels
+     * @param out          - output array
+     * @param offset       - position in the output array
+     */
+    public static void decodeMono(ByteBuffer buffer, int start, int frames, int encoding, int channelCount,
+                                  float[] out, int offset) {
+        int bytesPerSample = getBytesPerSample(encoding);
+        int frameSize = bytesPerSample * channelCount;
+        float gain = 1.0f / channelCount;
+        for (int i = 0; i < frames; i++) {
+            float sum = 0.0f;
+            for (int c = 0, j = start + i * frameSize; c < channelCount; c++, j += bytesPerSample) {
+                sum += getSample(buffer, j, encoding);
+            }
+            out[offset + i] = sum * gain;
+        }
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getEncoding() {
+        return encoding;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * Get the size of one frame in bytes, for all channels
+     *
+     * @return
+     */
+    public int getFrameSize() {
+        return getBytesPerSample(encoding) * channelCount;
+    }
+
+    /**
+     * Get the position of the first sample in the file, 0 for raw PCM
+     *
+     * @return
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * Get the size of the samples in bytes, limited to the size of the file
+     *
+     * @return
+     */
+    public long getDataSize() {
+        return dataSize;
+    }
+}
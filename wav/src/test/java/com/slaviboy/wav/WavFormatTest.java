@@ -0,0 +1,135 @@
+package com.slaviboy.wav;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parsing and writing WAV headers, and decoding the samples of each encoding.
+ */
+public class WavFormatTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static WavFormat read(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            return WavFormat.read(randomAccessFile.getChannel());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static void write(File file, ByteBuffer... buffers) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            for (ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @Test
+    public void header_isReadBack() throws IOException {
+        WavFormat format = new WavFormat(22050, WavFormat.ENCODING_PCM_24BIT_PACKED, 2);
+        File file = folder.newFile("header.wav");
+        write(file, format.createHeader(60), ByteBuffer.allocate(60));
+
+        WavFormat read = read(file);
+        assertEquals(22050, read.getSampleRate());
+        assertEquals(WavFormat.ENCODING_PCM_24BIT_PACKED, read.getEncoding());
+        assertEquals(2, read.getChannelCount());
+        assertEquals(6, read.getFrameSize());
+        assertEquals(WavFormat.HEADER_SIZE, read.getDataOffset());
+        assertEquals(60, read.getDataSize());
+    }
+
+    @Test
+    public void extensibleFloat_isParsed() throws IOException {
+
+        // 40 byte fmt chunk with the float sub-format, and a chunk before the data
+        ByteBuffer header = ByteBuffer.allocate(12 + 48 + 10 + 8).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes()).putInt(0).put("WAVE".getBytes());
+        header.put("fmt ".getBytes()).putInt(40);
+        header.putShort((short) WavFormat.FORMAT_EXTENSIBLE).putShort((short) 1).putInt(48000)
+                .putInt(48000 * 4).putShort((short) 4).putShort((short) 32);
+        header.putShort((short) 22).putShort((short) 32).putInt(4);
+        header.putShort((short) WavFormat.FORMAT_IEEE_FLOAT).put(new byte[14]);
+        header.put("LIST".getBytes()).putInt(1).put(new byte[2]);
+        header.put("data".getBytes()).putInt(8);
+        header.flip();
+
+        ByteBuffer data = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        data.putFloat(0.5f).putFloat(-0.25f).flip();
+        File file = folder.newFile("extensible.wav");
+        write(file, header, data);
+
+        WavFormat format = read(file);
+        assertEquals(48000, format.getSampleRate());
+        assertEquals(WavFormat.ENCODING_PCM_FLOAT, format.getEncoding());
+        assertEquals(1, format.getChannelCount());
+        assertEquals(header.limit(), format.getDataOffset());
+        assertEquals(8, format.getDataSize());
+    }
+
+    @Test(expected = IOException.class)
+    public void notWav_throws() throws IOException {
+        File file = folder.newFile("raw.pcm");
+        write(file, ByteBuffer.allocate(64));
+        read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedFormat_throws() throws IOException {
+        WavFormat.getEncoding(WavFormat.FORMAT_IEEE_FLOAT, 64);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownEncoding_throws() {
+        new WavFormat(44100, 5, 1);
+    }
+
+    @Test
+    public void samples_areDecoded() {
+        ByteBuffer little = ByteBuffer.allocate(3).order(ByteOrder.LITTLE_ENDIAN);
+        little.put(0, (byte) 0x00).put(1, (byte) 0x00).put(2, (byte) 0xc0);
+        assertEquals(-0.5f, WavFormat.getSample(little, 0, WavFormat.ENCODING_PCM_24BIT_PACKED), 0.0f);
+
+        ByteBuffer big = ByteBuffer.allocate(3).order(ByteOrder.BIG_ENDIAN);
+        big.put(0, (byte) 0x40).put(1, (byte) 0x00).put(2, (byte) 0x00);
+        assertEquals(0.5f, WavFormat.getSample(big, 0, WavFormat.ENCODING_PCM_24BIT_PACKED), 0.0f);
+
+        ByteBuffer bytes = ByteBuffer.allocate(1);
+        bytes.put(0, (byte) 0);
+        assertEquals(-1.0f, WavFormat.getSample(bytes, 0, WavFormat.ENCODING_PCM_8BIT), 0.0f);
+
+        ByteBuffer ints = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        ints.putInt(0, Integer.MIN_VALUE / 4);
+        assertEquals(-0.25f, WavFormat.getSample(ints, 0, WavFormat.ENCODING_PCM_32BIT), 0.0f);
+    }
+
+    @Test
+    public void stereo_isMixedToMono() {
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) 16384).putShort((short) 0).putShort((short) -16384).putShort((short) -16384);
+
+        float[] out = new float[3];
+        WavFormat.decodeMono(buffer, 0, 2, WavFormat.ENCODING_PCM_16BIT, 2, out, 1);
+        assertArrayEquals(new float[]{0.0f, 0.25f, -0.5f}, out, 0.0f);
+    }
+}